@@ -19,6 +19,7 @@
 
 package net.sf.jode;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.StringTokenizer;
 
 public class GlobalOptions {
@@ -28,8 +29,46 @@ public class GlobalOptions {
 	"Jode (c) 1998-2004 Jochen Hoenicke <"+email+">";
     public final static String URL = "http://jode.sourceforge.net/";
 
-    public static PrintWriter err = new PrintWriter(System.err, true);
+    private static final PrintWriter defaultErr
+	= new PrintWriter(System.err, true);
+    private static final ThreadLocal threadErr = new ThreadLocal();
+
+    /**
+     * The writer where warnings and errors are printed to.  By default
+     * everything goes to System.err, but a thread can redirect its
+     * messages with {@link #setThreadErr}.
+     */
+    public static PrintWriter err = new PrintWriter(new Writer() {
+	private PrintWriter getWriter() {
+	    PrintWriter writer = (PrintWriter) threadErr.get();
+	    return writer != null ? writer : defaultErr;
+	}
+
+	public void write(char[] cbuf, int off, int len) {
+	    getWriter().write(cbuf, off, len);
+	}
+
+	public void write(String str, int off, int len) {
+	    getWriter().write(str, off, len);
+	}
+
+	public void flush() {
+	    getWriter().flush();
+	}
+
+	public void close() {
+	    /* never close System.err */
+	}
+    }, true);
+
+    /**
+     * The default verbose level.  The decompiler copies this into
+     * every new decompiler context.
+     */
     public static int verboseLevel   = 0;
+    /**
+     * The debugging flags.  These are always global.
+     */
     public static int debuggingFlags = 0;
 
     public static final int DEBUG_BYTECODE = 0x001;
@@ -50,6 +89,23 @@ public class GlobalOptions {
 	"constructors", "interpreter"
     };
 
+    /**
+     * Redirects the messages that the current thread prints to
+     * {@link #err}.  This is used to keep the messages of concurrent
+     * decompilations apart.
+     * @param writer the new writer, or null to print to System.err.
+     * @return the previous writer of this thread, null if it printed to
+     * System.err.
+     */
+    public static PrintWriter setThreadErr(PrintWriter writer) {
+	PrintWriter old = (PrintWriter) threadErr.get();
+	if (writer == err)
+	    /* Avoid an endless loop */
+	    writer = null;
+	threadErr.set(writer);
+	return old;
+    }
+
     public static void usageDebugging() {
 	err.println("Debugging option: --debug=flag1,flag2,...");
 	err.println("possible flags:");
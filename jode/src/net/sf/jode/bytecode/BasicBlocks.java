@@ -21,10 +21,10 @@ package net.sf.jode.bytecode;
 
 import net.sf.jode.GlobalOptions;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 import java.util.BitSet;
 import java.util.Stack;
@@ -299,7 +299,7 @@ public class BasicBlocks extends BinaryInfo implements Opcodes {
 
     private BasicBlockReader reader;
     void read(ConstantPool cp, 
-		     DataInputStream input, 
+		     ByteBuffer input, 
 		     int howMuch) throws IOException {
 	if ((GlobalOptions.debuggingFlags
 	     & GlobalOptions.DEBUG_BYTECODE) != 0)
@@ -315,7 +315,7 @@ public class BasicBlocks extends BinaryInfo implements Opcodes {
     }
 
     protected void readAttribute(String name, int length, ConstantPool cp,
-				 DataInputStream input, 
+				 ByteBuffer input, 
 				 int howMuch) throws IOException {
 	if (howMuch >= ClassInfo.ALMOSTALL
 	    && name.equals("LocalVariableTable")) {
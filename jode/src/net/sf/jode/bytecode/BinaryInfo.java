@@ -18,12 +18,10 @@
  */
 
 package net.sf.jode.bytecode;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.EOFException;
-import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import net.sf.jode.util.SimpleMap;
 
 ///#def COLLECTIONS java.util
@@ -136,17 +134,22 @@ public class BinaryInfo {
 
     private Map unknownAttributes = null;
 
-    void skipAttributes(DataInputStream input) throws IOException {
-        int count = input.readUnsignedShort();
+    /**
+     * Skips count bytes of the buffer.
+     * @exception BufferUnderflowException if there are not enough
+     * bytes left.
+     */
+    static void skip(ByteBuffer input, int count) {
+	if (count < 0 || count > input.remaining())
+	    throw new BufferUnderflowException();
+	input.position(input.position() + count);
+    }
+
+    void skipAttributes(ByteBuffer input) {
+        int count = input.getShort() & 0xffff;
         for (int i=0; i< count; i++) {
-            input.readUnsignedShort();  // the name index
-            long length = input.readInt();
-	    while (length > 0) {
-		long skipped = input.skip(length);
-		if (skipped == 0)
-		    throw new EOFException("Can't skip. EOF?");
-		length -= skipped;
-	    }
+            input.getShort();  // the name index
+	    skip(input, input.getInt());
         }
     }
 
@@ -157,90 +160,41 @@ public class BinaryInfo {
      * @param name the attribute name.
      * @param length the length of the attribute.
      * @param constantPool the constant pool of the class.
-     * @param input a data input stream where you can read the attribute
-     * from.  It will protect you to read more over the attribute boundary.
+     * @param input a buffer where you can read the attribute from.
+     * Its limit is the end of the attribute, so you can't read over
+     * the attribute boundary.
      * @param howMuch the constant that was given to the {@link
      * ClassInfo#load} function when loading this class.
      */
     protected void readAttribute(String name, int length,
 				 ConstantPool constantPool,
-				 DataInputStream input, 
+				 ByteBuffer input, 
 				 int howMuch) throws IOException {
-	byte[] data = new byte[length];
-	input.readFully(data);
 	if (howMuch >= ClassInfo.ALL) {
+	    byte[] data = new byte[length];
+	    input.get(data);
 	    if (unknownAttributes == null)
 		unknownAttributes = new SimpleMap();
 	    unknownAttributes.put(name, data);
 	}
     }
 
-    static class ConstrainedInputStream extends FilterInputStream {
-	int length;
-
-	public ConstrainedInputStream(int attrLength, InputStream input) {
-	    super(input);
-	    length = attrLength;
-	}
-
-	public int read() throws IOException {
-	    if (length > 0) {
-		int data = super.read();
-		length--;
-		return data;
-	    }
-	    throw new EOFException();
-	}
-
-	public int read(byte[] b, int off, int len) throws IOException {
-	    if (length < len) {
-		len = length;
-	    }
-	    if (len == 0)
-		return -1;
-	    int count = super.read(b, off, len);
-	    length -= count;
-	    return count;
-	}
-
-	public int read(byte[] b) throws IOException {
-	    return read(b, 0, b.length);
-	}
-
-	public long skip(long count) throws IOException {
-	    if (length < count) {
-		count = length;
-	    }
-	    count = super.skip(count);
-	    length -= (int) count;
-	    return count;
-	}
-
-	public void skipRemaining() throws IOException {
-	    while (length > 0) {
-		int skipped = (int) skip(length);
-		if (skipped == 0)
-		    throw new EOFException();
-		length -= skipped;
-	    }
-	}
-    }
-
     void readAttributes(ConstantPool constantPool,
-			DataInputStream input, 
+			ByteBuffer input, 
 			int howMuch) throws IOException {
-	int count = input.readUnsignedShort();
+	int count = input.getShort() & 0xffff;
 	unknownAttributes = null;
 	for (int i=0; i< count; i++) {
 	    String attrName = 
-		constantPool.getUTF8(input.readUnsignedShort());
-	    final int attrLength = input.readInt();
-	    ConstrainedInputStream constrInput = 
-		    new ConstrainedInputStream(attrLength, input);
+		constantPool.getUTF8(input.getShort() & 0xffff);
+	    final int attrLength = input.getInt();
+	    if (attrLength < 0 || attrLength > input.remaining())
+		throw new BufferUnderflowException();
+	    ByteBuffer attrInput = input.slice();
+	    attrInput.limit(attrLength);
 	    readAttribute(attrName, attrLength, 
-			  constantPool, new DataInputStream(constrInput),
-			  howMuch);
-	    constrInput.skipRemaining();
+			  constantPool, attrInput, howMuch);
+	    input.position(input.position() + attrLength);
 	}
     }
 
@@ -0,0 +1,504 @@
+/* ClassCache Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bytecode;
+import net.sf.jode.GlobalOptions;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+
+/**
+ * A persistent cache for the declarations of the classes in jar and
+ * zip files.  The cache stores for every class a digest, which is a
+ * class file that only contains the declarations, see {@link
+ * #makeDigest}.  When a class is loaded with at most {@link
+ * ClassInfo#DECLARATIONS} information from a cached jar, it is read
+ * from this digest instead of inflating it from the jar.  Since the
+ * digest is read with the normal class file reader, the class info is
+ * exactly the same.<br>
+ *
+ * The cache also stores the names of the entries of the jar file, so
+ * that a class path can list the jar and load cached classes without
+ * opening it.<br>
+ *
+ * There is one cache file per jar file in the cache directory.  It
+ * is keyed by the path of the jar file and is only used if the size
+ * and the modification time of the jar file didn't change.  The
+ * cache files are memory mapped.  New classes are collected in memory
+ * and written by {@link #save}.<br>
+ *
+ * A cache can be shared by several class paths and threads.
+ *
+ * @see ClassPath#setClassCache
+ */
+public class ClassCache {
+    private static final int MAGIC = 0x4a4f4443; /* "JODC" */
+    private static final int VERSION = 3;
+
+    /* The kinds of attributes in makeDigest. */
+    private static final int FIELD  = 0;
+    private static final int METHOD = 1;
+    private static final int CLASS  = 2;
+
+    private File directory;
+    /**
+     * Maps the key of an archive to its CacheFile.
+     */
+    private Hashtable cacheFiles = new Hashtable();
+
+    /**
+     * The cached classes of one archive.
+     */
+    private class CacheFile {
+	File archive;
+	String key;
+	File file;
+	long lastModified;
+	long length;
+	/**
+	 * The memory mapped contents of the cache file, null if there
+	 * is no valid cache file.
+	 */
+	ByteBuffer mapped;
+	/**
+	 * Maps the file name of a cached class to an int[] containing
+	 * the offset and length in mapped.
+	 */
+	Hashtable offsets = new Hashtable();
+	/**
+	 * Maps the file name of a class that was added since the cache
+	 * file was read to its digest.
+	 */
+	Hashtable added = new Hashtable();
+	/**
+	 * The names of all entries of the archive, or null if they
+	 * aren't known.
+	 */
+	String[] entryNames;
+	boolean namesAdded;
+
+	CacheFile(File archive, String key) {
+	    this.archive = archive;
+	    this.key = key;
+	    this.lastModified = archive.lastModified();
+	    this.length = archive.length();
+	    String name = archive.getName();
+	    this.file = new File(directory, name + "-"
+				 + Integer.toHexString(key.hashCode())
+				 + ".cache");
+	    try {
+		if (file.exists())
+		    readCacheFile();
+	    } catch (IOException ex) {
+		GlobalOptions.err.println("Ignoring broken class cache "
+					  + file + ": " + ex.getMessage());
+		mapped = null;
+		entryNames = null;
+		offsets.clear();
+	    }
+	}
+
+	private void readCacheFile() throws IOException {
+	    DataInputStream input = new DataInputStream
+		(new java.io.BufferedInputStream(new FileInputStream(file)));
+	    try {
+		if (input.readInt() != MAGIC || input.readInt() != VERSION
+		    || !input.readUTF().equals(key)
+		    || input.readLong() != lastModified
+		    || input.readLong() != length)
+		    /* Stale cache file, it will be replaced on save. */
+		    return;
+		int count = input.readInt();
+		if (count >= 0) {
+		    entryNames = new String[count];
+		    for (int i = 0; i < count; i++)
+			entryNames[i] = input.readUTF();
+		}
+		count = input.readInt();
+		for (int i = 0; i < count; i++) {
+		    String name = input.readUTF();
+		    int offset = input.readInt();
+		    int len = input.readInt();
+		    offsets.put(name, new int[] { offset, len });
+		}
+	    } finally {
+		input.close();
+	    }
+	    RandomAccessFile raf = new RandomAccessFile(file, "r");
+	    try {
+		FileChannel channel = raf.getChannel();
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+				     0, channel.size());
+	    } finally {
+		/* The mapping stays valid after closing. */
+		raf.close();
+	    }
+	}
+
+	/**
+	 * Gets the digest of the given class file.
+	 * @return the digest, or null if the class isn't cached.
+	 */
+	ByteBuffer getDigest(String filename) {
+	    byte[] digest = (byte[]) added.get(filename);
+	    if (digest != null)
+		return ByteBuffer.wrap(digest);
+	    int[] pos = (int[]) offsets.get(filename);
+	    if (pos == null)
+		return null;
+	    ByteBuffer buffer = mapped.duplicate();
+	    buffer.position(pos[0]);
+	    buffer.limit(pos[0] + pos[1]);
+	    return buffer.slice();
+	}
+
+	/**
+	 * Writes the header of the cache file with the entry names and
+	 * the name, offset and length of every digest.
+	 * @param offset the offset of the first digest.
+	 */
+	private void writeHeader(DataOutputStream out, String[] names,
+				 Hashtable digests, int offset)
+	    throws IOException
+	{
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeUTF(key);
+	    out.writeLong(lastModified);
+	    out.writeLong(length);
+	    if (entryNames == null)
+		out.writeInt(-1);
+	    else {
+		out.writeInt(entryNames.length);
+		for (int i = 0; i < entryNames.length; i++)
+		    out.writeUTF(entryNames[i]);
+	    }
+	    out.writeInt(names.length);
+	    for (int i = 0; i < names.length; i++) {
+		byte[] digest = (byte[]) digests.get(names[i]);
+		out.writeUTF(names[i]);
+		out.writeInt(offset);
+		out.writeInt(digest.length);
+		offset += digest.length;
+	    }
+	}
+
+	void save() throws IOException {
+	    if (added.isEmpty() && !namesAdded)
+		return;
+
+	    /* Collect the digests of the old and the new classes. */
+	    Hashtable digests = new Hashtable();
+	    Enumeration enumeration = offsets.keys();
+	    while (enumeration.hasMoreElements()) {
+		String name = (String) enumeration.nextElement();
+		int[] pos = (int[]) offsets.get(name);
+		byte[] digest = new byte[pos[1]];
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(pos[0]);
+		buffer.get(digest);
+		digests.put(name, digest);
+	    }
+	    enumeration = added.keys();
+	    while (enumeration.hasMoreElements()) {
+		String name = (String) enumeration.nextElement();
+		digests.put(name, added.get(name));
+	    }
+	    String[] names = new String[digests.size()];
+	    int i = 0;
+	    enumeration = digests.keys();
+	    while (enumeration.hasMoreElements())
+		names[i++] = (String) enumeration.nextElement();
+
+	    /* Compute the size of the header, so that we know the
+	     * offsets of the digests.
+	     */
+	    ByteArrayOutputStream header = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(header);
+	    writeHeader(out, names, digests, 0);
+	    out.close();
+
+	    File tmpFile = new File(directory, file.getName() + ".tmp");
+	    out = new DataOutputStream(new BufferedOutputStream
+				       (new FileOutputStream(tmpFile)));
+	    try {
+		writeHeader(out, names, digests, header.size());
+		for (i = 0; i < names.length; i++)
+		    out.write((byte[]) digests.get(names[i]));
+	    } finally {
+		out.close();
+	    }
+	    file.delete();
+	    if (!tmpFile.renameTo(file))
+		throw new IOException("Can't rename " + tmpFile);
+	}
+    }
+
+    /**
+     * Creates a new class cache.
+     * @param directory the directory containing the cache files.  It
+     * is created if it doesn't exist.
+     */
+    public ClassCache(File directory) {
+	this.directory = directory;
+    }
+
+    private synchronized CacheFile getCacheFile(ClassPath.Location loc) {
+	File archive = loc.getArchive();
+	String key = archive.getAbsolutePath();
+	if (loc.getArchivePrefix() != null)
+	    key += "!/" + loc.getArchivePrefix();
+	CacheFile cacheFile = (CacheFile) cacheFiles.get(key);
+	if (cacheFile == null) {
+	    cacheFile = new CacheFile(archive, key);
+	    cacheFiles.put(key, cacheFile);
+	}
+	return cacheFile;
+    }
+
+    /**
+     * Gets the names of all entries of the archive of the given
+     * location.  This is called by the location before it opens its
+     * archive.
+     * @return the entry names, or null if they aren't cached.
+     */
+    synchronized String[] getNames(ClassPath.Location loc) {
+	return getCacheFile(loc).entryNames;
+    }
+
+    /**
+     * Stores the names of all entries of the archive of the given
+     * location, after the location read them from the archive.
+     */
+    synchronized void putNames(ClassPath.Location loc, String[] names) {
+	CacheFile cacheFile = getCacheFile(loc);
+	cacheFile.entryNames = names;
+	cacheFile.namesAdded = true;
+    }
+
+    /**
+     * Loads a class from the given location using this cache.  This
+     * is only called by ClassPath for locations with an archive and
+     * if howMuch is at most {@link ClassInfo#DECLARATIONS}.
+     * @return true, if loading the class was successful, false
+     * if it was not found.
+     */
+    boolean loadClass(ClassPath.Location loc, ClassInfo clazz, int howMuch)
+	throws IOException, ClassFormatException
+    {
+	String filename = clazz.getName().replace('.', '/') + ".class";
+	CacheFile cacheFile = getCacheFile(loc);
+	ByteBuffer digest;
+	synchronized (this) {
+	    digest = cacheFile.getDigest(filename);
+	}
+	if (digest != null) {
+	    clazz.read(digest, howMuch);
+	    return true;
+	}
+
+	if (!loc.exists(filename))
+	    return false;
+	InputStream input = loc.getFile(filename);
+	byte[] contents;
+	try {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[4096];
+	    int count;
+	    while ((count = input.read(buffer)) != -1)
+		bytes.write(buffer, 0, count);
+	    contents = bytes.toByteArray();
+	} finally {
+	    input.close();
+	}
+	clazz.read(ByteBuffer.wrap(contents), howMuch);
+	/* Only classes that could be read are added to the cache. */
+	byte[] newDigest = makeDigest(contents);
+	synchronized (this) {
+	    cacheFile.added.put(filename, newDigest);
+	}
+	return true;
+    }
+
+    /**
+     * Builds the digest of a class file.  The digest is a class file
+     * with a new constant pool, that only contains what is read with
+     * at most DECLARATIONS: the names, the super class and interfaces,
+     * the names, types and signatures of the fields and methods, the
+     * constant values and exceptions, and the inner classes.  The code
+     * of the methods, the source file and unknown attributes are left
+     * out, together with the constants that only they use.  The class
+     * entries of the original pool are kept, since reading a class
+     * tells all classes it mentions that they aren't inner classes
+     * of another class.  So reading the digest with at most
+     * DECLARATIONS gives the same information as reading the
+     * original class file.
+     */
+    static byte[] makeDigest(byte[] contents) throws IOException {
+	ByteBuffer input = ByteBuffer.wrap(contents);
+	input.position(8);
+	ConstantPool cp = new ConstantPool();
+	cp.read(input);
+	GrowableConstantPool gcp = new GrowableConstantPool();
+	Iterator iter = cp.iterateClassNames();
+	while (iter.hasNext())
+	    gcp.putClassName((String) iter.next());
+
+	ByteArrayOutputStream body = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(body);
+	/* modifiers, class, superclass */
+	out.writeShort(input.getShort());
+	out.writeShort(putClass(cp, gcp, input.getShort()));
+	int superID = input.getShort() & 0xffff;
+	out.writeShort(superID == 0 ? 0 : putClass(cp, gcp, superID));
+
+	int count = input.getShort() & 0xffff;
+	out.writeShort(count);
+	for (int i = 0; i < count; i++)
+	    out.writeShort(putClass(cp, gcp, input.getShort()));
+
+	for (int kind = FIELD; kind <= METHOD; kind++) {
+	    count = input.getShort() & 0xffff;
+	    out.writeShort(count);
+	    for (int i = 0; i < count; i++) {
+		/* modifiers, name, type */
+		out.writeShort(input.getShort());
+		out.writeShort(putUTF8(cp, gcp, input.getShort()));
+		out.writeShort(putUTF8(cp, gcp, input.getShort()));
+		copyAttributes(cp, gcp, input, out, kind);
+	    }
+	}
+	copyAttributes(cp, gcp, input, out, CLASS);
+	out.close();
+
+	ByteArrayOutputStream result = new ByteArrayOutputStream();
+	out = new DataOutputStream(result);
+	/* magic and version */
+	out.write(contents, 0, 8);
+	gcp.write(out);
+	body.writeTo(out);
+	out.close();
+	return result.toByteArray();
+    }
+
+    private static int putClass(ConstantPool cp, GrowableConstantPool gcp,
+				int index) throws ClassFormatException {
+	return gcp.putClassName(cp.getClassName(index & 0xffff));
+    }
+
+    private static int putUTF8(ConstantPool cp, GrowableConstantPool gcp,
+			       int index) throws ClassFormatException {
+	return gcp.putUTF8(cp.getUTF8(index & 0xffff));
+    }
+
+    /**
+     * Copies the attributes, that the reader of the given kind of
+     * info reads with at most DECLARATIONS, and skips the others.
+     */
+    private static void copyAttributes(ConstantPool cp,
+				       GrowableConstantPool gcp,
+				       ByteBuffer input,
+				       DataOutputStream out, int kind)
+	throws IOException
+    {
+	int count = input.getShort() & 0xffff;
+	ByteArrayOutputStream attrBytes = new ByteArrayOutputStream();
+	DataOutputStream attrs = new DataOutputStream(attrBytes);
+	int copied = 0;
+	for (int i = 0; i < count; i++) {
+	    String name = cp.getUTF8(input.getShort() & 0xffff);
+	    int length = input.getInt();
+	    ByteBuffer data = input.slice();
+	    data.limit(length);
+	    input.position(input.position() + length);
+
+	    if (name.equals("Signature")) {
+		attrs.writeShort(gcp.putUTF8(name));
+		attrs.writeInt(2);
+		attrs.writeShort(putUTF8(cp, gcp, data.getShort()));
+	    } else if (name.equals("Deprecated")
+		       || (kind != CLASS && name.equals("Synthetic"))) {
+		attrs.writeShort(gcp.putUTF8(name));
+		attrs.writeInt(0);
+	    } else if (kind == FIELD && name.equals("ConstantValue")) {
+		Object constant = cp.getConstant(data.getShort() & 0xffff);
+		attrs.writeShort(gcp.putUTF8(name));
+		attrs.writeInt(2);
+		attrs.writeShort(constant instanceof Long
+				 || constant instanceof Double
+				 ? gcp.putLongConstant(constant)
+				 : gcp.putConstant(constant));
+	    } else if (kind == METHOD && name.equals("Exceptions")) {
+		int excCount = data.getShort() & 0xffff;
+		attrs.writeShort(gcp.putUTF8(name));
+		attrs.writeInt(2 + 2 * excCount);
+		attrs.writeShort(excCount);
+		for (int j = 0; j < excCount; j++)
+		    attrs.writeShort(putClass(cp, gcp, data.getShort()));
+	    } else if (kind == CLASS && name.equals("InnerClasses")) {
+		int innerCount = data.getShort() & 0xffff;
+		attrs.writeShort(gcp.putUTF8(name));
+		attrs.writeInt(2 + 8 * innerCount);
+		attrs.writeShort(innerCount);
+		for (int j = 0; j < innerCount; j++) {
+		    int inner = data.getShort() & 0xffff;
+		    int outer = data.getShort() & 0xffff;
+		    int innerName = data.getShort() & 0xffff;
+		    attrs.writeShort(putClass(cp, gcp, inner));
+		    attrs.writeShort(outer == 0 ? 0 
+				     : putClass(cp, gcp, outer));
+		    attrs.writeShort(innerName == 0 ? 0
+				     : putUTF8(cp, gcp, innerName));
+		    attrs.writeShort(data.getShort());
+		}
+	    } else
+		continue;
+	    copied++;
+	}
+	attrs.close();
+	out.writeShort(copied);
+	attrBytes.writeTo(out);
+    }
+
+    /**
+     * Writes the classes that were loaded since the cache files were
+     * read to the cache directory.
+     * @exception IOException if a cache file can't be written.
+     */
+    public synchronized void save() throws IOException {
+	if (!directory.exists() && !directory.mkdirs())
+	    throw new IOException("Can't create directory " + directory);
+	Enumeration enumeration = cacheFiles.elements();
+	while (enumeration.hasMoreElements())
+	    ((CacheFile) enumeration.nextElement()).save();
+    }
+}
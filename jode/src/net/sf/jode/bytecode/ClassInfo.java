@@ -21,10 +21,13 @@ package net.sf.jode.bytecode;
 import net.sf.jode.GlobalOptions;
 
 import java.io.DataInputStream;
+import java.io.InputStream;
 import java.io.DataOutputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -35,6 +38,7 @@ import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 ///#enddef
 ///#def COLLECTIONEXTRA java.lang
 import java.lang.Comparable;
@@ -234,7 +238,11 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 
     private static ClassPath defaultClasspath;
     
-    private int status = 0;
+    /**
+     * The amount of information that is loaded.  This is volatile,
+     * since load checks it without locking.
+     */
+    private volatile int status = 0;
 
     private boolean modified = false;
     private boolean isGuessed = false;
@@ -416,7 +424,10 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
     private void mergeModifiers(int newModifiers)
 	throws ClassFormatException
     {
-	if (modifiers == -1) {
+	if (modifiers == -1 || isGuessed) {
+	    /* Guessed modifiers are only an assumption, the
+	     * InnerClass info knows better.
+	     */
 	    modifiers = newModifiers;
 	    return;
 	}
@@ -478,7 +489,7 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
     }
 
     private void readInnerClassesAttribute(int length, ConstantPool cp,
-					   DataInputStream input)
+					   ByteBuffer input)
 	throws IOException
     {
 	/* The InnerClasses attribute is transformed in a special way
@@ -496,7 +507,7 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 
 	hasInnerClassesAttr = true;
 	    
-	int count = input.readUnsignedShort();
+	int count = input.getShort() & 0xffff;
 	if (length != 2 + 8 * count)
 	    throw new ClassFormatException
 		("InnerClasses attribute has wrong length");
@@ -509,14 +520,14 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 	ClassInfo[] innerCIs = new ClassInfo[count];
 
 	for (int i = 0; i < count; i++) {
-	    int innerIndex = input.readUnsignedShort();
-	    int outerIndex = input.readUnsignedShort();
-	    int nameIndex = input.readUnsignedShort();
+	    int innerIndex = input.getShort() & 0xffff;
+	    int outerIndex = input.getShort() & 0xffff;
+	    int nameIndex = input.getShort() & 0xffff;
 	    String inner = cp.getClassName(innerIndex);
 	    String outer = outerIndex != 0
 		? cp.getClassName(outerIndex) : null;
 	    String innername = nameIndex != 0 ? cp.getUTF8(nameIndex) : null;
-	    int access = input.readUnsignedShort();
+	    int access = input.getShort() & 0xffff;
 	    if (innername != null && innername.length() == 0)
 		innername = null;
 
@@ -560,18 +571,18 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 
     protected void readAttribute(String name, int length,
 				 ConstantPool cp,
-				 DataInputStream input, 
+				 ByteBuffer input, 
 				 int howMuch) throws IOException {
 	if (howMuch >= ClassInfo.ALMOSTALL && name.equals("SourceFile")) {
 	    if (length != 2)
 		throw new ClassFormatException("SourceFile attribute"
 					       + " has wrong length");
-	    sourceFile = cp.getUTF8(input.readUnsignedShort());
+	    sourceFile = cp.getUTF8(input.getShort() & 0xffff);
 	} else if (howMuch >= ClassInfo.OUTERCLASS
 		   && name.equals("InnerClasses")) {
 	    readInnerClassesAttribute(length, cp, input);
 	} else if (name.equals("Signature")) {
-	    signature = cp.getUTF8(input.readUnsignedShort());
+	    signature = cp.getUTF8(input.getShort() & 0xffff);
 	} else if (name.equals("Deprecated")) {
 	    deprecatedFlag = true;
 	    if (length != 0)
@@ -702,7 +713,7 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
      * Reads a class file from a data input stream.  Normally you should
      * <code>load</code> a class from its classpath instead.  This may
      * be useful for special kinds of input streams, that ClassPath 
-     * doesn't handle.
+     * doesn't handle.  The stream is read to its end.
      *
      * @param input The input stream, containing the class in standard
      *              bytecode format.
@@ -721,49 +732,167 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 	    throw new IllegalStateException(name);
 	if (status >= howMuch)
 	    return;
+	read(ByteBuffer.wrap(ClassPath.readFully(input, -1)), howMuch);
+    }
+
+    /**
+     * Reads a class file from a buffer.  The class file starts at the
+     * position of the buffer, and the position is moved behind it.
+     * The class is parsed directly from the buffer, so this is
+     * faster than reading it from a stream.  The buffer isn't used
+     * after this method returns.
+     *
+     * @param buffer The buffer, containing the class in standard
+     *              bytecode format.
+     * @param howMuch The amount of information that should be read in, one
+     *                of HIERARCHY, PUBLICDECLARATIONS, DECLARATIONS or ALL.
+     * @exception ClassFormatException if the buffer doesn't contain a
+     * valid class.  
+     * @exception IOException if reading an attribute fails.
+     * @exception IllegalStateException if this ClassInfo was modified.
+     * @see #load
+     */
+    public void read(ByteBuffer buffer, int howMuch) 
+	throws IOException 
+    {
+	if (modified)
+	    throw new IllegalStateException(name);
+	if (status >= howMuch)
+	    return;
+
+	/* The slice is big endian, whatever the order of the buffer. */
+	ByteBuffer input = buffer.slice();
+	try {
+	    readClass(input, howMuch);
+	} catch (BufferUnderflowException ex) {
+	    throw new ClassFormatException("truncated class file");
+	}
+	buffer.position(buffer.position() + input.position());
+    }
 
-	/* Since we have to read the whole class anyway, we load all
-	 * info, that we may need later and that does not take much memory. 
+    /**
+     * Reads the code of some methods again from the class file, after
+     * it was dropped with <code>setBasicBlocks(null)</code>.  Unlike
+     * <code>read</code> this also works for modified classes; the
+     * method infos and their other attributes are kept.
+     *
+     * @param stream The input stream, containing the class this class
+     *              info was read from, in standard bytecode format.  The
+     *              stream is read to its end.
+     * @param methods Maps the name followed by the type signature, as
+     *              they are in the class file, to the method info whose
+     *              code should be read.  Other methods are skipped.
+     * @exception ClassFormatException if the stream doesn't contain a
+     * valid class.  
+     * @exception IOException if stream throws an exception.
+     */
+    public void readCode(InputStream stream, Map methods) 
+	throws IOException 
+    {
+	ByteBuffer input = ByteBuffer.wrap(ClassPath.readFully(stream, -1));
+	try {
+	    if (input.getInt() != 0xcafebabe)
+		throw new ClassFormatException("Wrong magic");
+	    /* version */
+	    input.getInt();
+	    ConstantPool cpool = new ConstantPool();
+	    cpool.read(input, true);
+	    /* modifiers, name, superclass and interfaces */
+	    skip(input, 6);
+	    skip(input, 2 * (input.getShort() & 0xffff));
+	    skipMembers(input);
+
+	    int count = input.getShort() & 0xffff;
+	    for (int i = 0; i < count; i++) {
+		/* modifiers */
+		input.getShort();
+		String name = cpool.getUTF8(input.getShort() & 0xffff);
+		String type = cpool.getUTF8(input.getShort() & 0xffff);
+		MethodInfo method = (MethodInfo) methods.get(name + type);
+		if (method != null)
+		    method.readCode(cpool, input);
+		else
+		    skipAttributes(input);
+	    }
+	} catch (BufferUnderflowException ex) {
+	    throw new ClassFormatException("truncated class file");
+	}
+    }
+
+    /**
+     * Skips a table of fields or methods.
+     */
+    private void skipMembers(ByteBuffer input) {
+	int count = input.getShort() & 0xffff;
+	for (int i = 0; i < count; i++) {
+	    /* modifiers, name and type */
+	    skip(input, 6);
+	    skipAttributes(input);
+	}
+    }
+
+    private void readClass(ByteBuffer input, int howMuch) 
+	throws IOException 
+    {
+	/* Below PUBLICDECLARATIONS only the header and the class
+	 * attributes are read; the fields and methods are skipped.  They
+	 * are read when more is requested.  Otherwise we read the
+	 * declarations anyway, since they don't take much memory.
 	 */
-	if (howMuch <= DECLARATIONS)
+	boolean headerOnly = howMuch < PUBLICDECLARATIONS;
+	if (headerOnly)
+	    howMuch = HIERARCHY;
+	else if (howMuch <= DECLARATIONS)
 	    howMuch = DECLARATIONS;
 
 	/* header */
-	if (input.readInt() != 0xcafebabe)
+	if (input.getInt() != 0xcafebabe)
 	    throw new ClassFormatException("Wrong magic");
-	int version = input.readUnsignedShort();
-	version |= input.readUnsignedShort() << 16;
+	int version = input.getShort() & 0xffff;
+	version |= (input.getShort() & 0xffff) << 16;
 	if (version < (45 << 16 | 0))
 	  throw new ClassFormatException("Wrong class version");
 
 	/* constant pool */
         ConstantPool cpool = new ConstantPool();
-        cpool.read(input);
+        cpool.read(input, true);
 
 	/* modifiers */
-	modifiers = input.readUnsignedShort();
+	modifiers = input.getShort() & 0xffff;
 	/* name */
-	String className = cpool.getClassName(input.readUnsignedShort());
+	String className = cpool.getClassName(input.getShort() & 0xffff);
 	if (name == null)
 	    name = className;
 	else if (!name.equals(className))
 	    throw new ClassFormatException("wrong name " + className);
 
 	/* superclass */
-	int superID = input.readUnsignedShort();
+	int superID = input.getShort() & 0xffff;
 	superclass = superID == 0 ? null
 	    : classpath.getClassInfo(cpool.getClassName(superID));
 
 	/* interfaces */
-	int count = input.readUnsignedShort();
+	int count = input.getShort() & 0xffff;
 	interfaces = new ClassInfo[count];
 	for (int i = 0; i < count; i++) {
 	    interfaces[i] = classpath.getClassInfo
-		(cpool.getClassName(input.readUnsignedShort()));
+		(cpool.getClassName(input.getShort() & 0xffff));
+	}
+
+	if (headerOnly) {
+	    /* fields and methods */
+	    skipMembers(input);
+	    skipMembers(input);
+	    fields = null;
+	    methods = null;
+	    innerClasses = EMPTY_INNER;
+	    readAttributes(cpool, input, howMuch);
+	    status = howMuch;
+	    return;
 	}
 
 	/* fields */
-	count = input.readUnsignedShort();
+	count = input.getShort() & 0xffff;
 	fields = new FieldInfo[count];
 	for (int i = 0; i < count; i++) {
 	    fields[i] = new FieldInfo(); 
@@ -771,7 +900,7 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 	}
 
 	/* methods */
-	count = input.readUnsignedShort();
+	count = input.getShort() & 0xffff;
 	methods = new MethodInfo[count];
 	for (int i = 0; i < count; i++) {
 	    methods[i] = new MethodInfo(); 
@@ -983,7 +1112,10 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
      * at least, one of {@link #OUTERCLASS}, {@link #HIERARCHY}, {@link
      * #PUBLICDECLARATIONS}, {@link #DECLARATIONS}, {@link #NODEBUG},
      * {@link #ALMOSTALL} or {@link #ALL}.  Note that more information
-     * than requested can be loaded if this is convenient.
+     * than requested can be loaded if this is convenient.  Below
+     * PUBLICDECLARATIONS only the header of the class file is parsed,
+     * and the fields and methods are read by a later load; this
+     * makes scanning the hierarchy of a whole class path cheap.
      * @exception ClassFormatException if the file doesn't denote a
      *            valid class.
      * @exception FileNotFoundException if class wasn't found in classpath.
@@ -992,7 +1124,12 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
      * @exception SecurityException if a security manager prohibits loading
      * the class.
      * @exception IllegalStateException if this ClassInfo was modified by
-     * calling one of the setSomething methods.
+     * calling one of the setSomething methods.<br>
+     *
+     * Several threads may load classes of the same class path
+     * concurrently.  Loading, guessing and dropping is synchronized
+     * on the class path, since reading a class also merges the outer
+     * class information of the classes it mentions.
      */
     public void load(int howMuch) 
 	throws IOException
@@ -1001,10 +1138,14 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
 	    throw new IllegalStateException(name);
 	if (status >= howMuch)
 	    return;
-	if (classpath.loadClass(this, howMuch)) {
-	    if (status < howMuch)
-		throw new IllegalStateException("state = "+status);
-	    return;
+	synchronized (classpath) {
+	    if (status >= howMuch)
+		return;
+	    if (classpath.loadClass(this, howMuch)) {
+		if (status < howMuch)
+		    throw new IllegalStateException("state = "+status);
+		return;
+	    }
 	}
 	throw new FileNotFoundException(name);
     }
@@ -1027,8 +1168,18 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
      */
     public void guess(int howMuch) 
     {
-	if (howMuch <= status)
-	    throw new IllegalStateException("status = "+status);
+	synchronized (classpath) {
+	    if (howMuch <= status) {
+		/* Another thread may have guessed it meanwhile. */
+		if (isGuessed)
+		    return;
+		throw new IllegalStateException("status = "+status);
+	    }
+	    doGuess(howMuch);
+	}
+    }
+
+    private void doGuess(int howMuch) {
 	isGuessed = true;
 	if (howMuch >= OUTERCLASS) {
 	    modifiers = Modifier.PUBLIC | 0x20;
@@ -1084,6 +1235,14 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
      * @see #load
      */
     public void drop(int keep) {
+	if (status <= keep)
+	    return;
+	synchronized (classpath) {
+	    doDrop(keep);
+	}
+    }
+
+    private void doDrop(int keep) {
 	if (status <= keep)
 	    return;
 	if (modified) {
@@ -1134,6 +1293,14 @@ public final class ClassInfo extends BinaryInfo implements Comparable {
         return name;
     }
 
+    /**
+     * Tells if this class was modified with one of the set methods.
+     * Modified classes can't be dropped or reloaded.
+     */
+    boolean isModified() {
+	return modified;
+    }
+
     /**
      * Tells whether the information in this class was guessed by a call
      * to {@link #guess}.
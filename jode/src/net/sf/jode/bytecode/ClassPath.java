@@ -20,27 +20,42 @@
 package net.sf.jode.bytecode;
 
 import java.io.ByteArrayInputStream;
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
 
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 ///#def COLLECTIONS java.util
+import java.util.Comparator;
 import java.util.Iterator;
 ///#enddef
 
@@ -58,7 +73,9 @@ import net.sf.jode.util.UnifyHash;
  * <li> A URL (unified resource location), pointing to a directory </li>
  * <li> A URL pointing to a jar or zip file. </li>
  * <li> A Jar URL (see {@link java.net.JarURLConnection}), useful if
- * the jar file is not packed correctly.</li>
+ * the jar file is not packed correctly.  If the Jar URL points to a
+ * jar file inside the jar, e.g. <code>jar:file:app.war!/lib/a.jar</code>,
+ * the classes are loaded from that nested jar.</li>
  * <li> The reflection URL <code>reflection:/</code>.  This is a
  * special location, which fills the ClassInfo with the information
  * from the java reflection API.  Obviously it can't load any files
@@ -207,11 +224,56 @@ public class ClassPath  {
 	    String file = clazz.getName().replace('.', '/') + ".class";
 	    if (!exists(file))
 		return false;
-	    DataInputStream input = new DataInputStream
-		(new BufferedInputStream(getFile(file)));
-	    clazz.read(input, howMuch);
+	    InputStream is = getFile(file);
+	    byte[] contents;
+	    try {
+		contents = readFully(is, -1);
+	    } finally {
+		is.close();
+	    }
+	    clazz.read(ByteBuffer.wrap(contents), howMuch);
 	    return true;
 	}
+
+	/**
+	 * Returns the archive file that contains this location.  This
+	 * is used to key the entries of a {@link ClassCache}.  <br>
+	 * The default implementation returns null, which means that
+	 * the classes of this location aren't cached.
+	 */
+	File getArchive() {
+	    return null;
+	}
+
+	/**
+	 * Returns the prefix of this location inside the archive, or
+	 * null if this location is the whole archive.
+	 */
+	String getArchivePrefix() {
+	    return null;
+	}
+
+	/**
+	 * Lists all directories of this location, including the root
+	 * directory "".  The ClassPath uses this to build an index of
+	 * the locations that contain a package.  The listing must not
+	 * change later. <br>
+	 * The default implementation returns null, which means that the
+	 * directories are unknown and this location is asked for every
+	 * file and class.
+	 */
+	Enumeration listDirectories() {
+	    return null;
+	}
+
+	/**
+	 * Tells this location the cache of its class path.  A location
+	 * of an archive can take the listing of the archive from the
+	 * cache, so that it doesn't need to open it. <br>
+	 * The default implementation does nothing.
+	 */
+	void setClassCache(ClassCache cache) {
+	}
     }
 
     private static class ReflectionLocation extends Location {
@@ -243,49 +305,179 @@ public class ClassPath  {
     }
 
     private static class LocalLocation extends Location {
+	/**
+	 * The cached listing of a directory.
+	 */
+	private static class Listing {
+	    /**
+	     * The names of the files and subdirectories, null if the
+	     * directory doesn't exist.
+	     */
+	    String[] files;
+	    /**
+	     * Maps each name to Boolean.TRUE if it is a directory, to
+	     * Boolean.FALSE if it isn't, and to UNKNOWN if this wasn't
+	     * needed yet.
+	     */
+	    Hashtable kinds = new Hashtable();
+	}
+
+	private static final Object UNKNOWN = new Object();
+	private static final Listing missing = new Listing();
+
 	private File dir;
+	/**
+	 * Maps the name of each listed directory to its listing.  A
+	 * directory that doesn't exist is not stored; it is found
+	 * missing in the listing of its parent.  So files that don't
+	 * exist are answered from memory, too.
+	 */
+	private Hashtable listings = new Hashtable();
+	/**
+	 * The service that watches the listed directories, or null
+	 * if the listings are kept forever.
+	 */
+	private volatile WatchService watcher;
+	/**
+	 * Maps the watch key of each listed directory to its name.  A
+	 * key is registered and put here while this table is locked,
+	 * so the watcher always finds it.
+	 */
+	private Hashtable watchedKeys;
+	/**
+	 * Counts the changes the watcher noticed.  A listing that was
+	 * read while a change came in is not stored.  This is guarded
+	 * by the lock of listings.
+	 */
+	private int changes;
 
 	protected LocalLocation(File path) {
 	    dir = path;
 	}
 
-	protected boolean exists(String filename) {
+	private File getLocalFile(String filename) {
 	    if (java.io.File.separatorChar != '/')
 		filename = filename
 		    .replace('/', java.io.File.separatorChar);
+	    return new File(dir, filename);
+	}
+
+	/**
+	 * Gets the listing of a directory.  It is read from the file
+	 * system only once, or after the watcher noticed a change.
+	 * @param directory the directory, separated by "/".
+	 */
+	private Listing getListing(String directory) {
+	    Listing listing = (Listing) listings.get(directory);
+	    if (listing != null)
+		return listing;
+	    if (directory.length() > 0) {
+		int slash = directory.lastIndexOf('/');
+		Listing parent = getListing(slash == -1 ? "" 
+					    : directory.substring(0, slash));
+		if (!isDirectory(parent, directory, 
+				 directory.substring(slash + 1)))
+		    return missing;
+	    }
+
+	    File file = getLocalFile(directory);
+	    WatchService service = watcher;
+	    WatchKey key = null;
+	    int changeCount;
+	    synchronized (listings) {
+		changeCount = changes;
+	    }
+	    if (service != null) {
+		/* Register before listing, so no change is missed. */
+		synchronized (watchedKeys) {
+		    try {
+			key = file.toPath().register
+			    (service, StandardWatchEventKinds.ENTRY_CREATE,
+			     StandardWatchEventKinds.ENTRY_DELETE);
+			watchedKeys.put(key, directory);
+		    } catch (IOException ex) {
+			/* The listing can't be cached. */
+		    } catch (ClosedWatchServiceException ex) {
+			/* Watching was stopped meanwhile. */
+			service = null;
+		    }
+		}
+	    }
+
+	    String[] files;
 	    try {
-		return new File(dir, filename).exists();
+		files = file.list();
 	    } catch (SecurityException ex) {
-		return false;
+		files = null;
+	    }
+	    if (files == null)
+		return missing;
+
+	    listing = new Listing();
+	    listing.files = files;
+	    for (int i = 0; i < files.length; i++)
+		listing.kinds.put(files[i], UNKNOWN);
+	    if (key != null || service == null) {
+		synchronized (listings) {
+		    /* If something changed meanwhile, this listing may
+		     * be stale already; it is read again next time. */
+		    if (changes == changeCount)
+			listings.put(directory, listing);
+		}
+	    }
+	    return listing;
+	}
+
+	/**
+	 * Tells whether the file of a listing is a directory.  This is
+	 * only asked the file system once.
+	 * @param listing the listing of the parent directory.
+	 * @param filename the full name of the file.
+	 * @param name the name of the file in the parent directory.
+	 */
+	private boolean isDirectory(Listing listing, 
+				    String filename, String name) {
+	    Object kind = listing.kinds.get(name);
+	    if (kind == UNKNOWN) {
+		try {
+		    kind = getLocalFile(filename).isDirectory()
+			? Boolean.TRUE : Boolean.FALSE;
+		} catch (SecurityException ex) {
+		    kind = Boolean.FALSE;
+		}
+		listing.kinds.put(name, kind);
 	    }
+	    return kind == Boolean.TRUE;
+	}
+
+	protected boolean exists(String filename) {
+	    if (filename.length() == 0)
+		return getListing("").files != null;
+	    int slash = filename.lastIndexOf('/');
+	    Listing parent = getListing(slash == -1 ? ""
+					: filename.substring(0, slash));
+	    return parent.kinds.containsKey(filename.substring(slash + 1));
 	}
 
 	protected boolean isDirectory(String filename) {
-	    if (java.io.File.separatorChar != '/')
-		filename = filename
-		    .replace('/', java.io.File.separatorChar);
-	    return new File(dir, filename).isDirectory();
+	    if (filename.length() == 0)
+		return getListing("").files != null;
+	    int slash = filename.lastIndexOf('/');
+	    Listing parent = getListing(slash == -1 ? ""
+					: filename.substring(0, slash));
+	    return isDirectory(parent, filename, 
+			       filename.substring(slash + 1));
 	}
 
 	protected InputStream getFile(String filename) throws IOException {
-	    if (java.io.File.separatorChar != '/')
-		filename = filename
-		    .replace('/', java.io.File.separatorChar);
-	    File f = new File(dir, filename);
-	    return new FileInputStream(f);
+	    return new FileInputStream(getLocalFile(filename));
 	}
 
 	protected Enumeration listFiles(String directory) {
-	    if (File.separatorChar != '/')
-		directory = directory
-		    .replace('/', File.separatorChar);
-	    File f = new File(dir, directory);
-	    final String[] files = f.list();
+	    final String[] files = getListing(directory).files;
 	    if (files == null)
 		return null;
 
-	    if (!directory.endsWith(File.separator))
-		directory += File.separator;
 	    return new Enumeration() {
 		int i = 0;
 		public boolean hasMoreElements() {
@@ -301,29 +493,211 @@ public class ClassPath  {
 	    };
 	}
 
+	/**
+	 * Starts a thread that watches the listed directories and
+	 * drops the listing of a directory when it changes.
+	 */
+	synchronized void startWatching() throws IOException {
+	    if (watcher != null)
+		return;
+	    final WatchService service 
+		= dir.toPath().getFileSystem().newWatchService();
+	    watchedKeys = new Hashtable();
+	    watcher = service;
+	    /* The old listings aren't watched. */
+	    listings.clear();
+	    Thread thread = new Thread("jode directory watcher") {
+		public void run() {
+		    watch(service);
+		}
+	    };
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+
+	/**
+	 * Stops watching the directories.  The listings are kept from
+	 * now on.
+	 */
+	synchronized void stopWatching() {
+	    if (watcher == null)
+		return;
+	    try {
+		watcher.close();
+	    } catch (IOException ex) {
+		/* The thread stops anyway. */
+	    }
+	    watcher = null;
+	}
+
+	private void watch(WatchService service) {
+	    try {
+		for (;;) {
+		    WatchKey key = service.take();
+		    String directory;
+		    synchronized (watchedKeys) {
+			directory = (String) watchedKeys.get(key);
+		    }
+		    Iterator iter = key.pollEvents().iterator();
+		    synchronized (listings) {
+			changes++;
+			if (directory == null) {
+			    /* We don't know where it belongs, so we
+			     * forget everything. */
+			    forget("", true);
+			} else {
+			    while (iter.hasNext()) {
+				WatchEvent event = (WatchEvent) iter.next();
+				if (event.kind()
+				    == StandardWatchEventKinds.OVERFLOW)
+				    forget("", true);
+				else {
+				    String name = event.context().toString();
+				    if (File.separatorChar != '/')
+					name = name.replace
+					    (File.separatorChar, '/');
+				    forget(directory.length() == 0 ? name
+					   : directory + "/" + name, true);
+				}
+			    }
+			    forget(directory, false);
+			}
+		    }
+		    if (!key.reset() && directory != null) {
+			/* The directory is gone. */
+			watchedKeys.remove(key);
+			forget(directory, true);
+		    }
+		}
+	    } catch (InterruptedException ex) {
+		/* stop watching */
+	    } catch (ClosedWatchServiceException ex) {
+		/* stop watching */
+	    }
+	}
+
+	/**
+	 * Drops the listing of a directory.
+	 * @param directory the directory, separated by "/".
+	 * @param subdirs true, if the listings of the subdirectories 
+	 * should be dropped, too.
+	 */
+	private void forget(String directory, boolean subdirs) {
+	    listings.remove(directory);
+	    if (!subdirs)
+		return;
+	    if (directory.length() == 0) {
+		listings.clear();
+		return;
+	    }
+	    String prefix = directory + "/";
+	    synchronized (listings) {
+		Iterator iter = listings.keySet().iterator();
+		while (iter.hasNext()) {
+		    if (((String) iter.next()).startsWith(prefix))
+			iter.remove();
+		}
+	    }
+	}
+
 	public String toString() {
 	    return dir.getName();
 	}
     }
 
     private static class ZipLocation extends Location {
+	private static final int ZIP_LOCAL_SIG   = 0x04034b50;
+	private static final int ZIP_CENTRAL_SIG = 0x02014b50;
+	private static final int ZIP_END_SIG     = 0x06054b50;
+	private static final int ZIP_LOCAL_SIZE   = 30;
+	private static final int ZIP_CENTRAL_SIZE = 46;
+	private static final int ZIP_END_SIZE     = 22;
+
+	/**
+	 * The position of an entry in the zip contents, as given by the
+	 * central directory.
+	 */
+	private static class IndexEntry {
+	    int localHeader;
+	    int method;
+	    int compressedSize;
+	    int size;
+	}
+
+	/**
+	 * The buffers and the inflater to read entries.  Every thread
+	 * keeps one set, that it reuses for all entries it reads.
+	 */
+	private static class InflateBuffers {
+	    Inflater inflater = new Inflater(true);
+	    byte[] input = new byte[4096];
+	    byte[] output = new byte[16384];
+	}
+
+	/**
+	 * Buffers that grew larger than this are not kept for the next
+	 * entry.
+	 */
+	private static final int MAX_KEPT_BUFFER = 1 << 20;
+	private static final ThreadLocal inflateBuffers = new ThreadLocal();
+
 	private Hashtable entries = new Hashtable();
+	/**
+	 * The set of the names of all files and directories in this
+	 * location.  The value is always Boolean.TRUE.
+	 */
+	private Hashtable names = new Hashtable();
+	/**
+	 * The archive file, or null if the zip was read into memory.
+	 */
+	private File archive;
+	/**
+	 * The zip file, if the archive couldn't be mapped or its central
+	 * directory couldn't be read.  Otherwise this is null.
+	 */
 	private ZipFile file;
-	private byte[] contents;
+	/**
+	 * The contents of the zip, either mapped from the archive or
+	 * read into memory.  Its byte order is little endian, as in
+	 * the zip format.  This is null if file is used.
+	 */
+	private ByteBuffer contents;
+	/**
+	 * Maps the full name of each entry in contents to its
+	 * IndexEntry.  This is null if the central directory couldn't
+	 * be read.
+	 */
+	private Hashtable index;
 	private String prefix;
+	/**
+	 * The cache, that may contain the listing of the archive.
+	 */
+	private ClassCache cache;
+	/**
+	 * True, if entries and names are filled.  An archive is only
+	 * listed and opened when it is first used.
+	 */
+	private volatile boolean listed;
+	/**
+	 * True, if the archive was opened, i.e. mapped and its index
+	 * read.
+	 */
+	private volatile boolean opened;
 
-	private void addEntry(ZipEntry ze) {
-	    String name = ze.getName();
+	private void addEntry(String name) {
 	    if (prefix != null) {
 		if (!name.startsWith(prefix))
 		    return;
 		name = name.substring(prefix.length());
 	    }
 	    
-	    if (ze.isDirectory()
+	    /* Skip directory entries. */
+	    if (name.endsWith("/")
 		/* || !name.endsWith(".class")*/)
 		return;
 
+	    if (names.put(name, Boolean.TRUE) != null)
+		return;
 	    do {
 		String dir = "";
 		int pathsep = name.lastIndexOf("/");
@@ -341,65 +715,339 @@ public class ClassPath  {
 		dirContent = new Vector();
 		dirContent.addElement(name);
 		entries.put(dir, dirContent);
+		names.put(dir, Boolean.TRUE);
 		name = dir;
 	    } while (name.length() > 0);
 	}
 
-	ZipLocation(ZipFile zipfile, String prefix) {
-	    this.file = zipfile;
+	/**
+	 * Creates a location for a zip file.  The file isn't read
+	 * until the location is used, see {@link #open}.
+	 * @exception FileNotFoundException if the file doesn't exist.
+	 */
+	ZipLocation(File archive, String prefix) throws IOException {
+	    if (!archive.isFile())
+		throw new FileNotFoundException(archive.getPath());
+	    this.archive = archive;
 	    this.prefix = prefix;
+	}
 
+	/**
+	 * Opens the archive.  The file is memory mapped, and only its
+	 * central directory is read.
+	 */
+	private void open() throws IOException {
+	    RandomAccessFile raf = new RandomAccessFile(archive, "r");
+	    try {
+		FileChannel channel = raf.getChannel();
+		if (channel.size() <= Integer.MAX_VALUE)
+		    contents = channel.map(FileChannel.MapMode.READ_ONLY,
+					   0, channel.size());
+	    } finally {
+		/* The mapping stays valid after closing. */
+		raf.close();
+	    }
+	    if (contents != null) {
+		contents.order(ByteOrder.LITTLE_ENDIAN);
+		if (readCentralDirectory()) {
+		    opened = true;
+		    return;
+		}
+	    }
+
+	    // Too big or no usable central directory, let ZipFile
+	    // handle it.
+	    contents = null;
+	    index = null;
+	    if (!listed) {
+		entries = new Hashtable();
+		names = new Hashtable();
+	    }
+	    file = new ZipFile(archive);
 	    Enumeration zipEnum = file.entries();
-	    entries = new Hashtable();
 	    while (zipEnum.hasMoreElements()) {
-		addEntry((ZipEntry) zipEnum.nextElement());
+		addEntry(((ZipEntry) zipEnum.nextElement()).getName());
+	    }
+	    opened = true;
+	}
+
+	/**
+	 * Fills entries and names, from the class cache if it has the
+	 * listing of the archive, otherwise by opening the archive.  If
+	 * the archive can't be opened, a warning is printed and the
+	 * location stays empty.
+	 */
+	private void ensureListed() {
+	    if (listed)
+		return;
+	    synchronized (this) {
+		if (listed)
+		    return;
+		String[] cached = cache != null ? cache.getNames(this) : null;
+		if (cached != null) {
+		    for (int i = 0; i < cached.length; i++)
+			addEntry(cached[i]);
+		} else if (!opened) {
+		    try {
+			open();
+			if (cache != null)
+			    cache.putNames(this, getEntryNames());
+		    } catch (IOException ex) {
+			GlobalOptions.err.println
+			    ("Warning: IO exception while accessing "
+			     +archive+".");
+		    }
+		}
+		listed = true;
+	    }
+	}
+
+	private void ensureOpen() throws IOException {
+	    if (opened)
+		return;
+	    synchronized (this) {
+		if (!opened) {
+		    open();
+		    listed = true;
+		}
+	    }
+	}
+
+	/**
+	 * Returns the full names of all entries of the opened archive.
+	 */
+	private String[] getEntryNames() {
+	    Vector result = new Vector();
+	    if (index != null) {
+		Enumeration enumeration = index.keys();
+		while (enumeration.hasMoreElements())
+		    result.addElement(enumeration.nextElement());
+	    } else {
+		Enumeration enumeration = file.entries();
+		while (enumeration.hasMoreElements())
+		    result.addElement(((ZipEntry) enumeration.nextElement())
+				      .getName());
 	    }
+	    String[] array = new String[result.size()];
+	    result.copyInto(array);
+	    return array;
+	}
+
+	synchronized void setClassCache(ClassCache cache) {
+	    this.cache = cache;
 	}
 
 	ZipLocation(byte[] zipcontents, String prefix) 
 	    throws IOException
 	{
-	    this.contents = zipcontents;
+	    this.contents = ByteBuffer.wrap(zipcontents);
 	    this.prefix = prefix;
+	    listed = true;
+	    opened = true;
 
-	    // fill entries into hash table
+	    contents.order(ByteOrder.LITTLE_ENDIAN);
+	    if (readCentralDirectory())
+		return;
+
+	    // No usable central directory, fill entries into hash
+	    // table by scanning the whole archive.
+	    index = null;
+	    entries = new Hashtable();
+	    names = new Hashtable();
 	    ZipInputStream zis = new ZipInputStream
 		(new ByteArrayInputStream(zipcontents));
-	    entries = new Hashtable();
 	    ZipEntry ze;
 	    while ((ze = zis.getNextEntry()) != null) {
-		addEntry(ze);
+		addEntry(ze.getName());
 		zis.closeEntry();
 	    }
 	    zis.close();
 	}
 
-	protected boolean exists(String filename) {
-	    if (entries.containsKey(filename))
-		return true;
+	/**
+	 * Returns a location for the files below the given prefix of
+	 * the same zip file.
+	 */
+	ZipLocation withPrefix(String prefix) throws IOException {
+	    return archive != null ? new ZipLocation(archive, prefix)
+		: new ZipLocation(contents.array(), prefix);
+	}
+
+	File getArchive() {
+	    return archive;
+	}
+
+	String getArchivePrefix() {
+	    return prefix;
+	}
+
+	private int readShort(int pos) {
+	    return contents.getShort(pos) & 0xffff;
+	}
+
+	private int readInt(int pos) {
+	    return contents.getInt(pos);
+	}
+
+	/**
+	 * Reads the central directory at the end of the zip contents
+	 * and fills the index with the position of every entry and the
+	 * entries hash table.
+	 * @return false, if the central directory couldn't be read, e.g.
+	 * because the archive is truncated or in zip64 format.
+	 */
+	private boolean readCentralDirectory() {
+	    /* Search the end of central directory record.  It is at
+	     * the end of the file, followed by a comment of at most
+	     * 65535 bytes.
+	     */
+	    int end = contents.limit() - ZIP_END_SIZE;
+	    int minEnd = Math.max(0, end - 0xffff);
+	    while (end >= minEnd && readInt(end) != ZIP_END_SIG)
+		end--;
+	    if (end < minEnd)
+		return false;
 
-	    String dir = "";
-	    String name = filename;
-	    int index = filename.lastIndexOf('/');
-	    if (index >= 0) {
-		dir = filename.substring(0, index);
-		name = filename.substring(index+1);
+	    int count = readShort(end + 10);
+	    int pos = readInt(end + 16);
+	    index = new Hashtable(count * 4 / 3 + 1);
+	    try {
+		for (int i = 0; i < count; i++) {
+		    if (readInt(pos) != ZIP_CENTRAL_SIG)
+			return false;
+		    IndexEntry ie = new IndexEntry();
+		    ie.method = readShort(pos + 10);
+		    ie.compressedSize = readInt(pos + 20);
+		    ie.size = readInt(pos + 24);
+		    int nameLen = readShort(pos + 28);
+		    int extraLen = readShort(pos + 30);
+		    int commentLen = readShort(pos + 32);
+		    ie.localHeader = readInt(pos + 42);
+		    if (ie.compressedSize < 0 || ie.size < 0
+			|| ie.localHeader < 0
+			|| (ie.method != ZipEntry.STORED
+			    && ie.method != ZipEntry.DEFLATED))
+			return false;
+		    byte[] nameBytes = new byte[nameLen];
+		    for (int j = 0; j < nameLen; j++)
+			nameBytes[j] = contents.get(pos + ZIP_CENTRAL_SIZE + j);
+		    String name = new String(nameBytes, "UTF-8");
+		    index.put(name, ie);
+		    addEntry(name);
+		    pos += ZIP_CENTRAL_SIZE + nameLen + extraLen + commentLen;
+		}
+	    } catch (IndexOutOfBoundsException ex) {
+		return false;
+	    } catch (UnsupportedEncodingException ex) {
+		return false;
 	    }
-	    Vector directory = (Vector)entries.get(dir);
-	    if (directory != null && directory.contains(name))
-		return true;
-	    return false;
+	    return true;
+	}
+
+	/**
+	 * Takes the inflate buffers of the current thread.  They must
+	 * be given back with releaseBuffers.  A nested read while they
+	 * are taken gets new buffers.
+	 */
+	private static InflateBuffers takeBuffers() {
+	    InflateBuffers buffers = (InflateBuffers) inflateBuffers.get();
+	    if (buffers == null)
+		return new InflateBuffers();
+	    inflateBuffers.set(null);
+	    return buffers;
+	}
+
+	private static void releaseBuffers(InflateBuffers buffers) {
+	    if (buffers.input.length > MAX_KEPT_BUFFER
+		|| buffers.output.length > MAX_KEPT_BUFFER)
+		buffers.inflater.end();
+	    else
+		inflateBuffers.set(buffers);
+	}
+
+	/**
+	 * Reads the data of an indexed entry.  Only this entry is
+	 * inflated.  A stored entry isn't copied at all.
+	 * @param buffers the buffers to inflate the entry into.
+	 * @return the data of the entry.  It is only valid until the
+	 * buffers are used again.
+	 */
+	private ByteBuffer readEntry(IndexEntry ie, InflateBuffers buffers) 
+	    throws IOException 
+	{
+	    int pos = ie.localHeader;
+	    if (pos > contents.limit() - ZIP_LOCAL_SIZE
+		|| readInt(pos) != ZIP_LOCAL_SIG)
+		throw new ZipException("invalid local header");
+	    /* The name and extra field lengths in the local header may
+	     * differ from the central directory.
+	     */
+	    pos += ZIP_LOCAL_SIZE + readShort(pos + 26) + readShort(pos + 28);
+	    if (ie.compressedSize > contents.limit() - pos)
+		throw new ZipException("truncated entry");
+	    ByteBuffer data = contents.duplicate();
+	    data.position(pos);
+	    data.limit(pos + ie.compressedSize);
+	    if (ie.method == ZipEntry.STORED)
+		return data.slice();
+
+	    /* The inflater needs an extra dummy byte in nowrap mode. */
+	    if (buffers.input.length <= ie.compressedSize)
+		buffers.input = new byte[ie.compressedSize + 1];
+	    data.get(buffers.input, 0, ie.compressedSize);
+	    buffers.input[ie.compressedSize] = 0;
+	    if (buffers.output.length < ie.size)
+		buffers.output = new byte[ie.size];
+
+	    Inflater inflater = buffers.inflater;
+	    inflater.reset();
+	    inflater.setInput(buffers.input, 0, ie.compressedSize + 1);
+	    int count = 0;
+	    try {
+		while (count < ie.size) {
+		    int inflated = inflater.inflate(buffers.output, count,
+						    ie.size - count);
+		    if (inflated == 0 
+			&& (inflater.finished() || inflater.needsInput()
+			    || inflater.needsDictionary()))
+			throw new ZipException("truncated entry");
+		    count += inflated;
+		}
+	    } catch (DataFormatException ex) {
+		throw new ZipException(ex.getMessage());
+	    }
+	    return ByteBuffer.wrap(buffers.output, 0, count);
+	}
+
+	protected boolean exists(String filename) {
+	    ensureListed();
+	    return names.containsKey(filename);
 	}
 
 	protected boolean isDirectory(String filename) {
+	    ensureListed();
 	    return entries.containsKey(filename);
 	}
 
 	protected InputStream getFile(String filename) throws IOException {
+	    ensureOpen();
 	    String fullname = prefix != null ? prefix + filename : filename;
-	    if (contents != null) {
+	    if (index != null) {
+		IndexEntry ie = (IndexEntry) index.get(fullname);
+		if (ie != null) {
+		    InflateBuffers buffers = takeBuffers();
+		    try {
+			ByteBuffer data = readEntry(ie, buffers);
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			return new ByteArrayInputStream(bytes);
+		    } finally {
+			releaseBuffers(buffers);
+		    }
+		}
+	    } else if (contents != null) {
 		ZipInputStream zis = new ZipInputStream
-		    (new ByteArrayInputStream(contents));
+		    (new ByteArrayInputStream(contents.array()));
 		ZipEntry ze;
 		while ((ze = zis.getNextEntry()) != null) {
 		    if (ze.getName().equals(fullname)) {
@@ -438,14 +1086,44 @@ public class ClassPath  {
 	}
 
 	protected Enumeration listFiles(String directory) {
+	    ensureListed();
 	    Vector direntries = (Vector) entries.get(directory);
 	    if (direntries != null)
 		return direntries.elements();
 	    return null;
 	}
 
+	Enumeration listDirectories() {
+	    ensureListed();
+	    return entries.keys();
+	}
+
+	protected boolean loadClass(ClassInfo clazz, int howMuch) 
+	    throws IOException, ClassFormatException 
+	{
+	    ensureOpen();
+	    if (index == null)
+		return super.loadClass(clazz, howMuch);
+
+	    /* We override this method to parse the class directly
+	     * from the inflated entry.
+	     */
+	    String filename = clazz.getName().replace('.', '/') + ".class";
+	    IndexEntry ie = (IndexEntry) index.get
+		(prefix != null ? prefix + filename : filename);
+	    if (ie == null)
+		return false;
+	    InflateBuffers buffers = takeBuffers();
+	    try {
+		clazz.read(readEntry(ie, buffers), howMuch);
+	    } finally {
+		releaseBuffers(buffers);
+	    }
+	    return true;
+	}
+
 	public String toString() {
-	    return file.getName();
+	    return archive != null ? archive.getPath() : "zip";
 	}
     }
 
@@ -490,13 +1168,17 @@ public class ClassPath  {
 	    if (is == null)
 		return false;
 
-	    DataInputStream input = new DataInputStream
-		(new BufferedInputStream(is));
+	    byte[] contents;
+	    try {
+		contents = readFully(is, -1);
+	    } finally {
+		is.close();
+	    }
 
 	    /* Reading an URL may be expensive.  Therefore we ignore
 	     * howMuch and read everything to avoid reading it again.
 	     */
-	    clazz.read(input, ClassInfo.ALL);
+	    clazz.read(ByteBuffer.wrap(contents), ClassInfo.ALL);
 	    return true;
 	}
 
@@ -506,9 +1188,26 @@ public class ClassPath  {
     }
 
     private Location[] paths;
+    /**
+     * Maps each directory of the locations that can list their
+     * directories to the ascending indices of the locations
+     * containing it.  The other locations are in unindexed.  The
+     * index is built when it is first needed, so that the locations
+     * know the class cache by then.
+     */
+    private volatile Hashtable directoryIndex;
+    private int[] unindexed;
+    private static final int[] noLocations = new int[0];
     private UnifyHash classes = new UnifyHash();
+    private static final Comparator nameComparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    return ((ClassInfo) o1).getName()
+		.equals(((ClassInfo) o2).getName()) ? 0 : 1;
+	}
+    };
     
     ClassPath fallback = null;
+    private ClassCache cache = null;
 
     /**
      * Creates a new class path for the given path.  See the class
@@ -621,23 +1320,64 @@ public class ClassPath  {
 	    // This looks like an URL.
 	    URL base = new URL(path);
 	    URLConnection connection = base.openConnection();
-	    if (zipPrefix != null
-		|| path.endsWith(".zip") || path.endsWith(".jar")
-		|| connection.getContentType().endsWith("/zip")) {
+	    boolean isZip = zipPrefix != null
+		|| path.endsWith(".zip") || path.endsWith(".jar");
+	    if (!isZip) {
+		/* Don't download a directory just for its content type. */
+		if (connection instanceof HttpURLConnection)
+		    ((HttpURLConnection) connection).setRequestMethod("HEAD");
+		String type = connection.getContentType();
+		isZip = type != null && type.endsWith("/zip");
+		if (isZip && connection instanceof HttpURLConnection)
+		    connection = base.openConnection();
+	    }
+	    if (isZip) {
 		// This is a zip file.  Read it into memory.
 		byte[] contents = readURLZip(connection);
-		return new ZipLocation(contents, zipPrefix);
-	    } else
+		ZipLocation zip = new ZipLocation(contents, null);
+		return zipPrefix != null 
+		    ? createZipLocation(zip, zipPrefix)
+		    : zip;
+	    } else if (base.getProtocol().equals("http")
+		       || base.getProtocol().equals("https"))
+		return new HttpLocation(base);
+	    else
 		return new URLLocation(base);
 	} else {
 	    File dir = new File(path);
 	    if (zipPrefix != null || !dir.isDirectory()) {
-		return new ZipLocation(new ZipFile(dir), zipPrefix);
+		ZipLocation zip = new ZipLocation(dir, null);
+		return zipPrefix != null 
+		    ? createZipLocation(zip, zipPrefix)
+		    : zip;
 	    } else
 		return new LocalLocation(dir);
 	}
     }
 
+    /**
+     * Creates the location for the given prefix of a zip file.  If
+     * the prefix names a file in the zip, e.g. a jar file in a war
+     * file, that nested zip file is read into memory.
+     * @param zip the location of the whole zip file.
+     * @param zipPrefix the prefix, ending with a slash.
+     */
+    private static Location createZipLocation(ZipLocation zip, 
+					      String zipPrefix) 
+	throws IOException
+    {
+	String nested = zipPrefix.substring(0, zipPrefix.length() - 1);
+	if (zip.exists(nested) && !zip.isDirectory(nested)) {
+	    InputStream is = zip.getFile(nested);
+	    try {
+		return new ZipLocation(readFully(is, -1), null);
+	    } finally {
+		is.close();
+	    }
+	}
+	return zip.withPrefix(zipPrefix);
+    }
+
     private static String[] tokenizeClassPath(String path) {
 	// Calculate a good approximation (rounded upwards) of the tokens
 	// in this path.
@@ -699,7 +1439,21 @@ public class ClassPath  {
     }
 
     private static byte[] readURLZip(URLConnection conn) throws IOException {
-	int length = conn.getContentLength();
+	InputStream is = conn.getInputStream();
+	try {
+	    return readFully(is, conn.getContentLength());
+	} finally {
+	    is.close();
+	}
+    }
+
+    /**
+     * Reads the whole input stream into a byte array.
+     * @param length the expected length, or -1 if it is unknown.
+     */
+    static byte[] readFully(InputStream is, int length) 
+	throws IOException
+    {
 	if (length <= 0)
 	    // Give a approximation if length is unknown
 	    length = 10240;
@@ -711,7 +1465,6 @@ public class ClassPath  {
 
 	byte[] contents = new byte[length];
 
-	InputStream is = conn.getInputStream();
 	int pos = 0;
 	for (;;) {
 	    // This is ugly, is.available() may return zero even
@@ -762,6 +1515,93 @@ public class ClassPath  {
 	}
     }
 
+    /**
+     * Builds the index of the directories of all locations.  A file
+     * is then only searched in the locations that contain its
+     * directory and in the locations that can't list their
+     * directories.  The first location that has the file still wins.
+     * @return the directory index.
+     */
+    private synchronized Hashtable initIndex() {
+	if (directoryIndex != null)
+	    return directoryIndex;
+	Hashtable dirIndex = new Hashtable();
+	int[] unknown = new int[paths.length];
+	int unknownCount = 0;
+	for (int i = 0; i < paths.length; i++) {
+	    if (paths[i] == null)
+		continue;
+	    Enumeration dirs = paths[i].listDirectories();
+	    if (dirs == null) {
+		unknown[unknownCount++] = i;
+		continue;
+	    }
+	    while (dirs.hasMoreElements()) {
+		Object dir = dirs.nextElement();
+		int[] owners = (int[]) dirIndex.get(dir);
+		if (owners == null)
+		    owners = new int[] { i };
+		else {
+		    int[] newOwners = new int[owners.length + 1];
+		    System.arraycopy(owners, 0, newOwners, 0, owners.length);
+		    newOwners[owners.length] = i;
+		    owners = newOwners;
+		}
+		dirIndex.put(dir, owners);
+	    }
+	}
+	unindexed = new int[unknownCount];
+	System.arraycopy(unknown, 0, unindexed, 0, unknownCount);
+	directoryIndex = dirIndex;
+	return dirIndex;
+    }
+
+    /**
+     * Returns the indices of the locations that may contain files in
+     * the given directory, in the order of the class path.
+     * @param directory the directory, separated by "/".
+     */
+    private int[] getLocations(String directory) {
+	Hashtable dirIndex = directoryIndex;
+	if (dirIndex == null)
+	    dirIndex = initIndex();
+	int[] owners = (int[]) dirIndex.get(directory);
+	if (owners == null)
+	    owners = noLocations;
+	if (unindexed.length == 0)
+	    return owners;
+	if (owners.length == 0)
+	    return unindexed;
+
+	/* Merge both sorted arrays. */
+	int[] result = new int[owners.length + unindexed.length];
+	int i = 0, j = 0, k = 0;
+	while (i < owners.length && j < unindexed.length)
+	    result[k++] = owners[i] < unindexed[j] 
+		? owners[i++] : unindexed[j++];
+	while (i < owners.length)
+	    result[k++] = owners[i++];
+	while (j < unindexed.length)
+	    result[k++] = unindexed[j++];
+	return result;
+    }
+
+    /**
+     * Searches the first location that contains the given file.
+     * @param filename the file name, separated by "/".
+     * @return the location, or null if no location contains it.
+     */
+    private Location findLocation(String filename) {
+	int slash = filename.lastIndexOf('/');
+	int[] locs = getLocations(slash == -1 ? ""
+				  : filename.substring(0, slash));
+	for (int i = 0; i < locs.length; i++) {
+	    if (paths[locs[i]].exists(filename))
+		return paths[locs[i]];
+	}
+	return null;
+    }
+
 
     /** 
      * Creates a new class info for a class residing in this search
@@ -789,9 +1629,9 @@ public class ClassPath  {
 	    if (clazz.getName().equals(classname))
 		return clazz;
 	}
-	ClassInfo clazz = new ClassInfo(classname, this);
-	classes.put(hash, clazz);
-        return clazz;
+	/* Another thread may have created the class info meanwhile. */
+	return (ClassInfo) classes.unify(new ClassInfo(classname, this),
+					 hash, nameComparator);
     }
 
     /** 
@@ -814,8 +1654,7 @@ public class ClassPath  {
 	throws IOException, ClassFormatException
     {
 	ClassInfo classInfo = new ClassInfo(null, this);
-	classInfo.read(new DataInputStream(new BufferedInputStream(stream)),
-		   ClassInfo.ALL);
+	classInfo.read(ByteBuffer.wrap(readFully(stream, -1)), ClassInfo.ALL);
 	String classname = classInfo.getName();
 	/* Remove the classinfo with the same name from this path if
 	 * it exists.
@@ -852,6 +1691,32 @@ public class ClassPath  {
 	classes.put(classname.hashCode(), classInfo);
     }
 
+    /**
+     * Drops the information of all classes created by this class path,
+     * that goes beyond keep.  The information is loaded again, when it
+     * is needed.  Modified and guessed classes are left alone.  The
+     * classes of the fallback class path are dropped, too.  This
+     * should only be called, when no other thread uses the classes of
+     * this path.
+     * @param keep how much info should be kept, see {@link
+     * ClassInfo#drop}.
+     * @return the number of classes in this path and its fallback.
+     */
+    public int dropClassInfos(int keep) {
+	int count = 0;
+	Iterator iter = classes.iterator();
+	while (iter.hasNext()) {
+	    ClassInfo clazz = (ClassInfo) iter.next();
+	    /* Guessed classes would only be guessed again. */
+	    if (!clazz.isModified() && !clazz.isGuessed())
+		clazz.drop(keep);
+	    count++;
+	}
+	if (fallback != null)
+	    count += fallback.dropClassInfos(keep);
+	return count;
+    }
+
     /**
      * Checks, if a class with the given name exists somewhere in this
      * path.
@@ -870,11 +1735,7 @@ public class ClassPath  {
      * @see #existsClass
      */
     public boolean existsFile(String filename) {
-        for (int i=0; i<paths.length; i++) {
-	    if (paths[i] != null && paths[i].exists(filename))
-		return true;
-	}
-	return false;
+	return findLocation(filename) != null;
     }
 
     private void checkClassName(String name) {
@@ -892,10 +1753,9 @@ public class ClassPath  {
      * @return An InputStream for the file.
      */
     public InputStream getFile(String filename) throws IOException {
-        for (int i=0; i < paths.length; i++) {
-	    if (paths[i] != null && paths[i].exists(filename))
-		return paths[i].getFile(filename);
-	}
+	Location loc = findLocation(filename);
+	if (loc != null)
+	    return loc.getFile(filename);
 	if (fallback != null)
 	    return fallback.getFile(filename);
 	throw new FileNotFoundException(filename);
@@ -909,11 +1769,8 @@ public class ClassPath  {
      * @return true, if filename exists and is a directory, false otherwise.
      */
     public boolean isDirectory(String filename) {
-        for (int i=0; i < paths.length; i++) {
-	    if (paths[i] != null && paths[i].exists(filename))
-		return paths[i].isDirectory(filename);
-	}
-	return false;
+	Location loc = findLocation(filename);
+	return loc != null && loc.isDirectory(filename);
     }
 
     /**
@@ -937,16 +1794,17 @@ public class ClassPath  {
      * directory.  If dirName doesn't denote a directory it returns null.
      */
     public Enumeration listFiles(final String dirName) {
+	final int[] locs = getLocations(dirName);
 	return new Enumeration() {
 	    int i = 0;
 	    Enumeration enumeration;
 
 	    public boolean hasMoreElements() {
 		while (true) {
-		    while (enumeration == null && i < paths.length) {
-			if (paths[i] != null && paths[i].exists(dirName)
-			    && paths[i].isDirectory(dirName))
-			    enumeration = paths[i].listFiles(dirName);
+		    while (enumeration == null && i < locs.length) {
+			Location loc = paths[locs[i]];
+			if (loc.exists(dirName) && loc.isDirectory(dirName))
+			    enumeration = loc.listFiles(dirName);
 			i++;
 		    }
 
@@ -1006,14 +1864,87 @@ public class ClassPath  {
         };
     }
 
+    /**
+     * Sets the cache for the declarations of classes in jar and zip
+     * files.  The cache is also used by the fallback class path.
+     * @param cache the class cache, null to disable caching.
+     * @see ClassCache
+     */
+    public void setClassCache(ClassCache cache) {
+	this.cache = cache;
+	for (int i = 0; i < paths.length; i++) {
+	    if (paths[i] != null)
+		paths[i].setClassCache(cache);
+	}
+	if (fallback != null)
+	    fallback.setClassCache(cache);
+    }
+
+    /**
+     * Tells the local directories of this class path to watch the
+     * file system for changes.  The directories of a class path cache
+     * the listings of their subdirectories; this is useful for long
+     * running sessions, in which the files may change.  Watching is
+     * also switched for the fallback class path.
+     * @param watch true to start, false to stop watching.
+     */
+    public void setWatchDirectories(boolean watch) {
+	for (int i = 0; i < paths.length; i++) {
+	    if (!(paths[i] instanceof LocalLocation))
+		continue;
+	    LocalLocation loc = (LocalLocation) paths[i];
+	    if (!watch)
+		loc.stopWatching();
+	    else {
+		try {
+		    loc.startWatching();
+		} catch (IOException ex) {
+		    GlobalOptions.err.println
+			("Warning: Can't watch "+loc+" for changes.");
+		} catch (UnsupportedOperationException ex) {
+		    GlobalOptions.err.println
+			("Warning: Can't watch "+loc+" for changes.");
+		}
+	    }
+	}
+	if (fallback != null)
+	    fallback.setWatchDirectories(watch);
+    }
+
+    /**
+     * Tells the HTTP locations of this class path whether they should
+     * prefetch packages.  If the first class of a package is loaded,
+     * the other classes of the package are downloaded in the
+     * background.  This needs directory listings from the server.
+     * The setting is also used for the fallback class path.
+     * @param prefetch true to prefetch packages.
+     */
+    public void setPrefetch(boolean prefetch) {
+	for (int i = 0; i < paths.length; i++) {
+	    if (paths[i] instanceof HttpLocation)
+		((HttpLocation) paths[i]).setPrefetch(prefetch);
+	}
+	if (fallback != null)
+	    fallback.setPrefetch(prefetch);
+    }
+
     /**
      * Loads the contents of a class.  This is only called by ClassInfo.
      */
     boolean loadClass(ClassInfo clazz, int howMuch) 
 	throws IOException, ClassFormatException
     {
-	for (int i = 0; i < paths.length; i++) {
-	    if (paths[i] != null && paths[i].loadClass(clazz, howMuch))
+	String name = clazz.getName();
+	int dot = name.lastIndexOf('.');
+	int[] locs = getLocations(dot == -1 ? "" 
+				  : name.substring(0, dot).replace('.', '/'));
+	for (int i = 0; i < locs.length; i++) {
+	    Location loc = paths[locs[i]];
+	    if (cache != null && howMuch <= ClassInfo.DECLARATIONS
+		&& loc.getArchive() != null) {
+		if (cache.loadClass(loc, clazz, howMuch))
+		    return true;
+	    } else if (loc.loadClass(clazz, howMuch))
 		return true;
 	}
 	if (fallback != null)
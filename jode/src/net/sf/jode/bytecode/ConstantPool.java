@@ -18,8 +18,11 @@
  */
 
 package net.sf.jode.bytecode;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import java.util.NoSuchElementException;
 ///#def COLLECTIONS java.util
@@ -52,62 +55,269 @@ public class ConstantPool {
 
     int count;
     int[] tags;
-    int[] indices1, indices2;
-
+    /**
+     * The indices of the entries.  The first index of an entry is in
+     * the upper, the second index in the lower 16 bits.  A pool that
+     * was read keeps the bits of an INTEGER or FLOAT constant here,
+     * and the upper and lower half of a LONG or DOUBLE constant in
+     * this and the next slot.  A UTF8 entry of such a pool has the
+     * offset of its length in utf8Data.
+     */
+    int[] indices;
+    /**
+     * The decoded UTF8 strings, the boxed constants and the created
+     * references and class names.  A pool that was read fills this
+     * lazily.
+     */
     Object[] constants;
+    /**
+     * The UTF8 entries of a pool that was read, each with its two
+     * byte length in front, as they are stored in the class file.
+     * This may be the class file itself, see {@link #read(ByteBuffer,
+     * boolean)}.
+     */
+    private byte[] utf8Data;
+
+    /**
+     * A cache of decoded UTF8 strings shared by all pools.  Names of
+     * common classes and methods occur in many classes; they are
+     * decoded only once and share their memory.  This replaces
+     * String.intern, which is slow and contended when the classes of
+     * a whole class path are read.  A new string replaces the string
+     * in the same slot.  As strings are immutable, the races of
+     * several threads are harmless.
+     */
+    private static final String[] utf8Cache = new String[4096];
 
     public ConstantPool () {
     }
 
+    /**
+     * Reads the constant pool from a stream.  The entries are copied
+     * as they are and then parsed with {@link #read(ByteBuffer)}.
+     */
     public void read(DataInputStream stream) 
 	throws IOException {
-	count = stream.readUnsignedShort();
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	int entries = stream.readUnsignedShort();
+	bytes.write(entries >> 8);
+	bytes.write(entries);
+	for (int i = 1; i < entries; i++) {
+	    int tag = stream.readUnsignedByte();
+	    bytes.write(tag);
+	    int length;
+	    switch (tag) {
+	    case CLASS:
+	    case STRING:
+		length = 2;
+		break;
+	    case FIELDREF:
+	    case METHODREF:
+	    case INTERFACEMETHODREF:
+	    case NAMEANDTYPE:
+	    case INTEGER:
+	    case FLOAT:
+		length = 4;
+		break;
+	    case LONG:
+	    case DOUBLE:
+		length = 8;
+		i++;
+		break;
+	    case UTF8:
+		length = stream.readUnsignedShort();
+		bytes.write(length >> 8);
+		bytes.write(length);
+		break;
+	    default:
+		throw new ClassFormatException("unknown constant tag");
+	    }
+	    byte[] data = new byte[length];
+	    stream.readFully(data);
+	    bytes.write(data, 0, length);
+	}
+	try {
+	    read(ByteBuffer.wrap(bytes.toByteArray()));
+	} catch (BufferUnderflowException ex) {
+	    throw new ClassFormatException("truncated constant pool");
+	}
+    }
+
+    /**
+     * Reads the constant pool from a buffer, starting at its position.
+     * The position is moved behind the constant pool.
+     * @exception BufferUnderflowException if the buffer ends inside
+     * the constant pool.
+     */
+    public void read(ByteBuffer input) 
+	throws ClassFormatException {
+	read(input, false);
+    }
+
+    /**
+     * Reads the constant pool from a buffer.  If share is true and
+     * the buffer is backed by an array, the UTF8 entries aren't
+     * copied but decoded from that array.  Then the array must not
+     * change while this constant pool is used.
+     */
+    void read(ByteBuffer input, boolean share) 
+	throws ClassFormatException {
+	count = input.getShort() & 0xffff;
         tags = new int[count];
-        indices1 = new int[count];
-        indices2 = new int[count];
+        indices = new int[count];
         constants = new Object[count];
+	byte[] shared = share && input.hasArray() ? input.array() : null;
+	byte[] data = shared != null ? null : new byte[count * 16];
+	int dataLength = 0;
 
 	for (int i=1; i< count; i++) {
-            int tag = stream.readUnsignedByte();
+            int tag = input.get() & 0xff;
             tags[i] = tag;
             switch (tag) {
 	    case CLASS:
-		indices1[i] = stream.readUnsignedShort();
+	    case STRING:
+		indices[i] = (input.getShort() & 0xffff) << 16;
 		break;
 	    case FIELDREF:
 	    case METHODREF:
 	    case INTERFACEMETHODREF:
-		indices1[i] = stream.readUnsignedShort();
-		indices2[i] = stream.readUnsignedShort();
-		break;
-	    case STRING:
-		indices1[i] = stream.readUnsignedShort();
+	    case NAMEANDTYPE:
+		/* both indices at once */
+		indices[i] = input.getInt();
 		break;
 	    case INTEGER:
-		constants[i] = new Integer(stream.readInt());
-		break;
 	    case FLOAT:
-		constants[i] = new Float(stream.readFloat());
+		indices[i] = input.getInt();
 		break;
 	    case LONG:
-		constants[i] = new Long(stream.readLong());
-                tags[++i] = -LONG;
-		break;
 	    case DOUBLE:
-		constants[i] = new Double(stream.readDouble());
-                tags[++i] = -DOUBLE;
-		break;
-	    case NAMEANDTYPE:
-		indices1[i] = stream.readUnsignedShort();
-		indices2[i] = stream.readUnsignedShort();
+		indices[i] = input.getInt();
+		indices[i+1] = input.getInt();
+                tags[++i] = -tag;
 		break;
-	    case UTF8:
-		constants[i] = stream.readUTF().intern();
+	    case UTF8: {
+		int length = input.getShort() & 0xffff;
+		if (shared != null) {
+		    indices[i] = input.arrayOffset() + input.position() - 2;
+		    BinaryInfo.skip(input, length);
+		    break;
+		}
+		if (dataLength + 2 + length > data.length) {
+		    byte[] newData = new byte[Math.max(data.length * 2,
+						       dataLength + 2 + length)];
+		    System.arraycopy(data, 0, newData, 0, dataLength);
+		    data = newData;
+		}
+		indices[i] = dataLength;
+		data[dataLength++] = (byte) (length >> 8);
+		data[dataLength++] = (byte) length;
+		input.get(data, dataLength, length);
+		dataLength += length;
 		break;
+	    }
 	    default:
 		throw new ClassFormatException("unknown constant tag");
             }
 	}
+	utf8Data = shared != null ? shared : data;
+    }
+
+    /**
+     * Decodes the modified UTF8 string at the given offset.  If the
+     * cache contains the string, the cached string is returned.
+     */
+    private static String decodeUTF8(byte[] data, int offset)
+	throws ClassFormatException {
+	int length = (data[offset] & 0xff) << 8 | (data[offset+1] & 0xff);
+	int start = offset + 2;
+	int end = start + length;
+	int hash = length;
+	boolean ascii = true;
+	for (int i = start; i < end; i++) {
+	    hash = 31 * hash + data[i];
+	    if (data[i] <= 0)
+		ascii = false;
+	}
+	int slot = (hash ^ (hash >>> 12)) & (utf8Cache.length - 1);
+	String cached = utf8Cache[slot];
+	if (ascii && cached != null && cached.length() == length) {
+	    int i = 0;
+	    while (i < length && cached.charAt(i) == data[start + i])
+		i++;
+	    if (i == length)
+		return cached;
+	}
+
+	char[] chars = new char[length];
+	int charCount = 0;
+	int i = start;
+	while (i < end) {
+	    int c = data[i++] & 0xff;
+	    if (c < 0x80)
+		chars[charCount++] = (char) c;
+	    else if ((c & 0xe0) == 0xc0) {
+		if (i >= end || (data[i] & 0xc0) != 0x80)
+		    throw new ClassFormatException("malformed UTF8 string");
+		chars[charCount++] = (char) ((c & 0x1f) << 6
+					     | (data[i++] & 0x3f));
+	    } else if ((c & 0xf0) == 0xe0) {
+		if (i + 1 >= end || (data[i] & 0xc0) != 0x80
+		    || (data[i+1] & 0xc0) != 0x80)
+		    throw new ClassFormatException("malformed UTF8 string");
+		chars[charCount++] = (char) ((c & 0x0f) << 12
+					     | (data[i] & 0x3f) << 6
+					     | (data[i+1] & 0x3f));
+		i += 2;
+	    } else
+		throw new ClassFormatException("malformed UTF8 string");
+	}
+	String result = new String(chars, 0, charCount);
+	if (result.equals(cached))
+	    return cached;
+	utf8Cache[slot] = result;
+	return result;
+    }
+
+    /**
+     * Gets the first index of an entry.
+     */
+    final int getIndex1(int i) {
+	return indices[i] >>> 16;
+    }
+
+    /**
+     * Gets the second index of an entry.
+     */
+    final int getIndex2(int i) {
+	return indices[i] & 0xffff;
+    }
+
+    /**
+     * Gets the INTEGER, FLOAT, LONG or DOUBLE constant of an entry.
+     * The constant of a pool that was read is boxed when it is first
+     * needed.
+     */
+    private Object getNumber(int i) {
+	if (constants[i] == null) {
+	    long bits;
+	    switch (tags[i]) {
+	    case INTEGER:
+		constants[i] = new Integer(indices[i]);
+		break;
+	    case FLOAT:
+		constants[i] = new Float(Float.intBitsToFloat(indices[i]));
+		break;
+	    case LONG:
+		bits = (long) indices[i] << 32 | (indices[i+1] & 0xffffffffL);
+		constants[i] = new Long(bits);
+		break;
+	    case DOUBLE:
+		bits = (long) indices[i] << 32 | (indices[i+1] & 0xffffffffL);
+		constants[i] = new Double(Double.longBitsToDouble(bits));
+		break;
+	    }
+	}
+	return constants[i];
     }
 
     public int getTag(int i) throws ClassFormatException {
@@ -119,6 +329,8 @@ public class ConstantPool {
     public String getUTF8(int i) throws ClassFormatException {
         if (tags[i] != UTF8)
             throw new ClassFormatException("Tag mismatch");
+	if (constants[i] == null)
+	    constants[i] = decodeUTF8(utf8Data, indices[i]);
         return (String)constants[i];
     }
 
@@ -127,11 +339,11 @@ public class ConstantPool {
             && tags[i] != METHODREF && tags[i] != INTERFACEMETHODREF)
             throw new ClassFormatException("Tag mismatch");
 	if (constants[i] == null) {
-	    int classIndex = indices1[i];
-	    int nameTypeIndex = indices2[i];
+	    int classIndex = getIndex1(i);
+	    int nameTypeIndex = getIndex2(i);
 	    if (tags[nameTypeIndex] != NAMEANDTYPE)
 		throw new ClassFormatException("Tag mismatch");
-	    String type = getUTF8(indices2[nameTypeIndex]);
+	    String type = getUTF8(getIndex2(nameTypeIndex));
 	    try {
 		if (tags[i] == FIELDREF)
 		    TypeSignature.checkTypeSig(type);
@@ -142,7 +354,7 @@ public class ConstantPool {
 	    }
 	    String clName = getClassType(classIndex);
 	    constants[i] = Reference.getReference
-		(clName, getUTF8(indices1[nameTypeIndex]), type);
+		(clName, getUTF8(getIndex1(nameTypeIndex)), type);
 	}
 	return (Reference) constants[i];
     }
@@ -155,12 +367,12 @@ public class ConstantPool {
         case FLOAT:
         case LONG:
         case DOUBLE:
-            return constants[i];
+            return getNumber(i);
         case CLASS:
 	    return Reference.getReference(getClassType(i), 
 					  "class", "Ljava/lang/Class;");
         case STRING: 
-            return getUTF8(indices1[i]);
+            return getUTF8(getIndex1(i));
         }
         throw new ClassFormatException("Tag mismatch: "+tags[i]);
     }
@@ -168,7 +380,7 @@ public class ConstantPool {
     public String getClassType(int i) throws ClassFormatException {
         if (tags[i] != CLASS)
             throw new ClassFormatException("Tag mismatch");
-	String clName = getUTF8(indices1[i]);
+	String clName = getUTF8(getIndex1(i));
 	if (clName.charAt(0) != '[') {
 	    clName = ("L"+clName+';').intern();
 	}
@@ -184,7 +396,7 @@ public class ConstantPool {
         if (tags[i] != CLASS)
             throw new ClassFormatException("Tag mismatch");
 	if (constants[i] == null) {
-	    String clName = getUTF8(indices1[i]);
+	    String clName = getUTF8(getIndex1(i));
 	    try {
 		TypeSignature.checkTypeSig("L"+clName+";");
 	    } catch (IllegalArgumentException ex) {
@@ -207,7 +419,7 @@ public class ConstantPool {
 		    try {
 			while (entry < count 
 			       && (tags[entry] != CLASS
-				   || getUTF8(indices1[entry])
+				   || getUTF8(getIndex1(entry))
 				   .charAt(0) == '['))
 			    entry++;
 		    } catch (ClassFormatException ex) {
@@ -235,31 +447,35 @@ public class ConstantPool {
     public String toString(int i) {
 	switch (tags[i]) {
         case CLASS:
-            return "Class "+toString(indices1[i]);
+            return "Class "+toString(getIndex1(i));
         case STRING:
-            return "String \""+toString(indices1[i])+"\"";
+            return "String \""+toString(getIndex1(i))+"\"";
         case INTEGER:
-            return "Int "+constants[i].toString();
+            return "Int "+getNumber(i).toString();
         case FLOAT:
-            return "Float "+constants[i].toString();
+            return "Float "+getNumber(i).toString();
         case LONG:
-            return "Long "+constants[i].toString();
+            return "Long "+getNumber(i).toString();
         case DOUBLE:
-            return "Double "+constants[i].toString();
+            return "Double "+getNumber(i).toString();
         case UTF8:
-            return constants[i].toString();
+	    try {
+		return getUTF8(i);
+	    } catch (ClassFormatException ex) {
+		return "malformed UTF8";
+	    }
         case FIELDREF:
-            return "Fieldref: "+toString(indices1[i])+"; "
-                + toString(indices2[i]);
+            return "Fieldref: "+toString(getIndex1(i))+"; "
+                + toString(getIndex2(i));
         case METHODREF:
-            return "Methodref: "+toString(indices1[i])+"; "
-                + toString(indices2[i]);
+            return "Methodref: "+toString(getIndex1(i))+"; "
+                + toString(getIndex2(i));
         case INTERFACEMETHODREF:
-            return "Interfaceref: "+toString(indices1[i])+"; "
-                + toString(indices2[i]);
+            return "Interfaceref: "+toString(getIndex1(i))+"; "
+                + toString(getIndex2(i));
         case NAMEANDTYPE:
-            return "Name "+toString(indices1[i])
-		+"; Type "+toString(indices2[i]);
+            return "Name "+toString(getIndex1(i))
+		+"; Type "+toString(getIndex2(i));
         default:
             return "unknown tag: "+tags[i];
 	}
@@ -18,9 +18,9 @@
  */
 
 package net.sf.jode.bytecode;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.lang.reflect.Modifier;
 ///#def COLLECTIONEXTRA java.lang
 import java.lang.Comparable;
@@ -96,14 +96,14 @@ public final class FieldInfo extends BinaryInfo implements Comparable {
 
     protected void readAttribute(String name, int length,
 				 ConstantPool cp,
-				 DataInputStream input, 
+				 ByteBuffer input, 
 				 int howMuch) throws IOException {
 	if (howMuch >= ClassInfo.DECLARATIONS
 	    && name.equals("ConstantValue")) {
 	    if (length != 2)
 		throw new ClassFormatException
 		    ("ConstantValue attribute has wrong length");
-	    int index = input.readUnsignedShort();
+	    int index = input.getShort() & 0xffff;
 	    constant = cp.getConstant(index);
 	} else if (name.equals("Synthetic")) {
 	    modifier |= ACC_SYNTHETIC;
@@ -116,16 +116,16 @@ public final class FieldInfo extends BinaryInfo implements Comparable {
 		throw new ClassFormatException
 		    ("Deprecated attribute has wrong length");
 	} else if (name.equals("Signature")) {
-	    signature = cp.getUTF8(input.readUnsignedShort());
+	    signature = cp.getUTF8(input.getShort() & 0xffff);
 	} else
 	    super.readAttribute(name, length, cp, input, howMuch);
     }
     
     void read(ConstantPool constantPool, 
-	      DataInputStream input, int howMuch) throws IOException {
-	modifier = input.readUnsignedShort();
-	name = constantPool.getUTF8(input.readUnsignedShort());
-	typeSig = constantPool.getUTF8(input.readUnsignedShort());
+	      ByteBuffer input, int howMuch) throws IOException {
+	modifier = input.getShort() & 0xffff;
+	name = constantPool.getUTF8(input.getShort() & 0xffff);
+	typeSig = constantPool.getUTF8(input.getShort() & 0xffff);
         readAttributes(constantPool, input, howMuch);
     }
 
@@ -68,8 +68,7 @@ public class GrowableConstantPool extends ConstantPool {
     public GrowableConstantPool () {
 	count = 1;
 	tags = new int[128];
-	indices1 = new int[128];
-	indices2 = new int[128];  
+	indices = new int[128];
 	constants = new Object[128];
 	written = false;
     }
@@ -85,11 +84,8 @@ public class GrowableConstantPool extends ConstantPool {
 	    System.arraycopy(tags, 0, tmpints, 0, count);
 	    tags = tmpints;
 	    tmpints = new int[newSize];
-	    System.arraycopy(indices1, 0, tmpints, 0, count);
-	    indices1 = tmpints;
-	    tmpints = new int[newSize];
-	    System.arraycopy(indices2, 0, tmpints, 0, count);
-	    indices2 = tmpints;
+	    System.arraycopy(indices, 0, tmpints, 0, count);
+	    indices = tmpints;
 	    Object[] tmpobjs = new Object[newSize];
 	    System.arraycopy(constants, 0, tmpobjs, 0, count);
 	    constants = tmpobjs;
@@ -131,14 +127,12 @@ public class GrowableConstantPool extends ConstantPool {
 	if (indexObj != null) {
 	    /* Maybe this was a reserved, but not filled entry */
 	    int index = indexObj.intValue();
-	    indices1[index] = index1;
-	    indices2[index] = index2;
+	    indices[index] = index1 << 16 | index2;
 	    return index;
 	}
 	grow(count+1);
 	tags[count] = tag;
-	indices1[count] = index1;
-	indices2[count] = index2;
+	indices[count] = index1 << 16 | index2;
 	entryToIndex.put(key, new Integer(count));
 	return count++;
     }
@@ -299,16 +293,16 @@ public class GrowableConstantPool extends ConstantPool {
             stream.writeByte(tag);
             switch (tag) {
 	    case CLASS:
-		stream.writeShort(indices1[i]);
+		stream.writeShort(getIndex1(i));
 		break;
 	    case FIELDREF:
 	    case METHODREF:
 	    case INTERFACEMETHODREF:
-		stream.writeShort(indices1[i]);
-		stream.writeShort(indices2[i]);
+		stream.writeShort(getIndex1(i));
+		stream.writeShort(getIndex2(i));
 		break;
 	    case STRING:
-		stream.writeShort(indices1[i]);
+		stream.writeShort(getIndex1(i));
 		break;
 	    case INTEGER:
 		stream.writeInt(((Integer)constants[i]).intValue());
@@ -325,8 +319,8 @@ public class GrowableConstantPool extends ConstantPool {
 		i++;
 		break;
 	    case NAMEANDTYPE:
-		stream.writeShort(indices1[i]);
-		stream.writeShort(indices2[i]);
+		stream.writeShort(getIndex1(i));
+		stream.writeShort(getIndex2(i));
 		break;
 	    case UTF8:
 		stream.writeUTF((String)constants[i]);
@@ -0,0 +1,484 @@
+/* HttpLocation Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.SoftReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * A location for a directory on a HTTP server.  Unlike other URL
+ * locations, it asks the server with HEAD requests whether a file
+ * exists and remembers the answer.  A file is downloaded only once,
+ * when it is read.<br>
+ *
+ * The downloaded files are kept in a cache that is shared by all
+ * locations, together with their ETag.  A location uses the files it
+ * downloaded itself as long as they are in the cache.  Files that
+ * another location downloaded are used for freshMillis; after that
+ * the server is asked with a conditional request whether they
+ * changed.<br>
+ *
+ * If prefetching is enabled, loading the first class of a package
+ * fetches the directory listing of the package, as most HTTP servers
+ * generate it.  Background threads then download the other classes
+ * of the package, and files that are not in the listing are known
+ * to be missing without asking the server.
+ *
+ * @see ClassPath#setPrefetch
+ */
+class HttpLocation extends ClassPath.Location {
+    /**
+     * The maximum number of threads that prefetch the classes of a
+     * location.
+     */
+    private static final int PREFETCH_THREADS = 4;
+
+    /**
+     * The time in milliseconds, in which a file downloaded by another
+     * location is used without asking the server.
+     */
+    static long freshMillis = 60000;
+
+    /**
+     * A downloaded file.
+     */
+    private static class CachedFile {
+	String etag;
+	long validated;
+	/**
+	 * The contents; they are dropped when memory gets low.
+	 */
+	SoftReference contents;
+    }
+
+    /**
+     * Maps the URL of each downloaded file to its CachedFile.
+     */
+    private static Hashtable cache = new Hashtable();
+
+    /**
+     * A directory listing.
+     */
+    private static class Listing {
+	/**
+	 * The names of the entries, in the order of the listing.
+	 */
+	Vector files = new Vector();
+	/**
+	 * Maps the name of each entry to Boolean.TRUE if it is a
+	 * directory and to Boolean.FALSE otherwise.
+	 */
+	Hashtable kinds = new Hashtable();
+    }
+
+    private static final Listing noListing = new Listing();
+
+    private URL base;
+    private boolean prefetch = false;
+    /**
+     * Maps the name of each file that was asked for to Boolean.TRUE
+     * if it exists and to Boolean.FALSE if it doesn't.
+     */
+    private Hashtable known = new Hashtable();
+    /**
+     * The URLs of the files in the cache that this location
+     * downloaded or validated.
+     */
+    private Hashtable trusted = new Hashtable();
+    /**
+     * Maps each directory whose listing was requested to its
+     * Listing, or to noListing if the server didn't list it.
+     */
+    private Hashtable listings = new Hashtable();
+    /**
+     * The directories whose classes were prefetched.
+     */
+    private Hashtable prefetchedDirs = new Hashtable();
+    /**
+     * The names of the files that are queued or downloaded for
+     * prefetching.  All prefetch state is guarded by this object.
+     */
+    private Hashtable pending = new Hashtable();
+    private Vector prefetchQueue = new Vector();
+    private int prefetchThreads = 0;
+
+    HttpLocation(URL base) {
+	this.base = base;
+    }
+
+    /**
+     * Enables or disables prefetching of packages.
+     */
+    void setPrefetch(boolean prefetch) {
+	this.prefetch = prefetch;
+    }
+
+    /**
+     * Reads the response of a request that isn't needed, so that
+     * the connection can be used again.
+     */
+    private static void discard(HttpURLConnection conn) {
+	try {
+	    InputStream is = conn.getErrorStream();
+	    if (is == null)
+		is = conn.getInputStream();
+	    while (is.read() != -1) {
+	    }
+	    is.close();
+	} catch (IOException ex) {
+	    /* The connection is not used again. */
+	}
+    }
+
+    private static String getParent(String filename) {
+	int slash = filename.lastIndexOf('/');
+	return slash == -1 ? "" : filename.substring(0, slash);
+    }
+
+    /**
+     * Downloads a file or gets it from the cache.
+     * @return the contents, or null if the file doesn't exist.
+     */
+    private byte[] download(String filename) throws IOException {
+	URL url = new URL(base, filename);
+	String key = url.toString();
+	long now = System.currentTimeMillis();
+	CachedFile cached = (CachedFile) cache.get(key);
+	byte[] contents = null;
+	if (cached != null) {
+	    contents = (byte[]) cached.contents.get();
+	    if (contents != null
+		&& (trusted.containsKey(key)
+		    || now - cached.validated < freshMillis))
+		return contents;
+	}
+
+	HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+	if (contents != null && cached.etag != null)
+	    conn.setRequestProperty("If-None-Match", cached.etag);
+	int code = conn.getResponseCode();
+	if (code == HttpURLConnection.HTTP_NOT_MODIFIED && contents != null) {
+	    discard(conn);
+	    cached.validated = now;
+	    trusted.put(key, key);
+	    return contents;
+	}
+	if (code != HttpURLConnection.HTTP_OK) {
+	    discard(conn);
+	    return null;
+	}
+	InputStream is = conn.getInputStream();
+	try {
+	    contents = ClassPath.readFully(is, conn.getContentLength());
+	} finally {
+	    is.close();
+	}
+	cached = new CachedFile();
+	cached.etag = conn.getHeaderField("ETag");
+	cached.validated = now;
+	cached.contents = new SoftReference(contents);
+	cache.put(key, cached);
+	trusted.put(key, key);
+	return contents;
+    }
+
+    /**
+     * Gets the listing of a directory from the server.
+     * @param directory the directory, separated by "/".
+     * @return the listing, or null if the server doesn't list the
+     * directory.
+     */
+    private Listing getListing(String directory) {
+	Listing listing = (Listing) listings.get(directory);
+	if (listing == null) {
+	    listing = noListing;
+	    String dirName = directory.length() > 0 ? directory + "/" : "";
+	    try {
+		URL url = new URL(base, dirName);
+		HttpURLConnection conn
+		    = (HttpURLConnection) url.openConnection();
+		String type = conn.getContentType();
+		if (conn.getResponseCode() == HttpURLConnection.HTTP_OK
+		    && type != null && type.startsWith("text/html")) {
+		    InputStream is = conn.getInputStream();
+		    try {
+			listing = parseListing
+			    (new String(ClassPath.readFully
+					(is, conn.getContentLength()),
+					"ISO-8859-1"));
+		    } finally {
+			is.close();
+		    }
+		} else
+		    discard(conn);
+	    } catch (IOException ex) {
+		/* Not listed. */
+	    }
+	    listings.put(directory, listing);
+	}
+	return listing == noListing ? null : listing;
+    }
+
+    /**
+     * Collects the relative links of a generated directory listing.
+     * Links ending with a slash are directories.
+     */
+    private static Listing parseListing(String html) {
+	Listing listing = new Listing();
+	String lower = html.toLowerCase();
+	int pos = 0;
+	while ((pos = lower.indexOf("href=", pos)) != -1) {
+	    pos += 5;
+	    if (pos >= html.length())
+		break;
+	    char quote = html.charAt(pos);
+	    if (quote != '"' && quote != '\'')
+		continue;
+	    int end = html.indexOf(quote, pos + 1);
+	    if (end == -1)
+		break;
+	    String name = html.substring(pos + 1, end);
+	    pos = end;
+	    boolean isDir = name.endsWith("/");
+	    if (isDir)
+		name = name.substring(0, name.length() - 1);
+	    /* Skip parent and absolute links, sort links and anchors. */
+	    if (name.length() == 0 || name.equals(".") || name.equals("..")
+		|| name.indexOf('/') != -1 || name.indexOf(':') != -1
+		|| name.indexOf('?') != -1 || name.indexOf('#') != -1)
+		continue;
+	    try {
+		name = URLDecoder.decode(name, "UTF-8");
+	    } catch (UnsupportedEncodingException ex) {
+		continue;
+	    } catch (IllegalArgumentException ex) {
+		continue;
+	    }
+	    if (!listing.kinds.containsKey(name)) {
+		listing.files.addElement(name);
+		listing.kinds.put(name, isDir ? Boolean.TRUE : Boolean.FALSE);
+	    }
+	}
+	return listing;
+    }
+
+    /**
+     * Tells whether the listings show that a directory is missing.
+     * This is the case, if the listing of an ancestor doesn't
+     * contain it.  A server may answer a request for a directory
+     * with an error, even if it has files below it; so that alone
+     * doesn't mean anything.
+     */
+    private boolean isMissingDirectory(String directory) {
+	if (directory.length() == 0)
+	    return false;
+	String parent = getParent(directory);
+	if (isMissingDirectory(parent))
+	    return true;
+	Listing listing = getListing(parent);
+	String name = directory.substring(directory.lastIndexOf('/') + 1);
+	return listing != null && listing.kinds.get(name) != Boolean.TRUE;
+    }
+
+    /**
+     * Tells whether the listings show that a file exists.  The
+     * listings are only used for prefetching.
+     * @return Boolean.TRUE or Boolean.FALSE, or null if the server
+     * must be asked.
+     */
+    private Boolean isListed(String filename) {
+	if (!prefetch)
+	    return null;
+	String directory = getParent(filename);
+	if (isMissingDirectory(directory))
+	    return Boolean.FALSE;
+	Listing listing = getListing(directory);
+	if (listing == null)
+	    return null;
+	String name = filename.substring(filename.lastIndexOf('/') + 1);
+	return listing.kinds.containsKey(name) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    protected boolean exists(String filename) {
+	Boolean result = (Boolean) known.get(filename);
+	if (result != null)
+	    return result.booleanValue();
+
+	result = isListed(filename);
+	if (result == null) {
+	    try {
+		URL url = new URL(base, filename);
+		CachedFile cached = (CachedFile) cache.get(url.toString());
+		if (cached != null && cached.contents.get() != null
+		    && System.currentTimeMillis() - cached.validated
+		    < freshMillis)
+		    return true;
+		HttpURLConnection conn
+		    = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod("HEAD");
+		int code = conn.getResponseCode();
+		discard(conn);
+		result = code == HttpURLConnection.HTTP_OK
+		    ? Boolean.TRUE : Boolean.FALSE;
+	    } catch (IOException ex) {
+		/* Ask again next time. */
+		return false;
+	    }
+	}
+	known.put(filename, result);
+	return result.booleanValue();
+    }
+
+    protected boolean isDirectory(String filename) {
+	return getListing(filename) != null;
+    }
+
+    protected Enumeration listFiles(String directory) {
+	Listing listing = getListing(directory);
+	return listing != null ? listing.files.elements() : null;
+    }
+
+    /**
+     * Gets the contents of a file.  If the file is prefetched, this
+     * waits for the prefetching thread.
+     * @return the contents, or null if the file doesn't exist.
+     */
+    private byte[] getContents(String filename) throws IOException {
+	synchronized (pending) {
+	    try {
+		while (pending.containsKey(filename))
+		    pending.wait();
+	    } catch (InterruptedException ex) {
+		throw new InterruptedIOException();
+	    }
+	}
+	byte[] contents = download(filename);
+	known.put(filename, contents != null ? Boolean.TRUE : Boolean.FALSE);
+	return contents;
+    }
+
+    protected InputStream getFile(String filename) throws IOException {
+	byte[] contents = getContents(filename);
+	return contents != null ? new ByteArrayInputStream(contents) : null;
+    }
+
+    /**
+     * Queues the other classes in the package of the given class
+     * for the prefetching threads.
+     */
+    private void prefetchPackage(String file) {
+	String directory = getParent(file);
+	if (prefetchedDirs.put(directory, directory) != null)
+	    return;
+	Listing listing = getListing(directory);
+	if (listing == null)
+	    return;
+	String prefix = directory.length() > 0 ? directory + "/" : "";
+	synchronized (pending) {
+	    Enumeration enumeration = listing.files.elements();
+	    while (enumeration.hasMoreElements()) {
+		String name = (String) enumeration.nextElement();
+		if (!name.endsWith(".class")
+		    || listing.kinds.get(name) == Boolean.TRUE)
+		    continue;
+		String other = prefix + name;
+		if (other.equals(file) || pending.containsKey(other))
+		    continue;
+		pending.put(other, other);
+		prefetchQueue.addElement(other);
+	    }
+	    while (prefetchThreads < PREFETCH_THREADS
+		   && prefetchThreads < prefetchQueue.size()) {
+		prefetchThreads++;
+		Thread thread = new Thread("jode prefetch " + base) {
+		    public void run() {
+			prefetchFiles();
+		    }
+		};
+		thread.setDaemon(true);
+		thread.start();
+	    }
+	}
+    }
+
+    /**
+     * Downloads the queued files, until the queue is empty.
+     */
+    private void prefetchFiles() {
+	for (;;) {
+	    String file;
+	    synchronized (pending) {
+		if (prefetchQueue.isEmpty()) {
+		    prefetchThreads--;
+		    return;
+		}
+		file = (String) prefetchQueue.elementAt(0);
+		prefetchQueue.removeElementAt(0);
+	    }
+	    try {
+		download(file);
+	    } catch (IOException ex) {
+		/* The class is downloaded again, when it is needed. */
+	    } finally {
+		synchronized (pending) {
+		    pending.remove(file);
+		    pending.notifyAll();
+		}
+	    }
+	}
+    }
+
+    protected boolean loadClass(ClassInfo clazz, int howMuch)
+	throws IOException, ClassFormatException
+    {
+	/* We override this method to avoid the costs of the exists
+	 * call.  Reading the class again is cheap, since the file is
+	 * cached.
+	 */
+	String file = clazz.getName().replace('.', '/') + ".class";
+	if (Boolean.FALSE.equals(known.get(file)))
+	    return false;
+	Boolean listed = isListed(file);
+	if (listed == Boolean.FALSE)
+	    return false;
+	if (listed == Boolean.TRUE)
+	    prefetchPackage(file);
+	byte[] contents = getContents(file);
+	if (contents == null)
+	    return false;
+	clazz.read(ByteBuffer.wrap(contents), howMuch);
+	return true;
+    }
+
+    public String toString() {
+	return base.toString();
+    }
+}
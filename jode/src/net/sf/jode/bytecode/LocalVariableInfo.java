@@ -20,6 +20,7 @@
 package net.sf.jode.bytecode;
 import net.sf.jode.util.UnifyHash;
 ///#def COLLECTIONS java.util
+import java.util.Comparator;
 import java.util.Iterator;
 ///#enddef
 
@@ -44,6 +45,15 @@ public final class LocalVariableInfo {
 	grow(5);
     }
     private static final UnifyHash unifier = new UnifyHash();
+    private static final Comparator comparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    LocalVariableInfo lvi1 = (LocalVariableInfo) o1;
+	    LocalVariableInfo lvi2 = (LocalVariableInfo) o2;
+	    return (lvi1.slot == lvi2.slot
+		    && lvi1.name.equals(lvi2.name)
+		    && lvi1.type.equals(lvi2.type)) ? 0 : 1;
+	}
+    };
 
     private LocalVariableInfo(int slot) {
 	this.slot = slot;
@@ -71,7 +81,7 @@ public final class LocalVariableInfo {
      * Creates a new local variable info, with no name or type.
      * @param slot the slot number.
      */
-    public static LocalVariableInfo getInfo(int slot) {
+    public static synchronized LocalVariableInfo getInfo(int slot) {
 	if (slot >= anonymous.length)
 	    grow(Math.max(slot + 1, anonymous.length * 2));
 	return anonymous[slot];
@@ -96,9 +106,8 @@ public final class LocalVariableInfo {
 		&& lvi.type.equals(type))
 		return lvi;
 	}
-	LocalVariableInfo lvi = new LocalVariableInfo(slot, name, type);
-	unifier.put(hash, lvi);
-	return lvi;
+	return (LocalVariableInfo) unifier.unify
+	    (new LocalVariableInfo(slot, name, type), hash, comparator);
     }
     
     /**
@@ -18,9 +18,10 @@
  */
 
 package net.sf.jode.bytecode;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.lang.reflect.Modifier;
 ///#def COLLECTIONEXTRA java.lang
 import java.lang.Comparable;
@@ -89,16 +90,16 @@ public final class MethodInfo extends BinaryInfo implements Comparable {
 
     protected void readAttribute
 	(String name, int length, ConstantPool cp,
-	 DataInputStream input, int howMuch) throws IOException {
+	 ByteBuffer input, int howMuch) throws IOException {
 	if (howMuch >= ClassInfo.NODEBUG && name.equals("Code")) {
 	    basicblocks = new BasicBlocks(this);
 	    basicblocks.read(cp, input, howMuch);
 	} else if (howMuch >= ClassInfo.DECLARATIONS
 		   && name.equals("Exceptions")) {
-	    int count = input.readUnsignedShort();
+	    int count = input.getShort() & 0xffff;
 	    exceptions = new String[count];
 	    for (int i = 0; i < count; i++)
-		exceptions[i] = cp.getClassName(input.readUnsignedShort());
+		exceptions[i] = cp.getClassName(input.getShort() & 0xffff);
 	    if (length != 2 * (count + 1))
 		throw new ClassFormatException
 		    ("Exceptions attribute has wrong length");
@@ -113,19 +114,42 @@ public final class MethodInfo extends BinaryInfo implements Comparable {
 		throw new ClassFormatException
 		    ("Deprecated attribute has wrong length");
 	} else if (name.equals("Signature")) {
-	    signature = cp.getUTF8(input.readUnsignedShort());
+	    signature = cp.getUTF8(input.getShort() & 0xffff);
 	} else
 	    super.readAttribute(name, length, cp, input, howMuch);
     }
 
     void read(ConstantPool constantPool, 
-	      DataInputStream input, int howMuch) throws IOException {
-	modifier   = input.readUnsignedShort();
-	name = constantPool.getUTF8(input.readUnsignedShort());
-        typeSig = constantPool.getUTF8(input.readUnsignedShort());
+	      ByteBuffer input, int howMuch) throws IOException {
+	modifier   = input.getShort() & 0xffff;
+	name = constantPool.getUTF8(input.getShort() & 0xffff);
+        typeSig = constantPool.getUTF8(input.getShort() & 0xffff);
         readAttributes(constantPool, input, howMuch);
     }
 
+    /**
+     * Reads the code attribute again, skipping the other attributes.
+     * @see ClassInfo#readCode
+     */
+    void readCode(ConstantPool constantPool, 
+		  ByteBuffer input) throws IOException {
+	int count = input.getShort() & 0xffff;
+	for (int i = 0; i < count; i++) {
+	    String attrName = 
+		constantPool.getUTF8(input.getShort() & 0xffff);
+	    int attrLength = input.getInt();
+	    if (attrLength < 0 || attrLength > input.remaining())
+		throw new BufferUnderflowException();
+	    if (attrName.equals("Code")) {
+		ByteBuffer attrInput = input.slice();
+		attrInput.limit(attrLength);
+		basicblocks = new BasicBlocks(this);
+		basicblocks.read(constantPool, attrInput, ClassInfo.ALL);
+	    }
+	    input.position(input.position() + attrLength);
+	}
+    }
+
     void reserveSmallConstants(GrowableConstantPool gcp) {
 	if (basicblocks != null)
 	    basicblocks.reserveSmallConstants(gcp);
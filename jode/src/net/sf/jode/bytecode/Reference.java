@@ -20,6 +20,7 @@
 package net.sf.jode.bytecode;
 import net.sf.jode.util.UnifyHash;
 ///#def COLLECTIONS java.util
+import java.util.Comparator;
 import java.util.Iterator;
 ///#enddef
 
@@ -34,6 +35,15 @@ public class Reference {
     private final String clazz, name, type;
 
     private static final UnifyHash unifier = new UnifyHash();
+    private static final Comparator comparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    Reference r1 = (Reference) o1;
+	    Reference r2 = (Reference) o2;
+	    return (r1.clazz.equals(r2.clazz)
+		    && r1.name.equals(r2.name)
+		    && r1.type.equals(r2.type)) ? 0 : 1;
+	}
+    };
 
     public static Reference getReference(String className, 
 					 String name, String type) {
@@ -46,9 +56,9 @@ public class Reference {
 		&& ref.type.equals(type))
 		return ref;
 	}
-	Reference ref = new Reference(className, name, type);
-	unifier.put(hash, ref);
-	return ref;
+	/* Another thread may have added the same reference meanwhile. */
+	return (Reference) unifier.unify(new Reference(className, name, type),
+					 hash, comparator);
     }
 
     private Reference(String clazz, String name, String type) {
@@ -0,0 +1,101 @@
+/* AnalysisBudget Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+
+/**
+ * The limits for the analysis of a single method.  Some methods,
+ * mostly from obfuscated classes, keep the flow analysis busy for
+ * minutes or make it use up the heap.  If a method exceeds the budget,
+ * its analysis is abandoned and the method is written as a listing
+ * of its bytecode followed by a stub body, so that the other methods
+ * and classes are still decompiled in bounded time.<br>
+ *
+ * There are three limits, each of them is disabled if it is 0:
+ * <dl>
+ * <dt>instructions</dt><dd>Methods with more bytecode instructions
+ * are not analyzed at all.</dd>
+ * <dt>millis</dt><dd>The maximum wall clock time in milliseconds for
+ * the analysis of the code.</dd>
+ * <dt>steps</dt><dd>The maximum number of steps of the flow analysis.
+ * Every step tries to merge flow blocks; this also bounds the memory
+ * that is used.</dd>
+ * </dl>
+ *
+ * @see MethodAnalyzer#checkBudget
+ */
+public class AnalysisBudget {
+    private int maxInstructions;
+    private long maxMillis;
+    private int maxSteps;
+
+    /**
+     * Creates a new budget.  A limit of 0 means no limit.
+     * @param maxInstructions the maximum number of instructions.
+     * @param maxMillis the maximum time in milliseconds.
+     * @param maxSteps the maximum number of flow analysis steps.
+     */
+    public AnalysisBudget(int maxInstructions, long maxMillis, int maxSteps) {
+	if (maxInstructions < 0 || maxMillis < 0 || maxSteps < 0)
+	    throw new IllegalArgumentException("negative limit");
+	this.maxInstructions = maxInstructions;
+	this.maxMillis = maxMillis;
+	this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Parses a budget given as
+     * <code>instructions[,millis[,steps]]</code>.  Missing limits are 0.
+     * @exception IllegalArgumentException if the string is malformed.
+     */
+    public static AnalysisBudget parse(String spec) {
+	long[] limits = new long[3];
+	int start = 0;
+	for (int i = 0; i < limits.length; i++) {
+	    int comma = spec.indexOf(',', start);
+	    String limit = comma >= 0 
+		? spec.substring(start, comma) : spec.substring(start);
+	    limits[i] = Long.parseLong(limit.trim());
+	    if (comma < 0)
+		break;
+	    if (i == limits.length - 1)
+		throw new IllegalArgumentException("too many limits: "+spec);
+	    start = comma + 1;
+	}
+	if (limits[0] > Integer.MAX_VALUE || limits[2] > Integer.MAX_VALUE)
+	    throw new IllegalArgumentException("limit too big: "+spec);
+	return new AnalysisBudget((int) limits[0], limits[1], (int) limits[2]);
+    }
+
+    public int getMaxInstructions() {
+	return maxInstructions;
+    }
+
+    public long getMaxMillis() {
+	return maxMillis;
+    }
+
+    public int getMaxSteps() {
+	return maxSteps;
+    }
+
+    public String toString() {
+	return maxInstructions + "," + maxMillis + "," + maxSteps;
+    }
+}
@@ -18,7 +18,6 @@
  */
 
 package net.sf.jode.decompiler;
-import net.sf.jode.GlobalOptions;
 import net.sf.jode.type.MethodType;
 import net.sf.jode.type.Type;
 import net.sf.jode.bytecode.ClassFormatException;
@@ -44,6 +43,7 @@ import java.util.Set;
 public class ClassAnalyzer 
     implements Scope, Declarable, ClassDeclarer
 {
+    DecompilerContext context;
     ImportHandler imports;
     ClassInfo clazz;
     ClassDeclarer parent;
@@ -57,6 +57,12 @@ public class ClassAnalyzer
      * The minimal visible complexity.
      */
     private static double STEP_COMPLEXITY = 0.03;
+    /**
+     * The minimal number of instructions in the remaining methods of
+     * a class, before they are analyzed by several threads.  For
+     * smaller classes starting the threads costs more than it saves.
+     */
+    private static int PARALLEL_INSTRUCTIONS = 500;
     /**
      * The value of the strictfp modifier.
      * JDK1.1 doesn't define it.
@@ -91,6 +97,16 @@ public class ClassAnalyzer
 			 Expression[] outerValues) 
 	throws ClassFormatException, IOException
     {
+	this(parent, parent != null ? parent.getContext() 
+	     : new DecompilerContext(), clazz, imports, outerValues);
+    }
+
+    private ClassAnalyzer(ClassDeclarer parent, DecompilerContext context,
+			  ClassInfo clazz, ImportHandler imports,
+			  Expression[] outerValues) 
+	throws ClassFormatException, IOException
+    {
+        this.context = context;
 	clazz.load(ClassInfo.ALL);
 	ClassInfo superClass = clazz.getSuperclass();
 	String myPackage = clazz.getName().substring
@@ -103,13 +119,13 @@ public class ClassAnalyzer
 	    try {
 		superClass.load(howMuch);
 	    } catch (IOException ex) {
-		GlobalOptions.err.println
+		context.getErr().println
 		    ("Warning: Can't get "
 		     + (howMuch == ClassInfo.PUBLICDECLARATIONS 
 			? "public" : "all")
 		     + " information of " + superClass
 		     +" to detect name conflicts.");
-		GlobalOptions.err.println(ex.toString());
+		context.getErr().println(ex.toString());
 		superClass.guess(howMuch);
 	    }
 	    superClass = superClass.getSuperclass();
@@ -125,7 +141,7 @@ public class ClassAnalyzer
 	/* Check if this is a normal non-static inner class and set
 	 * outerInstance.
 	 */
-	if ((Options.options & Options.OPTION_INNER) != 0
+	if (context.hasOption(Options.OPTION_INNER)
 	    && parent instanceof ClassAnalyzer && !isStatic())
 	    outerInstance = new ThisOperator(((ClassAnalyzer) parent).clazz);
 	if (outerValues != null)
@@ -142,7 +158,23 @@ public class ClassAnalyzer
     public ClassAnalyzer(ClassInfo clazz, ImportHandler imports)
 	throws ClassFormatException, IOException
     {
-	this(null, clazz, imports);
+	this((ClassDeclarer) null, clazz, imports);
+    }
+
+    /**
+     * Creates an analyzer for a top level class.
+     * @param context the context of this decompilation.  Inner classes
+     * use the context of their parent.
+     */
+    public ClassAnalyzer(DecompilerContext context,
+			 ClassInfo clazz, ImportHandler imports)
+	throws ClassFormatException, IOException
+    {
+	this(null, context, clazz, imports, null);
+    }
+
+    public DecompilerContext getContext() {
+	return context;
     }
 
     public ClassPath getClassPath() {
@@ -231,7 +263,7 @@ public class ClassAnalyzer
             return;
         }
 
-	if ((Options.options & Options.OPTION_INNER) != 0
+	if (context.hasOption(Options.OPTION_INNER)
 	    && innerInfos != null) {
 	    /* Create inner classes */
 	    int innerCount = innerInfos.length;
@@ -241,13 +273,13 @@ public class ClassAnalyzer
 		    inners[i] = new ClassAnalyzer
 			(this, innerInfos[i], imports, null);
 		} catch (ClassFormatException ex) {
-		    GlobalOptions.err.println("Inner class "+innerInfos[i]
-					      +" malformed!");
-		    ex.printStackTrace(GlobalOptions.err);
+		    context.getErr().println("Inner class "+innerInfos[i]
+					     +" malformed!");
+		    ex.printStackTrace(context.getErr());
 		} catch (IOException ex) {
-		    GlobalOptions.err.println("Can't read inner class "
-					      +innerInfos[i]+".");
-		    ex.printStackTrace(GlobalOptions.err);
+		    context.getErr().println("Can't read inner class "
+					     +innerInfos[i]+".");
+		    ex.printStackTrace(context.getErr());
 		}
 	    }
 	} else
@@ -305,8 +337,8 @@ public class ClassAnalyzer
     }
 
     public void analyze(ProgressListener pl, double done, double scale) {
-	if (GlobalOptions.verboseLevel > 0)
-	    GlobalOptions.err.println("Class " + name);
+	if (context.getVerboseLevel() > 0)
+	    context.getErr().println("Class " + name);
 	double subScale = scale / methodComplexity;
 	if (pl != null)
 	    pl.updateProgress(done, name);
@@ -343,8 +375,17 @@ public class ClassAnalyzer
 		} else
 		    constructors[j].analyze(null, 0.0, 0.0);
 	    }
-	    constrAna = new TransformConstructors(this, false, constructors);
-	    constrAna.removeSynthInitializers();
+	    /* The constructors can only be transformed together.  If
+	     * the analysis of one was abandoned, leave them as they are.
+	     */
+	    boolean abandoned = false;
+	    for (int j=0; j< constructors.length; j++)
+		abandoned |= constructors[j].isAbandoned();
+	    if (!abandoned) {
+		constrAna = new TransformConstructors
+		    (this, false, constructors);
+		constrAna.removeSynthInitializers();
+	    }
         }
 	if (staticConstructor != null) {
 	    if (pl != null) {
@@ -364,7 +405,7 @@ public class ClassAnalyzer
 	// If output should be immediate, we delay analyzation to output.
 	// Note that this may break anonymous classes, but the user
 	// has been warned.
-	if ((Options.options & Options.OPTION_IMMEDIATE) != 0)
+	if (context.hasOption(Options.OPTION_IMMEDIATE))
 	    return;
 
 	// Analyze fields
@@ -372,6 +413,8 @@ public class ClassAnalyzer
 	    fields[j].analyze();
 
 	// Now analyze remaining methods.
+	if (analyzeMethodsParallel(pl, done, subScale))
+	    return;
         for (int j=0; j < methods.length; j++) {
 	    if (!methods[j].isConstructor())
 		if (pl != null) {
@@ -389,13 +432,47 @@ public class ClassAnalyzer
 	}
     }
 
+    /**
+     * Analyzes the methods, that are not constructors, with several
+     * threads, if the context allows it and there is enough to do.
+     * Only top level classes are analyzed this way, the methods of
+     * inner classes are analyzed by the thread of the outer method.
+     * With verbose output the progress of every method is printed,
+     * so we don't use threads in that case.
+     * @return false, if the methods weren't analyzed.
+     */
+    private boolean analyzeMethodsParallel(ProgressListener pl,
+					   double done, double subScale) {
+	int numThreads = context.getAnalysisThreads();
+	if (numThreads <= 1 || parent != null
+	    || context.getVerboseLevel() > 0)
+	    return false;
+
+	Vector remaining = new Vector();
+	double complexity = 0.0;
+        for (int j=0; j < methods.length; j++) {
+	    if (!methods[j].isConstructor()) {
+		remaining.addElement(methods[j]);
+		complexity += methods[j].getComplexity();
+	    }
+	}
+	if (remaining.size() < 2 || complexity < PARALLEL_INSTRUCTIONS)
+	    return false;
+
+	MethodAnalyzer[] remainingArr = new MethodAnalyzer[remaining.size()];
+	remaining.copyInto(remainingArr);
+	new ParallelMethodAnalyzer(context, remainingArr)
+	    .analyze(numThreads, pl, done, complexity * subScale);
+	return true;
+    }
+
     public void analyzeInnerClasses(ProgressListener pl, 
 				    double done, double scale) {
 	double subScale = scale / innerComplexity;
 	// If output should be immediate, we delay analyzation to output.
 	// Note that this may break anonymous classes, but the user
 	// has been warned.
-	if ((Options.options & Options.OPTION_IMMEDIATE) != 0)
+	if (context.hasOption(Options.OPTION_IMMEDIATE))
 	    return;
 
 	// Now analyze the inner classes.
@@ -431,7 +508,7 @@ public class ClassAnalyzer
 	// First prepare constructors:
 	if (constrAna != null)
 	    constrAna.transform();
-        if (staticConstructor != null) {
+        if (staticConstructor != null && !staticConstructor.isAbandoned()) {
             new TransformConstructors
 		(this, true, new MethodAnalyzer[] { staticConstructor })
 		.transform();
@@ -440,7 +517,7 @@ public class ClassAnalyzer
 	// If output should be immediate, we delay analyzation to output.
 	// Note that this may break anonymous classes, but the user
 	// has been warned.
-	if ((Options.options & Options.OPTION_IMMEDIATE) != 0)
+	if (context.hasOption(Options.OPTION_IMMEDIATE))
 	    return;
 
         for (int j=0; j < fields.length; j++)
@@ -542,7 +619,7 @@ public class ClassAnalyzer
 	boolean needFieldNewLine = false;
 	boolean needNewLine = false;
 	Set declared = null;
-	if ((Options.options & Options.OPTION_IMMEDIATE) != 0)
+	if (context.hasOption(Options.OPTION_IMMEDIATE))
 	    declared = new SimpleSet();
 	for (int i=0; i< fields.length; i++) {
 	    if (blockInitializers[i] != null) {
@@ -555,7 +632,7 @@ public class ClassAnalyzer
 		writer.closeBrace();
 		needFieldNewLine = needNewLine = true;
 	    }
-	    if ((Options.options & Options.OPTION_IMMEDIATE) != 0) {
+	    if (context.hasOption(Options.OPTION_IMMEDIATE)) {
 		// We now do the analyzation we skipped before.
 		fields[i].analyze();
 		fields[i].makeDeclaration(declared);
@@ -586,7 +663,7 @@ public class ClassAnalyzer
 		continue;
 	    }
 		
-	    if ((Options.options & Options.OPTION_IMMEDIATE) != 0) {
+	    if (context.hasOption(Options.OPTION_IMMEDIATE)) {
 		// We now do the analyzation we skipped before.
 		inners[i].analyze(null, 0.0, 0.0);
 		inners[i].analyzeInnerClasses(null, 0.0, 0.0);
@@ -607,7 +684,7 @@ public class ClassAnalyzer
 	    needNewLine = true;
 	}
 	for (int i=0; i< methods.length; i++) {
-	    if ((Options.options & Options.OPTION_IMMEDIATE) != 0) {
+	    if (context.hasOption(Options.OPTION_IMMEDIATE)) {
 		// We now do the analyzation we skipped before.
 		if (!methods[i].isConstructor())
 		    methods[i].analyze(null, 0.0, 0.0);
@@ -654,21 +731,41 @@ public class ClassAnalyzer
 
     public void dumpJavaFile(TabbedPrintWriter writer, ProgressListener pl)
 	throws IOException {    
-	imports.init(clazz.getName());
-	LocalInfo.init();
-	initialize();
-	double done = 0.05;
-	double scale = (0.75) * methodComplexity 
-	    / (methodComplexity + innerComplexity);
-	analyze(pl, INITIALIZE_COMPLEXITY, scale);
-	done += scale;
-	analyzeInnerClasses(pl, done, 0.8 - done);
-	makeDeclaration(new SimpleSet());
-	imports.dumpHeader(writer);
-	dumpSource(writer, pl, 0.8, 0.2);
-	if (pl != null)
-	    pl.updateProgress(1.0, name);
-        writer.flush();
+	DecompilerMetrics metrics = context.getMetrics();
+	DecompilerMetrics.Record record = metrics != null
+	    ? metrics.createClassRecord(clazz.getName()) : null;
+	DecompilerContext previous = context.enter();
+	try {
+	    if (record != null)
+		record.startPhase(DecompilerMetrics.INITIALIZE);
+	    imports.init(clazz.getName());
+	    context.getNameSerials().reset();
+	    initialize();
+	    double done = 0.05;
+	    double scale = (0.75) * methodComplexity 
+		/ (methodComplexity + innerComplexity);
+	    if (record != null)
+		record.startPhase(DecompilerMetrics.ANALYZE);
+	    analyze(pl, INITIALIZE_COMPLEXITY, scale);
+	    done += scale;
+	    if (record != null)
+		record.startPhase(DecompilerMetrics.ANALYZE_INNER);
+	    analyzeInnerClasses(pl, done, 0.8 - done);
+	    if (record != null)
+		record.startPhase(DecompilerMetrics.DECLARE);
+	    makeDeclaration(new SimpleSet());
+	    if (record != null)
+		record.startPhase(DecompilerMetrics.DUMP);
+	    imports.dumpHeader(writer);
+	    dumpSource(writer, pl, 0.8, 0.2);
+	    if (pl != null)
+		pl.updateProgress(1.0, name);
+	    writer.flush();
+	} finally {
+	    if (record != null)
+		record.stopPhase();
+	    context.exit(previous);
+	}
     }
 
     public boolean isScopeOf(Object obj, int scopeType) {
@@ -677,9 +774,9 @@ public class ClassAnalyzer
 	return false;
     }
 
-    static int serialnr = 0;
     public void makeNameUnique() {
-	name = name + "_" + serialnr++ + "_";
+	name = name + "_" 
+	    + context.getNameSerials().next(NameSerials.CLASS) + "_";
     }
 
     public boolean conflicts(String name, int usageType) {
@@ -689,6 +786,11 @@ public class ClassAnalyzer
     private static boolean conflicts(ClassInfo info, 
 				     String name, int usageType) {
 	while (info != null) {
+	    try {
+		info.load(ClassInfo.DECLARATIONS);
+	    } catch (IOException ex) {
+		info.guess(ClassInfo.DECLARATIONS);
+	    }
 	    if (usageType == NOSUPERMETHODNAME || usageType == METHODNAME) {
 		MethodInfo[] minfos = info.getMethods();
 		for (int i = 0; i< minfos.length; i++)
@@ -704,11 +806,6 @@ public class ClassAnalyzer
 		}
 	    }
 	    if (usageType == CLASSNAME || usageType == AMBIGUOUSNAME) {
-		try {
-		    info.load(ClassInfo.DECLARATIONS);
-		} catch (IOException ex) {
-		    info.guess(ClassInfo.DECLARATIONS);
-		}
 		ClassInfo[] iinfos = info.getClasses();
 		if (iinfos != null) {
 		    for (int i=0; i < iinfos.length; i++) {
@@ -30,6 +30,12 @@ public interface ClassDeclarer {
      */
     public ClassDeclarer getParent();
 
+    /**
+     * Get the context of the decompilation this class declarer
+     * belongs to.
+     */
+    public DecompilerContext getContext();
+
     /**
      * Get the class analyzer for the given anonymous class info.  It
      * will search it in the classes we declare and in the parent
@@ -0,0 +1,177 @@
+/* CleanupPolicy Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bytecode.ClassInfo;
+import net.sf.jode.bytecode.ClassPath;
+
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+///#def COLLECTIONS java.util
+import java.util.Iterator;
+///#enddef
+
+/**
+ * Decides when the class infos of a class path are dropped while
+ * decompiling many classes.  The class path keeps the information of
+ * every class it ever loaded, so the memory used grows with the number
+ * of classes.  Instead of collecting the garbage after every class, the
+ * infos are dropped when a given number of classes was decompiled or
+ * when the used heap exceeds a given percentage of the maximum heap.
+ * The garbage collector can then free the memory when it runs anyway.
+ * If that doesn't bring the heap below the limit, the heap is checked
+ * less often.
+ * <br>
+ *
+ * The infos are dropped down to {@link ClassInfo#DECLARATIONS}.  This
+ * frees the bytecode and the attributes, which take most of the
+ * memory.  The declarations are kept, since the analyzers assume that
+ * a class that was loaded once still has its declarations.<br>
+ *
+ * A policy must only be used by one thread.  Use {@link #copy} to
+ * give every thread its own policy.
+ */
+public class CleanupPolicy {
+    /**
+     * The default percentage of the maximum heap, above which the
+     * class infos are dropped.
+     */
+    public static final int DEFAULT_HEAP_PERCENT = 75;
+
+    /**
+     * After the class infos were dropped because of the heap, the heap
+     * usage isn't checked again for this many classes.  The garbage
+     * collector needs some time before it frees the memory.
+     */
+    private static final int HEAP_CHECK_DELAY = 16;
+    /**
+     * The heap check delay isn't doubled beyond this many classes.
+     */
+    private static final int MAX_HEAP_CHECK_DELAY = 1024;
+
+    private int classLimit;
+    private int heapPercent;
+    private int classesSinceCleanup;
+    /**
+     * The current delay of the heap check.  If the heap is still
+     * exceeded after a cleanup, the cleanup didn't free enough
+     * memory, e.g. because the live classes need it.  Then the delay
+     * is doubled, so that the classes aren't loaded again and again.
+     */
+    private int heapCheckDelay = HEAP_CHECK_DELAY;
+    /**
+     * True, if the last cleanup was done because of the heap.
+     */
+    private boolean heapCleanup;
+
+    private int classes;
+    private int cleanups;
+    private long startTime;
+
+    /**
+     * Creates a new cleanup policy.
+     * @param classLimit the number of classes after which the class
+     * infos are dropped, 0 for no limit.
+     * @param heapPercent the percentage of the maximum heap above
+     * which the class infos are dropped, 0 for no limit.
+     */
+    public CleanupPolicy(int classLimit, int heapPercent) {
+	this.classLimit = classLimit;
+	this.heapPercent = heapPercent;
+	this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a new policy with the same limits as this one.  The
+     * statistics of the copy can be added to this policy with
+     * {@link #addStatistics}.
+     */
+    public CleanupPolicy copy() {
+	return new CleanupPolicy(classLimit, heapPercent);
+    }
+
+    private boolean heapExceeded() {
+	if (heapPercent == 0 || classesSinceCleanup < heapCheckDelay)
+	    return false;
+	Runtime runtime = Runtime.getRuntime();
+	long used = runtime.totalMemory() - runtime.freeMemory();
+	if (used <= runtime.maxMemory() / 100 * heapPercent) {
+	    heapCheckDelay = HEAP_CHECK_DELAY;
+	    return false;
+	}
+	if (heapCleanup && heapCheckDelay < MAX_HEAP_CHECK_DELAY)
+	    heapCheckDelay *= 2;
+	return true;
+    }
+
+    /**
+     * Tells the policy that a class was decompiled.  This drops the
+     * class infos of the given class path and its fallback, if one
+     * of the limits is exceeded.
+     * @param classPath the class path that was used for the class.
+     * @return true, if the class infos were dropped.
+     */
+    public boolean classDone(ClassPath classPath) {
+	classes++;
+	classesSinceCleanup++;
+	boolean limitReached
+	    = classLimit != 0 && classesSinceCleanup >= classLimit;
+	if (!limitReached && !heapExceeded())
+	    return false;
+	classPath.dropClassInfos(ClassInfo.DECLARATIONS);
+	heapCleanup = !limitReached;
+	cleanups++;
+	classesSinceCleanup = 0;
+	return true;
+    }
+
+    /**
+     * Adds the statistics of a copy of this policy to this policy.
+     */
+    public synchronized void addStatistics(CleanupPolicy copy) {
+	classes += copy.classes;
+	cleanups += copy.cleanups;
+    }
+
+    /**
+     * Prints the number of classes, the number of cleanups and the
+     * time spent in the garbage collector since the virtual machine
+     * started.
+     */
+    public void printSummary(PrintWriter err) {
+	long gcTime = 0;
+	long gcCount = 0;
+	Iterator iter = ManagementFactory.getGarbageCollectorMXBeans()
+	    .iterator();
+	while (iter.hasNext()) {
+	    GarbageCollectorMXBean gc = (GarbageCollectorMXBean) iter.next();
+	    /* -1 means undefined. */
+	    if (gc.getCollectionCount() > 0)
+		gcCount += gc.getCollectionCount();
+	    if (gc.getCollectionTime() > 0)
+		gcTime += gc.getCollectionTime();
+	}
+	long time = System.currentTimeMillis() - startTime;
+	err.println("Decompiled " + classes + " classes in " + time + " ms, "
+		    + "dropped class infos " + cleanups + " times.");
+	err.println("Garbage collector: " + gcCount + " collections, "
+		    + gcTime + " ms.");
+    }
+}
@@ -31,7 +31,12 @@ import java.io.Writer;
  * Please tell me about your project.<br>
  *
  * Note that the GNU GPL doesn't allow you to use this interface in
- * commercial programs. 
+ * commercial programs. <br>
+ *
+ * The options of a decompiler object don't affect other decompiler
+ * objects, so several decompiler objects may decompile concurrently.
+ * A single decompiler object must only be used by one thread at a
+ * time.
  * 
  * @author <a href="mailto:jochen@gnu.org">Jochen Hoenicke</a>
  * @version 1.0
@@ -46,6 +51,13 @@ public class Decompiler {
     private int outputStyle = TabbedPrintWriter.BRACE_AT_EOL;
     private int lineWidth   = 79;
 
+    private int options = Options.options;
+    private int verboseLevel = GlobalOptions.verboseLevel;
+    private PrintWriter err = null;
+    private DecompilerMetrics metrics = null;
+    private AnalysisBudget budget = null;
+    private int methodThreads = 1;
+
     /**
      * We need a different pathSeparatorChar, since ':' (used for most
      * UNIX System) is used a protocol separator in URLs.  
@@ -107,9 +119,12 @@ public class Decompiler {
     };
 
     /**
-     * Set an option.
+     * Set an option.  The options only affect this decompiler, except
+     * for the debug option, which is global.
      * @param option the option (pretty, style, decrypt, verify, etc.)
-     * @param value ("1"/"0" for on/off, "sun"/"gnu" for style)
+     * @param value ("1"/"0" for on/off, "sun"/"gnu" for style,
+     * "instrs,millis,steps" for budget, see {@link AnalysisBudget},
+     * the number of threads for method-threads)
      * @exception IllegalArgumentException if option or value is invalid.
      */
     public void setOption(String option, String value) {
@@ -155,8 +170,20 @@ public class Decompiler {
 	    importClassLimit = clazzLimit;
 	    return;
 	}
+	if (option.equals("budget")) {
+	    budget = AnalysisBudget.parse(value);
+	    return;
+	}
+	if (option.equals("method-threads")) {
+	    int threads = Integer.parseInt(value);
+	    if (threads < 1)
+		throw new IllegalArgumentException
+		    ("Option method-threads needs a positive number");
+	    methodThreads = threads;
+	    return;
+	}
 	if (option.equals("verbose")) {
-	    GlobalOptions.verboseLevel = Integer.parseInt(value);
+	    verboseLevel = Integer.parseInt(value);
 	    return;
 	}
 	if (option.equals("debug")) {
@@ -168,11 +195,11 @@ public class Decompiler {
 		if (value.equals("0") 
 		    || value.equals("off")
 		    || value.equals("no"))
-		    Options.options &= ~(1 << i);
+		    options &= ~(1 << i);
 		else if (value.equals("1") 
 			 || value.equals("on")
 			 || value.equals("yes"))
-		    Options.options |= 1 << i;
+		    options |= 1 << i;
 		else
 		    throw new IllegalArgumentException("Illegal value for "+
 						       option);
@@ -185,12 +212,21 @@ public class Decompiler {
     
     /**
      * Set the stream where copyright and warnings/errors are printed
-     * to.
+     * to by this decompiler.
      * @param errorStream the error stream. Note that this is a
      * PrintWriter, not a PrintStream (which are deprecated since 1.1).
      */
     public void setErr(PrintWriter errorStream) {
-	GlobalOptions.err = errorStream;
+	err = errorStream;
+    }
+
+    /**
+     * Set the metrics where the time and memory spent for the
+     * decompiled classes and methods is recorded.
+     * @param metrics the metrics, null to record nothing.
+     */
+    public void setMetrics(DecompilerMetrics metrics) {
+	this.metrics = metrics;
     }
 
    /**
@@ -225,7 +261,12 @@ public class Decompiler {
 	   new TabbedPrintWriter(writer, imports, false, 
 				 outputStyle, indentSize, 
 				 tabWidth, lineWidth);
-       ClassAnalyzer clazzAna = new ClassAnalyzer(null, clazz, imports);
+       DecompilerContext context
+	   = new DecompilerContext(options, verboseLevel, err);
+       context.setMetrics(metrics);
+       context.setBudget(budget);
+       context.setAnalysisThreads(methodThreads);
+       ClassAnalyzer clazzAna = new ClassAnalyzer(context, clazz, imports);
        clazzAna.dumpJavaFile(tabbedWriter, progress);
        writer.flush();
    }
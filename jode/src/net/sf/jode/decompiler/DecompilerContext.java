@@ -0,0 +1,222 @@
+/* DecompilerContext Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.GlobalOptions;
+import net.sf.jode.bytecode.ClassInfo;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * The state of a single decompilation: the options, the verbose
+ * level, the writer for messages and the serial numbers for generated
+ * names.  Every top level {@link ClassAnalyzer} has its own context,
+ * which is passed to the inner classes, methods and flow blocks.
+ * Decompilations that use different contexts can run concurrently.<br>
+ *
+ * While a class is decompiled, its context is also bound to the
+ * current thread (see {@link #enter}).  This is used by code that
+ * has no access to the analyzers, e.g. the messages of the type and
+ * bytecode packages are redirected to the err writer of this context.
+ * The debugging flags in {@link GlobalOptions} are always global.
+ */
+public class DecompilerContext {
+    private static final ThreadLocal current = new ThreadLocal() {
+	protected Object initialValue() {
+	    return new DecompilerContext();
+	}
+    };
+
+    /* The static initializers of Type and Expression create instances
+     * of their own subclasses.  If one thread initialized Type while
+     * another one initialized IntegerType first, both would wait for
+     * each other forever.  Every decompilation creates its context
+     * before it uses these classes, so they are initialized here,
+     * while the class initialization of this class is still locked.
+     */
+    static {
+	ClassLoader loader = DecompilerContext.class.getClassLoader();
+	try {
+	    Class.forName("net.sf.jode.type.Type", true, loader);
+	    Class.forName("net.sf.jode.expr.Expression", true, loader);
+	} catch (ClassNotFoundException ex) {
+	    throw new InternalError("Can't initialize " + ex.getMessage());
+	}
+    }
+
+    private int options;
+    private int verboseLevel;
+    private PrintWriter err;
+    private NameSerials serials = new NameSerials();
+    private DecompilerMetrics metrics;
+    private AnalysisBudget budget;
+    private int analysisThreads = 1;
+
+    /**
+     * Creates a new context with the default settings from {@link
+     * Options#options} and {@link GlobalOptions#verboseLevel}.
+     * Messages are printed to GlobalOptions.err.
+     */
+    public DecompilerContext() {
+	this(Options.options, GlobalOptions.verboseLevel, null);
+    }
+
+    /**
+     * Creates a new context.
+     * @param options the decompiler options, see Options.OPTION_*.
+     * @param verboseLevel the verbose level.
+     * @param err the writer for messages, null for GlobalOptions.err.
+     */
+    public DecompilerContext(int options, int verboseLevel,
+			     PrintWriter err) {
+	this.options = options;
+	this.verboseLevel = verboseLevel;
+	this.err = err;
+    }
+
+    /**
+     * Gets the context that is bound to the current thread.  If no
+     * decompilation runs in the current thread, this is a context with
+     * the default settings.
+     */
+    public static DecompilerContext current() {
+	return (DecompilerContext) current.get();
+    }
+
+    /**
+     * Binds this context to the current thread.  The messages of the
+     * current thread are redirected to the err writer of this context.
+     * @return the previous context, which must be given to exit.
+     */
+    public DecompilerContext enter() {
+	DecompilerContext previous = current();
+	current.set(this);
+	GlobalOptions.setThreadErr(err);
+	return previous;
+    }
+
+    /**
+     * Restores the context that was bound before enter was called.
+     * @param previous the return value of enter.
+     */
+    public void exit(DecompilerContext previous) {
+	current.set(previous);
+	GlobalOptions.setThreadErr(previous.err);
+    }
+
+    public int getOptions() {
+	return options;
+    }
+
+    public boolean hasOption(int option) {
+	return (options & option) != 0;
+    }
+
+    public int getVerboseLevel() {
+	return verboseLevel;
+    }
+
+    public PrintWriter getErr() {
+	return err != null ? err : GlobalOptions.err;
+    }
+
+    public NameSerials getNameSerials() {
+	return serials;
+    }
+
+    /**
+     * Gets the metrics, where the time spent in the decompiler phases
+     * is recorded.
+     * @return the metrics, or null if nothing is recorded.
+     */
+    public DecompilerMetrics getMetrics() {
+	return metrics;
+    }
+
+    /**
+     * Sets the metrics, where the time spent in the decompiler phases
+     * is recorded.  The same metrics may be used by several contexts.
+     * @param metrics the metrics, or null to record nothing.
+     */
+    public void setMetrics(DecompilerMetrics metrics) {
+	this.metrics = metrics;
+    }
+
+    /**
+     * Gets the budget for the analysis of a single method.
+     * @return the budget, or null if the analysis is unlimited.
+     */
+    public AnalysisBudget getBudget() {
+	return budget;
+    }
+
+    /**
+     * Sets the budget for the analysis of a single method.
+     * @param budget the budget, or null for an unlimited analysis.
+     */
+    public void setBudget(AnalysisBudget budget) {
+	this.budget = budget;
+    }
+
+    /**
+     * Gets the number of threads that analyze the methods of a
+     * single class.
+     */
+    public int getAnalysisThreads() {
+	return analysisThreads;
+    }
+
+    /**
+     * Sets the number of threads that analyze the methods of a
+     * single class.  The output doesn't depend on it.
+     * @param threads the number of threads, 1 to analyze the methods
+     * in the current thread only.
+     * @exception IllegalArgumentException if threads is less than 1.
+     */
+    public void setAnalysisThreads(int threads) {
+	if (threads < 1)
+	    throw new IllegalArgumentException("threads " + threads);
+	analysisThreads = threads;
+    }
+
+    public final boolean doAnonymous() {
+	return (options & Options.OPTION_ANON) != 0;
+    }
+
+    public final boolean doInner() {
+	return (options & Options.OPTION_INNER) != 0;
+    }
+
+    /**
+     * Checks if the given class should be skipped, because it is
+     * decompiled together with its outer class.
+     */
+    public boolean skipClass(ClassInfo clazz) {
+	if (!doInner() && !doAnonymous())
+	    return false;
+	try {
+	    clazz.load(ClassInfo.OUTERCLASS);
+	} catch (IOException ex) {
+	    return false;
+	}
+	return (doInner() && clazz.getOuterClass() != null
+		|| doAnonymous() && clazz.isMethodScoped());
+    }
+}
@@ -0,0 +1,430 @@
+/* DecompilerMetrics Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Vector;
+
+///#def COLLECTIONS java.util
+import java.util.Arrays;
+import java.util.Comparator;
+///#enddef
+
+/**
+ * Collects the time and memory the decompiler spends in its phases.
+ * There is one record for every decompiled top level class, with the
+ * phases of {@link ClassAnalyzer#dumpJavaFile}, and one record for
+ * every method, with the analysis of its code and its output.
+ * The records can be written as JSON or CSV, and the slowest methods
+ * can be printed as a report.<br>
+ *
+ * For every phase the wall clock time, the cpu time and the bytes
+ * allocated by the current thread are measured.  The latter two
+ * need support from the virtual machine; if it is missing, they are
+ * reported as -1.<br>
+ *
+ * A metrics object is enabled by setting it in the {@link
+ * DecompilerContext}.  It may be shared by several contexts that run
+ * concurrently, but a single record must only be used by one thread.
+ */
+public class DecompilerMetrics {
+    public static final int INITIALIZE    = 0;
+    public static final int ANALYZE       = 1;
+    public static final int ANALYZE_INNER = 2;
+    public static final int DECLARE       = 3;
+    public static final int DUMP          = 4;
+    public static final int PHASES        = 5;
+
+    private static final String[] phaseNames = {
+	"initialize", "analyze", "analyzeInner", "makeDeclaration", "dump"
+    };
+
+    private static ThreadMXBean threadBean;
+    private static boolean cpuTimeSupported;
+    private static boolean allocationSupported;
+
+    static {
+	try {
+	    threadBean = ManagementFactory.getThreadMXBean();
+	    cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported()
+		&& threadBean.isThreadCpuTimeEnabled();
+	    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+		com.sun.management.ThreadMXBean sunBean
+		    = (com.sun.management.ThreadMXBean) threadBean;
+		allocationSupported
+		    = sunBean.isThreadAllocatedMemorySupported()
+		    && sunBean.isThreadAllocatedMemoryEnabled();
+	    }
+	} catch (LinkageError ex) {
+	    /* Not a Sun/Oracle virtual machine, measure what we can. */
+	} catch (SecurityException ex) {
+	}
+    }
+
+    private static long currentCpuTime() {
+	return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long currentAllocatedBytes() {
+	if (!allocationSupported)
+	    return 0;
+	return ((com.sun.management.ThreadMXBean) threadBean)
+	    .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The measurements for a class or a method.  The phases are
+     * measured one after the other with {@link #startPhase} and
+     * {@link #stopPhase}.  A phase may be measured several times, the
+     * values are added up.
+     */
+    public static class Record {
+	String className;
+	String methodName;
+	int instructions;
+
+	long[] wallTime = new long[PHASES];
+	long[] cpuTime = new long[PHASES];
+	long[] allocated = new long[PHASES];
+
+	int phase = -1;
+	long startWall, startCpu, startAllocated;
+
+	Record(String className, String methodName, int instructions) {
+	    this.className = className;
+	    this.methodName = methodName;
+	    this.instructions = instructions;
+	}
+
+	/**
+	 * Starts measuring the given phase.  A phase that is
+	 * currently measured is stopped.
+	 */
+	public void startPhase(int phase) {
+	    stopPhase();
+	    this.phase = phase;
+	    startAllocated = currentAllocatedBytes();
+	    startCpu = currentCpuTime();
+	    startWall = System.nanoTime();
+	}
+
+	/**
+	 * Stops measuring the current phase.  Does nothing if no phase
+	 * is measured.
+	 */
+	public void stopPhase() {
+	    if (phase < 0)
+		return;
+	    wallTime[phase] += System.nanoTime() - startWall;
+	    cpuTime[phase] += currentCpuTime() - startCpu;
+	    allocated[phase] += currentAllocatedBytes() - startAllocated;
+	    phase = -1;
+	}
+
+	public String getClassName() {
+	    return className;
+	}
+
+	/**
+	 * Gets the name and type signature of the method, or null if
+	 * this is the record of a class.
+	 */
+	public String getMethodName() {
+	    return methodName;
+	}
+
+	/**
+	 * Gets the number of bytecode instructions of the method.
+	 */
+	public int getInstructions() {
+	    return instructions;
+	}
+
+	/**
+	 * Gets the wall clock time of a phase in nanoseconds.
+	 * @param phase the phase, or -1 for the sum of all phases.
+	 */
+	public long getWallTime(int phase) {
+	    return sum(wallTime, phase);
+	}
+
+	/**
+	 * Gets the cpu time of a phase in nanoseconds.
+	 * @param phase the phase, or -1 for the sum of all phases.
+	 * @return the time or -1, if it can't be measured.
+	 */
+	public long getCpuTime(int phase) {
+	    return cpuTimeSupported ? sum(cpuTime, phase) : -1;
+	}
+
+	/**
+	 * Gets the allocated bytes of a phase.
+	 * @param phase the phase, or -1 for the sum of all phases.
+	 * @return the bytes or -1, if they can't be measured.
+	 */
+	public long getAllocatedBytes(int phase) {
+	    return allocationSupported ? sum(allocated, phase) : -1;
+	}
+
+	private static long sum(long[] values, int phase) {
+	    if (phase >= 0)
+		return values[phase];
+	    long sum = 0;
+	    for (int i = 0; i < values.length; i++)
+		sum += values[i];
+	    return sum;
+	}
+    }
+
+    private Vector classes = new Vector();
+    private Vector methods = new Vector();
+
+    /**
+     * Gets the name of a phase as it is used in the exported data.
+     */
+    public static String getPhaseName(int phase) {
+	return phaseNames[phase];
+    }
+
+    /**
+     * Creates and adds the record for a top level class.
+     */
+    public Record createClassRecord(String className) {
+	Record record = new Record(className, null, 0);
+	classes.addElement(record);
+	return record;
+    }
+
+    /**
+     * Creates and adds the record for a method.
+     * @param className the name of the class containing the method.
+     * @param methodName the name and type signature of the method.
+     * @param instructions the number of bytecode instructions.
+     */
+    public Record createMethodRecord(String className, String methodName,
+				     int instructions) {
+	Record record = new Record(className, methodName, instructions);
+	methods.addElement(record);
+	return record;
+    }
+
+    public Record[] getClassRecords() {
+	synchronized (classes) {
+	    Record[] result = new Record[classes.size()];
+	    classes.copyInto(result);
+	    return result;
+	}
+    }
+
+    public Record[] getMethodRecords() {
+	synchronized (methods) {
+	    Record[] result = new Record[methods.size()];
+	    methods.copyInto(result);
+	    return result;
+	}
+    }
+
+    /**
+     * Gets the methods that took the most wall clock time.
+     * @param count the maximum number of methods.
+     * @return the methods, the slowest first.
+     */
+    public Record[] getSlowestMethods(int count) {
+	Record[] records = getMethodRecords();
+	Arrays.sort(records, new Comparator() {
+	    public int compare(Object o1, Object o2) {
+		long t1 = ((Record) o1).getWallTime(-1);
+		long t2 = ((Record) o2).getWallTime(-1);
+		return t1 > t2 ? -1 : t1 == t2 ? 0 : 1;
+	    }
+	});
+	if (count >= records.length)
+	    return records;
+	Record[] result = new Record[count];
+	System.arraycopy(records, 0, result, 0, count);
+	return result;
+    }
+
+    private static String quote(String str) {
+	StringBuffer sb = new StringBuffer(str.length() + 2);
+	sb.append('"');
+	for (int i = 0; i < str.length(); i++) {
+	    char c = str.charAt(i);
+	    switch (c) {
+	    case '"':
+	    case '\\':
+		sb.append('\\').append(c);
+		break;
+	    default:
+		if (c < 0x20) {
+		    String hex = Integer.toHexString(c);
+		    sb.append("\\u0000".substring(0, 6 - hex.length()))
+			.append(hex);
+		} else
+		    sb.append(c);
+	    }
+	}
+	return sb.append('"').toString();
+    }
+
+    private static void writeJSON(Writer out, Record record, String indent)
+	throws IOException {
+	out.write(indent + "{\"class\": " + quote(record.className));
+	if (record.methodName != null)
+	    out.write(", \"method\": " + quote(record.methodName)
+		      + ", \"instructions\": " + record.instructions);
+	out.write(",\n" + indent + " \"wallNanos\": " + record.getWallTime(-1)
+		  + ", \"cpuNanos\": " + record.getCpuTime(-1)
+		  + ", \"allocatedBytes\": " + record.getAllocatedBytes(-1)
+		  + ",\n" + indent + " \"phases\": {");
+	String comma = "";
+	for (int i = 0; i < PHASES; i++) {
+	    if (record.wallTime[i] == 0)
+		continue;
+	    out.write(comma + "\n" + indent + "  " + quote(phaseNames[i])
+		      + ": {\"wallNanos\": " + record.getWallTime(i)
+		      + ", \"cpuNanos\": " + record.getCpuTime(i)
+		      + ", \"allocatedBytes\": " + record.getAllocatedBytes(i)
+		      + "}");
+	    comma = ",";
+	}
+	out.write("}}");
+    }
+
+    private static void writeJSON(Writer out, Record[] records)
+	throws IOException {
+	out.write("[");
+	for (int i = 0; i < records.length; i++) {
+	    out.write(i == 0 ? "\n" : ",\n");
+	    writeJSON(out, records[i], "    ");
+	}
+	out.write("]");
+    }
+
+    /**
+     * Writes all records as a JSON object with the fields classes
+     * and methods.  Times are given in nanoseconds.
+     */
+    public void writeJSON(Writer out) throws IOException {
+	out.write("{\"classes\": ");
+	writeJSON(out, getClassRecords());
+	out.write(",\n \"methods\": ");
+	writeJSON(out, getMethodRecords());
+	out.write("}\n");
+	out.flush();
+    }
+
+    private static String csvQuote(String str) {
+	if (str == null)
+	    return "";
+	if (str.indexOf(',') < 0 && str.indexOf('"') < 0)
+	    return str;
+	StringBuffer sb = new StringBuffer("\"");
+	for (int i = 0; i < str.length(); i++) {
+	    char c = str.charAt(i);
+	    if (c == '"')
+		sb.append('"');
+	    sb.append(c);
+	}
+	return sb.append('"').toString();
+    }
+
+    private static void writeCSV(Writer out, Record[] records)
+	throws IOException {
+	for (int i = 0; i < records.length; i++) {
+	    Record record = records[i];
+	    String prefix = (record.methodName == null ? "class," : "method,")
+		+ csvQuote(record.className) + ","
+		+ csvQuote(record.methodName) + ","
+		+ (record.methodName == null ? ""
+		   : String.valueOf(record.instructions)) + ",";
+	    for (int p = 0; p < PHASES; p++) {
+		if (record.wallTime[p] == 0)
+		    continue;
+		out.write(prefix + phaseNames[p] + ","
+			  + record.getWallTime(p) + ","
+			  + record.getCpuTime(p) + ","
+			  + record.getAllocatedBytes(p) + "\n");
+	    }
+	}
+    }
+
+    /**
+     * Writes all records as CSV, one line for every phase of every
+     * class and method.  Times are given in nanoseconds.
+     */
+    public void writeCSV(Writer out) throws IOException {
+	out.write("kind,class,method,instructions,phase,"
+		  + "wallNanos,cpuNanos,allocatedBytes\n");
+	writeCSV(out, getClassRecords());
+	writeCSV(out, getMethodRecords());
+	out.flush();
+    }
+
+    private static String pad(String str, int width) {
+	StringBuffer sb = new StringBuffer(width);
+	for (int i = str.length(); i < width; i++)
+	    sb.append(' ');
+	return sb.append(str).toString();
+    }
+
+    private static String millis(long nanos) {
+	if (nanos < 0)
+	    return "-";
+	long tenths = (nanos + 50000) / 100000;
+	return (tenths / 10) + "." + (tenths % 10);
+    }
+
+    /**
+     * Prints the methods that took the most wall clock time, together
+     * with the totals of all classes.
+     * @param count the number of methods to print.
+     */
+    public void printSlowestMethods(PrintWriter out, int count) {
+	Record[] classRecords = getClassRecords();
+	long wall = 0, cpu = 0;
+	for (int i = 0; i < classRecords.length; i++) {
+	    wall += classRecords[i].getWallTime(-1);
+	    cpu += classRecords[i].getCpuTime(-1);
+	}
+	out.println("Decompiled " + classRecords.length + " classes in "
+		    + millis(wall) + " ms (cpu " + millis(cpu) + " ms).");
+	Record[] slowest = getSlowestMethods(count);
+	if (slowest.length == 0)
+	    return;
+	out.println("Slowest methods:");
+	out.println("  analyze ms  dump ms   cpu ms  alloc KB  instrs  method");
+	for (int i = 0; i < slowest.length; i++) {
+	    Record r = slowest[i];
+	    long alloc = r.getAllocatedBytes(-1);
+	    out.println(pad(millis(r.getWallTime(ANALYZE)), 12)
+			+ pad(millis(r.getWallTime(DUMP)), 9)
+			+ pad(millis(r.getCpuTime(-1)), 9)
+			+ pad(alloc < 0 ? "-" : String.valueOf(alloc / 1024), 10)
+			+ pad(String.valueOf(r.instructions), 8)
+			+ "  " + r.className + "." + r.methodName);
+	}
+	out.flush();
+    }
+}
@@ -282,9 +282,10 @@ public class ImportHandler {
     }
 
     /* Marks the clazz as used, so that it will be imported if used often
-     * enough.
+     * enough.  This is synchronized, since the methods of a class
+     * may be analyzed by several threads.
      */
-    public void useClass(String name) {
+    public synchronized void useClass(String name) {
 	
 	Integer i = (Integer) imports.get(name);
 	if (i == null) {
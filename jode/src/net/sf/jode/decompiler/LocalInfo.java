@@ -37,8 +37,6 @@ import net.sf.jode.expr.LocalVarOperator;
  * calls the member functions of the other local.<p>
  */
 public class LocalInfo implements Declarable {
-    private static int serialnr = 0;
-    private static int nextAnonymousSlot = -1;
     private int slot;
     private MethodAnalyzer methodAnalyzer;
     private boolean nameIsGenerated = false;
@@ -88,7 +86,8 @@ public class LocalInfo implements Declarable {
     public LocalInfo() {
         name = null;
         type = Type.tUnknown;
-        this.slot = nextAnonymousSlot--;
+        this.slot = DecompilerContext.current().getNameSerials()
+	    .nextAnonymousSlot();
     }
 
     /**
@@ -102,8 +101,13 @@ public class LocalInfo implements Declarable {
         this.slot = slot;
     }
 
-    public static void init() {
-	serialnr = 0;
+    /**
+     * Gets the context of the decompilation.  Locals with an anonymous
+     * slot have no method and use the context of the current thread.
+     */
+    private DecompilerContext getContext() {
+	return methodAnalyzer != null ? methodAnalyzer.getContext()
+	    : DecompilerContext.current();
     }
 
     public void setOperator(LocalVarOperator operator) {
@@ -222,11 +226,13 @@ public class LocalInfo implements Declarable {
 	    if ((GlobalOptions.debuggingFlags & GlobalOptions.DEBUG_TYPES) != 0)
 		GlobalOptions.err.println(getName()+" set type to getHint()");
 	    setType(type.getHint());
-            if ((Options.options & Options.OPTION_PRETTY) != 0) {
+            if (getContext().hasOption(Options.OPTION_PRETTY)) {
                 name = type.getDefaultName();
             } else {
                 name = type.getDefaultName()
-		    + (slot >= 0 ? "_" + slot : "") + "_" + serialnr++ + "_";
+		    + (slot >= 0 ? "_" + slot : "") + "_"
+		    + getContext().getNameSerials()
+		    .next(NameSerials.LOCAL) + "_";
                 isUnique = true;
             }
 	    if ((GlobalOptions.debuggingFlags 
@@ -283,7 +289,8 @@ public class LocalInfo implements Declarable {
         LocalInfo li = getLocalInfo();
         String name = li.getName();
         if (!li.isUnique) {
-            li.name = name + "_" + serialnr++ + "_";
+            li.name = name + "_"
+		+ getContext().getNameSerials().next(NameSerials.LOCAL) + "_";
             li.isUnique = true;
         }
     }
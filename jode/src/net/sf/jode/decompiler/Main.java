@@ -18,6 +18,7 @@
  */
 
 package net.sf.jode.decompiler;
+import net.sf.jode.bytecode.ClassCache;
 import net.sf.jode.bytecode.ClassInfo;
 import net.sf.jode.bytecode.ClassPath;
 import net.sf.jode.bytecode.ClassFormatException;
@@ -27,12 +28,15 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.zip.ZipOutputStream;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
 import java.util.Enumeration;
+import java.util.Vector;
 
 import gnu.getopt.LongOpt;
 import gnu.getopt.Getopt;
@@ -42,11 +46,40 @@ public class Main extends Options {
     private static final int OPTION_START=0x10000;
     private static final int OPTION_END  =0x20000;
 
+    /**
+     * The metrics where the time spent for every class is recorded,
+     * or null if the --metrics option wasn't given.
+     */
+    private static DecompilerMetrics metrics;
+    /**
+     * The budget for the analysis of a method, or null if the
+     * --budget option wasn't given.
+     */
+    private static AnalysisBudget budget;
+    /**
+     * The number of threads that analyze the methods of a single
+     * class.
+     */
+    private static int methodThreads = 1;
+    /**
+     * True if the classes of packages on HTTP servers should be
+     * prefetched.
+     */
+    private static boolean prefetch = false;
+
     private static final LongOpt[] longOptions = new LongOpt[] {
 	new LongOpt("cp", LongOpt.REQUIRED_ARGUMENT, null, 'c'),
 	new LongOpt("classpath", LongOpt.REQUIRED_ARGUMENT, null, 'c'),
 	new LongOpt("dest", LongOpt.REQUIRED_ARGUMENT, null, 'd'),
 	new LongOpt("keep-going", LongOpt.NO_ARGUMENT, null, 'k'),
+	new LongOpt("threads", LongOpt.REQUIRED_ARGUMENT, null, 't'),
+	new LongOpt("method-threads", LongOpt.REQUIRED_ARGUMENT, null, 'M'),
+	new LongOpt("cleanup", LongOpt.REQUIRED_ARGUMENT, null, 'C'),
+	new LongOpt("cache", LongOpt.REQUIRED_ARGUMENT, null, 'K'),
+	new LongOpt("prefetch", LongOpt.NO_ARGUMENT, null, 'P'),
+	new LongOpt("metrics", LongOpt.REQUIRED_ARGUMENT, null, 'm'),
+	new LongOpt("budget", LongOpt.REQUIRED_ARGUMENT, null, 'b'),
+	new LongOpt("top", LongOpt.REQUIRED_ARGUMENT, null, 'T'),
 	new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h'),
 	new LongOpt("version", LongOpt.NO_ARGUMENT, null, 'V'),
 	new LongOpt("verbose", LongOpt.OPTIONAL_ARGUMENT, null, 'v'),
@@ -110,6 +143,49 @@ public class Main extends Options {
 		    "After an error continue to decompile the other classes.");
 	err.println("                       "+
              "after an error decompiling one of them.");
+	err.println("  -t, --threads <number>  "+
+		    "decompile the classes of a jar with the given");
+	err.println("                       "+
+		    "number of threads.  The output order doesn't change.");
+	err.println("      --method-threads <number>  "+
+		    "analyze the methods of a large class with the");
+	err.println("                       "+
+		    "given number of threads.  The output doesn't change.");
+	err.println("  -C, --cleanup <clslimit>[,<heappercent>]");
+	err.println("                       "+
+		    "drop the loaded class infos after clslimit classes");
+	err.println("                       "+
+		    "or when more than heappercent of the heap is used.");
+	err.println("                       "+
+		    "Limit 0 means never.  Default is 0,"
+		    + CleanupPolicy.DEFAULT_HEAP_PERCENT + ".");
+	err.println("  -K, --cache <dir>    "+
+		    "cache the declarations of the classes in jar files");
+	err.println("                       "+
+		    "in the given directory.  This speeds up later runs.");
+	err.println("      --prefetch       "+
+		    "download all classes of a package from a http class");
+	err.println("                       "+
+		    "path, when the first one is needed.");
+	err.println("  -m, --metrics <file> "+
+		    "write the time and memory spent in every phase for");
+	err.println("                       "+
+		    "every class and method to file, as JSON if the name");
+	err.println("                       "+
+		    "ends with .json, as CSV otherwise.");
+	err.println("      --top <number>   "+
+		    "print the given number of slowest methods at the end.");
+	err.println("                       "+
+		    "Default is 10 if --metrics is given, 0 otherwise.");
+	err.println("  -b, --budget <instrs>[,<millis>[,<steps>]]");
+	err.println("                       "+
+		    "give up the analysis of methods with more than instrs");
+	err.println("                       "+
+		    "instructions, or whose analysis takes more than millis");
+	err.println("                       "+
+		    "or steps.  Their bytecode is written as comment.");
+	err.println("                       "+
+		    "Limit 0 means never.  Default is no budget.");
     }
 
     public static boolean handleOption(int option, int longind, String arg) {
@@ -133,16 +209,38 @@ public class Main extends Options {
 	 String classPathStr,
 	 ZipOutputStream destZip, String destDir, 
 	 TabbedPrintWriter writer, ImportHandler imports) {
+	return decompileClass(className, classPath, classPathStr,
+			      destZip, destDir, writer, imports, 
+			      GlobalOptions.err);
+    }
+
+    /**
+     * Decompiles a single class.  If destZip and destDir are null, the
+     * source is written to writer.
+     * @param err the writer where the class name and all errors are
+     * printed to.
+     * @return false, if an error occured.
+     */
+    static boolean decompileClass
+	(String className, ClassPath classPath,
+	 String classPathStr,
+	 ZipOutputStream destZip, String destDir, 
+	 TabbedPrintWriter writer, ImportHandler imports, PrintWriter err) {
+	DecompilerContext context = new DecompilerContext
+	    (options, GlobalOptions.verboseLevel, err);
+	context.setMetrics(metrics);
+	context.setBudget(budget);
+	context.setAnalysisThreads(methodThreads);
 	try {
 	    ClassInfo clazz;
 	    try {
 		clazz = classPath.getClassInfo(className);
 	    } catch (IllegalArgumentException ex) {
-		GlobalOptions.err.println
+		err.println
 		    ("`"+className+"' is not a class name");
 		return false;
 	    }
-	    if (skipClass(clazz))
+	    if (context.skipClass(clazz))
 		return true;
 	    
 	    String filename = 
@@ -154,7 +252,7 @@ public class Main extends Options {
 		File file = new File (destDir, filename);
 		File directory = new File(file.getParent());
 		if (!directory.exists() && !directory.mkdirs()) {
-		    GlobalOptions.err.println
+		    err.println
 			("Could not create directory " 
 			 + directory.getPath() + ", check permissions.");
 		}
@@ -163,9 +261,10 @@ public class Main extends Options {
 		     imports, false);
 	    }
 	    
-	    GlobalOptions.err.println(className);
+	    err.println(className);
 		
-	    ClassAnalyzer clazzAna = new ClassAnalyzer(clazz, imports);
+	    ClassAnalyzer clazzAna
+		= new ClassAnalyzer(context, clazz, imports);
 	    clazzAna.dumpJavaFile(writer);
 	    
 	    if (destZip != null) {
@@ -173,31 +272,29 @@ public class Main extends Options {
 		    destZip.closeEntry();
 	    } else if (destDir != null)
 		writer.close();
-	    /* Now is a good time to clean up */
-	    System.gc();
 	    return true;
 	} catch (FileNotFoundException ex) {
-	    GlobalOptions.err.println
+	    err.println
 		("Can't read "+ex.getMessage()+".");
-	    GlobalOptions.err.println
+	    err.println
 		("Check the class path ("+classPathStr+
 		 ") and check that you use the java class name.");
 	    return false;
 	} catch (ClassFormatException ex) {
-	    GlobalOptions.err.println
+	    err.println
 		("Error while reading "+className+".");
-	    ex.printStackTrace(GlobalOptions.err);
+	    ex.printStackTrace(err);
 	    return false;
 	} catch (IOException ex) {
-	    GlobalOptions.err.println
+	    err.println
 		("Can't write source of "+className+".");
-	    GlobalOptions.err.println("Check the permissions.");
-	    ex.printStackTrace(GlobalOptions.err);
+	    err.println("Check the permissions.");
+	    ex.printStackTrace(err);
 	    return false;
 	} catch(RuntimeException ex) {
-	    GlobalOptions.err.println
+	    err.println
 		("Error whilst decompiling " + className + ".");
-	    ex.printStackTrace(GlobalOptions.err);
+	    ex.printStackTrace(err);
 	    return false;
 	} catch(InternalError ex) {
 	    /* InternalError should not normally be
@@ -208,13 +305,59 @@ public class Main extends Options {
 	     * TODO: Replace InternalError with something else in
 	     * places they can actually be thrown
 	     */
-	    GlobalOptions.err.println
+	    err.println
 		("Internal error whilst decompiling " + className + ".");
-	    ex.printStackTrace(GlobalOptions.err);
+	    ex.printStackTrace(err);
 	    return false;
 	}
     }
 
+    /**
+     * Decompiles all classes in a jar file with several threads.
+     * @return false, if an error occured and keepGoing was false.
+     * @exception IOException if the jar file can't be read.
+     */
+    static boolean decompileParallel(String jarName, String classPathStr,
+				     int numThreads, 
+				     ZipOutputStream destZip, String destDir,
+				     boolean keepGoing,
+				     int importPackageLimit,
+				     int importClassLimit,
+				     int outputStyle, int indentSize,
+				     int lineLength, CleanupPolicy cleanup,
+				     ClassCache cache) 
+	throws IOException {
+	Vector classNames = new Vector();
+	ZipFile zipFile = new ZipFile(jarName);
+	Enumeration enumeration = zipFile.entries();
+	while (enumeration.hasMoreElements()) {
+	    String entry = ((ZipEntry) enumeration.nextElement()).getName();
+	    if (entry.endsWith(".class"))
+		classNames.addElement(entry.substring(0, entry.length() - 6)
+				      .replace('/', '.'));
+	}
+	zipFile.close();
+	String[] names = new String[classNames.size()];
+	classNames.copyInto(names);
+
+	int tabWidth = 0;
+	if (destZip == null && destDir != null) {
+	    /* Use the same settings as decompileClass uses for
+	     * single files.
+	     */
+	    outputStyle = TabbedPrintWriter.BRACE_AT_EOL;
+	    indentSize = 4;
+	    tabWidth = 8;
+	    lineLength = 79;
+	}
+	ParallelDecompiler decompiler = new ParallelDecompiler
+	    (jarName, classPathStr, names, numThreads, 
+	     importPackageLimit, importClassLimit,
+	     outputStyle, indentSize, tabWidth, lineLength, cleanup, cache);
+	decompiler.setPrefetch(prefetch);
+	return decompiler.decompile(destZip, destDir, keepGoing);
+    }
+
     public static void main(String[] params) throws Throwable{
 	decompile(params);
 	/* When AWT applications are compiled with insufficient
@@ -249,11 +392,17 @@ public class Main extends Options {
 	int indentSize = 4;
         int outputLineLength = 79;
 	boolean keepGoing = false;
+	int numThreads = 1;
+	int cleanupClassLimit = 0;
+	int cleanupHeapPercent = CleanupPolicy.DEFAULT_HEAP_PERCENT;
+	ClassCache cache = null;
+	String metricsFile = null;
+	int topMethods = -1;
 
 	GlobalOptions.err.println(GlobalOptions.copyright);
 
 	boolean errorInParams = false;
-	Getopt g = new Getopt("net.sf.jode.decompiler.Main", params, "hVvkc:d:D:i:s:l:",
+	Getopt g = new Getopt("net.sf.jode.decompiler.Main", params, "hVvkt:C:K:m:b:c:d:D:i:s:l:",
 			      longOptions, true);
 	for (int opt = g.getopt(); opt != -1; opt = g.getopt()) {
 	    switch(opt) {
@@ -275,6 +424,86 @@ public class Main extends Options {
 	    case 'k':
 		keepGoing = true;
 		break;
+	    case 't': {
+		String arg = g.getOptarg();
+		try {
+		    numThreads = Integer.parseInt(arg.trim());
+		    if (numThreads < 1)
+			throw new NumberFormatException();
+		} catch (NumberFormatException ex) {
+		    GlobalOptions.err.println
+			("net.sf.jode.decompiler.Main: Argument `"
+			 +arg+"' to --threads must be a positive number.");
+		    errorInParams = true;
+		}
+		break;
+	    }
+	    case 'M': {
+		String arg = g.getOptarg();
+		try {
+		    methodThreads = Integer.parseInt(arg.trim());
+		    if (methodThreads < 1)
+			throw new NumberFormatException();
+		} catch (NumberFormatException ex) {
+		    GlobalOptions.err.println
+			("net.sf.jode.decompiler.Main: Argument `"
+			 +arg+"' to --method-threads must be a positive number.");
+		    errorInParams = true;
+		}
+		break;
+	    }
+	    case 'C': {
+		String arg = g.getOptarg();
+		int comma = arg.indexOf(',');
+		try {
+		    int classLimit = Integer.parseInt
+			(comma >= 0 ? arg.substring(0, comma) : arg);
+		    int heapPercent = comma >= 0
+			? Integer.parseInt(arg.substring(comma+1))
+			: cleanupHeapPercent;
+		    if (classLimit < 0 || heapPercent < 0 || heapPercent > 100)
+			throw new IllegalArgumentException();
+		    cleanupClassLimit = classLimit;
+		    cleanupHeapPercent = heapPercent;
+		} catch (RuntimeException ex) {
+		    GlobalOptions.err.println
+			("net.sf.jode.decompiler.Main: Invalid argument for -C option.");
+		    errorInParams = true;
+		}
+		break;
+	    }
+	    case 'K':
+		cache = new ClassCache(new File(g.getOptarg()));
+		break;
+	    case 'P':
+		prefetch = true;
+		break;
+	    case 'm':
+		metricsFile = g.getOptarg();
+		break;
+	    case 'b':
+		try {
+		    budget = AnalysisBudget.parse(g.getOptarg());
+		} catch (IllegalArgumentException ex) {
+		    GlobalOptions.err.println
+			("net.sf.jode.decompiler.Main: Invalid argument for -b option.");
+		    errorInParams = true;
+		}
+		break;
+	    case 'T': {
+		String arg = g.getOptarg();
+		try {
+		    topMethods = Integer.parseInt(arg.trim());
+		    if (topMethods < 0)
+			throw new NumberFormatException();
+		} catch (NumberFormatException ex) {
+		    GlobalOptions.err.println
+			("net.sf.jode.decompiler.Main: Argument `"
+			 +arg+"' to --top must be a number.");
+		    errorInParams = true;
+		}
+		break;
+	    }
 	    case 'v': {
 		String arg = g.getOptarg();
 		if (arg == null)
@@ -369,7 +598,16 @@ public class Main extends Options {
 	}
 	if (errorInParams)
 	    return;
+	if (topMethods < 0)
+	    topMethods = metricsFile != null ? 10 : 0;
+	metrics = (metricsFile != null || topMethods > 0)
+	    ? new DecompilerMetrics() : null;
+	CleanupPolicy cleanup
+	    = new CleanupPolicy(cleanupClassLimit, cleanupHeapPercent);
 	classPath = new ClassPath(classPathStr);
+	if (cache != null)
+	    classPath.setClassCache(cache);
+	classPath.setPrefetch(prefetch);
 	ImportHandler imports = new ImportHandler(classPath,
 						  importPackageLimit,
 						  importClassLimit);
@@ -399,8 +637,20 @@ public class Main extends Options {
 		    /* The user obviously wants to decompile a jar/zip file.
 		     * Lets do him a pleasure and allow this.
 		     */
+		    if (numThreads > 1) {
+			/* An error only stops this jar, like below. */
+			decompileParallel(params[i], classPathStr,
+					  numThreads, destZip, destDir,
+					  keepGoing, importPackageLimit,
+					  importClassLimit, outputStyle,
+					  indentSize, outputLineLength,
+					  cleanup, cache);
+			continue;
+		    }
 		    ClassPath zipClassPath
 			= new ClassPath(params[i], classPath);
+		    if (cache != null)
+			zipClassPath.setClassCache(cache);
 		    Enumeration enumeration = new ZipFile(params[i]).entries();
 		    while (enumeration.hasMoreElements()) {
 			String entry
@@ -408,20 +658,22 @@ public class Main extends Options {
 			if (entry.endsWith(".class")) {
 			    entry = entry.substring(0, entry.length() - 6)
 				.replace('/', '.');
-			    if (!decompileClass(entry, zipClassPath, 
-						classPathStr,
-						destZip, destDir, 
-						writer, imports)
-				&& !keepGoing)
+			    boolean ok = decompileClass(entry, zipClassPath, 
+							classPathStr,
+							destZip, destDir, 
+							writer, imports);
+			    cleanup.classDone(zipClassPath);
+			    if (!ok && !keepGoing)
 				break;
 			}
 		    }
 		} else {
-		    if (!decompileClass(params[i], classPath, 
-					classPathStr,
-					destZip, destDir, 
-					writer, imports)
-			&& !keepGoing)
+		    boolean ok = decompileClass(params[i], classPath, 
+						classPathStr,
+						destZip, destDir, 
+						writer, imports);
+		    cleanup.classDone(classPath);
+		    if (!ok && !keepGoing)
 			break;
 		}
 	    } catch (IOException ex) {
@@ -438,5 +690,37 @@ public class Main extends Options {
 		ex.printStackTrace(GlobalOptions.err);
 	    }
 	}
+	if (cache != null) {
+	    try {
+		cache.save();
+	    } catch (IOException ex) {
+		GlobalOptions.err.println("Can't write class cache");
+		ex.printStackTrace(GlobalOptions.err);
+	    }
+	}
+	if (GlobalOptions.verboseLevel > 0)
+	    cleanup.printSummary(GlobalOptions.err);
+	if (metricsFile != null) {
+	    try {
+		Writer out = new FileWriter(metricsFile);
+		try {
+		    if (metricsFile.toLowerCase().endsWith(".json"))
+			metrics.writeJSON(out);
+		    else
+			metrics.writeCSV(out);
+		} finally {
+		    out.close();
+		}
+	    } catch (IOException ex) {
+		GlobalOptions.err.println("Can't write metrics to "
+					  + metricsFile);
+		ex.printStackTrace(GlobalOptions.err);
+	    }
+	}
+	if (topMethods > 0)
+	    metrics.printSlowestMethods(GlobalOptions.err, topMethods);
+	metrics = null;
+	budget = null;
+	methodThreads = 1;
     }
 }
@@ -18,7 +18,6 @@
  */
 
 package net.sf.jode.decompiler;
-import net.sf.jode.GlobalOptions;
 import net.sf.jode.bytecode.BasicBlocks;
 import net.sf.jode.bytecode.Block;
 import net.sf.jode.bytecode.ClassInfo;
@@ -26,6 +25,8 @@ import net.sf.jode.bytecode.Handler;
 import net.sf.jode.bytecode.Instruction;
 import net.sf.jode.bytecode.LocalVariableInfo;
 import net.sf.jode.bytecode.MethodInfo;
+import net.sf.jode.bytecode.Reference;
+import net.sf.jode.bytecode.TypeSignature;
 import net.sf.jode.jvm.SyntheticAnalyzer;
 import net.sf.jode.type.*;
 import net.sf.jode.expr.Expression;
@@ -44,10 +45,13 @@ import java.lang.reflect.Modifier;
 import java.util.Vector;
 import java.util.Enumeration;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 
 ///#def COLLECTIONS java.util
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 ///#enddef
@@ -128,6 +132,35 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
      * end of the <code>analyze()</code> phase.  
      */
     FlowBlock methodHeader;
+    /**
+     * The record where the time spent for this method is measured, or
+     * null if the context has no metrics.
+     */
+    DecompilerMetrics.Record metricsRecord;
+    /**
+     * If the analysis of the code exceeded the budget, this is the
+     * reason.  The code is then dumped as bytecode listing and
+     * methodHeader is null.
+     */
+    String abandonReason;
+    /**
+     * The budget of the analysis, or null if it is unlimited.
+     */
+    AnalysisBudget budget;
+    /**
+     * The time when the analysis of the code exceeds the budget.
+     */
+    long budgetDeadline;
+    /**
+     * The number of flow analysis steps that are left, if the budget
+     * limits them.
+     */
+    int budgetSteps;
+    /**
+     * The time of the budget that is left, while the analysis of
+     * this method waits for the next phase.
+     */
+    long budgetMillisLeft;
     /**
      * A list of all locals contained in this method.
      */
@@ -254,6 +287,14 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 	return imports;
     }
 
+    /**
+     * Returns the context of the decompilation, which is the context
+     * of the class analyzer.
+     */
+    public final DecompilerContext getContext() {
+	return classAnalyzer.getContext();
+    }
+
     /**
      * Registers a type at the import handler.  This should be called
      * if an expression needs to print the type name to the code.  The
@@ -413,7 +454,7 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
      */
     public LocalInfo getLocalInfo(LocalVariableInfo lvi) {
         LocalInfo li = new LocalInfo(this, lvi.getSlot());
-	if ((Options.options & Options.OPTION_LVT) != 0
+	if (getContext().hasOption(Options.OPTION_LVT)
 	    && lvi.getName() != null)
 	    li.addHint(lvi.getName(), Type.tType(classAnalyzer.getClassPath(),
 						 lvi.getType()));
@@ -437,6 +478,94 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 	}
     }
 
+    /**
+     * Checks if the analysis of the code exceeded its budget.  This is
+     * called for every step of the flow analysis and of the passes
+     * that map the stack and declare the locals.
+     * @exception BudgetExceededException if the budget is exceeded.
+     */
+    public void checkBudget() {
+	if (budget == null)
+	    return;
+	if (budget.getMaxSteps() > 0 && --budgetSteps < 0)
+	    throw new BudgetExceededException
+		("more than " + budget.getMaxSteps() + " analysis steps");
+	if (budget.getMaxMillis() > 0
+	    && System.currentTimeMillis() > budgetDeadline)
+	    throw new BudgetExceededException
+		("more than " + budget.getMaxMillis() + " ms");
+    }
+
+    /**
+     * Tells if the analysis of the code was abandoned, because it
+     * exceeded the budget.  The code is then dumped as a bytecode
+     * listing and getMethodHeader() returns null.
+     */
+    public boolean isAbandoned() {
+	return abandonReason != null;
+    }
+
+    /**
+     * Analyzes the code within the budget of the context.  If the
+     * budget is exceeded, the analysis is abandoned.
+     */
+    private void analyzeCodeInBudget(ProgressListener pl, 
+				     double done, double scale) {
+	budget = getContext().getBudget();
+	if (budget == null) {
+	    analyzeCode(pl, done, scale);
+	    return;
+	}
+	int instructions = (int) getComplexity();
+	if (budget.getMaxInstructions() > 0
+	    && instructions > budget.getMaxInstructions()) {
+	    abandon(instructions + " instructions");
+	    return;
+	}
+	budgetSteps = budget.getMaxSteps();
+	budgetMillisLeft = budget.getMaxMillis();
+	resumeBudget();
+	try {
+	    analyzeCode(pl, done, scale);
+	    suspendBudget();
+	} catch (BudgetExceededException ex) {
+	    abandon(ex.getMessage());
+	}
+    }
+
+    /**
+     * Continues the budget for the next phase of the analysis.  The
+     * time between the phases, when the other methods are analyzed,
+     * doesn't count.
+     */
+    private void resumeBudget() {
+	budgetDeadline = System.currentTimeMillis() + budgetMillisLeft;
+    }
+
+    /**
+     * Remembers the time that is left of the budget after a phase of
+     * the analysis.
+     */
+    private void suspendBudget() {
+	budgetMillisLeft = budgetDeadline - System.currentTimeMillis();
+    }
+
+    /**
+     * Abandons the analysis of the code, because it exceeded the
+     * budget.  This drops the partly analyzed flow blocks and the
+     * method scoped classes that were found in them.
+     * @param reason the reason printed to the user.
+     */
+    private void abandon(String reason) {
+	abandonReason = reason;
+	methodHeader = null;
+	anonConstructors.removeAllElements();
+	budget = null;
+	getContext().getErr().println
+	    ("Giving up analysis of " + getClazz().getName() + "."
+	     + methodName + ": " + abandonReason);
+    }
+
     /**
      * Analyzes the code of this method.  This creates the
      * flow blocks (including methodHeader) and analyzes them.  
@@ -445,8 +574,8 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
     {
 	int instrsPerStep = Integer.MAX_VALUE;
 	double instrScale = (scale * 0.9) / getComplexity();
-	if (GlobalOptions.verboseLevel > 0)
-	    GlobalOptions.err.print(methodName+": ");
+	if (getContext().getVerboseLevel() > 0)
+	    getContext().getErr().print(methodName+": ");
 
 	if (pl != null)
 	    instrsPerStep = (int) (STEP_COMPLEXITY / instrScale);
@@ -465,8 +594,8 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 		int mark = 100;
 		Instruction[] instrs = blocks[i].getInstructions();
 		for (int j=0; j < instrs.length; j++) {
-		    if (GlobalOptions.verboseLevel > 0 && j > mark) {
-			GlobalOptions.err.print('.');
+		    if (getContext().getVerboseLevel() > 0 && j > mark) {
+			getContext().getErr().print('.');
 			mark += 100;
 		    }
 		    if (++count >= instrsPerStep) {
@@ -520,23 +649,23 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
             }
         }
 
-        if (GlobalOptions.verboseLevel > 0)
-            GlobalOptions.err.print('-');
+        if (getContext().getVerboseLevel() > 0)
+            getContext().getErr().print('-');
             
         //excHandlers.analyze();
         methodHeader.analyze();
 	methodHeader.removeStartPred();
 
-	if ((Options.options & Options.OPTION_PUSH) == 0
+	if (!getContext().hasOption(Options.OPTION_PUSH)
 	    && methodHeader.mapStackToLocal())
 	    methodHeader.removePush();
-	if ((Options.options & Options.OPTION_ONETIME) != 0)
+	if (getContext().hasOption(Options.OPTION_ONETIME))
 	    methodHeader.removeOnetimeLocals();
 
 	methodHeader.mergeParams(param);
 
-	if (GlobalOptions.verboseLevel > 0)
-	    GlobalOptions.err.println("");
+	if (getContext().getVerboseLevel() > 0)
+	    getContext().getErr().println("");
 	if (pl != null) {
 	    done += 0.1 * scale;
 	    pl.updateProgress(done, methodName);
@@ -552,14 +681,19 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
     {
 	if (pl != null)
 	    pl.updateProgress(done, methodName);
+	DecompilerMetrics metrics = getContext().getMetrics();
+	if (metrics != null)
+	    metricsRecord = metrics.createMethodRecord
+		(getClazz().getName(), methodName + minfo.getType(),
+		 (int) getComplexity());
 	if (bb != null) {
-	    if ((Options.options & Options.OPTION_VERIFY) != 0) {
+	    if (getContext().hasOption(Options.OPTION_VERIFY)) {
 		CodeVerifier verifier
 		    = new CodeVerifier(getClazz(), minfo, bb);
 		try {
 		    verifier.verify();
 		} catch (VerifyException ex) {
-		    ex.printStackTrace(GlobalOptions.err);
+		    ex.printStackTrace(getContext().getErr());
 		    throw new InternalError("Verification error");
 		}
 	    }
@@ -596,8 +730,16 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
         if (!isConstructor)
             imports.useType(methodType.getReturnType());
 
-	if (bb != null)
-	    analyzeCode(pl, done, scale);
+	if (bb != null) {
+	    if (metricsRecord != null)
+		metricsRecord.startPhase(DecompilerMetrics.ANALYZE);
+	    try {
+		analyzeCodeInBudget(pl, done, scale);
+	    } finally {
+		if (metricsRecord != null)
+		    metricsRecord.stopPhase();
+	    }
+	}
     }
 
     /**
@@ -660,9 +802,13 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 	    done.add(param[i]);
 	}
 	
-	if (bb != null) {
-	    methodHeader.makeDeclaration(done);
-	    methodHeader.simplify();
+	if (methodHeader != null) {
+	    if (budget != null)
+		makeDeclarationInBudget(done);
+	    else {
+		methodHeader.makeDeclaration(done);
+		methodHeader.simplify();
+	    }
 	}
 	for (int i=0; i < param.length; i++) {
 	    done.remove(param[i]);
@@ -670,6 +816,25 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 	}
     }
 
+    /**
+     * Makes the declarations within what is left of the budget.  If
+     * the budget is exceeded, the analysis is abandoned and the
+     * declarations made so far are forgotten.
+     */
+    private void makeDeclarationInBudget(Set done) {
+	Set declared = new HashSet(done);
+	resumeBudget();
+	try {
+	    methodHeader.makeDeclaration(done);
+	    methodHeader.simplify();
+	    suspendBudget();
+	} catch (BudgetExceededException ex) {
+	    done.clear();
+	    done.addAll(declared);
+	    abandon(ex.getMessage());
+	}
+    }
+
     /**
      * Tells if this method is synthetic or implicit or something else, so
      * that it doesn't have to be written to the source code.
@@ -686,8 +851,8 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 		return true;
 	    if (synth.getKind() >= SyntheticAnalyzer.ACCESSGETFIELD
 		&& synth.getKind() <= SyntheticAnalyzer.ACCESSDUPPUTSTATIC
-		&& (Options.options & Options.OPTION_INNER) != 0
-		&& (Options.options & Options.OPTION_ANON) != 0)
+		&& getContext().hasOption(Options.OPTION_INNER)
+		&& getContext().hasOption(Options.OPTION_ANON))
 		return true;
 	}
 
@@ -758,13 +923,40 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
      */
     public void dumpSource(TabbedPrintWriter writer) 
          throws IOException
+    {
+	if (budget != null) {
+	    /* Once the code is written it can't be taken back, so
+	     * check the budget before.
+	     */
+	    resumeBudget();
+	    try {
+		checkBudget();
+	    } catch (BudgetExceededException ex) {
+		abandon(ex.getMessage());
+	    }
+	    budget = null;
+	}
+	if (metricsRecord == null) {
+	    dumpMethod(writer);
+	    return;
+	}
+	metricsRecord.startPhase(DecompilerMetrics.DUMP);
+	try {
+	    dumpMethod(writer);
+	} finally {
+	    metricsRecord.stopPhase();
+	}
+    }
+
+    private void dumpMethod(TabbedPrintWriter writer) 
+         throws IOException
     {
 	boolean declareAsConstructor = isConstructor;
 	int skipParams = 0;
 	int modifiedModifiers = minfo.getModifiers();
 
 	if (isConstructor() && !isStatic()
-	    && (Options.options & Options.OPTION_CONTRAFO) != 0) {
+	    && getContext().hasOption(Options.OPTION_CONTRAFO)) {
 	    if (classAnalyzer.outerValues != null)
 		skipParams = classAnalyzer.outerValues.getCount();
 	    else if (classAnalyzer.getOuterInstance() != null)
@@ -889,7 +1081,10 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
         if (bb != null) {
 	    writer.openBraceNoIndent();
             writer.tab();
-	    methodHeader.dumpSource(writer);
+	    if (abandonReason != null)
+		dumpAbandoned(writer);
+	    else
+		methodHeader.dumpSource(writer);
             writer.untab();
 	    writer.closeBraceNoIndent();
         } else
@@ -897,6 +1092,133 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 	writer.popScope();
     }
 
+    /**
+     * Dumps the body of a method whose analysis was abandoned: the
+     * bytecode as comment and a stub that throws an exception.  The
+     * stub of a constructor calls the same super or this constructor
+     * as the bytecode, with default arguments.
+     */
+    private void dumpAbandoned(TabbedPrintWriter writer) 
+	throws IOException {
+	StringWriter listing = new StringWriter();
+	PrintWriter output = new PrintWriter(listing);
+	bb.dumpCode(output);
+	output.flush();
+	writer.println("/* Analysis abandoned: " + abandonReason + ".");
+	writer.println(" * Bytecode:");
+	writer.println(" */");
+	/* Use line comments, since string constants in the listing
+	 * may contain the end of a block comment.
+	 */
+	String code = listing.toString();
+	int start = 0;
+	int end;
+	while ((end = code.indexOf('\n', start)) >= 0) {
+	    int len = end > start && code.charAt(end - 1) == '\r' ? 1 : 0;
+	    writer.println("// " + code.substring(start, end - len));
+	    start = end + 1;
+	}
+	if (start < code.length())
+	    writer.println("// " + code.substring(start));
+	if (isConstructor() && !isStatic()) {
+	    Reference call = findConstructorCall();
+	    if (call != null)
+		dumpConstructorCall(writer, call);
+	}
+	/* A static initializer must be able to complete normally. */
+	if (isConstructor() && isStatic())
+	    writer.print("if (true) ");
+	writer.println("throw new RuntimeException(\"Analysis of "
+		       + methodName + " abandoned\");");
+    }
+
+    /**
+     * Finds the call of the super or this constructor in the code of
+     * this constructor.  This is the first constructor call that
+     * doesn't initialize an object created by a new instruction.
+     * @return the reference to the called constructor, or null if
+     * there is none, e.g. in java.lang.Object.
+     */
+    private Reference findConstructorCall() {
+	int newObjects = 0;
+	Block[] blocks = bb.getBlocks();
+	for (int i = 0; i < blocks.length; i++) {
+	    Instruction[] instrs = blocks[i].getInstructions();
+	    for (int j = 0; j < instrs.length; j++) {
+		int opcode = instrs[j].getOpcode();
+		if (opcode == Opcodes.opc_new)
+		    newObjects++;
+		else if (opcode == Opcodes.opc_invokespecial
+			 && instrs[j].getReference().getName()
+			 .equals("<init>")) {
+		    if (newObjects == 0)
+			return instrs[j].getReference();
+		    newObjects--;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Dumps a call of the given super or this constructor with default
+     * arguments.
+     */
+    private void dumpConstructorCall(TabbedPrintWriter writer,
+				     Reference call) {
+	String[] paramTypes = TypeSignature.getParameterTypes(call.getType());
+	int first = 0;
+	if (call.getClazz().equals("L" + getClazz().getName()
+				   .replace('.', '/') + ";")) {
+	    writer.print("this(");
+	    /* The other constructor hides the same outer values. */
+	    if (getContext().hasOption(Options.OPTION_CONTRAFO)) {
+		if (classAnalyzer.outerValues != null)
+		    first = classAnalyzer.outerValues.getCount();
+		else if (classAnalyzer.getOuterInstance() != null)
+		    first = 1;
+	    }
+	} else
+	    writer.print("super(");
+	for (int i = first; i < paramTypes.length; i++) {
+	    if (i > first)
+		writer.print(", ");
+	    switch (paramTypes[i].charAt(0)) {
+	    case 'Z':
+		writer.print("false");
+		break;
+	    case 'B':
+		writer.print("(byte) 0");
+		break;
+	    case 'C':
+		writer.print("'\\0'");
+		break;
+	    case 'S':
+		writer.print("(short) 0");
+		break;
+	    case 'I':
+		writer.print("0");
+		break;
+	    case 'J':
+		writer.print("0L");
+		break;
+	    case 'F':
+		writer.print("0.0F");
+		break;
+	    case 'D':
+		writer.print("0.0");
+		break;
+	    default:
+		/* Cast the null to choose the right constructor. */
+		writer.print("(");
+		writer.printType(Type.tType(classAnalyzer.getClassPath(),
+					    paramTypes[i]));
+		writer.print(") null");
+	    }
+	}
+	writer.println(");");
+    }
+
     /**
      * Checks if the variable set contains a local with the given name.
      * @return the local info the has the given name, or null if it doesn't
@@ -1026,7 +1348,7 @@ public class MethodAnalyzer implements Scope, ClassDeclarer {
 		anonAnalyzer = new ClassAnalyzer(this, clazz, imports,
 						 outerValueArray);
 	    } catch (IOException ex) {
-		GlobalOptions.err.println
+		getContext().getErr().println
 		    ("Error while reading anonymous class "+clazz+".");
 		return;
 	    }
@@ -0,0 +1,139 @@
+/* NameSerials Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+
+/**
+ * The serial numbers that are appended to generated names of local
+ * variables, method scoped classes and labels to make them unique.<br>
+ *
+ * Every {@link DecompilerContext} has its own serial numbers.  They
+ * are reset for every top level class (see {@link #reset}), so that
+ * the output of a class doesn't depend on the classes that were
+ * decompiled before it.<br>
+ *
+ * The methods of a class may be analyzed by several threads (see
+ * {@link ClassAnalyzer#analyze}).  To give the same names as a
+ * sequential analysis, every thread holds a ticket, the index of the
+ * method it analyzes.  A thread with a ticket waits in {@link #next}
+ * until the methods with smaller tickets are finished.  Threads
+ * without a ticket never wait.
+ */
+public final class NameSerials {
+    public static final int LOCAL         = 0;
+    public static final int CLASS         = 1;
+    public static final int FLOW_LABEL    = 2;
+    public static final int SWITCH_LABEL  = 3;
+    public static final int LOOP_LABEL    = 4;
+    public static final int BLOCK_LABEL   = 5;
+
+    private int[] serials = new int[6];
+    private int nextAnonymousSlot = -1;
+
+    /**
+     * The ticket of the current thread, null if it has none.
+     */
+    private final ThreadLocal ticket = new ThreadLocal();
+    /**
+     * The finished tickets, null if no tickets are given out.
+     */
+    private boolean[] finished;
+    /**
+     * The number of tickets at the start of finished, that are
+     * finished.
+     */
+    private int finishedPrefix;
+
+    /**
+     * Restarts all serial numbers.  This is called before a new top
+     * level class is decompiled.
+     */
+    public void reset() {
+	for (int i = 0; i < serials.length; i++)
+	    serials[i] = 0;
+	nextAnonymousSlot = -1;
+    }
+
+    /**
+     * Gets the next serial number of the given kind.
+     * @param kind one of the constants LOCAL, CLASS, ..., BLOCK_LABEL.
+     */
+    public synchronized int next(int kind) {
+	Integer myTicket = (Integer) ticket.get();
+	if (myTicket != null) {
+	    boolean interrupted = false;
+	    while (finished != null && finishedPrefix < myTicket.intValue()) {
+		try {
+		    wait();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted)
+		Thread.currentThread().interrupt();
+	}
+	return serials[kind]++;
+    }
+
+    /**
+     * Prepares the given number of tickets.  The tickets are the
+     * numbers from 0 to count - 1.
+     */
+    public synchronized void startTickets(int count) {
+	finished = new boolean[count];
+	finishedPrefix = 0;
+    }
+
+    /**
+     * Gives the ticket to the current thread.
+     * @param nr the ticket, between 0 and the count of startTickets.
+     */
+    public void takeTicket(int nr) {
+	ticket.set(Integer.valueOf(nr));
+    }
+
+    /**
+     * Marks the ticket of the current thread as finished, and takes
+     * it away from the thread.
+     */
+    public synchronized void finishTicket() {
+	int nr = ((Integer) ticket.get()).intValue();
+	ticket.set(null);
+	finished[nr] = true;
+	while (finishedPrefix < finished.length && finished[finishedPrefix])
+	    finishedPrefix++;
+	notifyAll();
+    }
+
+    /**
+     * Forgets the tickets.  This is called after all tickets are
+     * finished.
+     */
+    public synchronized void stopTickets() {
+	finished = null;
+    }
+
+    /**
+     * Gets a new slot number for a local that doesn't live in a
+     * real slot.  These numbers are negative.
+     */
+    public synchronized int nextAnonymousSlot() {
+	return nextAnonymousSlot--;
+    }
+}
@@ -19,7 +19,6 @@
 
 package net.sf.jode.decompiler;
 import net.sf.jode.bytecode.ClassInfo;
-import java.io.IOException;
 
 public class Options {
     public static final int OPTION_LVT       = 0x0001;
@@ -33,6 +32,10 @@ public class Options {
     public static final int OPTION_VERIFY    = 0x0100;
     public static final int OPTION_CONTRAFO  = 0x0200;
 
+    /**
+     * The default options.  Every {@link DecompilerContext} gets a copy
+     * of these options when it is created.
+     */
     public static int options = 
 	OPTION_LVT | OPTION_INNER | OPTION_ANON | OPTION_PRETTY |
 	OPTION_DECRYPT | OPTION_VERIFY | OPTION_CONTRAFO | OPTION_PUSH;
@@ -46,14 +49,6 @@ public class Options {
     }
 
     public static boolean skipClass(ClassInfo clazz) {
-	if (!doInner() && !doAnonymous())
-	    return false;
-	try {
-	    clazz.load(ClassInfo.OUTERCLASS);
-	} catch (IOException ex) {
-	    return false;
-	}
-	return (doInner() && clazz.getOuterClass() != null
-		|| doAnonymous() && clazz.isMethodScoped());
+	return new DecompilerContext().skipClass(clazz);
     }
 }
@@ -0,0 +1,288 @@
+/* ParallelDecompiler Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bytecode.ClassCache;
+import net.sf.jode.bytecode.ClassPath;
+import net.sf.jode.GlobalOptions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Decompiles the classes of a jar file with several worker threads.
+ * Every worker has its own class path and import handler, so that the
+ * workers don't share any class infos.  The decompiled sources are
+ * collected by the calling thread and written in the order of the
+ * given class names, so that the output doesn't depend on the number
+ * of threads.  Every worker drops the class infos of its class path
+ * according to its own copy of the cleanup policy.  The workers
+ * share the class cache, if one is given.
+ */
+class ParallelDecompiler {
+    /**
+     * The number of classes a worker may be ahead of the output, per
+     * worker.  This limits the memory needed to hold the sources that
+     * are not yet written.
+     */
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private String jarName;
+    private String classPathStr;
+    private String[] classNames;
+    private int importPackageLimit;
+    private int importClassLimit;
+    private int outputStyle;
+    private int indentSize;
+    private int tabWidth;
+    private int lineWidth;
+    private CleanupPolicy cleanup;
+    private ClassCache cache;
+    private boolean prefetch = false;
+
+    private int numThreads;
+    private int window;
+
+    /**
+     * The decompiled source for every class, null if the class isn't
+     * finished yet.
+     */
+    private String[] sources;
+    /**
+     * The messages (class name, warnings and errors) for every class.
+     */
+    private String[] messages;
+    private boolean[] success;
+    private int nextClass = 0;
+    private int written = 0;
+    private boolean aborted = false;
+
+    public ParallelDecompiler(String jarName, String classPathStr,
+			      String[] classNames, int numThreads,
+			      int importPackageLimit, int importClassLimit,
+			      int outputStyle, int indentSize,
+			      int tabWidth, int lineWidth,
+			      CleanupPolicy cleanup, ClassCache cache) {
+	this.jarName = jarName;
+	this.classPathStr = classPathStr;
+	this.classNames = classNames;
+	this.numThreads = numThreads;
+	this.window = numThreads * WINDOW_PER_THREAD;
+	this.importPackageLimit = importPackageLimit;
+	this.importClassLimit = importClassLimit;
+	this.outputStyle = outputStyle;
+	this.indentSize = indentSize;
+	this.tabWidth = tabWidth;
+	this.lineWidth = lineWidth;
+	this.cleanup = cleanup;
+	this.cache = cache;
+	sources = new String[classNames.length];
+	messages = new String[classNames.length];
+	success = new boolean[classNames.length];
+    }
+
+    /**
+     * Tells the class paths of the workers to prefetch packages from
+     * HTTP servers.
+     * @see ClassPath#setPrefetch
+     */
+    public void setPrefetch(boolean prefetch) {
+	this.prefetch = prefetch;
+    }
+
+    private synchronized int nextJob() throws InterruptedException {
+	while (!aborted && nextClass < classNames.length
+	       && nextClass >= written + window)
+	    wait();
+	if (aborted || nextClass >= classNames.length)
+	    return -1;
+	return nextClass++;
+    }
+
+    private synchronized void finishJob(int index, boolean ok,
+					String source, String message) {
+	success[index] = ok;
+	messages[index] = message;
+	sources[index] = source;
+	notifyAll();
+    }
+
+    private synchronized void waitForJob(int index)
+	throws InterruptedException {
+	while (sources[index] == null)
+	    wait();
+    }
+
+    private synchronized void releaseJob(int index, boolean abort) {
+	sources[index] = null;
+	messages[index] = null;
+	written = index + 1;
+	if (abort)
+	    aborted = true;
+	notifyAll();
+    }
+
+    class Worker extends Thread {
+	public Worker(int nr) {
+	    super("decompiler-" + nr);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    ClassPath classPath = new ClassPath
+		(jarName, new ClassPath(classPathStr));
+	    if (cache != null)
+		classPath.setClassCache(cache);
+	    classPath.setPrefetch(prefetch);
+	    ImportHandler imports = new ImportHandler
+		(classPath, importPackageLimit, importClassLimit);
+	    CleanupPolicy policy = cleanup.copy();
+	    try {
+		int index;
+		while ((index = nextJob()) >= 0) {
+		    StringWriter source = new StringWriter();
+		    StringWriter message = new StringWriter();
+		    PrintWriter err = new PrintWriter(message);
+		    TabbedPrintWriter writer = new TabbedPrintWriter
+			(source, imports, false, outputStyle, indentSize,
+			 tabWidth, lineWidth);
+		    boolean ok = false;
+		    try {
+			ok = Main.decompileClass
+			    (classNames[index], classPath, classPathStr,
+			     null, null, writer, imports, err);
+			/* Like the sequential decompiler, keep what was
+			 * written before an error.
+			 */
+			writer.flush();
+			policy.classDone(classPath);
+		    } catch (Throwable ex) {
+			/* Don't let one class stop the whole worker,
+			 * e.g. a StackOverflowError on a huge method.
+			 * The writer waits for every class.
+			 */
+			err.println("Error whilst decompiling "
+				    + classNames[index] + ".");
+			ex.printStackTrace(err);
+			ok = false;
+		    } finally {
+			err.flush();
+			finishJob(index, ok, source.toString(),
+				  message.toString());
+		    }
+		}
+	    } catch (InterruptedException ex) {
+		/* We were asked to stop. */
+	    } finally {
+		cleanup.addStatistics(policy);
+	    }
+	}
+    }
+
+    private boolean writeSource(String className, String source, boolean ok,
+				ZipOutputStream destZip, String destDir,
+				Writer out) {
+	if (ok && source.length() == 0)
+	    /* The class was skipped. */
+	    return true;
+	String filename =
+	    className.replace('.', File.separatorChar)+".java";
+	try {
+	    if (destZip != null) {
+		destZip.putNextEntry(new ZipEntry(filename));
+		destZip.write(source.getBytes());
+		destZip.closeEntry();
+	    } else if (destDir != null) {
+		File file = new File (destDir, filename);
+		File directory = new File(file.getParent());
+		if (!directory.exists() && !directory.mkdirs()) {
+		    GlobalOptions.err.println
+			("Could not create directory "
+			 + directory.getPath() + ", check permissions.");
+		}
+		OutputStream os = new FileOutputStream(file);
+		Writer fileOut = new OutputStreamWriter(os);
+		fileOut.write(source);
+		fileOut.close();
+	    } else {
+		out.write(source);
+		out.flush();
+	    }
+	    return true;
+	} catch (IOException ex) {
+	    GlobalOptions.err.println
+		("Can't write source of "+className+".");
+	    GlobalOptions.err.println("Check the permissions.");
+	    ex.printStackTrace(GlobalOptions.err);
+	    return false;
+	}
+    }
+
+    /**
+     * Decompiles all classes and writes them to the given destination.
+     * If destZip and destDir are null, the sources are written to
+     * System.out.
+     * @param keepGoing true, if the other classes should be
+     * decompiled after an error.
+     * @return false, if an error occured and keepGoing was false.
+     */
+    public boolean decompile(ZipOutputStream destZip, String destDir,
+			     boolean keepGoing) {
+	Worker[] workers = new Worker[numThreads];
+	for (int i = 0; i < numThreads; i++) {
+	    workers[i] = new Worker(i);
+	    workers[i].start();
+	}
+
+	Writer out = null;
+	if (destZip == null && destDir == null)
+	    out = new OutputStreamWriter(System.out);
+
+	boolean result = true;
+	try {
+	    for (int i = 0; i < classNames.length; i++) {
+		waitForJob(i);
+		GlobalOptions.err.print(messages[i]);
+		GlobalOptions.err.flush();
+		boolean ok = writeSource(classNames[i], sources[i], success[i],
+					 destZip, destDir, out) && success[i];
+		releaseJob(i, !ok && !keepGoing);
+		if (!ok && !keepGoing) {
+		    result = false;
+		    break;
+		}
+	    }
+	    for (int i = 0; i < numThreads; i++)
+		workers[i].join();
+	} catch (InterruptedException ex) {
+	    for (int i = 0; i < numThreads; i++)
+		workers[i].interrupt();
+	    result = false;
+	}
+	return result;
+    }
+}
@@ -0,0 +1,150 @@
+/* ParallelMethodAnalyzer Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+
+/**
+ * Analyzes the methods of a single class with several threads.  The
+ * methods are handed out in their order and the calling thread
+ * analyzes methods, too.  The serial numbers for generated names are
+ * given out in the same order as in a sequential analysis (see
+ * {@link NameSerials}), so the output doesn't depend on the number
+ * of threads.<br>
+ *
+ * If the analysis of some methods failed, the exception of the first
+ * of them is thrown again, after all methods are finished.  The
+ * messages of the methods may appear in a different order than in a
+ * sequential analysis.
+ */
+class ParallelMethodAnalyzer {
+    private DecompilerContext context;
+    private MethodAnalyzer[] methods;
+    private Throwable[] failures;
+    private int nextMethod = 0;
+    private int finished = 0;
+
+    public ParallelMethodAnalyzer(DecompilerContext context,
+				  MethodAnalyzer[] methods) {
+	this.context = context;
+	this.methods = methods;
+	failures = new Throwable[methods.length];
+    }
+
+    private synchronized int nextJob() {
+	if (nextMethod >= methods.length)
+	    return -1;
+	return nextMethod++;
+    }
+
+    private synchronized void finishJob(int index, Throwable failure) {
+	failures[index] = failure;
+	finished++;
+	notifyAll();
+    }
+
+    private synchronized void waitForJobs() {
+	boolean interrupted = false;
+	/* We can't stop the workers, and they still use the
+	 * analyzers, so we have to wait even if we are interrupted.
+	 */
+	while (finished < methods.length) {
+	    try {
+		wait();
+	    } catch (InterruptedException ex) {
+		interrupted = true;
+	    }
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Analyzes the methods, until there are no more methods left.
+     * @param pl the progress listener, null if no progress should
+     * be reported.  It is only called by the calling thread.
+     */
+    private void analyzeMethods(ProgressListener pl,
+				double done, double scale) {
+	NameSerials serials = context.getNameSerials();
+	int index;
+	while ((index = nextJob()) >= 0) {
+	    if (pl != null)
+		pl.updateProgress(done + index * scale / methods.length,
+				  methods[index].getName());
+	    Throwable failure = null;
+	    serials.takeTicket(index);
+	    try {
+		methods[index].analyze(null, 0.0, 0.0);
+	    } catch (RuntimeException ex) {
+		failure = ex;
+	    } catch (Error ex) {
+		failure = ex;
+	    } finally {
+		serials.finishTicket();
+	    }
+	    finishJob(index, failure);
+	}
+    }
+
+    class Worker extends Thread {
+	public Worker(int nr) {
+	    super("method-analyzer-" + nr);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    DecompilerContext previous = context.enter();
+	    try {
+		analyzeMethods(null, 0.0, 0.0);
+	    } finally {
+		context.exit(previous);
+	    }
+	}
+    }
+
+    /**
+     * Analyzes all methods.
+     * @param numThreads the number of threads, including the
+     * calling thread.
+     * @param pl the progress listener, null if no progress should
+     * be reported.
+     * @param done the progress before the methods are analyzed.
+     * @param scale the progress the analysis of all methods makes.
+     */
+    public void analyze(int numThreads, ProgressListener pl,
+			double done, double scale) {
+	NameSerials serials = context.getNameSerials();
+	serials.startTickets(methods.length);
+	try {
+	    int numWorkers = Math.min(numThreads, methods.length) - 1;
+	    for (int i = 0; i < numWorkers; i++)
+		new Worker(i).start();
+	    analyzeMethods(pl, done, scale);
+	    waitForJobs();
+	} finally {
+	    serials.stopTickets();
+	}
+	for (int i = 0; i < methods.length; i++) {
+	    if (failures[i] instanceof RuntimeException)
+		throw (RuntimeException) failures[i];
+	    if (failures[i] instanceof Error)
+		throw (Error) failures[i];
+	}
+    }
+}
@@ -666,7 +666,7 @@ public class TabbedPrintWriter {
 	} catch (IOException ex) {
 	    clazz.guess(ClassInfo.OUTERCLASS);
 	}
-	if ((Options.options & Options.OPTION_INNER) != 0
+	if (DecompilerContext.current().hasOption(Options.OPTION_INNER)
 	    && clazz.getOuterClass() != null) {
 	    
 	    String className = clazz.getClassName();
@@ -679,7 +679,7 @@ public class TabbedPrintWriter {
 		+ "." + className;
 	}
 
-	if ((Options.options & Options.OPTION_ANON) != 0
+	if (DecompilerContext.current().hasOption(Options.OPTION_ANON)
 	    && clazz.isMethodScoped()) {
 
 	    String className = clazz.getClassName();
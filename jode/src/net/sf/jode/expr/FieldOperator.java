@@ -72,8 +72,8 @@ public abstract class FieldOperator extends Operator {
 	callerPackage = callerPackage.substring(0, dot);
 	if (classType instanceof ClassInfoType) {
 	    classInfo = ((ClassInfoType) classType).getClassInfo();
-	    if ((Options.options & Options.OPTION_ANON) != 0
-		|| (Options.options & Options.OPTION_INNER) != 0) {
+	    if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
+		|| methodAnalyzer.getContext().hasOption(Options.OPTION_INNER)) {
 		try {
 		    classInfo.load(ClassInfo.OUTERCLASS);
 		} catch (IOException ex) {
@@ -144,10 +144,20 @@ public abstract class FieldOperator extends Operator {
         return Type.tType(classPath, ref.getType());
     }
 
+    private static FieldInfo findField(ClassInfo clazz, 
+				       String name, String type) {
+	try {
+	    clazz.load(ClassInfo.DECLARATIONS);
+	} catch (IOException ex) {
+	    clazz.guess(ClassInfo.DECLARATIONS);
+	}
+	return clazz.findField(name, type);
+    }
+
     private static FieldInfo getFieldInfo(ClassInfo clazz, 
 					  String name, String type) {
 	while (clazz != null) {
-	    FieldInfo field = clazz.findField(name, type);
+	    FieldInfo field = findField(clazz, name, type);
 	    if (field != null)
 		return field;
 
@@ -181,13 +191,13 @@ public abstract class FieldOperator extends Operator {
 	
 	ClassInfo clazz = ((ClassInfoType) classType).getClassInfo();
 	ClassInfo parClazz = ((ClassInfoType) type).getClassInfo();
-	FieldInfo field = clazz.findField(ref.getName(), ref.getType());
+	FieldInfo field = findField(clazz, ref.getName(), ref.getType());
 
 	find_field:
 	while (field == null) {
 	    ClassInfo ifaces[] = clazz.getInterfaces();
 	    for (int i = 0; i < ifaces.length; i++) {
-		field = ifaces[i].findField(ref.getName(), ref.getType());
+		field = findField(ifaces[i], ref.getName(), ref.getType());
 		if (field != null)
 		    break find_field;
 	    }
@@ -195,7 +205,7 @@ public abstract class FieldOperator extends Operator {
 	    if (clazz == null)
 		/* Weird, field not existing? */
 		return false;
-	    field = clazz.findField(ref.getName(), ref.getType());
+	    field = findField(clazz, ref.getName(), ref.getType());
 	}	    
 	if (Modifier.isPrivate(field.getModifiers()))
 	    return parClazz != clazz;
@@ -213,6 +223,11 @@ public abstract class FieldOperator extends Operator {
 	}
 	    
 	while (clazz != parClazz && clazz != null) {
+	    try {
+		parClazz.load(ClassInfo.DECLARATIONS);
+	    } catch (IOException ex) {
+		parClazz.guess(ClassInfo.DECLARATIONS);
+	    }
 	    FieldInfo[] fields = parClazz.getFields();
 	    for (int i = 0; i < fields.length; i++) {
 		if (fields[i].getName().equals(ref.getName()))
@@ -230,7 +245,7 @@ public abstract class FieldOperator extends Operator {
 	ClassInfo clazz = getClassInfo();
 	ClassAnalyzer clazzAna = methodAnalyzer.getClassAnalyzer(clazz);
 
-	if ((Options.options & Options.OPTION_ANON) != 0
+	if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
 	    && clazz != null
 	    && clazz.isMethodScoped() && clazz.getClassName() != null
 	    && clazzAna != null
@@ -184,8 +184,8 @@ public final class InvokeOperator extends Operator
 	callerPackage = callerPackage.substring(0, dot);
 	if (classType instanceof ClassInfoType) {
 	    classInfo = ((ClassInfoType) classType).getClassInfo();
-	    if ((Options.options & Options.OPTION_ANON) != 0
-		|| (Options.options & Options.OPTION_INNER) != 0) {
+	    if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
+		|| methodAnalyzer.getContext().hasOption(Options.OPTION_INNER)) {
 		try {
 		    classInfo.load(ClassInfo.OUTERCLASS);
 		} catch (IOException ex) {
@@ -247,7 +247,7 @@ public final class InvokeOperator extends Operator
 
     public void checkAnonymousClasses() {
 	if (methodFlag != CONSTRUCTOR
-	    || (Options.options & Options.OPTION_ANON) == 0)
+	    || !methodAnalyzer.getContext().hasOption(Options.OPTION_ANON))
 	    return;
 	if (classInfo != null
 	    && classInfo.isMethodScoped())
@@ -314,11 +314,20 @@ public final class InvokeOperator extends Operator
     private ClassAnalyzer getClassAnalyzer(ClassInfo callee) {
 	if (callee == null)
 	    return null;
-	if ((Options.options & 
+	if ((methodAnalyzer.getContext().getOptions() & 
 	     (Options.OPTION_ANON | Options.OPTION_INNER)) == 0)
 	    return null;
 
-	if ((Options.options & Options.OPTION_INNER) != 0
+	/* The callee may be the outer class of a guessed class,
+	 * whose class info was garbage collected and created again.
+	 */
+	try {
+	    callee.load(ClassInfo.OUTERCLASS);
+	} catch (IOException ex) {
+	    callee.guess(ClassInfo.OUTERCLASS);
+	}
+
+	if (methodAnalyzer.getContext().hasOption(Options.OPTION_INNER)
 	    && callee.getOuterClass() != null) {
 	    /* If the callee class is an inner class we get the
 	     * analyzer of its parent instead and ask it for the inner
@@ -341,12 +350,11 @@ public final class InvokeOperator extends Operator
 		if (ana.getParent() == null)
 		    return null;
 		if (ana.getParent() instanceof MethodAnalyzer
-		    && (Options.options & Options.OPTION_ANON) != 0)
+		    && methodAnalyzer.getContext().hasOption(Options.OPTION_ANON))
 		    ana = ((MethodAnalyzer) ana.getParent())
 			.getClassAnalyzer();
 		else if (ana.getParent() instanceof ClassAnalyzer
-			 && (Options.options 
-			 & Options.OPTION_INNER) != 0)
+			 && methodAnalyzer.getContext().hasOption(Options.OPTION_INNER))
 		    ana = (ClassAnalyzer) ana.getParent();
 		else 
 		    throw new InternalError
@@ -380,12 +388,11 @@ public final class InvokeOperator extends Operator
 		if (ana.getParent() == null)
 		    break;
 		if (ana.getParent() instanceof MethodAnalyzer
-		    && (Options.options & Options.OPTION_ANON) != 0)
+		    && methodAnalyzer.getContext().hasOption(Options.OPTION_ANON))
 		    ana = ((MethodAnalyzer) ana.getParent())
 			.getClassAnalyzer();
 		else if (ana.getParent() instanceof ClassAnalyzer
-			 && (Options.options 
-			     & Options.OPTION_INNER) != 0)
+			 && methodAnalyzer.getContext().hasOption(Options.OPTION_INNER))
 		    ana = (ClassAnalyzer) ana.getParent();
 		else 
 		    throw new InternalError
@@ -418,7 +425,7 @@ public final class InvokeOperator extends Operator
     }
 
     public boolean isConstant() {
-	if ((Options.options & Options.OPTION_ANON) == 0)
+	if (!methodAnalyzer.getContext().hasOption(Options.OPTION_ANON))
 	    return super.isConstant();
 
 	ClassInfo clazz = classInfo;
@@ -604,7 +611,7 @@ public final class InvokeOperator extends Operator
 	    result.addOperand(right);
 	    result.addOperand(subExpressions[0].simplify());
 	} 
-	else if ((Options.options & Options.OPTION_DECRYPT) != 0
+	else if (methodAnalyzer.getContext().hasOption(Options.OPTION_DECRYPT)
 		 && isThis() && isStatic()
 		 && methodType.getParameterTypes().length == 1
 		 && methodType.getParameterTypes()[0].equals(Type.tString)
@@ -809,7 +816,7 @@ public final class InvokeOperator extends Operator
 	ClassInfo clazz = classInfo;
 	ClassAnalyzer clazzAna = methodAnalyzer.getClassAnalyzer(clazz);
 
-	if ((Options.options & Options.OPTION_ANON) != 0
+	if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
 	    && clazz != null
 	    && clazz.isMethodScoped() && clazz.getClassName() != null) {
 
@@ -832,7 +839,7 @@ public final class InvokeOperator extends Operator
 	boolean jikesAnonymousInner = false;
 	boolean implicitOuterClass = false;
 
-	if ((Options.options & Options.OPTION_ANON) != 0
+	if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
 	    && clazzAna != null && clazz.isMethodScoped()) {
 
 	    OuterValues ov = clazzAna.getOuterValues();
@@ -863,8 +870,8 @@ public final class InvokeOperator extends Operator
 	    }
 	}
 
-	if ((~Options.options & (Options.OPTION_INNER
-				 | Options.OPTION_CONTRAFO)) == 0
+	if ((~methodAnalyzer.getContext().getOptions()
+	     & (Options.OPTION_INNER | Options.OPTION_CONTRAFO)) == 0
 	    && clazz.getOuterClass() != null
 	    && !Modifier.isStatic(clazz.getModifiers())
 	    && !implicitOuterClass
@@ -891,7 +898,7 @@ public final class InvokeOperator extends Operator
 	super.makeDeclaration(done);
 
 	if (isConstructor() && !isStatic()
-	    && (Options.options & Options.OPTION_ANON) != 0) {
+	    && methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)) {
 	    ClassInfo clazz = classInfo;
 	    if (clazz != null
 		&& clazz.isMethodScoped() && clazz.getClassName() == null) {
@@ -957,7 +964,7 @@ public final class InvokeOperator extends Operator
 	    /* clazz != null, since an array doesn't have a constructor */
 	    
 	    clazzAna = methodAnalyzer.getClassAnalyzer(clazz);
-	    if ((Options.options & Options.OPTION_ANON) != 0
+	    if (methodAnalyzer.getContext().hasOption(Options.OPTION_ANON)
 		&& clazzAna != null && clazz.isMethodScoped()) {
 		
 		/* This is a known method scoped class, skip the outerValues */
@@ -1000,7 +1007,7 @@ public final class InvokeOperator extends Operator
 	     */
 	    if (clazz.getOuterClass() != null
 		&& !Modifier.isStatic(clazz.getModifiers())
-		&& (~Options.options & 
+		&& (~methodAnalyzer.getContext().getOptions() & 
 		    (Options.OPTION_INNER
 		     | Options.OPTION_CONTRAFO)) == 0) {
 
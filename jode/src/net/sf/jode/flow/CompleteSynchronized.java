@@ -51,7 +51,7 @@ public class CompleteSynchronized {
 		!= synBlock.local.getLocalInfo()))
                 return false;
             
-        if (GlobalOptions.verboseLevel > 0)
+        if (last.getContext().getVerboseLevel() > 0)
             GlobalOptions.err.print('s');
         
         synBlock.isEntered = true;
@@ -85,7 +85,7 @@ public class CreateConstantArray {
                 if (arraylength <= index)
                     return false;
 
-                if (GlobalOptions.verboseLevel > 0)
+                if (last.getContext().getVerboseLevel() > 0)
                     GlobalOptions.err.print('a');
 
                 ConstantArrayOperator cao 
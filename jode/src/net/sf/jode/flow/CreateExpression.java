@@ -107,7 +107,7 @@ public class CreateExpression {
             sequBlock = (SequentialBlock)sequBlock.outer;
         }
 
-        if (GlobalOptions.verboseLevel > 0
+        if (last.getContext().getVerboseLevel() > 0
 	    && lastExpression.getFreeOperandCount() == 0)
             GlobalOptions.err.print('x');
 
@@ -46,7 +46,7 @@ public class CreateForInitializer {
 					  init.getInstruction()))
             return false;
 
-        if (GlobalOptions.verboseLevel > 0)
+        if (last.getContext().getVerboseLevel() > 0)
             GlobalOptions.err.print('f');
 
         forBlock.setInit((InstructionBlock) sequBlock.subBlocks[0]);
@@ -60,7 +60,7 @@ public class CreateIfThenElseOperator {
                 | !createFunnyHelper(trueDest, falseDest, ifBlock.elseBlock))
                 return false;
 
-            if (GlobalOptions.verboseLevel > 0)
+            if (block.getContext().getVerboseLevel() > 0)
                 GlobalOptions.err.print('?');
 
             Expression iteo = new IfThenElseOperator(Type.tBoolean)
@@ -209,7 +209,7 @@ public class CreateIfThenElseOperator {
             return false;
         cond = ifBlock.cond;
         
-        if (GlobalOptions.verboseLevel > 0)
+        if (last.getContext().getVerboseLevel() > 0)
             GlobalOptions.err.print('?');
 
         thenBlock.flowBlock.removeSuccessor(thenBlock.jump);
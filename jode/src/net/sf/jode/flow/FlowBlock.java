@@ -20,6 +20,8 @@
 package net.sf.jode.flow;
 import net.sf.jode.GlobalOptions;
 import net.sf.jode.decompiler.TabbedPrintWriter;
+import net.sf.jode.decompiler.NameSerials;
+import net.sf.jode.decompiler.DecompilerContext;
 import net.sf.jode.decompiler.MethodAnalyzer;
 import net.sf.jode.decompiler.LocalInfo;
 import net.sf.jode.expr.Expression;
@@ -202,6 +204,16 @@ public class FlowBlock {
 	lastModified = block;
     }
 
+    /**
+     * Returns the context of the decompilation.  The special flow
+     * blocks END_OF_METHOD and NEXT_BY_ORDER have no method; they use
+     * the context of the current thread.
+     */
+    public DecompilerContext getContext() {
+	return method != null ? method.getContext()
+	    : DecompilerContext.current();
+    }
+
     public int getNextBlockNr() {
 	return blockNr + length;
     }
@@ -1392,6 +1404,8 @@ public class FlowBlock {
         boolean changed = false;
 
         while (true) {
+	    if (method != null)
+		method.checkBudget();
 
             if (lastModified instanceof SwitchBlock) {
                 /* analyze the switch first.
@@ -1704,6 +1718,8 @@ public class FlowBlock {
     public void mapStackToLocal(VariableStack initialStack) {
 	if (initialStack == null)
 	    throw new InternalError("initial stack is null");
+	if (method != null)
+	    method.checkBudget();
 	stackMap = initialStack;
 	block.mapStackToLocal(initialStack);
 	Iterator iter = successors.values().iterator();
@@ -1731,6 +1747,8 @@ public class FlowBlock {
 	if (stackMap == null) 
 	    /* already done or mapping didn't succeed */
 	    return;
+	if (method != null)
+	    method.checkBudget();
 	stackMap = null;
 	block.removePush();
 	Iterator iter = successors.keySet().iterator();
@@ -1741,12 +1759,16 @@ public class FlowBlock {
     }
 
     public void removeOnetimeLocals() {
+	if (method != null)
+	    method.checkBudget();
 	block.removeOnetimeLocals();
 	if (nextByCodeOrder != null)
 	    nextByCodeOrder.removeOnetimeLocals();
     }
 
     private void promoteInSets() {
+	if (method != null)
+	    method.checkBudget();
 	for (Iterator i = predecessors.iterator(); i.hasNext(); ) {
 	    FlowBlock pred = (FlowBlock) i.next();
 	    /* Skip the start marker */
@@ -1796,6 +1818,8 @@ public class FlowBlock {
      * variables and method scoped classes must be declared.
      */
     public void makeDeclaration(Set done) {
+	if (method != null)
+	    method.checkBudget();
 	block.propagateUsage();
 	block.makeDeclaration(done);
 	if (nextByCodeOrder != null)
@@ -1806,6 +1830,8 @@ public class FlowBlock {
      * Simplify this and all following flowblocks.
      */
     public void simplify() {
+	if (method != null)
+	    method.checkBudget();
 	block.simplify();
 	if (nextByCodeOrder != null)
 	    nextByCodeOrder.simplify();
@@ -1850,11 +1876,6 @@ public class FlowBlock {
 	    nextByCodeOrder.dumpSource(writer);
     }
 
-    /**
-     * The serial number for labels.
-     */
-    static int serialno = 0;
-
     /**
      * The label of this instruction, or null if it needs no label.
      */
@@ -1873,7 +1894,9 @@ public class FlowBlock {
      */
     public String getLabel() {
         if (label == null)
-            label = "flow_"+blockNr+"_"+(serialno++)+"_";
+            label = "flow_"+blockNr+"_"
+		+ getContext().getNameSerials()
+		.next(NameSerials.FLOW_LABEL)+"_";
         return label;
     }
 
@@ -19,6 +19,7 @@
 
 package net.sf.jode.flow;
 import net.sf.jode.decompiler.TabbedPrintWriter;
+import net.sf.jode.decompiler.NameSerials;
 
 /**
  * This is the structured block for an Loop block.
@@ -35,11 +36,6 @@ public class LabelledBlock extends StructuredBlock implements BreakableBlock {
      */
     VariableStack breakedStack;
 
-    /**
-     * The serial number for labels.
-     */
-    static int serialno = 0;
-
     /**
      * The label of this instruction, or null if it needs no label.
      */
@@ -109,7 +105,9 @@ public class LabelledBlock extends StructuredBlock implements BreakableBlock {
      */
     public String getLabel() {
         if (label == null)
-            label = "label_"+(serialno++);
+            label = "label_"
+		+ getContext().getNameSerials()
+		.next(NameSerials.BLOCK_LABEL);
         return label;
     }
 
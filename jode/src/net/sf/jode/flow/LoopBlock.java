@@ -19,6 +19,7 @@
 
 package net.sf.jode.flow;
 import net.sf.jode.decompiler.TabbedPrintWriter;
+import net.sf.jode.decompiler.NameSerials;
 import net.sf.jode.decompiler.LocalInfo;
 import net.sf.jode.expr.Expression;
 import net.sf.jode.expr.ConstOperator;
@@ -372,11 +373,6 @@ public class LoopBlock extends StructuredBlock implements BreakableBlock {
 
     boolean mayChangeJump = true;
 
-    /**
-     * The serial number for labels.
-     */
-    static int serialno = 0;
-
     /**
      * The label of this instruction, or null if it needs no label.
      */
@@ -388,7 +384,9 @@ public class LoopBlock extends StructuredBlock implements BreakableBlock {
      */
     public String getLabel() {
         if (label == null)
-            label = "while_"+(serialno++)+"_";
+            label = "while_"
+		+ getContext().getNameSerials()
+		.next(NameSerials.LOOP_LABEL)+"_";
         return label;
     }
 
@@ -23,6 +23,7 @@ import net.sf.jode.decompiler.TabbedPrintWriter;
 import net.sf.jode.decompiler.LocalInfo;
 import net.sf.jode.decompiler.Declarable;
 import net.sf.jode.decompiler.ClassAnalyzer;
+import net.sf.jode.decompiler.DecompilerContext;
 import net.sf.jode.util.SimpleSet;
 
 ///#def COLLECTIONS java.util
@@ -560,6 +561,14 @@ public abstract class StructuredBlock {
         }
     }
 
+    /**
+     * Returns the context of the decompilation this block belongs to.
+     */
+    public DecompilerContext getContext() {
+	return flowBlock != null ? flowBlock.getContext()
+	    : DecompilerContext.current();
+    }
+
     /**
      * Set the flow block of this block and all sub blocks.
      * @param flowBlock the new flow block
@@ -19,6 +19,7 @@
 
 package net.sf.jode.flow;
 import net.sf.jode.decompiler.TabbedPrintWriter;
+import net.sf.jode.decompiler.NameSerials;
 import net.sf.jode.expr.Expression;
 
 ///#def COLLECTIONS java.util
@@ -243,11 +244,6 @@ implements BreakableBlock {
 
     boolean isBreaked = false;
 
-    /**
-     * The serial number for labels.
-     */
-    static int serialno = 0;
-
     /**
      * The label of this instruction, or null if it needs no label.
      */
@@ -259,7 +255,9 @@ implements BreakableBlock {
      */
     public String getLabel() {
         if (label == null)
-            label = "switch_"+(serialno++)+"_";
+            label = "switch_"
+		+ getContext().getNameSerials()
+		.next(NameSerials.SWITCH_LABEL)+"_";
         return label;
     }
 
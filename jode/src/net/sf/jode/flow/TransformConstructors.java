@@ -161,7 +161,7 @@ public class TransformConstructors {
         for (int i=0; i< type01Count; ) {
 	    MethodAnalyzer current = cons[i];
 	    if (!isStatic
-		&& (Options.options & Options.OPTION_CONTRAFO) != 0
+		&& clazzAnalyzer.getContext().hasOption(Options.OPTION_CONTRAFO)
 		&& clazzAnalyzer.getOuterInstance() != null)
 		current.getParamInfo(1).setExpression
 		    (clazzAnalyzer.getOuterInstance());
@@ -603,7 +603,7 @@ public class TransformConstructors {
 		return null;
 	    }
 	    if (outerValues != null
-		&& (Options.options & Options.OPTION_CONTRAFO) != 0) {
+		&& clazzAnalyzer.getContext().hasOption(Options.OPTION_CONTRAFO)) {
 		int slot = ((LocalLoadOperator)expr).getLocalInfo().getSlot();
 		Expression outExpr = outerValues.getValueBySlot(slot);
 		if (outExpr != null)
@@ -668,11 +668,11 @@ public class TransformConstructors {
      * after the constructors are analyzed.
      */
     public void removeSynthInitializers() {
-	if ((Options.options & Options.OPTION_CONTRAFO) == 0
+	if (!clazzAnalyzer.getContext().hasOption(Options.OPTION_CONTRAFO)
 	    || isStatic || type01Count == 0)
 	    return;
 	
-	if ((Options.options & Options.OPTION_ANON) != 0)
+	if (clazzAnalyzer.getContext().hasOption(Options.OPTION_ANON))
 	    checkAnonymousConstructor();
 
 	if ((GlobalOptions.debuggingFlags
@@ -902,7 +902,7 @@ public class TransformConstructors {
 	if (superClazz == null)
 	    return false;
 
-	if ((Options.options & Options.OPTION_INNER) != 0
+	if (clazzAnalyzer.getContext().hasOption(Options.OPTION_INNER)
 	    && superClazz.getOuterClass() != null
 	    && !Modifier.isStatic(superClazz.getModifiers())) {
 
@@ -1082,7 +1082,7 @@ public class TransformConstructors {
      * outerValue - locals).
      */
     public void transform() {
-	if ((Options.options & Options.OPTION_CONTRAFO) == 0
+	if (!clazzAnalyzer.getContext().hasOption(Options.OPTION_CONTRAFO)
 	    || cons.length == 0)
 	    return;
 
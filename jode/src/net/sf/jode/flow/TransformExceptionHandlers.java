@@ -898,6 +898,8 @@ public class TransformExceptionHandlers {
 	    Handler last = exc;
 	    exc = next;
 	    next = i.hasNext() ? (Handler) i.next() : null;
+	    if (exc.start.method != null)
+		exc.start.method.checkBudget();
 
 	    int startNr = exc.start.getBlockNr();
 	    int endNr   = exc.end.getBlockNr();
@@ -222,6 +222,7 @@ public class SyntheticAnalyzer implements Opcodes {
 	    try {
 		if (!refClazz.superClassOf(classInfo))
 		    return false;
+		refClazz.load(ClassInfo.DECLARATIONS);
 	    } catch (IOException ex) {
 		/* Can't get enough info to ensure that refClazz is correct */
 		return false;
@@ -266,6 +267,7 @@ public class SyntheticAnalyzer implements Opcodes {
 	    try {
 		if (!refClazz.superClassOf(classInfo))
 		    return false;
+		refClazz.load(ClassInfo.DECLARATIONS);
 	    } catch (IOException ex) {
 		/* Can't get enough info to ensure that refClazz is correct */
 		return false;
@@ -302,6 +304,7 @@ public class SyntheticAnalyzer implements Opcodes {
 	    try {
 		if (!refClazz.superClassOf(classInfo))
 		    return false;
+		refClazz.load(ClassInfo.DECLARATIONS);
 	    } catch (IOException ex) {
 		/* Can't get enough info to ensure that refClazz is correct */
 		return false;
@@ -19,18 +19,23 @@
 
 package net.sf.jode.obfuscator;
 import net.sf.jode.GlobalOptions;
+import net.sf.jode.bytecode.ClassInfo;
 import net.sf.jode.bytecode.ClassPath;
+import net.sf.jode.bytecode.MethodInfo;
 import net.sf.jode.bytecode.Reference;
 import net.sf.jode.obfuscator.modules.WildCard;
 import net.sf.jode.obfuscator.modules.MultiIdentifierMatcher;
 import net.sf.jode.obfuscator.modules.SimpleAnalyzer;
 import net.sf.jode.obfuscator.modules.IdentityRenamer;
 import java.io.*;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 ///#def COLLECTIONS java.util
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
@@ -50,6 +55,19 @@ public class ClassBundle implements OptionHandler {
      * the identifiers that must be analyzed.
      */
     Set toAnalyze = new HashSet();
+    /**
+     * the identifiers that must be analyzed, in the order they were
+     * added.
+     */
+    LinkedList analyzeQueue = new LinkedList();
+    /**
+     * the identifiers that are analyzed right now, and those of them
+     * that must be analyzed again, when they are finished.
+     */
+    Set analyzing = new HashSet();
+    Set analyzeAgain = new HashSet();
+    int busyAnalyzers = 0;
+    Throwable analyzeFailure;
 
     ClassPath classPath;
     String destDir;
@@ -57,6 +75,18 @@ public class ClassBundle implements OptionHandler {
     String tableFile;
     String toTableFile;
 
+    /**
+     * The file with the state of the previous run, null if the run
+     * isn't incremental.
+     */
+    String stateFile;
+    /**
+     * The text of the configuration.  The state of the previous run
+     * is only used if the configuration didn't change.
+     */
+    String configuration = "";
+    IncrementalState incremental;
+
     IdentifierMatcher loading;
     IdentifierMatcher preserving;
     IdentifierMatcher reaching;
@@ -65,6 +95,50 @@ public class ClassBundle implements OptionHandler {
     CodeTransformer[] postTrafos;
     Renamer           renamer;
 
+    /**
+     * The number of threads that analyze and transform the code of
+     * the methods.
+     */
+    int numThreads = 1;
+    /**
+     * The compression level of the zip file, ParallelClassWriter.STORED
+     * if the classes are stored uncompressed.
+     */
+    int compression = Deflater.DEFAULT_COMPRESSION;
+    /**
+     * The methods whose code is transformed after all classes are
+     * renamed, null if the code is transformed immediately.
+     */
+    List codeTransformations;
+    /**
+     * The directory for the spill store, null if the transformed
+     * classes stay in memory.  The empty string stands for the
+     * default directory for temporary files.
+     */
+    String spillDir;
+    /**
+     * The store where the transformed classes are kept until they
+     * are written, null if they stay in memory.
+     */
+    SpillStore spillStore;
+    /**
+     * The number of methods of every class, whose code is not yet
+     * transformed.  A class is spilled, when this drops to zero.
+     */
+    Map pendingCode;
+
+    /**
+     * The file where the metrics of the run are written to, null if
+     * no metrics are collected.
+     */
+    String metricsFile;
+    ObfuscatorMetrics metrics;
+    /**
+     * The number of initialized classes and their methods, the number
+     * of analyzed methods and the number of methods whose code was
+     * transformed.  These are only used for the metrics.
+     */
+    int loadedClasses, loadedMethods, analyzedMethods, transformedMethods;
 
     public ClassBundle() {
 	destDir = ".";
@@ -74,12 +148,13 @@ public class ClassBundle implements OptionHandler {
     }
 
 ///#ifdef JDK12
-    private static final Map aliasesHash = new WeakHashMap();
+    private final Map aliasesHash = new WeakHashMap();
 ///#else
-///    private static final Map aliasesHash = new HashMap();
+///    private final Map aliasesHash = new HashMap();
 ///#endif
-    private static final Map clazzCache = new HashMap();
-    private static final Map referenceCache = new HashMap();
+    private final Map clazzCache = new HashMap();
+    private final Map referenceCache = new HashMap();
+    private final Map methodIndices = new HashMap();
 
     public static void setStripOptions(Collection stripString) {
     }
@@ -118,6 +193,27 @@ public class ClassBundle implements OptionHandler {
 	    toTableFile = (String) values.iterator().next();
 	    return;
 	}
+	if (option.equals("state")) {
+	    if (values.size() != 1)
+		throw new IllegalArgumentException
+		    ("Only one state file allowed");
+	    stateFile = (String) values.iterator().next();
+	    return;
+	}
+	if (option.equals("metrics")) {
+	    if (values.size() != 1)
+		throw new IllegalArgumentException
+		    ("Only one metrics file allowed");
+	    metricsFile = (String) values.iterator().next();
+	    return;
+	}
+	if (option.equals("spill")) {
+	    if (values.size() != 1)
+		throw new IllegalArgumentException
+		    ("Only one spill directory allowed");
+	    spillDir = (String) values.iterator().next();
+	    return;
+	}
 	if (option.equals("strip")) {
 	next_token:
 	    for (Iterator iter = values.iterator(); iter.hasNext(); ) {
@@ -221,6 +317,57 @@ public class ClassBundle implements OptionHandler {
 	    return;
 	}
 
+	if (option.equals("threads")) {
+	    if (values.size() != 1)
+		throw new IllegalArgumentException
+		    ("Only one thread count allowed");
+	    Object value = values.iterator().next();
+	    int threads;
+	    if (value instanceof Integer)
+		threads = ((Integer) value).intValue();
+	    else {
+		try {
+		    threads = Integer.parseInt((String) value);
+		} catch (NumberFormatException ex) {
+		    threads = 0;
+		}
+	    }
+	    if (threads < 1)
+		throw new IllegalArgumentException
+		    ("threads must be a positive number");
+	    numThreads = threads;
+	    return;
+	}
+
+	if (option.equals("compression")) {
+	    if (values.size() != 1)
+		throw new IllegalArgumentException
+		    ("Only one compression level allowed");
+	    Object value = values.iterator().next();
+	    if (value.equals("stored"))
+		compression = ParallelClassWriter.STORED;
+	    else if (value.equals("default"))
+		compression = Deflater.DEFAULT_COMPRESSION;
+	    else {
+		int level;
+		if (value instanceof Integer)
+		    level = ((Integer) value).intValue();
+		else {
+		    try {
+			level = Integer.parseInt((String) value);
+		    } catch (NumberFormatException ex) {
+			level = -1;
+		    }
+		}
+		if (level < 0 || level > 9)
+		    throw new IllegalArgumentException
+			("compression must be stored, default or a number "
+			 +"between 0 and 9");
+		compression = level;
+	    }
+	    return;
+	}
+
 	if (option.equals("renamer")) {
 	    if (values.size() != 1)
 		throw new IllegalArgumentException
@@ -231,7 +378,7 @@ public class ClassBundle implements OptionHandler {
 	throw new IllegalArgumentException("Invalid option `"+option+"'.");
     }
 
-    public Reference getReferenceAlias(Reference ref) {
+    public synchronized Reference getReferenceAlias(Reference ref) {
 	Reference alias = (Reference) aliasesHash.get(ref);
 	if (alias == null) {
 	    Identifier ident = getIdentifier(ref);
@@ -248,7 +395,7 @@ public class ClassBundle implements OptionHandler {
 	return alias;
     }
 
-    public String getTypeAlias(String typeSig) {
+    public synchronized String getTypeAlias(String typeSig) {
 	String alias = (String) aliasesHash.get(typeSig);
 	if (alias == null) { 
 	    StringBuffer newSig = new StringBuffer();
@@ -274,7 +421,7 @@ public class ClassBundle implements OptionHandler {
 	return classPath;
     }
 
-    public ClassIdentifier getClassIdentifier(String name) {
+    public synchronized ClassIdentifier getClassIdentifier(String name) {
 	if (clazzCache.containsKey(name))
 	    return (ClassIdentifier) clazzCache.get(name);
 	ClassIdentifier ident
@@ -283,7 +430,7 @@ public class ClassBundle implements OptionHandler {
 	return ident;
     }
 
-    public Identifier getIdentifier(Reference ref) {
+    public synchronized Identifier getIdentifier(Reference ref) {
 	if (referenceCache.containsKey(ref))
 	    return (Identifier) referenceCache.get(ref);
 
@@ -301,13 +448,40 @@ public class ClassBundle implements OptionHandler {
 	return ident;
     }
 
-    public void reachableClass(String clazzName) {
+    /**
+     * Returns the methods of a class that doesn't belong to this
+     * bundle, indexed by their name and parameter types (see
+     * ClassIdentifier.methodKey).  The map contains a list of
+     * MethodInfos for every key.
+     */
+    Map getMethodIndex(ClassInfo clazz) {
+	Map index = (Map) methodIndices.get(clazz);
+	if (index == null) {
+	    index = new HashMap();
+	    MethodInfo[] minfos = clazz.getMethods();
+	    for (int i = 0; i < minfos.length; i++) {
+		String key = ClassIdentifier.methodKey(minfos[i].getName(),
+						       minfos[i].getType());
+		List list = (List) index.get(key);
+		if (list == null) {
+		    list = new ArrayList(1);
+		    index.put(key, list);
+		}
+		list.add(minfos[i]);
+	    }
+	    methodIndices.put(clazz, index);
+	}
+	return index;
+    }
+
+    public synchronized void reachableClass(String clazzName) {
 	ClassIdentifier ident = getClassIdentifier(clazzName);
 	if (ident != null)
 	    ident.setReachable();
     }
 
-    public void reachableReference(Reference ref, boolean isVirtual) {
+    public synchronized void reachableReference(Reference ref,
+						boolean isVirtual) {
 	String clName = ref.getClazz();
 	if (clName.charAt(0) == '[')
 	    /* Can't represent arrays */
@@ -319,18 +493,187 @@ public class ClassBundle implements OptionHandler {
 	    ident.reachableReference(ref, isVirtual);
     }
 
-    public void analyzeIdentifier(Identifier ident) {
+    public synchronized void analyzeIdentifier(Identifier ident) {
 	if (ident == null)
 	    throw new NullPointerException();
-	toAnalyze.add(ident);
+	if (analyzing.contains(ident))
+	    analyzeAgain.add(ident);
+	else if (toAnalyze.add(ident)) {
+	    analyzeQueue.addLast(ident);
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Takes the next identifier that must be analyzed.  If there is
+     * none, this waits until all other threads are finished, since
+     * they may add new identifiers.
+     * @return the identifier, or null if the analysis is complete
+     * or failed.
+     */
+    private synchronized Identifier nextAnalyzeJob() {
+	boolean interrupted = false;
+	while (analyzeQueue.isEmpty() && busyAnalyzers > 0
+	       && analyzeFailure == null) {
+	    try {
+		wait();
+	    } catch (InterruptedException ex) {
+		interrupted = true;
+	    }
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+	if (analyzeQueue.isEmpty() || analyzeFailure != null)
+	    return null;
+	Identifier ident = (Identifier) analyzeQueue.removeFirst();
+	toAnalyze.remove(ident);
+	analyzing.add(ident);
+	busyAnalyzers++;
+	return ident;
+    }
+
+    private synchronized void finishAnalyzeJob(Identifier ident,
+					       Throwable failure) {
+	busyAnalyzers--;
+	analyzing.remove(ident);
+	if (ident instanceof MethodIdentifier)
+	    analyzedMethods++;
+	if (analyzeFailure == null)
+	    analyzeFailure = failure;
+	if (analyzeAgain.remove(ident))
+	    analyzeIdentifier(ident);
+	notifyAll();
+    }
+
+    /**
+     * Analyzes identifiers until the analysis is complete.  The code
+     * of methods is analyzed without holding the lock of this bundle,
+     * so that the code analyzer can analyze several methods at the
+     * same time.  It must take the lock before it changes identifiers.
+     */
+    private void analyzeIdentifiers() {
+	Identifier ident;
+	while ((ident = nextAnalyzeJob()) != null) {
+	    Throwable failure = null;
+	    try {
+		if (ident instanceof MethodIdentifier)
+		    ident.analyze();
+		else {
+		    synchronized (this) {
+			ident.analyze();
+		    }
+		}
+	    } catch (RuntimeException ex) {
+		failure = ex;
+	    } catch (Error ex) {
+		failure = ex;
+	    }
+	    finishAnalyzeJob(ident, failure);
+	}
+    }
+
+    class AnalyzeWorker extends Thread {
+	public AnalyzeWorker(int nr) {
+	    super("reachability-analyzer-" + nr);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    try {
+		analyzeIdentifiers();
+	    } finally {
+		threadFinished();
+	    }
+	}
     }
 
+    /**
+     * Called by the worker threads before they end.
+     */
+    void threadFinished() {
+	if (metrics != null)
+	    metrics.threadFinished();
+    }
+
+    /**
+     * Returns the number of threads that compute the reachability.
+     * Only the SimpleAnalyzer analyzes the code of several methods at
+     * the same time.  Other analyzers, like the ConstantAnalyzer, hold
+     * the lock of this bundle for a whole method, so further threads
+     * would only wait for it.
+     */
+    int getAnalyzeThreads() {
+	return analyzer == null || analyzer.getClass() == SimpleAnalyzer.class
+	    ? numThreads : 1;
+    }
+
+    /**
+     * Analyzes the identifiers given to analyzeIdentifier, and the
+     * identifiers they make reachable, with getAnalyzeThreads() threads.
+     */
     public void analyze() {
-	while(!toAnalyze.isEmpty()) {
-	    Identifier ident = (Identifier) toAnalyze.iterator().next();
-	    toAnalyze.remove(ident);
-	    ident.analyze();
+	Thread[] workers = new Thread[getAnalyzeThreads() - 1];
+	for (int i = 0; i < workers.length; i++) {
+	    workers[i] = new AnalyzeWorker(i);
+	    workers[i].start();
+	}
+	analyzeIdentifiers();
+
+	boolean interrupted = false;
+	for (int i = 0; i < workers.length; i++) {
+	    while (workers[i].isAlive()) {
+		try {
+		    workers[i].join();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+
+	Throwable failure;
+	synchronized (this) {
+	    failure = analyzeFailure;
+	    analyzeFailure = null;
+	    analyzeQueue.clear();
+	    toAnalyze.clear();
 	}
+	if (failure instanceof RuntimeException)
+	    throw (RuntimeException) failure;
+	if (failure instanceof Error)
+	    throw (Error) failure;
+    }
+
+    /**
+     * Sets the text of the configuration, i.e. the script and the
+     * command line options.
+     */
+    public void setConfiguration(String configuration) {
+	this.configuration = configuration;
+    }
+
+    /**
+     * Called by a class identifier after it was initialized.
+     */
+    public synchronized void classInitialized(ClassIdentifier ident) {
+	loadedClasses++;
+	loadedMethods += ident.methodIdents.size();
+	if (incremental != null)
+	    incremental.classInitialized(ident);
+    }
+
+    /**
+     * Checks if the class is the same as in the previous incremental
+     * run.  The code of such a class isn't analyzed, and the class
+     * isn't transformed; its output is taken from the previous run.
+     */
+    public synchronized boolean isUnchanged(ClassIdentifier ident) {
+	return incremental != null && incremental.isUnchanged(ident);
+    }
+
+    private synchronized boolean updateDirtyClasses() {
+	return incremental.updateDirtyClasses();
     }
 
     public IdentifierMatcher getPreserveRule() {
@@ -341,6 +684,18 @@ public class ClassBundle implements OptionHandler {
 	return analyzer;
     }
 
+    /**
+     * Tells if the code of the methods is dropped while it isn't
+     * needed.  This is done, if the transformed classes are spilled,
+     * so that only the identifiers stay in memory.  The code is read
+     * when the method gets reachable, and it must stay until it is
+     * transformed, since the code analyzers change it or remember
+     * things about its instructions.
+     */
+    boolean isDroppingCode() {
+	return spillDir != null;
+    }
+
     public CodeTransformer[] getPreTransformers() {
 	return preTrafos;
     }
@@ -353,6 +708,13 @@ public class ClassBundle implements OptionHandler {
 	basePackage.buildTable(renameRule);
     }
 
+    /**
+     * Reads the aliases of the previous incremental run.
+     */
+    public void readIncrementalTable() {
+	basePackage.readTable(incremental.getAliases());
+    }
+
     public void readTable() {
 	try {
 	    TranslationTable table = new TranslationTable();
@@ -379,22 +741,134 @@ public class ClassBundle implements OptionHandler {
 	}
     }
 
+    /**
+     * Transforms the code of the given method.  If several threads
+     * are used, the method is only remembered and its code is
+     * transformed after all classes are renamed.
+     */
+    void transformCode(MethodIdentifier method) {
+	transformedMethods++;
+	if (codeTransformations != null)
+	    codeTransformations.add(method);
+	else
+	    method.transformCode(GlobalOptions.err);
+    }
+
+    /**
+     * Called after the code of a method was transformed by the
+     * ParallelCodeTransformer.  This spills the class of the method,
+     * if the code of all its methods is transformed.
+     */
+    void codeTransformed(MethodIdentifier method) {
+	if (spillStore == null)
+	    return;
+	synchronized (this) {
+	    int[] count = (int[]) pendingCode.get(method.clazz);
+	    if (--count[0] > 0)
+		return;
+	    pendingCode.remove(method.clazz);
+	}
+	spill(method.clazz);
+    }
+
+    private void spill(ClassIdentifier ident) {
+	try {
+	    ident.spill(spillStore);
+	} catch (IOException ex) {
+	    /* The class simply stays in memory. */
+	    GlobalOptions.err.println("Can't spill class "+ident);
+	    ex.printStackTrace(GlobalOptions.err);
+	} catch (RuntimeException ex) {
+	    /* The class can't be written.  It stays in memory and the
+	     * error is reported, when the class is written again.
+	     */
+	}
+    }
+
+    /**
+     * Counts the methods of every class whose code is still to be
+     * transformed, and spills the classes without such methods.
+     */
+    private void startSpilling(MethodIdentifier[] methods) {
+	pendingCode = new HashMap();
+	for (int i = 0; i < methods.length; i++) {
+	    int[] count = (int[]) pendingCode.get(methods[i].clazz);
+	    if (count == null) {
+		count = new int[1];
+		pendingCode.put(methods[i].clazz, count);
+	    }
+	    count[0]++;
+	}
+	List classes = new ArrayList();
+	basePackage.collectClasses(classes);
+	for (Iterator i = classes.iterator(); i.hasNext(); ) {
+	    ClassIdentifier ident = (ClassIdentifier) i.next();
+	    if (!pendingCode.containsKey(ident) && !isUnchanged(ident))
+		spill(ident);
+	}
+    }
+
+    SpillStore getSpillStore() {
+	return spillStore;
+    }
+
     public void doTransformations() {
-	basePackage.doTransformations();
+	/* The classes are only spilled after all classes are renamed,
+	 * since they contain the names of the classes they refer to.
+	 */
+	if (numThreads > 1 || spillStore != null)
+	    codeTransformations = new ArrayList();
+	try {
+	    basePackage.doTransformations();
+	    if (codeTransformations != null) {
+		MethodIdentifier[] methods = (MethodIdentifier[])
+		    codeTransformations.toArray
+		    (new MethodIdentifier[codeTransformations.size()]);
+		codeTransformations = null;
+		if (spillStore != null)
+		    startSpilling(methods);
+		new ParallelCodeTransformer(methods).transform(numThreads);
+	    }
+	} finally {
+	    codeTransformations = null;
+	    pendingCode = null;
+	}
     }
     
     public void storeClasses() {
+	List classes = new ArrayList();
+	basePackage.collectClasses(classes);
+	ClassIdentifier[] idents = (ClassIdentifier[])
+	    classes.toArray(new ClassIdentifier[classes.size()]);
+	byte[][] oldOutputs = null;
+	if (incremental != null) {
+	    oldOutputs = new byte[idents.length][];
+	    for (int i = 0; i < idents.length; i++) {
+		if (isUnchanged(idents[i]))
+		    oldOutputs[i] = incremental.getOldOutput(idents[i]);
+	    }
+	}
+
+	ParallelClassWriter writer;
 	if (destDir.endsWith(".jar") ||
 	    destDir.endsWith(".zip")) {
 	    try {
-		ZipOutputStream zip = new ZipOutputStream
-		    (new FileOutputStream(destDir));
-		basePackage.storeClasses(zip);
-		zip.close();
+		ZipWriter zip = new ZipWriter
+		    (new BufferedOutputStream(new FileOutputStream(destDir)));
+		try {
+		    writer = new ParallelClassWriter(idents, zip, compression);
+		    if (oldOutputs != null)
+			writer.setOldOutputs(oldOutputs);
+		    writer.write(numThreads);
+		} finally {
+		    /* Keep the classes that could be written. */
+		    zip.close();
+		}
 	    } catch (IOException ex) {
 		GlobalOptions.err.println
 		    ("Can't write zip file: "+destDir);
 		ex.printStackTrace(GlobalOptions.err);
+		return;
 	    }
 	} else {
 	    File directory = new File(destDir);
@@ -404,8 +878,77 @@ public class ClassBundle implements OptionHandler {
 					  +" doesn't exists.");
 		return;
 	    }
-	    basePackage.storeClasses(new File(destDir));
+	    writer = new ParallelClassWriter(idents, directory);
+	    if (oldOutputs != null)
+		writer.setOldOutputs(oldOutputs);
+	    try {
+		writer.write(numThreads);
+	    } catch (IOException ex) {
+		/* Only writing a zip file throws this. */
+		throw new InternalError(ex.toString());
+	    }
+	}
+	if (incremental != null)
+	    incremental.save(destDir, idents, writer.getNames(),
+			     writer.getHashes());
+    }
+
+    private void startPhase(int phase) {
+	if (metrics != null)
+	    metrics.startPhase(phase);
+    }
+
+    private void setCounts(int phase, int classCount, int methodCount) {
+	if (metrics != null)
+	    metrics.setCounts(phase, classCount, methodCount);
+    }
+
+    /**
+     * Counts the classes that are written, and either their reachable
+     * methods or, if onlyTransformed is set, the classes that are
+     * transformed.
+     */
+    private int[] countClasses(boolean onlyTransformed) {
+	List classes = new ArrayList();
+	basePackage.collectClasses(classes);
+	int count = 0;
+	for (Iterator i = classes.iterator(); i.hasNext(); ) {
+	    ClassIdentifier ident = (ClassIdentifier) i.next();
+	    if (onlyTransformed) {
+		if (!isUnchanged(ident))
+		    count++;
+	    } else if (ident.methodIdents != null) {
+		for (Iterator j = ident.methodIdents.iterator();
+		     j.hasNext(); ) {
+		    if (((Identifier) j.next()).isReachable())
+			count++;
+		}
+	    }
+	}
+	return new int[] { classes.size(), count };
+    }
+
+    /**
+     * Writes the metrics to the metrics file and prints a summary.
+     */
+    private void writeMetrics() {
+	metrics.stopPhase();
+	try {
+	    Writer out = new FileWriter(metricsFile);
+	    try {
+		if (metricsFile.toLowerCase().endsWith(".json"))
+		    metrics.writeJSON(out);
+		else
+		    metrics.writeCSV(out);
+	    } finally {
+		out.close();
+	    }
+	} catch (IOException ex) {
+	    GlobalOptions.err.println("Can't write metrics to "
+				      + metricsFile);
+	    ex.printStackTrace(GlobalOptions.err);
 	}
+	metrics.printSummary(GlobalOptions.err);
     }
 
     public void run() {
@@ -424,69 +967,106 @@ public class ClassBundle implements OptionHandler {
 	    postTrafos = new CodeTransformer[0];
 	if (renamer == null)
 	    renamer = new IdentityRenamer();
+	if (metricsFile != null)
+	    metrics = new ObfuscatorMetrics(numThreads);
+	try {
+	    runPhases();
+	} finally {
+	    /* The metrics of a failed run are written, too. */
+	    if (metrics != null) {
+		writeMetrics();
+		metrics = null;
+	    }
+	}
+    }
 
-	Runtime runtime = Runtime.getRuntime();
-	long free = runtime.freeMemory();
-	long last;
-	do {
-	    last = free;
-	    runtime.gc();
-	    runtime.runFinalization();
-	    free = runtime.freeMemory();
-	} while (free < last);
-	System.err.println("used before: "+(runtime.totalMemory()- free));
-
+    private void runPhases() {
 	GlobalOptions.err.println("Loading and preserving classes");
+	startPhase(ObfuscatorMetrics.LOAD);
+	if (stateFile != null) {
+	    if (analyzer.getClass() != SimpleAnalyzer.class)
+		GlobalOptions.err.println("An incremental run needs the "
+					  + "SimpleAnalyzer, ignoring the "
+					  + "state.");
+	    else {
+		incremental = new IncrementalState(this, stateFile,
+						   configuration);
+		incremental.load(destDir);
+	    }
+	}
 
-	long time = System.currentTimeMillis();
 	basePackage.loadMatchingClasses(loading);
 	basePackage.initialize();
+	if (incremental != null)
+	    incremental.loadOldClasses();
 	basePackage.applyPreserveRule(preserving);
-	System.err.println("Time used: "+(System.currentTimeMillis() - time));
-
+	setCounts(ObfuscatorMetrics.LOAD, loadedClasses, loadedMethods);
 
 	GlobalOptions.err.println("Computing reachability");
-	time = System.currentTimeMillis();
+	startPhase(ObfuscatorMetrics.ANALYZE);
 	analyze();
-	System.err.println("Time used: "+(System.currentTimeMillis() - time));
-
-	free = runtime.freeMemory();
-	do {
-	    last = free;
-	    runtime.gc();
-	    runtime.runFinalization();
-	    free = runtime.freeMemory();
-	} while (free < last);
-	System.err.println("used after analyze: "
-			   + (runtime.totalMemory() - free));
+	if (incremental != null) {
+	    while (updateDirtyClasses())
+		analyze();
+	    GlobalOptions.err.println("Classes to transform: "
+				      + incremental.getDirtyCount()
+				      + " of " + incremental.getClassCount());
+	}
+	/* Classes may have been loaded during the analysis. */
+	setCounts(ObfuscatorMetrics.LOAD, loadedClasses, loadedMethods);
+	int[] reachable = metrics != null ? countClasses(false) : null;
+	if (reachable != null)
+	    setCounts(ObfuscatorMetrics.ANALYZE, reachable[0],
+		      analyzedMethods);
 
 	GlobalOptions.err.println("Renaming methods");
-	time = System.currentTimeMillis();
+	startPhase(ObfuscatorMetrics.RENAME);
 	if (tableFile != null)
             readTable();
+	if (incremental != null)
+	    readIncrementalTable();
 	buildTable(renamer);
         if (toTableFile != null)
             writeTable();
-	System.err.println("Time used: "+(System.currentTimeMillis() - time));
+	if (incremental != null)
+	    incremental.saveIdentifiers();
+	if (reachable != null)
+	    setCounts(ObfuscatorMetrics.RENAME, reachable[0], reachable[1]);
+
+	if (spillDir != null) {
+	    try {
+		spillStore = new SpillStore(spillDir.length() == 0
+					    ? null : new File(spillDir));
+	    } catch (IOException ex) {
+		GlobalOptions.err.println("Can't create spill file in "
+					  + spillDir
+					  + ", keeping classes in memory.");
+		ex.printStackTrace(GlobalOptions.err);
+	    }
+	}
 
 	GlobalOptions.err.println("Transforming the classes");
-	time = System.currentTimeMillis();
+	startPhase(ObfuscatorMetrics.TRANSFORM);
+	int[] transformed = metrics != null ? countClasses(true) : null;
 	doTransformations();
-	System.err.println("Time used: "+(System.currentTimeMillis() - time));
-
-	free = runtime.freeMemory();
-	do {
-	    last = free;
-	    runtime.gc();
-	    runtime.runFinalization();
-	    free = runtime.freeMemory();
-	} while (free < last);
-	System.err.println("used after transform: "
-			   + (runtime.totalMemory() - free));
+	if (transformed != null)
+	    setCounts(ObfuscatorMetrics.TRANSFORM, transformed[1],
+		      transformedMethods);
+	if (spillStore != null)
+	    GlobalOptions.err.println("Spilled " + spillStore.getSize()
+				      + " bytes of classes");
 
 	GlobalOptions.err.println("Writing new classes");
-	time = System.currentTimeMillis();
-        storeClasses();
-	System.err.println("Time used: "+(System.currentTimeMillis() - time));
+	startPhase(ObfuscatorMetrics.WRITE);
+	try {
+	    storeClasses();
+	} finally {
+	    if (spillStore != null) {
+		spillStore.close();
+		spillStore = null;
+	    }
+	}
+	if (reachable != null)
+	    setCounts(ObfuscatorMetrics.WRITE, reachable[0], reachable[1]);
     }
 }
@@ -30,6 +30,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.HashMap;
 import java.util.Random;
 ///#enddef
 ///#def COLLECTIONEXTRA java.lang
@@ -39,9 +41,11 @@ import java.lang.UnsupportedOperationException;
 import java.lang.reflect.Modifier;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class ClassIdentifier extends Identifier {
     PackageIdentifier pack;
@@ -53,9 +57,35 @@ public class ClassIdentifier extends Identifier {
 
     List fieldIdents, methodIdents;
     List knownSubClasses = new LinkedList();
+    List knownSuperClasses = new LinkedList();
     List virtualReachables = new LinkedList();
 
+    /**
+     * The aliased fields of this class, indexed by their alias.
+     */
+    Map fieldAliases = new HashMap();
+    /**
+     * The aliased methods of this class, indexed by their alias and
+     * parameter types (see methodKey).
+     */
+    Map methodAliases = new HashMap();
+    /**
+     * The aliased methods of all known sub classes, indexed like
+     * methodAliases.
+     */
+    Map subClassMethodAliases = new HashMap();
+
     boolean initialized;
+    /**
+     * The offset of the transformed class in the spill store, -1 if
+     * the class wasn't spilled.
+     */
+    long spillOffset = -1;
+    int spillLength;
+    /**
+     * The modifiers of the class, after the class info was dropped.
+     */
+    int modifiers;
 
     public ClassIdentifier(PackageIdentifier pack, String fullName,
 			   String name, ClassInfo info) {
@@ -68,6 +98,14 @@ public class ClassIdentifier extends Identifier {
 
     public void addSubClass(ClassIdentifier ci) {
 	knownSubClasses.add(ci);
+	ci.knownSuperClasses.add(this);
+	for (Iterator i = ci.methodAliases.entrySet().iterator();
+	     i.hasNext(); ) {
+	    Map.Entry entry = (Map.Entry) i.next();
+	    for (Iterator j = ((List) entry.getValue()).iterator();
+		 j.hasNext(); )
+		addToIndex(subClassMethodAliases, entry.getKey(), j.next());
+	}
 	for(Iterator i = virtualReachables.iterator(); i.hasNext(); )
 	    ci.reachableReference((Reference) i.next(), true);
     }
@@ -456,6 +494,7 @@ public class ClassIdentifier extends Identifier {
 		    .getClassIdentifier(innerClasses[i].getName());
 	    }
 	}
+	Main.getClassBundle().classInitialized(this);
     }
 
     /**
@@ -563,16 +602,23 @@ public class ClassIdentifier extends Identifier {
 	        GlobalOptions.err.println("Field "+ ident+" not reachable");
 	    }
 	}
+	List reachableMethods = new ArrayList(methodIdents.size());
 	for (Iterator i = methodIdents.iterator(); i.hasNext(); ) {
 	    MethodIdentifier ident = (MethodIdentifier)i.next();
 	    if ((Main.stripping & Main.STRIP_UNREACH) == 0
 		|| ident.isReachable()) {
-		ident.doTransformations();
-		newMethods.add(ident.info);
+		reachableMethods.add(ident);
 	    } else if (GlobalOptions.verboseLevel > 2) {
 	        GlobalOptions.err.println("Method "+ ident+" not reachable");
 	    }
 	}
+	/* Read the dropped code of all these methods at once. */
+	loadCode(reachableMethods);
+	for (Iterator i = reachableMethods.iterator(); i.hasNext(); ) {
+	    MethodIdentifier ident = (MethodIdentifier)i.next();
+	    ident.doTransformations();
+	    newMethods.add(ident.info);
+	}
 
 	info.setFields((FieldInfo[]) newFields.toArray
 		       (new FieldInfo[newFields.size()]));
@@ -580,10 +626,82 @@ public class ClassIdentifier extends Identifier {
 			(new MethodInfo[newMethods.size()]));
     }
     
+    /**
+     * Reads the dropped code of the given methods again from the class
+     * file and prepares it like the constructor of MethodIdentifier.
+     * The methods are looked up by their original name and type, since
+     * they may be renamed already.
+     * @param methods a collection of method identifiers of this class.
+     * Methods without code and methods whose code wasn't dropped are
+     * left alone.
+     */
+    synchronized void loadCode(Collection methods) {
+	Map dropped = new HashMap();
+	for (Iterator i = methods.iterator(); i.hasNext(); ) {
+	    MethodIdentifier ident = (MethodIdentifier) i.next();
+	    if (ident.codeAnalyzer != null
+		&& ident.info.getBasicBlocks() == null)
+		dropped.put(ident.getName() + ident.getType(), ident);
+	}
+	if (dropped.isEmpty())
+	    return;
+
+	Map infos = new HashMap();
+	for (Iterator i = dropped.entrySet().iterator(); i.hasNext(); ) {
+	    Map.Entry entry = (Map.Entry) i.next();
+	    infos.put(entry.getKey(),
+		      ((MethodIdentifier) entry.getValue()).info);
+	}
+	try {
+	    InputStream input = info.getClassPath().getFile
+		(fullName.replace('.', '/') + ".class");
+	    try {
+		info.readCode(input, infos);
+	    } finally {
+		input.close();
+	    }
+	} catch (IOException ex) {
+	    throw new RuntimeException("Can't read code of " + fullName
+				       + ": " + ex.getMessage());
+	}
+	for (Iterator i = dropped.values().iterator(); i.hasNext(); ) {
+	    MethodIdentifier ident = (MethodIdentifier) i.next();
+	    BasicBlocks bb = ident.info.getBasicBlocks();
+	    if (bb == null)
+		throw new RuntimeException("Can't find the code of "+ident);
+	    ident.prepareCode(bb);
+	}
+    }
+
+    /**
+     * Writes the transformed class to the spill store and drops the
+     * class info and the code of its methods.  The identifiers are
+     * kept, since the other classes still look them up.
+     */
+    public void spill(SpillStore store) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(bytes);
+	info.write(out);
+	out.close();
+	spillLength = bytes.size();
+	spillOffset = store.put(bytes.toByteArray());
+	modifiers = info.getModifiers();
+	info = null;
+	for (Iterator i = methodIdents.iterator(); i.hasNext(); )
+	    ((MethodIdentifier) i.next()).info.setBasicBlocks(null);
+    }
+
     public void storeClass(DataOutputStream out) throws IOException {
 	if (GlobalOptions.verboseLevel > 0)
 	    GlobalOptions.err.println("Writing "+this);
-	info.write(out);
+	if (spillOffset >= 0)
+	    out.write(Main.getClassBundle().getSpillStore()
+		      .get(spillOffset, spillLength));
+	else {
+	    /* The class wasn't transformed, or it couldn't be spilled. */
+	    loadCode(methodIdents);
+	    info.write(out);
+	}
 	info = null;
 	fieldIdents = methodIdents = null;
     }
@@ -618,7 +736,7 @@ public class ClassIdentifier extends Identifier {
     }
     
     public int getModifiers() {
-	return info.getModifiers();
+	return info != null ? info.getModifiers() : modifiers;
     }
 
     public List getFieldIdents() {
@@ -679,14 +797,73 @@ public class ClassIdentifier extends Identifier {
 	return null;
     }
 
-    public boolean containsFieldAliasDirectly(String fieldName, String typeSig,
-					      IdentifierMatcher matcher) {
-	for (Iterator i = fieldIdents.iterator(); i.hasNext(); ) {
+    /**
+     * Returns the key of a method in the alias indices.
+     * @param name the name or alias of the method.
+     * @param type the type signature of the method, or only its
+     * parameter part.
+     */
+    static String methodKey(String name, String type) {
+	return name + type.substring(0, type.indexOf(')') + 1);
+    }
+
+    private static void addToIndex(Map index, Object key, Object value) {
+	List list = (List) index.get(key);
+	if (list == null) {
+	    list = new ArrayList(1);
+	    index.put(key, list);
+	}
+	list.add(value);
+    }
+
+    private static void removeFromIndex(Map index, Object key,
+					Object value) {
+	List list = (List) index.get(key);
+	list.remove(value);
+	if (list.isEmpty())
+	    index.remove(key);
+    }
+
+    /**
+     * Updates the alias index after the alias of a field changed.
+     */
+    void updateFieldAlias(FieldIdentifier ident) {
+	if (ident.aliasKey != null)
+	    removeFromIndex(fieldAliases, ident.aliasKey, ident);
+	ident.aliasKey = ident.getAlias();
+	addToIndex(fieldAliases, ident.aliasKey, ident);
+    }
+
+    /**
+     * Updates the alias indices of this class and of its super
+     * classes after the alias of a method changed.
+     */
+    void updateMethodAlias(MethodIdentifier ident) {
+	if (ident.aliasKey != null) {
+	    removeFromIndex(methodAliases, ident.aliasKey, ident);
+	    for (Iterator i = knownSuperClasses.iterator(); i.hasNext(); )
+		removeFromIndex(((ClassIdentifier) i.next())
+				.subClassMethodAliases, ident.aliasKey, ident);
+	}
+	ident.aliasKey = methodKey(ident.getAlias(), ident.getType());
+	addToIndex(methodAliases, ident.aliasKey, ident);
+	for (Iterator i = knownSuperClasses.iterator(); i.hasNext(); )
+	    addToIndex(((ClassIdentifier) i.next()).subClassMethodAliases,
+		       ident.aliasKey, ident);
+    }
+
+    /**
+     * Checks if one of the given aliased identifiers matches.
+     * @param idents the identifiers with the right alias, may be null.
+     */
+    private static boolean containsAlias(List idents, String typeSig,
+					 IdentifierMatcher matcher) {
+	if (idents == null)
+	    return false;
+	for (Iterator i = idents.iterator(); i.hasNext(); ) {
 	    Identifier ident = (Identifier) i.next();
 	    if (((Main.stripping & Main.STRIP_UNREACH) == 0
 		 || ident.isReachable())
-		&& ident.wasAliased()
-		&& ident.getAlias().equals(fieldName)
 		&& ident.getType().startsWith(typeSig)
 		&& matcher.matches(ident))
 		return true;
@@ -694,20 +871,22 @@ public class ClassIdentifier extends Identifier {
 	return false;
     }
 
+    public boolean containsFieldAliasDirectly(String fieldName, String typeSig,
+					      IdentifierMatcher matcher) {
+	return containsAlias((List) fieldAliases.get(fieldName),
+			     typeSig, matcher);
+    }
+
+    /**
+     * @param paramType the type signature of the method, or only its
+     * parameter part.
+     */
     public boolean containsMethodAliasDirectly(String methodName, 
 					       String paramType,
 					       IdentifierMatcher matcher) {
-	for (Iterator i = methodIdents.iterator(); i.hasNext(); ) {
-	    Identifier ident = (Identifier) i.next();
-	    if (((Main.stripping & Main.STRIP_UNREACH) == 0
-		 || ident.isReachable())
-		&& ident.wasAliased()
-		&& ident.getAlias().equals(methodName)
-		&& ident.getType().startsWith(paramType)
-		&& matcher.matches(ident))
-		return true;
-	}
-	return false;
+	return containsAlias((List) methodAliases.get
+			     (methodKey(methodName, paramType)),
+			     paramType, matcher);
     }
 
     public boolean fieldConflicts(FieldIdentifier field, String newAlias) {
@@ -756,24 +935,25 @@ public class ClassIdentifier extends Identifier {
 		    (newAlias, paramType, packMatcher))
 		    return true;
 	    } else {
-		MethodInfo[] minfos = superInfo.getMethods();
-		for (int i=0; i< minfos.length; i++) {
-		    if (minfos[i].getName().equals(newAlias)
-			&& minfos[i].getType().startsWith(paramType)
-			&& packMatcher.matches(minfos[i].getModifiers()))
-			return true;
+		List minfos = (List) Main.getClassBundle()
+		    .getMethodIndex(superInfo)
+		    .get(methodKey(newAlias, paramType));
+		if (minfos != null) {
+		    for (Iterator i = minfos.iterator(); i.hasNext(); ) {
+			MethodInfo minfo = (MethodInfo) i.next();
+			if (minfo.getType().startsWith(paramType)
+			    && packMatcher.matches(minfo.getModifiers()))
+			    return true;
+		    }
 		}
 	    }
 	    superInfo = superInfo.getSuperclass();
 	}
-	if (packMatcher.matches(method)) {
-	    for (Iterator i = knownSubClasses.iterator(); i.hasNext(); ) {
-		ClassIdentifier ci = (ClassIdentifier) i.next();
-		if (ci.containsMethodAliasDirectly(newAlias, paramType, 
-						   packMatcher))
-		    return true;
-	    }
-	}
+	if (packMatcher.matches(method)
+	    && containsAlias((List) subClassMethodAliases.get
+			     (methodKey(newAlias, paramType)),
+			     paramType, packMatcher))
+	    return true;
 	return false;
     }
     
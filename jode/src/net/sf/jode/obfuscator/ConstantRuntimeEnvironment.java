@@ -257,7 +257,7 @@ public class ConstantRuntimeEnvironment extends SimpleRuntimeEnvironment {
 	MethodIdentifier mi
 	    = (MethodIdentifier) Main.getClassBundle().getIdentifier(ref);
 	if (mi != null) {
-	    BasicBlocks bb = mi.info.getBasicBlocks();
+	    BasicBlocks bb = mi.getBasicBlocks();
 	    if (bb != null)
 		return interpreter.interpretMethod(bb, cls, params);
 	}
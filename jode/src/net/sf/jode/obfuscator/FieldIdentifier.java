@@ -46,6 +46,12 @@ public class FieldIdentifier extends Identifier{
      */
     private Collection fieldListeners;
 
+    /**
+     * The key in the alias index of the class, null if this field
+     * wasn't aliased yet.
+     */
+    String aliasKey;
+
     public FieldIdentifier(ClassIdentifier clazz, FieldInfo info) {
 	super(info.getName());
 	this.name = info.getName();
@@ -143,6 +149,10 @@ public class FieldIdentifier extends Identifier{
 	return "FieldIdentifier "+getFullName();
     }
 
+    protected void aliasChanged() {
+	clazz.updateFieldAlias(this);
+    }
+
     public boolean conflicting(String newAlias) {
 	return clazz.fieldConflicts(this, newAlias);
     }
@@ -130,9 +130,19 @@ public abstract class Identifier {
 	    Identifier rep = getRepresentative();
 	    rep.wasAliased = true;
 	    rep.alias = name;
+	    for (Identifier ptr = rep; ptr != null; ptr = ptr.right)
+		ptr.aliasChanged();
 	}
     }
 
+    /**
+     * This is called after the alias of this identifier was set.
+     * Identifiers whose parents index them by their alias should
+     * override this.
+     */
+    protected void aliasChanged() {
+    }
+
     public final String getAlias() {
 	return getRepresentative().alias;
     }
@@ -0,0 +1,690 @@
+/* IncrementalState Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import net.sf.jode.GlobalOptions;
+import net.sf.jode.bytecode.ClassFormatException;
+import net.sf.jode.bytecode.ConstantPool;
+import net.sf.jode.bytecode.Reference;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+///#def COLLECTIONS java.util
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+///#enddef
+
+/**
+ * The state of an incremental obfuscation.  The state of the
+ * previous run is read from a file.  It contains the configuration,
+ * a hash of every class and of its output, the aliases of all
+ * identifiers, and which of them were reachable.<br>
+ *
+ * A class is <i>dirty</i> if it must be analyzed, transformed and
+ * written again.  This is the case if it changed since the previous
+ * run, if it references a class that changed or whose super class
+ * changed, if some of its identifiers became reachable, or if it
+ * references a class where this happened.  The code of the other
+ * classes isn't analyzed and their output is copied from the
+ * previous run.  When a class gets dirty during the analysis, the
+ * code of its reachable methods is analyzed again.<br>
+ *
+ * The identifiers that were reachable in the previous run are
+ * reachable from the start, since the code that reached them isn't
+ * analyzed again.  So an incremental run never removes identifiers
+ * that were reachable before.  The aliases of the previous run are
+ * read like a rename table, so they don't change.  Only new
+ * identifiers get new aliases.<br>
+ *
+ * Changes of classes outside the bundle are not detected.<br>
+ *
+ * This class is not thread safe.  The class bundle calls it while
+ * holding its lock.
+ */
+class IncrementalState {
+    private ClassBundle bundle;
+    private String stateFile;
+    private String configuration;
+
+    /**
+     * The classes of the previous run.  This maps the class name to
+     * an array of the hash of the class, and, if it was written,
+     * the hash and the name of its output.
+     */
+    private Map oldClasses = new HashMap();
+    /**
+     * The identifiers of the previous run.  This maps the full name
+     * to the flags: R if the identifier was reachable, N for a field
+     * that wasn't constant and S for a method with global side
+     * effects.
+     */
+    private Map oldFlags = new HashMap();
+    /**
+     * The aliases of the previous run, indexed by full name.
+     */
+    private Map oldAliases = new HashMap();
+    /**
+     * The virtual methods of a class that were reachable.  This maps
+     * the class name to the list of method names and types.
+     */
+    private Map oldVirtuals = new HashMap();
+    /**
+     * The output of the previous run that is still available and
+     * unmodified, indexed by class name.
+     */
+    private Map oldOutputs = new HashMap();
+
+    /**
+     * The class records of the initialized classes, indexed by
+     * class name.
+     */
+    private Map records = new HashMap();
+    private Set dirty = new HashSet();
+    /**
+     * The state of this run, that is saved after the classes were
+     * written.
+     */
+    private TranslationTable newState;
+
+    static class ClassRecord {
+	ClassIdentifier ident;
+	String hash;
+	Set references = new HashSet();
+	boolean changed;
+    }
+
+    public IncrementalState(ClassBundle bundle, String stateFile,
+			    String configuration) {
+	this.bundle = bundle;
+	this.stateFile = stateFile;
+	this.configuration = digest(configuration + "\n"
+				    + GlobalOptions.version);
+    }
+
+    /**
+     * Returns the MD5 hash of the given data as hex string.
+     */
+    static String digest(byte[] data) {
+	MessageDigest md;
+	try {
+	    md = MessageDigest.getInstance("MD5");
+	} catch (NoSuchAlgorithmException ex) {
+	    throw new InternalError("MD5 not supported");
+	}
+	byte[] hash = md.digest(data);
+	StringBuffer sb = new StringBuffer(2 * hash.length);
+	for (int i = 0; i < hash.length; i++) {
+	    sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+	    sb.append(Character.forDigit(hash[i] & 0xf, 16));
+	}
+	return sb.toString();
+    }
+
+    private static String digest(String data) {
+	try {
+	    return digest(data.getBytes("UTF-8"));
+	} catch (UnsupportedEncodingException ex) {
+	    throw new InternalError("UTF-8 not supported");
+	}
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+	try {
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[4096];
+	    int length;
+	    while ((length = in.read(buffer)) > 0)
+		out.write(buffer, 0, length);
+	    return out.toByteArray();
+	} finally {
+	    in.close();
+	}
+    }
+
+    private static boolean isZip(String dest) {
+	return dest.endsWith(".jar") || dest.endsWith(".zip");
+    }
+
+    /**
+     * Reads the state of the previous run, and the output of the
+     * previous run that is still there.  If there is no state, or the
+     * configuration changed, all classes are dirty.
+     * @param destDir the destination of the classes.
+     */
+    public void load(String destDir) {
+	File file = new File(stateFile);
+	if (!file.exists()) {
+	    GlobalOptions.err.println("No incremental state in " + stateFile
+				      + ", analyzing all classes.");
+	    return;
+	}
+	TranslationTable table = new TranslationTable();
+	try {
+	    InputStream input = new FileInputStream(file);
+	    try {
+		table.load(input);
+	    } finally {
+		input.close();
+	    }
+	} catch (IOException ex) {
+	    GlobalOptions.err.println("Can't read incremental state "
+				      + stateFile);
+	    ex.printStackTrace(GlobalOptions.err);
+	    return;
+	} catch (IndexOutOfBoundsException ex) {
+	    /* A line without a '='. */
+	    GlobalOptions.err.println("The incremental state " + stateFile
+				      + " is corrupted, analyzing all "
+				      + "classes.");
+	    return;
+	}
+	if (!configuration.equals(table.get("configuration"))) {
+	    GlobalOptions.err.println("The configuration changed, "
+				      + "analyzing all classes.");
+	    return;
+	}
+
+	if (!readTable(table)) {
+	    GlobalOptions.err.println("The incremental state " + stateFile
+				      + " is corrupted, analyzing all "
+				      + "classes.");
+	    oldClasses.clear();
+	    oldFlags.clear();
+	    oldAliases.clear();
+	    oldVirtuals.clear();
+	    return;
+	}
+	loadOutputs(destDir);
+    }
+
+    /**
+     * Reads the classes and identifiers of the previous run from the
+     * state.
+     * @return false, if an entry is malformed.
+     */
+    private boolean readTable(TranslationTable table) {
+	for (Iterator i = table.entrySet().iterator(); i.hasNext(); ) {
+	    Map.Entry entry = (Map.Entry) i.next();
+	    String key = (String) entry.getKey();
+	    String value = (String) entry.getValue();
+	    int space = value.indexOf(' ');
+	    if (key.startsWith("class ")) {
+		String[] info = new String[3];
+		info[0] = (space == -1) ? value : value.substring(0, space);
+		if (space != -1) {
+		    /* The hash and the name of the output. */
+		    int second = value.indexOf(' ', space + 1);
+		    if (second == -1)
+			return false;
+		    info[1] = value.substring(space + 1, second);
+		    info[2] = value.substring(second + 1);
+		}
+		oldClasses.put(key.substring(6), info);
+	    } else if (key.startsWith("ident ")) {
+		String name = key.substring(6);
+		oldFlags.put(name, (space == -1) ? value
+			     : value.substring(0, space));
+		if (space != -1)
+		    oldAliases.put(name, value.substring(space + 1));
+	    } else if (key.startsWith("virtual ")) {
+		List methods = new ArrayList();
+		int start = 0;
+		while (start < value.length()) {
+		    int end = value.indexOf(' ', start);
+		    if (end == -1)
+			end = value.length();
+		    /* The name and the type, separated by a dot. */
+		    if (value.lastIndexOf('.', end) < start)
+			return false;
+		    methods.add(value.substring(start, end));
+		    start = end + 1;
+		}
+		oldVirtuals.put(key.substring(8), methods);
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Reads the output of the previous run and keeps the classes
+     * whose output is unmodified.
+     */
+    private void loadOutputs(String destDir) {
+	ZipFile zip = null;
+	try {
+	    if (isZip(destDir)) {
+		if (!new File(destDir).exists())
+		    return;
+		zip = new ZipFile(destDir);
+	    }
+	    for (Iterator i = oldClasses.entrySet().iterator();
+		 i.hasNext(); ) {
+		Map.Entry entry = (Map.Entry) i.next();
+		String[] info = (String[]) entry.getValue();
+		if (info[1] == null)
+		    continue;
+		byte[] output = null;
+		if (zip != null) {
+		    ZipEntry ze = zip.getEntry(info[2]);
+		    if (ze != null)
+			output = readFully(zip.getInputStream(ze));
+		} else {
+		    File file = new File(destDir, info[2].replace
+					 ('/', File.separatorChar));
+		    if (file.exists())
+			output = readFully(new FileInputStream(file));
+		}
+		if (output != null && digest(output).equals(info[1]))
+		    oldOutputs.put(entry.getKey(), output);
+	    }
+	} catch (IOException ex) {
+	    GlobalOptions.err.println("Can't read previous output "
+				      + destDir);
+	    ex.printStackTrace(GlobalOptions.err);
+	} finally {
+	    if (zip != null) {
+		try {
+		    zip.close();
+		} catch (IOException ex) {
+		}
+	    }
+	}
+    }
+
+    /**
+     * Loads the classes of the previous run that still exist.  They
+     * may be loaded on demand, and the code that referenced them
+     * isn't analyzed again.
+     */
+    public void loadOldClasses() {
+	for (Iterator i = oldClasses.keySet().iterator(); i.hasNext(); ) {
+	    String name = (String) i.next();
+	    if (bundle.getClassPath().existsClass(name))
+		bundle.getClassIdentifier(name);
+	}
+    }
+
+    /**
+     * Reads the constant pool of a class file and adds all class
+     * names it mentions to the record.
+     */
+    private static void scanClass(byte[] data, ClassRecord record)
+	throws IOException {
+	ConstantPool cpool = new ConstantPool();
+	try {
+	    ByteBuffer input = ByteBuffer.wrap(data);
+	    if (input.getInt() != 0xcafebabe)
+		throw new ClassFormatException("Wrong magic");
+	    /* version */
+	    input.getInt();
+	    cpool.read(input);
+	} catch (BufferUnderflowException ex) {
+	    throw new ClassFormatException("truncated class file");
+	}
+
+	for (Iterator i = cpool.iterateClassNames(); i.hasNext(); )
+	    record.references.add(i.next());
+	for (int i = 1; i < cpool.size(); i++) {
+	    if (cpool.getTag(i) != ConstantPool.UTF8)
+		continue;
+	    String str = cpool.getUTF8(i);
+	    /* Take everything that looks like a class type signature.
+	     * Too many references only make more classes dirty.
+	     */
+	    int index = str.indexOf('L');
+	    while (index != -1) {
+		int end = str.indexOf(';', index);
+		if (end == -1)
+		    break;
+		String name = str.substring(index + 1, end);
+		if (name.indexOf('(') == -1 && name.indexOf(')') == -1
+		    && name.indexOf('[') == -1 && name.indexOf('<') == -1)
+		    record.references.add(name.replace('/', '.'));
+		index = str.indexOf('L', index + 1);
+	    }
+	}
+    }
+
+    /**
+     * Called when a class of the bundle was initialized.  This
+     * checks if it changed and marks its identifiers, that were
+     * reachable in the previous run, as reachable.
+     */
+    public void classInitialized(ClassIdentifier ident) {
+	String name = ident.getFullName();
+	ClassRecord record = new ClassRecord();
+	record.ident = ident;
+	String[] info = (String[]) oldClasses.get(name);
+	try {
+	    byte[] data = readFully(bundle.getClassPath().getFile
+				    (name.replace('.', '/') + ".class"));
+	    record.hash = digest(data);
+	    scanClass(data, record);
+	    record.changed = (info == null || !info[0].equals(record.hash)
+			      || (info[1] != null
+				  && !oldOutputs.containsKey(name)));
+	} catch (IOException ex) {
+	    if (GlobalOptions.verboseLevel > 0)
+		GlobalOptions.err.println("Can't read " + name + ": " + ex);
+	    record.changed = true;
+	}
+	records.put(name, record);
+	if (record.changed)
+	    dirty.add(name);
+
+	for (Iterator i = ident.getChilds(); i.hasNext(); )
+	    restoreFlags((Identifier) i.next());
+	restoreFlags(ident);
+	List virtuals = (List) oldVirtuals.get(name);
+	if (virtuals != null) {
+	    String clazzType = ("L" + name.replace('.', '/') + ";").intern();
+	    for (Iterator i = virtuals.iterator(); i.hasNext(); ) {
+		String method = (String) i.next();
+		int dot = method.indexOf('.');
+		ident.reachableReference
+		    (Reference.getReference(clazzType,
+					    method.substring(0, dot),
+					    method.substring(dot + 1)), true);
+	    }
+	}
+    }
+
+    private void restoreFlags(Identifier ident) {
+	String flags = (String) oldFlags.get(ident.getFullName());
+	if (flags == null)
+	    return;
+	if (flags.indexOf('N') != -1 && ident instanceof FieldIdentifier)
+	    ((FieldIdentifier) ident).setNotConstant();
+	if (flags.indexOf('S') != -1 && ident instanceof MethodIdentifier)
+	    ((MethodIdentifier) ident).setGlobalSideEffects();
+	if (flags.indexOf('R') != -1)
+	    ident.setReachable();
+    }
+
+    private boolean wasReachable(Identifier ident) {
+	String flags = (String) oldFlags.get(ident.getFullName());
+	return flags != null && flags.indexOf('R') != -1;
+    }
+
+    /**
+     * Checks if an identifier of the class is reachable now, but
+     * wasn't reachable in the previous run.
+     */
+    private boolean reachabilityChanged(ClassIdentifier ident) {
+	if (ident.isReachable() && !wasReachable(ident))
+	    return true;
+	for (Iterator i = ident.getChilds(); i.hasNext(); ) {
+	    Identifier child = (Identifier) i.next();
+	    if (child.isReachable() && !wasReachable(child))
+		return true;
+	}
+	return false;
+    }
+
+    private boolean isAffected(ClassRecord record, Set affected) {
+	ClassIdentifier ident = record.ident;
+	if (affected.contains(ident.superName))
+	    return true;
+	for (int i = 0; i < ident.ifaceNames.length; i++) {
+	    if (affected.contains(ident.ifaceNames[i]))
+		return true;
+	}
+	return false;
+    }
+
+    /**
+     * Finds the classes that got dirty and schedules the analysis of
+     * their reachable methods.  This is called after the analysis,
+     * and the analysis must be repeated if this returns true.
+     * @return true, if some classes got dirty.
+     */
+    public boolean updateDirtyClasses() {
+	/* The references to the changed classes and their sub classes
+	 * may resolve differently, so the classes that reference them
+	 * must be analyzed again.
+	 */
+	Set affected = new HashSet();
+	Set referenced = new HashSet();
+	for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+	    ClassRecord record = (ClassRecord) i.next();
+	    if (record.changed)
+		affected.add(record.ident.getFullName());
+	}
+	boolean more = true;
+	while (more) {
+	    more = false;
+	    for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+		ClassRecord record = (ClassRecord) i.next();
+		String name = record.ident.getFullName();
+		if (!affected.contains(name)
+		    && isAffected(record, affected)) {
+		    affected.add(name);
+		    more = true;
+		}
+	    }
+	}
+	referenced.addAll(affected);
+
+	/* The classes that reference a class with new reachable
+	 * identifiers may strip different things.
+	 */
+	for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+	    ClassRecord record = (ClassRecord) i.next();
+	    if (reachabilityChanged(record.ident))
+		referenced.add(record.ident.getFullName());
+	}
+
+	boolean strip = (Main.stripping & Main.STRIP_UNREACH) != 0;
+	List newDirty = new ArrayList();
+	for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+	    ClassRecord record = (ClassRecord) i.next();
+	    String name = record.ident.getFullName();
+	    if (dirty.contains(name))
+		continue;
+	    boolean isDirty = referenced.contains(name);
+	    if (!isDirty && (record.ident.isReachable() || !strip)
+		&& !oldOutputs.containsKey(name))
+		isDirty = true;
+	    for (Iterator j = record.references.iterator();
+		 !isDirty && j.hasNext(); )
+		isDirty = referenced.contains(j.next());
+	    if (isDirty) {
+		dirty.add(name);
+		newDirty.add(record.ident);
+	    }
+	}
+
+	for (Iterator i = newDirty.iterator(); i.hasNext(); ) {
+	    ClassIdentifier ident = (ClassIdentifier) i.next();
+	    if (GlobalOptions.verboseLevel > 1)
+		GlobalOptions.err.println("Dirty: " + ident);
+	    for (Iterator j = ident.getMethodIdents().iterator();
+		 j.hasNext(); ) {
+		Identifier method = (Identifier) j.next();
+		if (method.isReachable())
+		    bundle.analyzeIdentifier(method);
+	    }
+	}
+	return !newDirty.isEmpty();
+    }
+
+    /**
+     * Checks if the class can be taken from the previous run.  The
+     * code of such a class isn't analyzed and the class isn't
+     * transformed.
+     */
+    public boolean isUnchanged(ClassIdentifier ident) {
+	return records.containsKey(ident.getFullName())
+	    && !dirty.contains(ident.getFullName());
+    }
+
+    /**
+     * Returns the output of the previous run for a class.
+     */
+    public byte[] getOldOutput(ClassIdentifier ident) {
+	return (byte[]) oldOutputs.get(ident.getFullName());
+    }
+
+    /**
+     * Returns the aliases of the previous run, indexed by full name.
+     * @see ClassBundle#readTable
+     */
+    public Map getAliases() {
+	return oldAliases;
+    }
+
+    public int getDirtyCount() {
+	return dirty.size();
+    }
+
+    public int getClassCount() {
+	return records.size();
+    }
+
+    private void saveIdentifier(Identifier ident) {
+	StringBuffer value = new StringBuffer();
+	if (ident.isReachable())
+	    value.append('R');
+	if (ident instanceof FieldIdentifier
+	    && ((FieldIdentifier) ident).isNotConstant())
+	    value.append('N');
+	if (ident instanceof MethodIdentifier
+	    && ((MethodIdentifier) ident).hasGlobalSideEffects())
+	    value.append('S');
+	if (value.length() == 0) {
+	    if (!ident.wasAliased())
+		return;
+	    value.append('-');
+	}
+	if (ident.wasAliased())
+	    value.append(' ').append(ident.getAlias());
+	newState.put("ident " + ident.getFullName(), value.toString());
+    }
+
+    /**
+     * Remembers the identifiers of this run.  This must be called
+     * after the identifiers were renamed and before the classes are
+     * written.
+     */
+    public void saveIdentifiers() {
+	newState = new TranslationTable();
+	newState.put("configuration", configuration);
+	Set packages = new HashSet();
+	for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+	    ClassIdentifier ident = ((ClassRecord) i.next()).ident;
+	    saveIdentifier(ident);
+	    for (Iterator j = ident.getChilds(); j.hasNext(); )
+		saveIdentifier((Identifier) j.next());
+	    if (!ident.virtualReachables.isEmpty()) {
+		StringBuffer value = new StringBuffer();
+		for (Iterator j = ident.virtualReachables.iterator();
+		     j.hasNext(); ) {
+		    Reference ref = (Reference) j.next();
+		    if (value.length() > 0)
+			value.append(' ');
+		    value.append(ref.getName()).append('.')
+			.append(ref.getType());
+		}
+		newState.put("virtual " + ident.getFullName(),
+			     value.toString());
+	    }
+	    Identifier pack = ident.getParent();
+	    while (pack.getParent() != null && packages.add(pack)) {
+		saveIdentifier(pack);
+		pack = pack.getParent();
+	    }
+	}
+    }
+
+    /**
+     * Saves the state of this run.  In a destination directory this
+     * also removes the class files of the previous run that weren't
+     * written again.
+     * @param classes the classes that were written.
+     * @param names the file names of the classes.
+     * @param hashes the hashes of the written classes, null for
+     * the classes that couldn't be written.
+     */
+    public void save(String destDir, ClassIdentifier[] classes,
+		     String[] names, String[] hashes) {
+	Set written = new HashSet();
+	Map outputs = new HashMap();
+	for (int i = 0; i < classes.length; i++) {
+	    if (hashes[i] != null) {
+		outputs.put(classes[i].getFullName(),
+			    hashes[i] + " " + names[i]);
+		written.add(names[i]);
+	    }
+	}
+	for (Iterator i = records.values().iterator(); i.hasNext(); ) {
+	    ClassRecord record = (ClassRecord) i.next();
+	    if (record.hash == null)
+		continue;
+	    String name = record.ident.getFullName();
+	    String output = (String) outputs.get(name);
+	    newState.put("class " + name, output == null ? record.hash
+			 : record.hash + " " + output);
+	}
+
+	if (!isZip(destDir)) {
+	    for (Iterator i = oldOutputs.keySet().iterator(); i.hasNext(); ) {
+		String[] info = (String[]) oldClasses.get(i.next());
+		if (!written.contains(info[2])) {
+		    File file = new File(destDir, info[2].replace
+					 ('/', File.separatorChar));
+		    if (GlobalOptions.verboseLevel > 0)
+			GlobalOptions.err.println("Removing " + file);
+		    file.delete();
+		}
+	    }
+	}
+
+	try {
+	    OutputStream out = new FileOutputStream(stateFile);
+	    try {
+		newState.store(out);
+	    } finally {
+		out.close();
+	    }
+	} catch (IOException ex) {
+	    GlobalOptions.err.println("Can't write incremental state "
+				      + stateFile);
+	    ex.printStackTrace(GlobalOptions.err);
+	}
+	newState = null;
+	oldOutputs = null;
+    }
+}
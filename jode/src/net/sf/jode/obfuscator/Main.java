@@ -26,6 +26,8 @@ import gnu.getopt.Getopt;
 import java.io.PrintWriter;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.IOException;
 ///#def COLLECTIONS java.util
 import java.util.Collections;
@@ -42,6 +44,8 @@ public class Main {
 	new LongOpt("cp", LongOpt.REQUIRED_ARGUMENT, null, 'c'),
 	new LongOpt("classpath", LongOpt.REQUIRED_ARGUMENT, null, 'c'),
 	new LongOpt("destpath", LongOpt.REQUIRED_ARGUMENT, null, 'd'),
+	new LongOpt("threads", LongOpt.REQUIRED_ARGUMENT, null, 't'),
+	new LongOpt("metrics", LongOpt.REQUIRED_ARGUMENT, null, 'm'),
 	new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h'),
 	new LongOpt("version", LongOpt.NO_ARGUMENT, null, 'V'),
 	new LongOpt("verbose", LongOpt.OPTIONAL_ARGUMENT, null, 'v'),
@@ -75,6 +79,12 @@ public class Main {
 		    "The directories should be separated by ','.");
 	err.println("  -d, --dest <dir>     "+
 		    "write decompiled files to disk into directory destdir.");
+	err.println("  -t, --threads <n>    "+
+		    "analyze and transform the methods with n threads.");
+	err.println("  -m, --metrics <file> "+
+		    "write the time and memory of every phase to file,");
+	err.println("                       "+
+		    "as JSON if it ends with .json, as CSV otherwise.");
 	err.println("  -D, --debug=...      "+
 		    "use --debug=help for more information.");
     }
@@ -89,12 +99,12 @@ public class Main {
 	    usage();
 	    return;
 	}
-	String cp = null, dest = null;
+	String cp = null, dest = null, threads = null, metrics = null;
         
 	GlobalOptions.err.println(GlobalOptions.copyright);
 	bundle = new ClassBundle();
 	boolean errorInParams = false;
-	Getopt g = new Getopt("net.sf.jode.obfuscator.Main", params, "hVvc:d:D:",
+	Getopt g = new Getopt("net.sf.jode.obfuscator.Main", params, "hVvt:m:c:d:D:",
 			      longOptions, true);
 	for (int opt = g.getopt(); opt != -1; opt = g.getopt()) {
 	    switch(opt) {
@@ -113,6 +123,12 @@ public class Main {
 	    case 'd':
 		dest = g.getOptarg();
 		break;
+	    case 't':
+		threads = g.getOptarg();
+		break;
+	    case 'm':
+		metrics = g.getOptarg();
+		break;
 	    case 'v': {
 		String arg = g.getOptarg();
 		if (arg == null)
@@ -150,12 +166,22 @@ public class Main {
         }
 
 
+	StringBuffer script = new StringBuffer();
 	try {
 	    String filename = params[g.getOptind()];
+	    Reader reader = (filename.equals("-") 
+			     ? new InputStreamReader(System.in)
+			     : new FileReader(filename));
+	    /* Keep the text of the script, so that an incremental run
+	     * can notice changes.
+	     */
+	    char[] buffer = new char[4096];
+	    int length;
+	    while ((length = reader.read(buffer)) > 0)
+		script.append(buffer, 0, length);
+	    reader.close();
 	    ScriptParser parser = new ScriptParser
-		(filename.equals("-") 
-		 ? new InputStreamReader(System.in)
-		 : new FileReader(filename));
+		(new StringReader(script.toString()));
 	    parser.parseOptions(bundle);
 	} catch (IOException ex) {
 	    GlobalOptions.err.println
@@ -175,7 +201,23 @@ public class Main {
 	    bundle.setOption("classpath", Collections.singleton(cp));
 	if (dest != null)
 	    bundle.setOption("dest", Collections.singleton(dest));
+	if (threads != null) {
+	    try {
+		bundle.setOption("threads", Collections.singleton(threads));
+	    } catch (IllegalArgumentException ex) {
+		GlobalOptions.err.println
+		    ("net.sf.jode.obfuscator.Main: Argument `"
+		     +threads+"' to --threads must be a positive number");
+		return;
+	    }
+	}
+
+	if (metrics != null)
+	    bundle.setOption("metrics", Collections.singleton(metrics));
 
+	if (cp != null)
+	    script.append("\n-c ").append(cp);
+	bundle.setConfiguration(script.toString());
 	bundle.run();
     }
 }
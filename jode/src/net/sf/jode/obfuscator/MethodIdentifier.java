@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Iterator;
 ///#enddef
 
+import java.io.PrintWriter;
 import java.util.BitSet;
 
 public class MethodIdentifier extends Identifier implements Opcodes {
@@ -42,6 +43,12 @@ public class MethodIdentifier extends Identifier implements Opcodes {
      */
     CodeAnalyzer codeAnalyzer;
 
+    /**
+     * The key in the alias indices of the class and its super
+     * classes, null if this method wasn't aliased yet.
+     */
+    String aliasKey;
+
     public MethodIdentifier(ClassIdentifier clazz, MethodInfo info) {
 	super(info.getName());
 	this.name = info.getName();
@@ -51,30 +58,61 @@ public class MethodIdentifier extends Identifier implements Opcodes {
 
 	BasicBlocks bb = info.getBasicBlocks();
 	if (bb != null) {
-	    if ((Main.stripping &
-		 (Main.STRIP_LVT | Main.STRIP_LNT)) != 0) {
-		Block[] blocks = bb.getBlocks();
-		for (int i = 0; i < blocks.length; i++) {
-		    Instruction[] instrs = blocks[i].getInstructions();
-		    for (int j = 0; j < instrs.length; j++) {
-			if ((Main.stripping & Main.STRIP_LVT) != 0
-			    && instrs[j].hasLocal())
-			    instrs[j].setLocalInfo
-				(LocalVariableInfo
-				 .getInfo(instrs[j].getLocalSlot()));
-			if ((Main.stripping & Main.STRIP_LNT) != 0)
-			    instrs[j].setLineNr(-1);
-		    }
+	    ClassBundle bundle = Main.getClassBundle();
+	    codeAnalyzer = bundle.getCodeAnalyzer();
+	    /* The code is read again when it is needed, see
+	     * getBasicBlocks.
+	     */
+	    if (bundle.isDroppingCode())
+		info.setBasicBlocks(null);
+	    else
+		prepareCode(bb);
+	}
+    }
+
+    /**
+     * Strips the debugging information, if requested, and applies the
+     * pre transformers to the code.
+     */
+    void prepareCode(BasicBlocks bb) {
+	if ((Main.stripping &
+	     (Main.STRIP_LVT | Main.STRIP_LNT)) != 0) {
+	    Block[] blocks = bb.getBlocks();
+	    for (int i = 0; i < blocks.length; i++) {
+		Instruction[] instrs = blocks[i].getInstructions();
+		for (int j = 0; j < instrs.length; j++) {
+		    if ((Main.stripping & Main.STRIP_LVT) != 0
+			&& instrs[j].hasLocal())
+			instrs[j].setLocalInfo
+			    (LocalVariableInfo
+			     .getInfo(instrs[j].getLocalSlot()));
+		    if ((Main.stripping & Main.STRIP_LNT) != 0)
+			instrs[j].setLineNr(-1);
 		}
 	    }
-	    codeAnalyzer = Main.getClassBundle().getCodeAnalyzer();
+	}
 
-	    CodeTransformer[] trafos
-		= Main.getClassBundle().getPreTransformers();
-	    for (int i = 0; i < trafos.length; i++) {
-		trafos[i].transformCode(bb);
-	    }
+	CodeTransformer[] trafos
+	    = Main.getClassBundle().getPreTransformers();
+	for (int i = 0; i < trafos.length; i++) {
+	    trafos[i].transformCode(bb);
+	}
+    }
+
+    /**
+     * Gets the code of this method.  If the code was dropped to save
+     * memory, it is read again from the class file.
+     * @return the code, or null if the method has no code.
+     */
+    public BasicBlocks getBasicBlocks() {
+	if (codeAnalyzer == null)
+	    return null;
+	BasicBlocks bb = info.getBasicBlocks();
+	if (bb == null) {
+	    clazz.loadCode(Collections.singleton(this));
+	    bb = info.getBasicBlocks();
 	}
+	return bb;
     }
 
     public Iterator getChilds() {
@@ -106,9 +144,11 @@ public class MethodIdentifier extends Identifier implements Opcodes {
 		    .reachableClass(exceptions[i]);
 	}
 
-	BasicBlocks bb = info.getBasicBlocks();
-	if (bb != null)
-	    codeAnalyzer.analyzeCode(this, bb);
+	/* The code of an unchanged class was analyzed in the previous
+	 * run and the identifiers it reaches are already reachable.
+	 */
+	if (codeAnalyzer != null && !Main.getClassBundle().isUnchanged(clazz))
+	    codeAnalyzer.analyzeCode(this, getBasicBlocks());
     }
 
     public Identifier getParent() {
@@ -136,6 +176,10 @@ public class MethodIdentifier extends Identifier implements Opcodes {
 	return info.getModifiers();
     }
 
+    protected void aliasChanged() {
+	clazz.updateMethodAlias(this);
+    }
+
     public boolean conflicting(String newAlias) {
 	return clazz.methodConflicts(this, newAlias);
     }
@@ -161,11 +205,8 @@ public class MethodIdentifier extends Identifier implements Opcodes {
     }
 
     /**
-     * This method does the code transformation.  This include
-     * <ul><li>new slot distribution for locals</li>
-     *     <li>obfuscating transformation of flow</li>
-     *     <li>renaming field, method and class references</li>
-     * </ul>
+     * This method renames the method and its type and schedules the
+     * code transformation, see {@link #transformCode}.
      */
     boolean wasTransformed = false;
     public void doTransformations() {
@@ -176,66 +217,8 @@ public class MethodIdentifier extends Identifier implements Opcodes {
 	info.setName(getAlias());
 	ClassBundle bundle = Main.getClassBundle();
 	info.setType(bundle.getTypeAlias(type));
-	if (codeAnalyzer != null) {
-	    BasicBlocks bb = info.getBasicBlocks();
-	    try {
-		codeAnalyzer.transformCode(bb);
-		CodeTransformer[] trafos = bundle.getPostTransformers();
-		for (int i = 0; i < trafos.length; i++) {
-		    trafos[i].transformCode(bb);
-		}
-	    } catch (RuntimeException ex) {
-		ex.printStackTrace(GlobalOptions.err);
-		bb.dumpCode(GlobalOptions.err);
-	    }
-	    
-	    Block[] blocks = bb.getBlocks();
-	    for (int i = 0; i < blocks.length; i++) {
-		Instruction[] instrs = blocks[i].getInstructions();
-		for (int j = 0; j < instrs.length; j++) {
-		    switch (instrs[j].getOpcode()) {
-		    case opc_invokespecial:
-		    case opc_invokestatic:
-		    case opc_invokeinterface:
-		    case opc_invokevirtual: {
-			instrs[j].setReference
-			    (Main.getClassBundle()
-			     .getReferenceAlias(instrs[j].getReference()));
-			break;
-			
-		    }
-		    case opc_putstatic:
-		    case opc_putfield:
-		    case opc_getstatic:
-		    case opc_getfield: {
-			instrs[j].setReference
-			    (Main.getClassBundle()
-			     .getReferenceAlias(instrs[j].getReference()));
-			break;
-		    }
-		    case opc_new:
-		    case opc_checkcast:
-		    case opc_instanceof:
-		    case opc_multianewarray: {
-			instrs[j].setClazzType
-			    (Main.getClassBundle()
-			 .getTypeAlias(instrs[j].getClazzType()));
-			break;
-		    }
-		    }
-		}
-	    }
-		
-	    Handler[] handlers = bb.getExceptionHandlers();
-	    for (int i=0; i< handlers.length; i++) {
-		if (handlers[i].getType() != null) {
-		    ClassIdentifier ci = Main.getClassBundle()
-			.getClassIdentifier(handlers[i].getType());
-		    if (ci != null)
-			handlers[i].setType(ci.getFullAlias());
-		}
-	    }
-	}
+	if (codeAnalyzer != null)
+	    bundle.transformCode(this);
 
 	String[] exceptions = info.getExceptions();
 	if (exceptions != null) {
@@ -247,4 +230,76 @@ public class MethodIdentifier extends Identifier implements Opcodes {
 	    }
 	}
     }
+
+    /**
+     * This method does the code transformation.  This include
+     * <ul><li>new slot distribution for locals</li>
+     *     <li>obfuscating transformation of flow</li>
+     *     <li>renaming field, method and class references</li>
+     * </ul>
+     * The class bundle may call this for several methods at the same
+     * time, so it only changes the code of this method.
+     * @param err the writer where a failed transformation is reported.
+     */
+    void transformCode(PrintWriter err) {
+	ClassBundle bundle = Main.getClassBundle();
+	BasicBlocks bb = getBasicBlocks();
+	try {
+	    codeAnalyzer.transformCode(bb);
+	    CodeTransformer[] trafos = bundle.getPostTransformers();
+	    for (int i = 0; i < trafos.length; i++) {
+		trafos[i].transformCode(bb);
+	    }
+	} catch (RuntimeException ex) {
+	    ex.printStackTrace(err);
+	    bb.dumpCode(err);
+	}
+
+	Block[] blocks = bb.getBlocks();
+	for (int i = 0; i < blocks.length; i++) {
+	    Instruction[] instrs = blocks[i].getInstructions();
+	    for (int j = 0; j < instrs.length; j++) {
+		switch (instrs[j].getOpcode()) {
+		case opc_invokespecial:
+		case opc_invokestatic:
+		case opc_invokeinterface:
+		case opc_invokevirtual: {
+		    instrs[j].setReference
+			(Main.getClassBundle()
+			 .getReferenceAlias(instrs[j].getReference()));
+		    break;
+
+		}
+		case opc_putstatic:
+		case opc_putfield:
+		case opc_getstatic:
+		case opc_getfield: {
+		    instrs[j].setReference
+			(Main.getClassBundle()
+			 .getReferenceAlias(instrs[j].getReference()));
+		    break;
+		}
+		case opc_new:
+		case opc_checkcast:
+		case opc_instanceof:
+		case opc_multianewarray: {
+		    instrs[j].setClazzType
+			(Main.getClassBundle()
+		     .getTypeAlias(instrs[j].getClazzType()));
+		    break;
+		}
+		}
+	    }
+	}
+
+	Handler[] handlers = bb.getExceptionHandlers();
+	for (int i=0; i< handlers.length; i++) {
+	    if (handlers[i].getType() != null) {
+		ClassIdentifier ci = Main.getClassBundle()
+		    .getClassIdentifier(handlers[i].getType());
+		if (ci != null)
+		    handlers[i].setType(ci.getFullAlias());
+	    }
+	}
+    }
 }
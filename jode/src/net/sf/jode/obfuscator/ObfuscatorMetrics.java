@@ -0,0 +1,417 @@
+/* ObfuscatorMetrics Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+
+///#def COLLECTIONS java.util
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+///#enddef
+
+/**
+ * Collects the time and memory the obfuscator spends in the phases of
+ * {@link ClassBundle#run}.  For every phase the wall clock time, the
+ * cpu time and the bytes allocated by the threads of the obfuscator,
+ * the garbage collections, the peak heap usage, and the number of
+ * classes and methods are recorded.  The report can be written as
+ * JSON or CSV.<br>
+ *
+ * The cpu time and the allocation are measured per thread.  The
+ * phases are started and stopped by the thread that runs the bundle;
+ * the worker threads call {@link #threadFinished} before they end.
+ * Values the virtual machine doesn't support are reported as -1.
+ * The peak heap usage is the sum of the peaks of the heap memory
+ * pools, so no garbage collection is forced to measure it.
+ */
+class ObfuscatorMetrics {
+    static final int LOAD      = 0;
+    static final int ANALYZE   = 1;
+    static final int RENAME    = 2;
+    static final int TRANSFORM = 3;
+    static final int WRITE     = 4;
+    static final int PHASES    = 5;
+
+    private static final String[] phaseNames = {
+	"load", "analyze", "rename", "transform", "write"
+    };
+
+    private static ThreadMXBean threadBean;
+    private static boolean cpuTimeSupported;
+    private static boolean allocationSupported;
+
+    static {
+	try {
+	    threadBean = ManagementFactory.getThreadMXBean();
+	    cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported()
+		&& threadBean.isThreadCpuTimeEnabled();
+	    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+		com.sun.management.ThreadMXBean sunBean
+		    = (com.sun.management.ThreadMXBean) threadBean;
+		allocationSupported
+		    = sunBean.isThreadAllocatedMemorySupported()
+		    && sunBean.isThreadAllocatedMemoryEnabled();
+	    }
+	} catch (LinkageError ex) {
+	    /* Not a Sun/Oracle virtual machine, measure what we can. */
+	} catch (SecurityException ex) {
+	}
+    }
+
+    private static long currentCpuTime() {
+	return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long currentAllocatedBytes() {
+	if (!allocationSupported)
+	    return 0;
+	return ((com.sun.management.ThreadMXBean) threadBean)
+	    .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private int numThreads;
+
+    private long[] wallTime = new long[PHASES];
+    private long[] cpuTime = new long[PHASES];
+    private long[] allocated = new long[PHASES];
+    private long[] gcCount = new long[PHASES];
+    private long[] gcTime = new long[PHASES];
+    private long[] peakHeap = new long[PHASES];
+    private long[] usedHeap = new long[PHASES];
+    private int[] classes = new int[PHASES];
+    private int[] methods = new int[PHASES];
+
+    /**
+     * The cpu time and the allocated bytes of the worker threads that
+     * already finished.
+     */
+    private long finishedCpu, finishedAllocated;
+
+    private int phase = -1;
+    private long startWall, startCpu, startAllocated;
+    private long startGcCount, startGcTime;
+
+    /**
+     * @param numThreads the number of threads of the run, only used
+     * for the report.
+     */
+    public ObfuscatorMetrics(int numThreads) {
+	this.numThreads = numThreads;
+	for (int i = 0; i < PHASES; i++)
+	    classes[i] = methods[i] = -1;
+    }
+
+    /**
+     * Called by a worker thread before it ends, so that its cpu time
+     * and allocation are counted for the current phase.
+     */
+    public void threadFinished() {
+	long cpu = currentCpuTime();
+	long alloc = currentAllocatedBytes();
+	synchronized (this) {
+	    finishedCpu += cpu;
+	    finishedAllocated += alloc;
+	}
+    }
+
+    private synchronized long totalCpuTime() {
+	return finishedCpu + currentCpuTime();
+    }
+
+    private synchronized long totalAllocatedBytes() {
+	return finishedAllocated + currentAllocatedBytes();
+    }
+
+    private static List heapPools() {
+	List pools = new ArrayList();
+	for (Iterator i = ManagementFactory.getMemoryPoolMXBeans().iterator();
+	     i.hasNext(); ) {
+	    MemoryPoolMXBean pool = (MemoryPoolMXBean) i.next();
+	    if (pool.getType() == MemoryType.HEAP && pool.isValid())
+		pools.add(pool);
+	}
+	return pools;
+    }
+
+    private static long[] gcStatistics() {
+	long[] result = new long[2];
+	List beans = ManagementFactory.getGarbageCollectorMXBeans();
+	for (Iterator i = beans.iterator(); i.hasNext(); ) {
+	    GarbageCollectorMXBean gc = (GarbageCollectorMXBean) i.next();
+	    if (gc.getCollectionCount() > 0)
+		result[0] += gc.getCollectionCount();
+	    if (gc.getCollectionTime() > 0)
+		result[1] += gc.getCollectionTime();
+	}
+	return result;
+    }
+
+    /**
+     * Starts measuring the given phase.  A phase that is currently
+     * measured is stopped.
+     */
+    public void startPhase(int phase) {
+	stopPhase();
+	this.phase = phase;
+	for (Iterator i = heapPools().iterator(); i.hasNext(); )
+	    ((MemoryPoolMXBean) i.next()).resetPeakUsage();
+	long[] gc = gcStatistics();
+	startGcCount = gc[0];
+	startGcTime = gc[1];
+	startAllocated = totalAllocatedBytes();
+	startCpu = totalCpuTime();
+	startWall = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the current phase.  Does nothing if no phase is
+     * measured.
+     */
+    public void stopPhase() {
+	if (phase < 0)
+	    return;
+	wallTime[phase] += System.nanoTime() - startWall;
+	cpuTime[phase] += totalCpuTime() - startCpu;
+	allocated[phase] += totalAllocatedBytes() - startAllocated;
+	long[] gc = gcStatistics();
+	gcCount[phase] += gc[0] - startGcCount;
+	gcTime[phase] += gc[1] - startGcTime;
+	long peak = 0, used = 0;
+	for (Iterator i = heapPools().iterator(); i.hasNext(); ) {
+	    MemoryPoolMXBean pool = (MemoryPoolMXBean) i.next();
+	    peak += pool.getPeakUsage().getUsed();
+	    used += pool.getUsage().getUsed();
+	}
+	peakHeap[phase] = Math.max(peakHeap[phase], peak);
+	usedHeap[phase] = used;
+	phase = -1;
+    }
+
+    /**
+     * Sets the number of classes and methods the given phase
+     * processed.  A number that wasn't set is reported as -1.
+     */
+    public void setCounts(int phase, int classCount, int methodCount) {
+	classes[phase] = classCount;
+	methods[phase] = methodCount;
+    }
+
+    /**
+     * Gets the name of a phase as it is used in the report.
+     */
+    public static String getPhaseName(int phase) {
+	return phaseNames[phase];
+    }
+
+    /**
+     * Gets the wall clock time of a phase in nanoseconds.
+     * @param phase the phase, or -1 for the sum of all phases.
+     */
+    public long getWallTime(int phase) {
+	return sum(wallTime, phase);
+    }
+
+    /**
+     * Gets the cpu time of a phase in nanoseconds.
+     * @param phase the phase, or -1 for the sum of all phases.
+     * @return the time or -1, if it can't be measured.
+     */
+    public long getCpuTime(int phase) {
+	return cpuTimeSupported ? sum(cpuTime, phase) : -1;
+    }
+
+    /**
+     * Gets the allocated bytes of a phase.
+     * @param phase the phase, or -1 for the sum of all phases.
+     * @return the bytes or -1, if they can't be measured.
+     */
+    public long getAllocatedBytes(int phase) {
+	return allocationSupported ? sum(allocated, phase) : -1;
+    }
+
+    /**
+     * Gets the number of garbage collections during a phase.
+     * @param phase the phase, or -1 for the sum of all phases.
+     */
+    public long getGcCount(int phase) {
+	return sum(gcCount, phase);
+    }
+
+    /**
+     * Gets the time spent in garbage collections during a phase, in
+     * milliseconds.
+     * @param phase the phase, or -1 for the sum of all phases.
+     */
+    public long getGcTime(int phase) {
+	return sum(gcTime, phase);
+    }
+
+    /**
+     * Gets the peak heap usage during a phase in bytes.
+     * @param phase the phase, or -1 for the maximum of all phases.
+     */
+    public long getPeakHeap(int phase) {
+	if (phase >= 0)
+	    return peakHeap[phase];
+	long max = 0;
+	for (int i = 0; i < PHASES; i++)
+	    max = Math.max(max, peakHeap[i]);
+	return max;
+    }
+
+    /**
+     * Gets the heap usage at the end of a phase in bytes.  This
+     * includes the garbage that wasn't collected yet.
+     */
+    public long getUsedHeap(int phase) {
+	return usedHeap[phase];
+    }
+
+    public int getClassCount(int phase) {
+	return classes[phase];
+    }
+
+    public int getMethodCount(int phase) {
+	return methods[phase];
+    }
+
+    private static long sum(long[] values, int phase) {
+	if (phase >= 0)
+	    return values[phase];
+	long sum = 0;
+	for (int i = 0; i < values.length; i++)
+	    sum += values[i];
+	return sum;
+    }
+
+    private void writeJSON(Writer out, String name, int phase)
+	throws IOException {
+	out.write("{\"phase\": \"" + name + "\""
+		  + ", \"wallNanos\": " + getWallTime(phase)
+		  + ", \"cpuNanos\": " + getCpuTime(phase)
+		  + ", \"allocatedBytes\": " + getAllocatedBytes(phase)
+		  + ",\n   \"gcCount\": " + getGcCount(phase)
+		  + ", \"gcMillis\": " + getGcTime(phase)
+		  + ", \"peakHeapBytes\": " + getPeakHeap(phase));
+	if (phase >= 0)
+	    out.write(", \"usedHeapBytes\": " + usedHeap[phase]
+		      + ", \"classes\": " + classes[phase]
+		      + ", \"methods\": " + methods[phase]);
+	out.write("}");
+    }
+
+    /**
+     * Writes the report as a JSON object with the fields threads,
+     * phases and total.  Times are given in nanoseconds, except for
+     * the garbage collection time.
+     */
+    public void writeJSON(Writer out) throws IOException {
+	out.write("{\"threads\": " + numThreads + ",\n \"phases\": [");
+	for (int i = 0; i < PHASES; i++) {
+	    out.write(i == 0 ? "\n  " : ",\n  ");
+	    writeJSON(out, phaseNames[i], i);
+	}
+	out.write("],\n \"total\": ");
+	writeJSON(out, "total", -1);
+	out.write("}\n");
+	out.flush();
+    }
+
+    private void writeCSV(Writer out, String name, int phase)
+	throws IOException {
+	out.write(name + "," + getWallTime(phase)
+		  + "," + getCpuTime(phase)
+		  + "," + getAllocatedBytes(phase)
+		  + "," + getGcCount(phase)
+		  + "," + getGcTime(phase)
+		  + "," + getPeakHeap(phase));
+	if (phase >= 0)
+	    out.write("," + usedHeap[phase]
+		      + "," + classes[phase] + "," + methods[phase] + "\n");
+	else
+	    out.write(",,,\n");
+    }
+
+    /**
+     * Writes the report as CSV, one line for every phase and one for
+     * the total.  Times are given in nanoseconds, except for the
+     * garbage collection time.
+     */
+    public void writeCSV(Writer out) throws IOException {
+	out.write("phase,wallNanos,cpuNanos,allocatedBytes,gcCount,"
+		  + "gcMillis,peakHeapBytes,usedHeapBytes,classes,methods\n");
+	for (int i = 0; i < PHASES; i++)
+	    writeCSV(out, phaseNames[i], i);
+	writeCSV(out, "total", -1);
+	out.flush();
+    }
+
+    private static String pad(String str, int width) {
+	StringBuffer sb = new StringBuffer(width);
+	for (int i = str.length(); i < width; i++)
+	    sb.append(' ');
+	return sb.append(str).toString();
+    }
+
+    private static String millis(long nanos) {
+	if (nanos < 0)
+	    return "-";
+	long tenths = (nanos + 50000) / 100000;
+	return (tenths / 10) + "." + (tenths % 10);
+    }
+
+    private static String kilo(long bytes) {
+	return bytes < 0 ? "-" : String.valueOf(bytes / 1024);
+    }
+
+    private static String count(int value) {
+	return value < 0 ? "-" : String.valueOf(value);
+    }
+
+    private void printLine(PrintWriter out, String name, int phase) {
+	out.println(pad(name, 10)
+		    + pad(millis(getWallTime(phase)), 10)
+		    + pad(millis(getCpuTime(phase)), 10)
+		    + pad(kilo(getAllocatedBytes(phase)), 11)
+		    + pad(String.valueOf(getGcCount(phase)), 5)
+		    + pad(kilo(getPeakHeap(phase)), 10)
+		    + (phase >= 0 ? pad(count(classes[phase]), 9)
+		       + pad(count(methods[phase]), 9) : ""));
+    }
+
+    /**
+     * Prints the report as a table.
+     */
+    public void printSummary(PrintWriter out) {
+	out.println("     phase   wall ms    cpu ms   alloc KB   gc"
+		    + "   peak KB  classes  methods");
+	for (int i = 0; i < PHASES; i++)
+	    printLine(out, phaseNames[i], i);
+	printLine(out, "total", -1);
+	out.flush();
+    }
+}
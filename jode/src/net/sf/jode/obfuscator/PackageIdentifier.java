@@ -21,8 +21,6 @@ package net.sf.jode.obfuscator;
 import net.sf.jode.GlobalOptions;
 import java.io.*;
 import java.util.Enumeration;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 ///#def COLLECTIONS java.util
 import java.util.Map;
@@ -350,7 +348,16 @@ public class PackageIdentifier extends Identifier {
 	for (Iterator i = getChilds(); i.hasNext(); ) {
 	    Identifier ident = (Identifier) i.next();
 	    if (ident instanceof ClassIdentifier) {
-		((ClassIdentifier) ident).doTransformations();
+		/* The output of unchanged classes is taken from the
+		 * previous run.  Their ClassInfo is still renamed, as
+		 * the other classes refer to it as super class, interface
+		 * or inner class.
+		 */
+		ClassIdentifier classIdent = (ClassIdentifier) ident;
+		if (!bundle.isUnchanged(classIdent))
+		    classIdent.doTransformations();
+		else
+		    classIdent.info.setName(classIdent.getFullAlias());
 	    } else
 		((PackageIdentifier) ident).doTransformations();
 	}
@@ -391,7 +398,12 @@ public class PackageIdentifier extends Identifier {
 	return swappedClasses.iterator();
     }
 
-    public void storeClasses(ZipOutputStream zip) {
+    /**
+     * Adds the classes of this package and its sub packages that
+     * should be written to the destination.
+     * @param classes the list of ClassIdentifiers.
+     */
+    public void collectClasses(List classes) {
 	for (Iterator i = getChilds(); i.hasNext(); ) {
 	    Identifier ident = (Identifier) i.next();
 	    if ((Main.stripping & Main.STRIP_UNREACH) != 0
@@ -403,66 +415,9 @@ public class PackageIdentifier extends Identifier {
 		continue;
 	    }
 	    if (ident instanceof PackageIdentifier)
-		((PackageIdentifier) ident).storeClasses(zip);
-	    else {
-		try {
-		    String filename = ident.getFullAlias().replace('.','/')
-			+ ".class";
-		    zip.putNextEntry(new ZipEntry(filename));
-		    DataOutputStream out = new DataOutputStream
-			(new BufferedOutputStream(zip));
-		    ((ClassIdentifier) ident).storeClass(out);
-		    out.flush();
-		    zip.closeEntry();
-		} catch (java.io.IOException ex) {
-		    GlobalOptions.err.println("Can't write Class "
-					      + ident.getName());
-		    ex.printStackTrace(GlobalOptions.err);
-		}
-	    }
-	}
-    }
-
-    public void storeClasses(File destination) {
-	File newDest = (parent == null) ? destination 
-	    : new File(destination, getAlias());
-	if (!newDest.exists() && !newDest.mkdir()) {
-	    GlobalOptions.err.println("Could not create directory "
-				   +newDest.getPath()+", check permissions.");
-	}
-	for (Iterator i = getChilds(); i.hasNext(); ) {
-	    Identifier ident = (Identifier) i.next();
-	    if ((Main.stripping & Main.STRIP_UNREACH) != 0
-		&& !ident.isReachable()) {
-		if (GlobalOptions.verboseLevel > 4)
-		    GlobalOptions.err.println("Class/Package "
-					      + ident.getFullName()
-					      + " is not reachable");
-		continue;
-	    }
-	    if (ident instanceof PackageIdentifier)
-		((PackageIdentifier) ident)
-		    .storeClasses(newDest);
-	    else {
-		try {
-		    File file = new File(newDest, ident.getAlias()+".class");
-// 		    if (file.exists()) {
-// 			GlobalOptions.err.println
-// 			    ("Refuse to overwrite existing class file "
-// 			     +file.getPath()+".  Remove it first.");
-// 			return;
-// 		    }
-		    DataOutputStream out = new DataOutputStream
-			(new BufferedOutputStream
-			 (new FileOutputStream(file)));
-		    ((ClassIdentifier) ident).storeClass(out);
-		    out.close();
-		} catch (java.io.IOException ex) {
-		    GlobalOptions.err.println("Can't write Class "
-					   + ident.getName());
-		    ex.printStackTrace(GlobalOptions.err);
-		}
-	    }
+		((PackageIdentifier) ident).collectClasses(classes);
+	    else
+		classes.add(ident);
 	}
     }
 
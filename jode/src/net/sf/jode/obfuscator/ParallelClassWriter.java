@@ -0,0 +1,367 @@
+/* ParallelClassWriter Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import net.sf.jode.GlobalOptions;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the transformed classes with several threads.  The classes
+ * are serialized and, for a zip file, compressed by the workers and
+ * by the calling thread.  The calling thread writes the finished
+ * entries to the zip file in the order of the classes, so the zip
+ * file doesn't depend on the number of threads.  For a destination
+ * directory the workers write the class files themselves.<br>
+ *
+ * Only a limited number of classes after the first unwritten class
+ * are handed out, so not too many compressed classes wait in memory.
+ * For an incremental run the writer can get the unchanged output of
+ * some classes.  It is copied to the zip file, while the class file
+ * in a directory is left alone.<br>
+ *
+ * The errors are printed in the order of the classes.  If writing a
+ * class threw a runtime exception, the exception of the first such
+ * class is thrown again, after all classes are finished.
+ */
+class ParallelClassWriter {
+    /**
+     * The compression level that stores the entries uncompressed.
+     * The other levels are those of Deflater.
+     */
+    static final int STORED = -2;
+
+    private ClassIdentifier[] classes;
+    private String[] names;
+    private File destDir;
+    private ZipWriter zip;
+    private int level;
+    private byte[][] oldOutputs;
+    private String[] hashes;
+
+    private byte[][] data;
+    private int[] lengths;
+    private long[] crcs;
+    private int[] sizes;
+    private Throwable[] failures;
+    private boolean[] finished;
+    private int nextClass = 0;
+    private int written = 0;
+    private int window;
+
+    private ParallelClassWriter(ClassIdentifier[] classes) {
+	this.classes = classes;
+	names = new String[classes.length];
+	for (int i = 0; i < classes.length; i++)
+	    names[i] = classes[i].getFullAlias().replace('.', '/') + ".class";
+	failures = new Throwable[classes.length];
+	finished = new boolean[classes.length];
+    }
+
+    /**
+     * Creates a writer that writes the classes to a zip file.
+     * @param level the compression level, STORED or a level of
+     * Deflater.
+     */
+    public ParallelClassWriter(ClassIdentifier[] classes,
+			       ZipWriter zip, int level) {
+	this(classes);
+	this.zip = zip;
+	this.level = level;
+	data = new byte[classes.length][];
+	lengths = new int[classes.length];
+	crcs = new long[classes.length];
+	sizes = new int[classes.length];
+    }
+
+    /**
+     * Creates a writer that writes the classes to a directory.
+     */
+    public ParallelClassWriter(ClassIdentifier[] classes, File destDir) {
+	this(classes);
+	this.destDir = destDir;
+    }
+
+    /**
+     * Returns the names of the class files.
+     */
+    public String[] getNames() {
+	return names;
+    }
+
+    /**
+     * Sets the output of the previous run.  The entries of the
+     * classes that must be written again are null.  This also
+     * computes the hashes of all classes, see {@link #getHashes}.
+     */
+    public void setOldOutputs(byte[][] oldOutputs) {
+	this.oldOutputs = oldOutputs;
+	hashes = new String[classes.length];
+    }
+
+    /**
+     * Returns the MD5 hashes of the written classes, null for the
+     * classes that couldn't be written.  This is only computed if
+     * setOldOutputs was called.
+     */
+    public String[] getHashes() {
+	return hashes;
+    }
+
+    /**
+     * Hands out the next class, if it is not too far ahead.
+     * @param block true, if this should wait until the class is
+     * no longer too far ahead.
+     * @return the index of the class, -1 if there is none.
+     */
+    private synchronized int nextJob(boolean block) {
+	boolean interrupted = false;
+	try {
+	    while (block && nextClass < classes.length
+		   && nextClass >= written + window) {
+		try {
+		    wait();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	} finally {
+	    if (interrupted)
+		Thread.currentThread().interrupt();
+	}
+	if (nextClass >= classes.length || nextClass >= written + window)
+	    return -1;
+	return nextClass++;
+    }
+
+    private synchronized void finishJob(int index, Throwable failure) {
+	failures[index] = failure;
+	finished[index] = true;
+	notifyAll();
+    }
+
+    /**
+     * Waits until the given class is finished.  While waiting this
+     * writes other classes that are not handed out yet.
+     */
+    private void waitForJob(int index) {
+	boolean interrupted = false;
+	for (;;) {
+	    int job;
+	    synchronized (this) {
+		if (finished[index])
+		    break;
+		job = nextJob(false);
+		if (job < 0) {
+		    /* The workers still use the class, so we have to
+		     * wait even if we are interrupted.
+		     */
+		    try {
+			wait();
+		    } catch (InterruptedException ex) {
+			interrupted = true;
+		    }
+		    continue;
+		}
+	    }
+	    writeClass(job);
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+    }
+
+    private synchronized void entryWritten(int index) {
+	if (data != null)
+	    data[index] = null;
+	written++;
+	notifyAll();
+    }
+
+    private void storeClass(int index, OutputStream stream)
+	throws IOException {
+	DataOutputStream out = new DataOutputStream(stream);
+	try {
+	    classes[index].storeClass(out);
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Serializes a class and compresses it or writes it to its file.
+     */
+    private void writeClass(int index) {
+	Throwable failure = null;
+	try {
+	    byte[] old = null;
+	    if (oldOutputs != null) {
+		old = oldOutputs[index];
+		oldOutputs[index] = null;
+	    }
+	    if (zip == null) {
+		if (old == null) {
+		    File file = new File(destDir, names[index]
+					 .replace('/', File.separatorChar));
+		    File dir = file.getParentFile();
+		    if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+			throw new IOException("Could not create directory "
+					      + dir.getPath()
+					      + ", check permissions.");
+		    if (hashes == null)
+			storeClass(index, new BufferedOutputStream
+				   (new FileOutputStream(file)));
+		    else {
+			ByteArrayOutputStream bytes
+			    = new ByteArrayOutputStream();
+			storeClass(index, bytes);
+			old = bytes.toByteArray();
+			OutputStream out = new FileOutputStream(file);
+			try {
+			    out.write(old);
+			} finally {
+			    out.close();
+			}
+		    }
+		}
+		if (hashes != null)
+		    hashes[index] = IncrementalState.digest(old);
+	    } else {
+		byte[] raw = old;
+		if (raw == null) {
+		    ByteArrayOutputStream bytes
+			= new ByteArrayOutputStream();
+		    storeClass(index, bytes);
+		    raw = bytes.toByteArray();
+		}
+		if (hashes != null)
+		    hashes[index] = IncrementalState.digest(raw);
+		CRC32 crc = new CRC32();
+		crc.update(raw);
+		crcs[index] = crc.getValue();
+		sizes[index] = raw.length;
+		if (level == STORED) {
+		    data[index] = raw;
+		    lengths[index] = raw.length;
+		} else
+		    deflate(index, raw);
+	    }
+	} catch (IOException ex) {
+	    failure = ex;
+	} catch (RuntimeException ex) {
+	    failure = ex;
+	} catch (Error ex) {
+	    failure = ex;
+	}
+	finishJob(index, failure);
+    }
+
+    private void deflate(int index, byte[] raw) {
+	Deflater deflater = new Deflater(level, true);
+	try {
+	    deflater.setInput(raw);
+	    deflater.finish();
+	    byte[] buffer = new byte[raw.length / 2 + 64];
+	    int length = 0;
+	    while (!deflater.finished()) {
+		if (length == buffer.length) {
+		    byte[] newBuffer = new byte[buffer.length * 2];
+		    System.arraycopy(buffer, 0, newBuffer, 0, length);
+		    buffer = newBuffer;
+		}
+		length += deflater.deflate(buffer, length,
+					   buffer.length - length);
+	    }
+	    data[index] = buffer;
+	    lengths[index] = length;
+	} finally {
+	    deflater.end();
+	}
+    }
+
+    class Worker extends Thread {
+	public Worker(int nr) {
+	    super("class-writer-" + nr);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    try {
+		int index;
+		while ((index = nextJob(true)) >= 0)
+		    writeClass(index);
+	    } finally {
+		Main.getClassBundle().threadFinished();
+	    }
+	}
+    }
+
+    /**
+     * Writes all classes.  The zip file isn't closed.
+     * @param numThreads the number of threads, including the
+     * calling thread.
+     * @exception IOException if the zip file couldn't be written.
+     * The classes are finished anyway.
+     */
+    public void write(int numThreads) throws IOException {
+	window = 4 * numThreads;
+	int numWorkers = Math.min(numThreads, classes.length) - 1;
+	for (int i = 0; i < numWorkers; i++)
+	    new Worker(i).start();
+
+	IOException zipFailure = null;
+	for (int i = 0; i < classes.length; i++) {
+	    waitForJob(i);
+	    if (failures[i] != null && hashes != null)
+		hashes[i] = null;
+	    if (failures[i] instanceof IOException) {
+		GlobalOptions.err.println("Can't write Class "
+					  + classes[i].getName());
+		failures[i].printStackTrace(GlobalOptions.err);
+	    } else if (failures[i] == null && zip != null
+		       && zipFailure == null) {
+		try {
+		    zip.putEntry(names[i],
+				 level == STORED
+				 ? ZipWriter.STORED : ZipWriter.DEFLATED,
+				 data[i], lengths[i], crcs[i], sizes[i]);
+		} catch (IOException ex) {
+		    zipFailure = ex;
+		}
+	    }
+	    entryWritten(i);
+	}
+	GlobalOptions.err.flush();
+
+	for (int i = 0; i < classes.length; i++) {
+	    if (failures[i] instanceof RuntimeException)
+		throw (RuntimeException) failures[i];
+	    if (failures[i] instanceof Error)
+		throw (Error) failures[i];
+	}
+	if (zipFailure != null)
+	    throw zipFailure;
+    }
+}
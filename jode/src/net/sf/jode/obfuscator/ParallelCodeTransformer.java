@@ -0,0 +1,142 @@
+/* ParallelCodeTransformer Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import net.sf.jode.GlobalOptions;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Transforms the code of several methods with several threads.  The
+ * methods are handed out in their order and the calling thread
+ * transforms methods, too.  The code analyzer and the post
+ * transformers must allow that the code of different methods is
+ * transformed at the same time.<br>
+ *
+ * After the last method of a class is transformed, the class bundle
+ * may write the class to its spill store.<br>
+ *
+ * The messages of a failed transformation are collected for every
+ * method and printed in the order of the methods, after all methods
+ * are finished.  If a transformation threw an exception, the
+ * exception of the first such method is thrown again.
+ */
+class ParallelCodeTransformer {
+    private MethodIdentifier[] methods;
+    private StringWriter[] messages;
+    private Throwable[] failures;
+    private int nextMethod = 0;
+    private int finished = 0;
+
+    public ParallelCodeTransformer(MethodIdentifier[] methods) {
+	this.methods = methods;
+	messages = new StringWriter[methods.length];
+	failures = new Throwable[methods.length];
+    }
+
+    private synchronized int nextJob() {
+	if (nextMethod >= methods.length)
+	    return -1;
+	return nextMethod++;
+    }
+
+    private synchronized void finishJob(int index, StringWriter message,
+					Throwable failure) {
+	messages[index] = message;
+	failures[index] = failure;
+	finished++;
+	notifyAll();
+    }
+
+    private synchronized void waitForJobs() {
+	boolean interrupted = false;
+	/* We can't stop the workers, and they still change the
+	 * methods, so we have to wait even if we are interrupted.
+	 */
+	while (finished < methods.length) {
+	    try {
+		wait();
+	    } catch (InterruptedException ex) {
+		interrupted = true;
+	    }
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Transforms the methods, until there are no more methods left.
+     */
+    private void transformMethods() {
+	int index;
+	while ((index = nextJob()) >= 0) {
+	    StringWriter message = new StringWriter();
+	    PrintWriter err = new PrintWriter(message);
+	    Throwable failure = null;
+	    try {
+		methods[index].transformCode(err);
+		Main.getClassBundle().codeTransformed(methods[index]);
+	    } catch (RuntimeException ex) {
+		failure = ex;
+	    } catch (Error ex) {
+		failure = ex;
+	    }
+	    err.flush();
+	    finishJob(index, message, failure);
+	}
+    }
+
+    class Worker extends Thread {
+	public Worker(int nr) {
+	    super("code-transformer-" + nr);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    try {
+		transformMethods();
+	    } finally {
+		Main.getClassBundle().threadFinished();
+	    }
+	}
+    }
+
+    /**
+     * Transforms the code of all methods.
+     * @param numThreads the number of threads, including the
+     * calling thread.
+     */
+    public void transform(int numThreads) {
+	int numWorkers = Math.min(numThreads, methods.length) - 1;
+	for (int i = 0; i < numWorkers; i++)
+	    new Worker(i).start();
+	transformMethods();
+	waitForJobs();
+
+	for (int i = 0; i < methods.length; i++)
+	    GlobalOptions.err.print(messages[i].toString());
+	GlobalOptions.err.flush();
+	for (int i = 0; i < methods.length; i++) {
+	    if (failures[i] instanceof RuntimeException)
+		throw (RuntimeException) failures[i];
+	    if (failures[i] instanceof Error)
+		throw (Error) failures[i];
+	}
+    }
+}
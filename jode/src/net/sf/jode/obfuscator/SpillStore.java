@@ -0,0 +1,91 @@
+/* SpillStore Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Keeps the transformed classes in a temporary file, until they are
+ * written.  This way the code of a class doesn't have to stay in
+ * memory after the class was transformed.  The classes are appended
+ * to the file and found again by their offset and length.<br>
+ *
+ * The methods are synchronized, since several threads may transform
+ * and store classes at the same time.
+ */
+class SpillStore {
+    private File file;
+    private RandomAccessFile data;
+    private long size = 0;
+
+    /**
+     * Creates a new temporary file in the given directory.
+     * @param directory the directory, null for the default directory
+     * for temporary files.
+     */
+    public SpillStore(File directory) throws IOException {
+	file = File.createTempFile("jode", ".spill", directory);
+	file.deleteOnExit();
+	data = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Appends the bytes to the file.
+     * @return the offset of the bytes.
+     */
+    public synchronized long put(byte[] bytes) throws IOException {
+	long offset = size;
+	data.seek(offset);
+	data.write(bytes);
+	size += bytes.length;
+	return offset;
+    }
+
+    /**
+     * Reads the bytes that were stored at the given offset.
+     */
+    public synchronized byte[] get(long offset, int length)
+	throws IOException {
+	byte[] bytes = new byte[length];
+	data.seek(offset);
+	data.readFully(bytes);
+	return bytes;
+    }
+
+    /**
+     * Returns the number of bytes in the file.
+     */
+    public synchronized long getSize() {
+	return size;
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    public synchronized void close() {
+	try {
+	    data.close();
+	} catch (IOException ex) {
+	    /* We delete the file anyway. */
+	}
+	file.delete();
+    }
+}
@@ -0,0 +1,201 @@
+/* ZipWriter Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.obfuscator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+
+/**
+ * Writes a zip file whose entries are already compressed.  Unlike
+ * ZipOutputStream this doesn't compress the data itself, so the
+ * entries can be deflated by other threads before they are written.
+ * The sizes and the checksum are known in advance, so the local
+ * headers contain them and no data descriptors are needed.<br>
+ *
+ * The Zip64 records are written when there are 65535 entries or more,
+ * or when the entries start beyond 4 GB.  A single entry must still
+ * be smaller than 4 GB.
+ */
+class ZipWriter {
+    static final int STORED   = 0;
+    static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER   = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER     = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR    = 0x07064b50;
+    /**
+     * The header id of the extra field with the Zip64 offset.
+     */
+    private static final int ZIP64_EXTRA = 0x0001;
+    /**
+     * The largest values of the 16 and 32 bit fields.  These values
+     * mean that the Zip64 record has the real value.
+     */
+    private static final int  MAX_SHORT = 0xffff;
+    private static final long MAX_INT   = 0xffffffffL;
+    /**
+     * The general purpose flag that marks names encoded in UTF-8.
+     */
+    private static final int UTF8_FLAG = 0x800;
+
+    private OutputStream out;
+    private ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private long written = 0;
+    private long entries = 0;
+    private int dosTime;
+
+    public ZipWriter(OutputStream out) {
+	this.out = out;
+	Calendar now = Calendar.getInstance();
+	dosTime = (now.get(Calendar.YEAR) - 1980) << 25
+	    | (now.get(Calendar.MONTH) + 1) << 21
+	    | now.get(Calendar.DAY_OF_MONTH) << 16
+	    | now.get(Calendar.HOUR_OF_DAY) << 11
+	    | now.get(Calendar.MINUTE) << 5
+	    | now.get(Calendar.SECOND) >> 1;
+    }
+
+    private static void writeShort(OutputStream out, int value)
+	throws IOException {
+	out.write(value & 0xff);
+	out.write((value >> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long value)
+	throws IOException {
+	writeShort(out, (int) value & 0xffff);
+	writeShort(out, (int) (value >> 16) & 0xffff);
+    }
+
+    private static void writeLong(OutputStream out, long value)
+	throws IOException {
+	writeInt(out, value & MAX_INT);
+	writeInt(out, value >>> 32);
+    }
+
+    /**
+     * Writes the header fields that the local and the central header
+     * have in common, starting with the version needed to extract.
+     */
+    private void writeCommon(OutputStream out, int version, int method,
+			     long crc, int compressedSize, int size,
+			     byte[] name, int extraLength)
+	throws IOException {
+	writeShort(out, version);
+	writeShort(out, UTF8_FLAG);
+	writeShort(out, method);
+	writeInt(out, dosTime);
+	writeInt(out, crc);
+	writeInt(out, compressedSize);
+	writeInt(out, size);
+	writeShort(out, name.length);
+	writeShort(out, extraLength);
+    }
+
+    /**
+     * Writes an entry.
+     * @param name the name of the entry.
+     * @param method STORED or DEFLATED.
+     * @param data the data of the entry, deflated without zlib
+     * header if method is DEFLATED.
+     * @param length the number of bytes in data.
+     * @param crc the CRC-32 of the uncompressed data.
+     * @param size the size of the uncompressed data.
+     */
+    public void putEntry(String name, int method, byte[] data, int length,
+			 long crc, int size) throws IOException {
+	byte[] nameBytes;
+	try {
+	    nameBytes = name.getBytes("UTF-8");
+	} catch (UnsupportedEncodingException ex) {
+	    throw new InternalError("UTF-8 not supported");
+	}
+	if (nameBytes.length > MAX_SHORT)
+	    throw new IOException("zip entry name too long: " + name);
+
+	/* The offset of an entry beyond 4 GB is in a Zip64 extra
+	 * field of the central header.  The sizes always fit.
+	 */
+	boolean zip64 = written >= MAX_INT;
+	int version = zip64 ? 45 : method == DEFLATED ? 20 : 10;
+	writeInt(central, CENTRAL_HEADER);
+	writeShort(central, zip64 ? 45 : 20);
+	writeCommon(central, version, method, crc, length, size, nameBytes,
+		    zip64 ? 12 : 0);
+	writeShort(central, 0); /* comment length */
+	writeShort(central, 0); /* disk number */
+	writeShort(central, 0); /* internal attributes */
+	writeInt(central, 0);   /* external attributes */
+	writeInt(central, zip64 ? MAX_INT : written);
+	central.write(nameBytes);
+	if (zip64) {
+	    writeShort(central, ZIP64_EXTRA);
+	    writeShort(central, 8);
+	    writeLong(central, written);
+	}
+
+	writeInt(out, LOCAL_HEADER);
+	writeCommon(out, version, method, crc, length, size, nameBytes, 0);
+	out.write(nameBytes);
+	out.write(data, 0, length);
+	written += 30 + nameBytes.length + length;
+	entries++;
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    public void close() throws IOException {
+	long centralOffset = written;
+	long centralSize = central.size();
+	central.writeTo(out);
+	if (entries >= MAX_SHORT || centralOffset >= MAX_INT) {
+	    long zip64End = centralOffset + centralSize;
+	    writeInt(out, ZIP64_END_HEADER);
+	    writeLong(out, 44); /* size of the remaining record */
+	    writeShort(out, 45);
+	    writeShort(out, 45);
+	    writeInt(out, 0);   /* disk number */
+	    writeInt(out, 0);   /* disk with the central directory */
+	    writeLong(out, entries);
+	    writeLong(out, entries);
+	    writeLong(out, centralSize);
+	    writeLong(out, centralOffset);
+
+	    writeInt(out, ZIP64_LOCATOR);
+	    writeInt(out, 0);   /* disk with the Zip64 end record */
+	    writeLong(out, zip64End);
+	    writeInt(out, 1);   /* number of disks */
+	}
+	writeInt(out, END_HEADER);
+	writeShort(out, 0);
+	writeShort(out, 0);
+	writeShort(out, (int) Math.min(entries, MAX_SHORT));
+	writeShort(out, (int) Math.min(entries, MAX_SHORT));
+	writeInt(out, centralSize);
+	writeInt(out, Math.min(centralOffset, MAX_INT));
+	writeShort(out, 0); /* comment length */
+	out.close();
+    }
+}
@@ -1497,8 +1497,13 @@ public class ConstantAnalyzer extends SimpleAnalyzer {
 
     public void fieldNotConstant(FieldIdentifier fi) {
 	ConstValue value = (ConstValue) fieldDependencies.remove(fi);
-	if (value != null)
+	if (value != null) {
+	    /* This method reads the field, but the read isn't
+	     * analyzed again, so mark the field as reachable here.
+	     */
+	    fi.setReachable();
 	    value.constantChanged();
+	}
 	fi.removeFieldListener(methodIdent);
 	fi.setNotConstant();
     }
@@ -1526,7 +1531,26 @@ public class ConstantAnalyzer extends SimpleAnalyzer {
 	    infos[i].dumpInfo(output);
     }
 
+    /**
+     * Analyzes the code of a method.  The analyzer keeps the state of
+     * the analyzed method in its fields and changes the identifiers
+     * all the time, so it holds the lock of the class bundle while it
+     * runs.
+     */
     public void analyzeCode(MethodIdentifier methodIdent, BasicBlocks bb) {
+	ClassBundle bundle = Main.getClassBundle();
+	if (bundle == null) {
+	    /* We are used without a bundle, e.g. by a test. */
+	    doAnalyzeCode(methodIdent, bb);
+	    return;
+	}
+	synchronized (bundle) {
+	    doAnalyzeCode(methodIdent, bb);
+	}
+    }
+
+    private void doAnalyzeCode(MethodIdentifier methodIdent,
+			       BasicBlocks bb) {
 	Block[] blocks = bb.getBlocks();
 	this.methodIdent = methodIdent;
 	this.bb = bb;
@@ -1665,8 +1689,16 @@ public class ConstantAnalyzer extends SimpleAnalyzer {
 	    newCode.add(replacement);
     }
     
+    /**
+     * Transforms the code of a method.  This may be called for
+     * several methods at the same time, so the shared maps are only
+     * accessed while holding their lock.
+     */
     public void transformCode(BasicBlocks bb) {
-	BitSet reachable = (BitSet) bbInfos.remove(bb);
+	BitSet reachable;
+	synchronized (bbInfos) {
+	    reachable = (BitSet) bbInfos.remove(bb);
+	}
 	Block[] blocks = bb.getBlocks();
 	Handler[] handlers = bb.getExceptionHandlers();
 
@@ -1700,7 +1732,10 @@ public class ConstantAnalyzer extends SimpleAnalyzer {
 	    ArrayList newCode = new ArrayList(oldCode.length);
 	    for (int idx = 0; idx < oldCode.length; idx++) {
 		Instruction instr = oldCode[idx];
-		ConstantInfo info = (ConstantInfo) constantInfos.remove(instr);
+		ConstantInfo info;
+		synchronized (constantInfos) {
+		    info = (ConstantInfo) constantInfos.remove(instr);
+		}
 		if (info != null && (info.flags & CONSTANT) != 0) {
 		    Instruction ldcInstr = Instruction.forOpcode
 			(info.constant instanceof Long
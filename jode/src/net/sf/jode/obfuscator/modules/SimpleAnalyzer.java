@@ -38,8 +38,18 @@ import java.util.ArrayList;
 
 public class SimpleAnalyzer implements CodeAnalyzer, Opcodes {
 
+    private static void loadDeclarations(ClassInfo clazz) {
+	try {
+	    clazz.load(ClassInfo.DECLARATIONS);
+	} catch (IOException ex) {
+	    throw new RuntimeException("Can't get declarations of "
+				       + clazz);
+	}
+    }
+
     private ClassInfo canonizeIfaceRef(ClassInfo clazz, Reference ref) {
 	while (clazz != null) {
+	    loadDeclarations(clazz);
 	    if (clazz.findMethod(ref.getName(), ref.getType()) != null)
 		return clazz;
 	    ClassInfo[] ifaces = clazz.getInterfaces();
@@ -78,24 +88,23 @@ public class SimpleAnalyzer implements CodeAnalyzer, Opcodes {
 		    (clName.substring(1, clName.length()-1)
 		     .replace('/','.'));
 	    }
-	    try {
-		clazz.load(ClassInfo.DECLARATIONS);
-	    } catch (IOException ex) {
-		throw new RuntimeException("Can't get declarations of "
-					   + clazz);
-	    }
+	    /* The super classes are loaded on demand. */
 	    if (instr.getOpcode() == opc_invokeinterface) {
 		clazz = canonizeIfaceRef(clazz, ref);
 	    } else if (instr.getOpcode() >= opc_invokevirtual) {
-		while (clazz != null
-		       && clazz.findMethod(ref.getName(), 
-					   ref.getType()) == null)
+		while (clazz != null) {
+		    loadDeclarations(clazz);
+		    if (clazz.findMethod(ref.getName(), ref.getType()) != null)
+			break;
 		    clazz = clazz.getSuperclass();
+		}
 	    } else {
-		while (clazz != null
-		       && clazz.findField(ref.getName(), 
-					  ref.getType()) == null)
+		while (clazz != null) {
+		    loadDeclarations(clazz);
+		    if (clazz.findField(ref.getName(), ref.getType()) != null)
+			break;
 		    clazz = clazz.getSuperclass();
+		}
 	    }
 
 	    if (clazz == null) {
@@ -116,11 +125,32 @@ public class SimpleAnalyzer implements CodeAnalyzer, Opcodes {
 
     /**
      * Reads the opcodes out of the code info and determine its 
-     * references
-     * @return an enumeration of the references.
+     * references.  The references are canonized first, which loads
+     * the referenced classes; this may run for several methods at the
+     * same time.  The identifiers are only marked while holding the
+     * lock of the class bundle.
      */
     public void analyzeCode(MethodIdentifier m, BasicBlocks bb) {
 	Block[] blocks = bb.getBlocks();
+	Identifier[][] idents = new Identifier[blocks.length][];
+	for (int i=0; i < blocks.length; i++) {
+	    Instruction[] instrs = blocks[i].getInstructions();
+	    idents[i] = new Identifier[instrs.length];
+	    for (int idx = 0; idx < instrs.length; idx++) {
+		int opcode = instrs[idx].getOpcode();
+		if (opcode >= opc_getstatic && opcode <= opc_invokeinterface)
+		    idents[i][idx] = canonizeReference(instrs[idx]);
+	    }
+	}
+
+	synchronized (Main.getClassBundle()) {
+	    markReachables(m, bb, idents);
+	}
+    }
+
+    private void markReachables(MethodIdentifier m, BasicBlocks bb,
+				Identifier[][] idents) {
+	Block[] blocks = bb.getBlocks();
 	for (int i=0; i < blocks.length; i++) {
 	    Instruction[] instrs = blocks[i].getInstructions();
 	    for (int idx = 0; idx < instrs.length; idx++) {
@@ -150,7 +180,7 @@ public class SimpleAnalyzer implements CodeAnalyzer, Opcodes {
 		    /* fall through */
 		case opc_getstatic:
 		case opc_getfield: {
-		    Identifier ident = canonizeReference(instrs[idx]);
+		    Identifier ident = idents[i][idx];
 		    if (ident != null) {
 			if (opcode == opc_putstatic 
 			    || opcode == opc_putfield) {
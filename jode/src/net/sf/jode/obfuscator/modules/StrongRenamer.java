@@ -22,6 +22,8 @@ import net.sf.jode.obfuscator.*;
 ///#def COLLECTIONS java.util
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.HashMap;
 ///#enddef
 ///#def COLLECTIONEXTRA java.lang
 import java.lang.UnsupportedOperationException;
@@ -36,6 +38,18 @@ public class StrongRenamer implements Renamer, OptionHandler {
     };
     String charsets[][];
 
+    /**
+     * If this is true, the names of every scope are generated by a
+     * single iterator, so that the next identifier of that scope
+     * continues after the name of the previous one, instead of
+     * trying all names from the beginning again.
+     */
+    boolean stateful = false;
+    /**
+     * Maps the scopes to the name iterators, if stateful is set.
+     */
+    Map scopes = new HashMap();
+
     String javaKeywords[] = {
 	"abstract", "default", "if", "private", "throw", "boolean",
 	"do", "implements", "protected", "throws", "break", "double",
@@ -94,11 +108,36 @@ public class StrongRenamer implements Renamer, OptionHandler {
 		    charsets[i][j] = set;
 		}
 	    }
+	} else if (option.equals("stateful")) {
+	    Object value = values.iterator().next();
+	    if (values.size() != 1
+		|| !("true".equals(value) || "false".equals(value)))
+		throw new IllegalArgumentException
+		    ("stateful must be \"true\" or \"false\".");
+	    stateful = value.equals("true");
 	} else
 	    throw new IllegalArgumentException("Invalid option `"
 					       +option+"'");
     }
 
+    /**
+     * Returns the scope of an identifier.  These are the identifiers
+     * of the same kind in the same package or class; methods are
+     * further distinguished by their parameter types, since only
+     * methods with the same parameters can conflict.
+     */
+    private Object getScope(Identifier ident, int identType) {
+	StringBuffer scope = new StringBuffer(idents[identType]);
+	Identifier parent = ident.getParent();
+	if (parent != null)
+	    scope.append(' ').append(parent.getFullName());
+	if (identType == 3) {
+	    String type = ident.getType();
+	    scope.append(' ').append(type.substring(0, type.indexOf(')')+1));
+	}
+	return scope.toString();
+    }
+
     public Iterator generateNames(Identifier ident) {
 	int identType;
 	if (ident instanceof PackageIdentifier)
@@ -113,59 +152,73 @@ public class StrongRenamer implements Renamer, OptionHandler {
 	    identType = 4;
 	else
 	    throw new IllegalArgumentException(ident.getClass().getName());
-	final String[] theCharset = charsets[identType];
+	if (!stateful)
+	    return new NameIterator(charsets[identType]);
+
+	Object scope = getScope(ident, identType);
+	Iterator names = (Iterator) scopes.get(scope);
+	if (names == null) {
+	    names = new NameIterator(charsets[identType]);
+	    scopes.put(scope, names);
+	}
+	return names;
+    }
+
+    class NameIterator implements Iterator {
+	String[] theCharset;
+	char[] name = null;
+	int headIndex;
 
-	return new Iterator() {
-	    char[] name = null;
-	    int headIndex;
+	public NameIterator(String[] charset) {
+	    theCharset = charset;
+	}
 
-	    public boolean hasNext() {
-		return true;
+	public boolean hasNext() {
+	    return true;
+	}
+	public Object next() {
+	    if (name == null) {
+		name = new char[] { theCharset[0].charAt(0) };
+		headIndex = 0;
+		return new String(name);
 	    }
-	    public Object next() {
-		if (name == null) {
-		    name = new char[] { theCharset[0].charAt(0) };
-		    headIndex = 0;
+	next_name:
+	    while (true) {
+		if (++headIndex < theCharset[0].length()) {
+		    name[0] = theCharset[0].charAt(headIndex);
 		    return new String(name);
 		}
-	    next_name:
-		while (true) {
-		    if (++headIndex < theCharset[0].length()) {
-			name[0] = theCharset[0].charAt(headIndex);
+		headIndex = 0;
+		name[0] = theCharset[0].charAt(0);
+
+		String charset = theCharset[1];
+		for (int pos = 1; pos < name.length; pos++) {
+		    int index = charset.indexOf(name[pos]) + 1;
+		    if (index < charset.length()) {
+			name[pos] = charset.charAt(index);
 			return new String(name);
 		    }
-		    headIndex = 0;
-		    name[0] = theCharset[0].charAt(0);
-		    
-		    String charset = theCharset[1];
-		    for (int pos = 1; pos < name.length; pos++) {
-			int index = charset.indexOf(name[pos]) + 1;
-			if (index < charset.length()) {
-			    name[pos] = charset.charAt(index);
-			    return new String(name);
-			}
-			name[pos] = charset.charAt(0);
-		    }
-		
-		    name = new char[name.length+1];
-		    name[0] = theCharset[0].charAt(0);
-		    char firstCont = theCharset[1].charAt(0);
-		    for (int i=1; i <name.length; i++)
-			name[i] = firstCont;
-		    
-		    String next = new String(name);
-		    for (int i = 0; i < javaKeywords.length; i++) {
-			if (next.equals(javaKeywords[i]))
-			    continue next_name;
-		    }
-		    return next;
+		    name[pos] = charset.charAt(0);
 		}
-	    }
 
-	    public void remove() {
-		throw new UnsupportedOperationException();
+		name = new char[name.length+1];
+		name[0] = theCharset[0].charAt(0);
+		char firstCont = theCharset[1].charAt(0);
+		for (int i=1; i <name.length; i++)
+		    name[i] = firstCont;
+
+		String next = new String(name);
+		for (int i = 0; i < javaKeywords.length; i++) {
+		    if (next.equals(javaKeywords[i]))
+			continue next_name;
+		}
+		return next;
 	    }
-	};
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
     }
 }
 
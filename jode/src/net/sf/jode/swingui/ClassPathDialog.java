@@ -85,7 +85,11 @@ public class ClassPathDialog {
     private void createNewClassPath() {
 	String[] paths = new String[pathListModel.getSize()];
 	pathListModel.copyInto(paths);
+	if (currentClassPath != null)
+	    currentClassPath.setWatchDirectories(false);
 	currentClassPath = new ClassPath(paths, reflectClassPath);
+	/* The user may recompile classes while the window is open. */
+	currentClassPath.setWatchDirectories(true);
 	if (actionListener != null)
 	    actionListener.actionPerformed
 		(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, null));
@@ -193,6 +193,11 @@ public class ArrayType extends ClassType {
         return pluralize(elementType.getDefaultName());
     }
 
+    boolean isIdentical(Type type) {
+	return type instanceof ArrayType
+	    && elementType.isIdentical(((ArrayType) type).elementType);
+    }
+
     public boolean equals(Object o) {
         if (o == this) 
             return true;
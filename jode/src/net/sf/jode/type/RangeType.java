@@ -183,6 +183,14 @@ public class RangeType extends Type {
 	return (hashcode << 16 | hashcode >>> 16) ^ bottomType.hashCode();
     }
 
+    boolean isIdentical(Type type) {
+	if (!(type instanceof RangeType))
+	    return false;
+	RangeType range = (RangeType) type;
+	return topType.isIdentical(range.topType)
+	    && bottomType.isIdentical(range.bottomType);
+    }
+
     public boolean equals(Object o) {
         if (o instanceof RangeType) {
             RangeType type = (RangeType) o;
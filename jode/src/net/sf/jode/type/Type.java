@@ -24,6 +24,7 @@ import net.sf.jode.bytecode.ClassInfo;
 import net.sf.jode.util.UnifyHash;
 
 ///#def COLLECTIONS java.util
+import java.util.Comparator;
 import java.util.Iterator;
 ///#enddef
 
@@ -61,6 +62,27 @@ public class Type {
     private static final UnifyHash arrayHash = new UnifyHash();    
     private static final UnifyHash methodHash = new UnifyHash();    
 
+    private static final Comparator classComparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    return ((ClassInfoType) o1).getClassInfo()
+		== ((ClassInfoType) o2).getClassInfo() ? 0 : 1;
+	}
+    };
+    private static final Comparator arrayComparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    return ((ArrayType) o1).getElementType()
+		.isIdentical(((ArrayType) o2).getElementType()) ? 0 : 1;
+	}
+    };
+    private static final Comparator methodComparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    MethodType m1 = (MethodType) o1;
+	    MethodType m2 = (MethodType) o2;
+	    return (m1.getTypeSignature().equals(m2.getTypeSignature())
+		    && m1.getClassPath().equals(m2.getClassPath())) ? 0 : 1;
+	}
+    };
+
     /**
      * This type represents the singleton set containing the boolean type.
      */
@@ -304,15 +326,24 @@ public class Type {
      */
     public static final ClassType tClass(ClassInfo clazzinfo) {
 	int hash = clazzinfo.hashCode();
+	ClassType type = lookupClass(clazzinfo, hash);
+	if (type != null)
+	    return type;
+	/* Creating the type loads the class hierarchy, so we must not
+	 * hold the lock while doing this.
+	 */
+	ClassInfoType newType = new ClassInfoType(clazzinfo);
+	return (ClassType) classHash.unify(newType, hash, classComparator);
+    }
+
+    private static ClassType lookupClass(ClassInfo clazzinfo, int hash) {
 	Iterator iter = classHash.iterateHashCode(hash);
 	while (iter.hasNext()) {
 	    ClassInfoType type = (ClassInfoType) iter.next();
 	    if (type.getClassInfo() == clazzinfo)
 		return type;
 	}
-	ClassInfoType type = new ClassInfoType(clazzinfo);
-	classHash.put(hash, type);
-        return type;
+	return null;
     }
 
     /**
@@ -329,12 +360,11 @@ public class Type {
 	Iterator iter = arrayHash.iterateHashCode(hash);
 	while (iter.hasNext()) {
 	    ArrayType arrType = (ArrayType) iter.next();
-	    if (arrType.getElementType().equals(type))
+	    if (arrType.getElementType().isIdentical(type))
 		return arrType;
 	}
-	ArrayType arrType = new ArrayType(type);
-	arrayHash.put(hash, arrType);
-        return arrType;
+	return (Type) arrayHash.unify(new ArrayType(type), hash,
+				      arrayComparator);
     }
 
     /**
@@ -344,6 +374,18 @@ public class Type {
      */
     public static MethodType tMethod(ClassPath cp, String signature) {
 	int hash = signature.hashCode() + cp.hashCode();
+	MethodType methodType = lookupMethod(cp, signature, hash);
+	if (methodType != null)
+	    return methodType;
+	/* The constructor looks up the parameter types; don't hold
+	 * the lock while doing this.
+	 */
+	MethodType newType = new MethodType(cp, signature);
+	return (MethodType) methodHash.unify(newType, hash, methodComparator);
+    }
+
+    private static MethodType lookupMethod(ClassPath cp, String signature,
+					   int hash) {
 	Iterator iter = methodHash.iterateHashCode(hash);
 	while (iter.hasNext()) {
 	    MethodType methodType = (MethodType) iter.next();
@@ -351,9 +393,7 @@ public class Type {
 		&& methodType.getClassPath().equals(cp))
 		return methodType;
 	}
-	MethodType methodType = new MethodType(cp, signature);
-	methodHash.put(hash, methodType);
-        return methodType;
+	return null;
     }
 
     /**
@@ -555,6 +595,20 @@ public class Type {
 	return this.intersection(type) != Type.tError;
     }
 
+    /**
+     * Checks if this type is the same as the other type.  This is
+     * stricter than equals, since a class type loaded from a class
+     * path equals the system class type of the same name.  The array
+     * types are shared between all class paths, so they must be looked
+     * up with this method; otherwise one class path would get the
+     * array of a class of another class path.
+     * @param type the other type.
+     * @return true if the types are the same.
+     */
+    boolean isIdentical(Type type) {
+	return type.getClass() == getClass() && equals(type);
+    }
+
     /**
      * Generates the default name, that is the `natural' choice for
      * local of this type.
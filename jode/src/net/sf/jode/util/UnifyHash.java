@@ -28,60 +28,208 @@ import java.util.Comparator;
 import java.util.AbstractCollection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.ConcurrentModificationException;
 ///#enddef
 ///#def COLLECTIONEXTRA java.lang
 import java.lang.UnsupportedOperationException;
 ///#enddef
 
+/**
+ * A hash set that is used to unify objects, i.e. to make sure there
+ * is only one object with the same contents.  The objects are only
+ * weakly referenced, so the garbage collector can free them if
+ * nobody else uses them.  The caller gives the hash code of every
+ * object and compares the objects himself.<br>
+ *
+ * This class is thread safe.  The table is split into several
+ * segments.  Adding and removing objects locks the segment, looking
+ * up objects doesn't lock at all.  The chains of buckets are never
+ * modified, instead the buckets in front of a removed bucket are
+ * copied.  So a thread that looks up an object always sees a
+ * consistent, but maybe slightly outdated, chain.  Use {@link #unify}
+ * to add an object atomically only if there isn't an equal one yet.
+ * <br>
+ *
+ * The iterators don't throw ConcurrentModificationException; they
+ * return the objects that were in the table when the bucket chain
+ * was visited.
+ */
 public class UnifyHash extends AbstractCollection {
-    /** 
+    /**
      * the default capacity
      */
-    private static final int DEFAULT_CAPACITY = 11;
+    private static final int DEFAULT_CAPACITY = 16;
 
     /** the default load factor of a HashMap */
     private static final float DEFAULT_LOAD_FACTOR = 0.75F;
 
-///#ifdef JDK12
-    private ReferenceQueue queue = new ReferenceQueue();
-///#endif
+    /**
+     * The number of segments.  This must be a power of two.
+     */
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
 
-    static class Bucket
+    static final class Bucket
 ///#ifdef JDK12
 	extends WeakReference
 ///#endif
     {
 ///#ifdef JDK12
-	public Bucket(Object o, ReferenceQueue q) {
+	public Bucket(Object o, int hash, Bucket next, ReferenceQueue q) {
 	    super(o, q);
+	    this.hash = hash;
+	    this.next = next;
 	}
 ///#else
-///	public Bucket(Object o) {
+///	public Bucket(Object o, int hash, Bucket next) {
 ///	    this.obj = o;
+///	    this.hash = hash;
+///	    this.next = next;
 ///	}
 ///
-///	Object obj;
+///	final Object obj;
 ///
 ///	public Object get() {
 ///	    return obj;
 ///	}
 ///#endif
 
-	int hash;
-	Bucket next;
+	final int hash;
+	final Bucket next;
     }
 
-    private Bucket[] buckets;
-    int modCount = 0;
-    int size = 0;
-    int threshold;
-    float loadFactor;
+    /**
+     * A part of the hash table.  The segment is locked while it is
+     * modified.
+     */
+    static final class Segment {
+///#ifdef JDK12
+	final ReferenceQueue queue = new ReferenceQueue();
+///#endif
+	/**
+	 * The buckets.  The length is always a power of two.  After a
+	 * modification this field is written again, so that the
+	 * change is visible to the threads that look up objects.
+	 */
+	volatile Bucket[] buckets;
+	volatile int size = 0;
+	int threshold;
+	final float loadFactor;
+
+	Segment(int capacity, float loadFactor) {
+	    this.loadFactor = loadFactor;
+	    buckets = new Bucket[capacity];
+	    threshold = (int) (loadFactor * capacity);
+	}
+
+	private Bucket newBucket(Object o, int hash, Bucket next) {
+///#ifdef JDK12
+	    return new Bucket(o, hash, next, queue);
+///#else
+///	    return new Bucket(o, hash, next);
+///#endif
+	}
+
+	private void grow() {
+	    Bucket[] oldBuckets = buckets;
+	    int newCap = oldBuckets.length * 2;
+	    Bucket[] newBuckets = new Bucket[newCap];
+	    int newSize = 0;
+	    for (int i = 0; i < oldBuckets.length; i++) {
+		for (Bucket b = oldBuckets[i]; b != null; b = b.next) {
+		    Object o = b.get();
+		    if (o == null)
+			/* The object died, drop the bucket. */
+			continue;
+		    int newSlot = b.hash & (newCap - 1);
+		    newBuckets[newSlot]
+			= newBucket(o, b.hash, newBuckets[newSlot]);
+		    newSize++;
+		}
+	    }
+	    threshold = (int) (loadFactor * newCap);
+	    size = newSize;
+	    buckets = newBuckets;
+	}
+
+	/**
+	 * Removes the given bucket by copying the buckets in front of
+	 * it.
+	 * @return true, if the bucket was found.
+	 */
+	private boolean removeBucket(Bucket[] tab, int slot, Bucket removed) {
+	    Bucket first = tab[slot];
+	    Bucket b = first;
+	    while (b != null && b != removed)
+		b = b.next;
+	    if (b == null)
+		return false;
+	    Bucket newFirst = removed.next;
+	    for (b = first; b != removed; b = b.next) {
+		Object o = b.get();
+		if (o != null)
+		    newFirst = newBucket(o, b.hash, newFirst);
+		else
+		    size--;
+	    }
+	    tab[slot] = newFirst;
+	    size--;
+	    return true;
+	}
+
+///#ifdef JDK12
+	/**
+	 * Removes the buckets whose objects were garbage collected.
+	 * Buckets that were already dropped, because they were copied,
+	 * are ignored.
+	 */
+	void cleanUp() {
+	    Bucket died = (Bucket) queue.poll();
+	    if (died == null)
+		return;
+	    Bucket[] tab = buckets;
+	    do {
+		removeBucket(tab, died.hash & (tab.length - 1), died);
+	    } while ((died = (Bucket) queue.poll()) != null);
+	    buckets = tab;
+	}
+///#endif
+
+	void put(int hash, Object o) {
+///#ifdef JDK12
+	    cleanUp();
+///#endif
+	    if (size >= threshold)
+		grow();
+	    Bucket[] tab = buckets;
+	    int slot = hash & (tab.length - 1);
+	    tab[slot] = newBucket(o, hash, tab[slot]);
+	    size++;
+	    buckets = tab;
+	}
+
+	boolean remove(int hash, Object o) {
+	    Bucket[] tab = buckets;
+	    int slot = hash & (tab.length - 1);
+	    for (Bucket b = tab[slot]; b != null; b = b.next) {
+		if (b.hash == hash && b.get() == o) {
+		    removeBucket(tab, slot, b);
+		    buckets = tab;
+		    return true;
+		}
+	    }
+	    return false;
+	}
+    }
+
+    private final Segment[] segments;
 
     public UnifyHash(int initialCapacity, float loadFactor) {
-	this.loadFactor = loadFactor;
-	buckets = new Bucket[initialCapacity];
-	threshold = (int) (loadFactor * initialCapacity);
+	int capacity = 1;
+	while (capacity * SEGMENTS < initialCapacity)
+	    capacity <<= 1;
+	segments = new Segment[SEGMENTS];
+	for (int i = 0; i < SEGMENTS; i++)
+	    segments[i] = new Segment(capacity, loadFactor);
     }
 
     public UnifyHash(int initialCapacity) {
@@ -92,202 +240,258 @@ public class UnifyHash extends AbstractCollection {
 	this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
 
-    private void grow() {
-	Bucket[] oldBuckets = buckets;
-	int newCap = buckets.length * 2 + 1;
-	threshold = (int) (loadFactor * newCap);
-	buckets = new Bucket[newCap];
-	for (int i = 0; i < oldBuckets.length; i++) {
-	    Bucket nextBucket;
-	    for (Bucket b = oldBuckets[i]; b != null; b = nextBucket) {
-		if (i != Math.abs(b.hash % oldBuckets.length))
-		    throw new RuntimeException(""+i+", hash: "+b.hash+", oldlength: "+oldBuckets.length);
-		int newSlot = Math.abs(b.hash % newCap);
-		nextBucket = b.next;
-		b.next = buckets[newSlot];
-		buckets[newSlot] = b;
-	    }
-	}
+    /**
+     * Spreads the bits of the hash code given by the caller, so that
+     * the upper bits are also used to index the buckets.  This is a
+     * bijection, so objects with different hash codes never get the
+     * same spread hash code.
+     */
+    private static int spread(int hash) {
+	return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Gets the segment for a spread hash code.  The segment is
+     * selected by the upper bits and the bucket by the lower bits,
+     * so that similar hash codes use nearby buckets of the same
+     * segment.
+     */
+    private Segment segmentFor(int spreadHash) {
+	return segments[spreadHash >>> (32 - SEGMENT_BITS)];
     }
 
 ///#ifdef JDK12
+    /**
+     * Removes the entries of the objects that were garbage collected.
+     * This is done automatically when objects are added, so there
+     * is normally no need to call it.
+     */
     public final void cleanUp() {
-	Bucket died;
-	while ((died = (Bucket)queue.poll()) != null) {
-	    int diedSlot = Math.abs(died.hash % buckets.length);
-	    if (buckets[diedSlot] == died)
-		buckets[diedSlot] = died.next;
-	    else {
-		Bucket b = buckets[diedSlot];
-		while (b.next != died)
-		    b = b.next;
-		b.next = died.next;
+	for (int i = 0; i < SEGMENTS; i++) {
+	    Segment segment = segments[i];
+	    synchronized (segment) {
+		segment.cleanUp();
 	    }
-	    size--;
 	}
     }
 ///#endif
 
-
+    /**
+     * Returns the number of objects in this hash.  This includes
+     * objects that were garbage collected, but whose entries were not
+     * removed yet.
+     */
     public int size() {
+	int size = 0;
+	for (int i = 0; i < SEGMENTS; i++)
+	    size += segments[i].size;
 	return size;
     }
 
-    public Iterator iterator() {
-///#ifdef JDK12
-	cleanUp();
-///#endif
-
-	return new Iterator() {
-	    private int bucket = 0;
-	    private int known = modCount;
-	    private Bucket nextBucket;
-	    private Object nextVal;
-
-	    {
-		internalNext();
-	    }
-
-	    private void internalNext() {
-		while (true) {
-		    while (nextBucket == null) {
-			if (bucket == buckets.length)
-			    return;
-			nextBucket = buckets[bucket++];
-		    }
-		    
+    /**
+     * Iterates over the live objects in bucket chains.
+     */
+    private abstract class ChainIterator implements Iterator {
+	Bucket nextBucket;
+	Object nextVal;
+	Object last;
+	int lastHash;
+
+	/**
+	 * Gets the next chain to visit.  This is called when the
+	 * current chain is exhausted.
+	 * @return the first bucket of the chain, or null if there are
+	 * no more chains.  It sets done if there are no more chains.
+	 */
+	abstract Bucket nextChain();
+	boolean done;
+
+	/**
+	 * Tells if the bucket should be returned.
+	 */
+	abstract boolean matches(Bucket b);
+
+	void internalNext() {
+	    while (true) {
+		while (nextBucket == null) {
+		    if (done)
+			return;
+		    nextBucket = nextChain();
+		}
+		if (matches(nextBucket)) {
 		    nextVal = nextBucket.get();
 		    if (nextVal != null)
 			return;
-
-		    nextBucket = nextBucket.next;
 		}
+		nextBucket = nextBucket.next;
 	    }
+	}
 
-	    public boolean hasNext() {
-		return nextBucket != null;
-	    }
+	public boolean hasNext() {
+	    return nextBucket != null;
+	}
 
-	    public Object next() {
-		if (known != modCount)
-		    throw new ConcurrentModificationException();
-		if (nextBucket == null)
-		    throw new NoSuchElementException();
-		Object result = nextVal;
-		nextBucket = nextBucket.next;
-		internalNext();
-		return result;
-	    }
+	public Object next() {
+	    if (nextBucket == null)
+		throw new NoSuchElementException();
+	    last = nextVal;
+	    lastHash = nextBucket.hash;
+	    nextBucket = nextBucket.next;
+	    internalNext();
+	    return last;
+	}
 
-	    public void remove() {
-		throw new UnsupportedOperationException();
+	public void remove() {
+	    if (last == null)
+		throw new IllegalStateException();
+	    Segment segment = segmentFor(lastHash);
+	    synchronized (segment) {
+		segment.remove(lastHash, last);
 	    }
-	};
+	    last = null;
+	}
     }
 
-    public Iterator iterateHashCode(final int hash) {
-///#ifdef JDK12
-	cleanUp();
-///#endif
-	return new Iterator() {
-	    private int known = modCount;
-	    private boolean removeOk = false;
-	    private Bucket removeBucket = null;
-	    private Bucket prevBucket   = null;
-	    private Bucket nextBucket
-		= buckets[Math.abs(hash % buckets.length)];
-	    private Object nextVal;
-
-	    {
-		internalNext();
-	    }
-
-	    private void internalNext() {
-		while (nextBucket != null) {
-		    if (nextBucket.hash == hash) {
-			nextVal = nextBucket.get();
-			if (nextVal != null)
-			    return;
+    public Iterator iterator() {
+	ChainIterator iter = new ChainIterator() {
+	    private int segment = 0;
+	    private Bucket[] tab = null;
+	    private int slot = 0;
+
+	    Bucket nextChain() {
+		while (tab == null || slot == tab.length) {
+		    if (segment == SEGMENTS) {
+			done = true;
+			return null;
 		    }
-		    prevBucket = nextBucket;
-		    nextBucket = nextBucket.next;
+		    tab = segments[segment++].buckets;
+		    slot = 0;
 		}
+		return tab[slot++];
 	    }
 
-	    public boolean hasNext() {
-		return nextBucket != null;
+	    boolean matches(Bucket b) {
+		return true;
 	    }
+	};
+	iter.internalNext();
+	return iter;
+    }
+
+    /**
+     * Iterates over the objects with the given hash code in a single
+     * bucket chain.
+     */
+    private final class HashIterator implements Iterator {
+	private final int hash;
+	private Bucket nextBucket;
+	private Object nextVal;
+	private Object last;
+
+	HashIterator(int hash, Bucket first) {
+	    this.hash = hash;
+	    nextBucket = first;
+	    internalNext();
+	}
 
-	    public Object next() {
-		if (known != modCount)
-		    throw new ConcurrentModificationException();
-		if (nextBucket == null)
-		    throw new NoSuchElementException();
-		Object result = nextVal;
-		removeBucket = prevBucket;
-		removeOk = true;
-		prevBucket = nextBucket;
+	private void internalNext() {
+	    while (nextBucket != null) {
+		if (nextBucket.hash == hash) {
+		    nextVal = nextBucket.get();
+		    if (nextVal != null)
+			return;
+		}
 		nextBucket = nextBucket.next;
-		internalNext();
-		return result;
 	    }
+	}
 
-	    public void remove() {
-		if (known != modCount)
-		    throw new ConcurrentModificationException();
-		if (!removeOk)
-		    throw new IllegalStateException();
-		if (removeBucket == null)
-		    buckets[Math.abs(hash % buckets.length)]
-			= buckets[Math.abs(hash % buckets.length)].next;
-		else
-		    removeBucket.next = removeBucket.next.next;
-		known = ++modCount;
-		size--;
+	public boolean hasNext() {
+	    return nextBucket != null;
+	}
+
+	public Object next() {
+	    if (nextBucket == null)
+		throw new NoSuchElementException();
+	    last = nextVal;
+	    nextBucket = nextBucket.next;
+	    internalNext();
+	    return last;
+	}
+
+	public void remove() {
+	    if (last == null)
+		throw new IllegalStateException();
+	    Segment segment = segmentFor(hash);
+	    synchronized (segment) {
+		segment.remove(hash, last);
 	    }
-	};
+	    last = null;
+	}
     }
 
-    public void put(int hash, Object o) {
-	if (size++ > threshold)
-	    grow();
-	modCount++;
+    /**
+     * Iterates over all objects with the given hash code.  Its remove
+     * method removes the last object returned by next from this hash.
+     */
+    public Iterator iterateHashCode(int hash) {
+	int spreadHash = spread(hash);
+	Bucket[] tab = segmentFor(spreadHash).buckets;
+	return new HashIterator(spreadHash,
+				tab[spreadHash & (tab.length - 1)]);
+    }
 
-	int slot = Math.abs(hash % buckets.length);
-///#ifdef JDK12
-	Bucket b = new Bucket(o, queue);
-///#else
-///	Bucket b = new Bucket(o);
-///#endif
-	b.hash = hash;
-	b.next = buckets[slot];
-	buckets[slot] = b;
+    /**
+     * Adds an object with the given hash code.  This doesn't check
+     * if there is already an equal object.
+     */
+    public void put(int hash, Object o) {
+	int spreadHash = spread(hash);
+	Segment segment = segmentFor(spreadHash);
+	synchronized (segment) {
+	    segment.put(spreadHash, o);
+	}
     }
 
+    /**
+     * Removes the given object, which has the given hash code.
+     * @return true, if the object was found.
+     */
     public boolean remove(int hash, Object o) {
-	Iterator i = iterateHashCode(hash);
-	while (i.hasNext()) {
-	    if (i.next() == o) {
-		i.remove();
-		return true;
-	    }
+	int spreadHash = spread(hash);
+	Segment segment = segmentFor(spreadHash);
+	synchronized (segment) {
+	    return segment.remove(spreadHash, o);
 	}
-	return false;
     }
 
+    /**
+     * Unifies the given object.  If there is already an object with
+     * the given hash code that is equal to o according to the given
+     * comparator, this object is returned.  Otherwise o is added and
+     * returned.  This is done atomically, so concurrent calls
+     * with equal objects always return the same object.
+     * @param o the object.
+     * @param hash the hash code of the object.
+     * @param comparator the comparator, its compare method is called
+     * with o as first and an object in this hash as second parameter
+     * and should return 0 if they are equal.  It is called while the
+     * segment is locked, so it must not add objects to this hash.
+     */
     public Object unify(Object o, int hash, Comparator comparator) {
-///#ifdef JDK12
-	cleanUp();
-///#endif
-	int slot = Math.abs(hash % buckets.length);
-	for (Bucket b = buckets[slot]; b != null; b = b.next) {
-	    Object old = b.get();
-	    if (old != null && comparator.compare(o, old) == 0)
-		return old;
+	int spreadHash = spread(hash);
+	Segment segment = segmentFor(spreadHash);
+	synchronized (segment) {
+	    Bucket[] tab = segment.buckets;
+	    int slot = spreadHash & (tab.length - 1);
+	    for (Bucket b = tab[slot]; b != null; b = b.next) {
+		if (b.hash != spreadHash)
+		    continue;
+		Object old = b.get();
+		if (old != null && comparator.compare(o, old) == 0)
+		    return old;
+	    }
+	    segment.put(spreadHash, o);
+	    return o;
 	}
-
-	put(hash, o);
-	return o;
     }
 }
-
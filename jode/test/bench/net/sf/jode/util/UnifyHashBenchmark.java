@@ -0,0 +1,143 @@
+/* UnifyHashBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.util;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * Compares UnifyHash with the previous implementation OldUnifyHash.
+ * Every operation looks up a name and adds it if it isn't there, like
+ * ClassPath.getClassInfo and Type.tClass do.  The old hash must be
+ * locked by the caller, the new one is used without a lock.<br>
+ *
+ * Usage: <code>java net.sf.jode.util.UnifyHashBenchmark
+ * [names [operations [maxthreads]]]</code>
+ */
+public class UnifyHashBenchmark {
+    private static final int ROUNDS = 5;
+
+    private static String[] names;
+    private static int operations;
+
+    private static abstract class Table {
+	abstract Object lookup(String name);
+    }
+
+    private static class OldTable extends Table {
+	OldUnifyHash hash = new OldUnifyHash();
+
+	Object lookup(String name) {
+	    int h = name.hashCode();
+	    synchronized (hash) {
+		Iterator iter = hash.iterateHashCode(h);
+		while (iter.hasNext()) {
+		    Object o = iter.next();
+		    if (o.equals(name))
+			return o;
+		}
+		hash.put(h, name);
+		return name;
+	    }
+	}
+    }
+
+    private static class NewTable extends Table {
+	UnifyHash hash = new UnifyHash();
+
+	Object lookup(String name) {
+	    int h = name.hashCode();
+	    Iterator iter = hash.iterateHashCode(h);
+	    while (iter.hasNext()) {
+		Object o = iter.next();
+		if (o.equals(name))
+		    return o;
+	    }
+	    return hash.unify(name, h, EqualsComparator.INSTANCE);
+	}
+    }
+
+    private static class EqualsComparator implements Comparator {
+	static final EqualsComparator INSTANCE = new EqualsComparator();
+
+	public int compare(Object o1, Object o2) {
+	    return o1.equals(o2) ? 0 : 1;
+	}
+    }
+
+    /**
+     * Runs the given number of threads, each doing operations lookups
+     * on the table.
+     * @return the time in nanoseconds per lookup.
+     */
+    private static double run(final Table table, int threads)
+	throws InterruptedException {
+	Thread[] workers = new Thread[threads];
+	for (int t = 0; t < threads; t++) {
+	    final int start = t * 7919;
+	    workers[t] = new Thread() {
+		public void run() {
+		    int n = names.length;
+		    for (int i = 0; i < operations; i++)
+			table.lookup(names[(start + i) % n]);
+		}
+	    };
+	}
+	long time = System.nanoTime();
+	for (int t = 0; t < threads; t++)
+	    workers[t].start();
+	for (int t = 0; t < threads; t++)
+	    workers[t].join();
+	time = System.nanoTime() - time;
+	return (double) time / ((long) operations * threads);
+    }
+
+    public static void main(String[] params) throws Exception {
+	int count = params.length > 0 ? Integer.parseInt(params[0]) : 20000;
+	operations = params.length > 1
+	    ? Integer.parseInt(params[1]) : 1000000;
+	int maxThreads = params.length > 2 ? Integer.parseInt(params[2])
+	    : Runtime.getRuntime().availableProcessors();
+
+	names = new String[count];
+	for (int i = 0; i < count; i++)
+	    names[i] = "net.sf.jode.test.Class" + i;
+
+	System.out.println("names: " + count + ", lookups per thread: "
+			   + operations);
+	System.out.println("threads\told ns/op\tnew ns/op");
+	for (int threads = 1; threads <= maxThreads; threads *= 2) {
+	    /* Warm up and fill the tables, then take the best of
+	     * several rounds.
+	     */
+	    Table oldTable = new OldTable();
+	    Table newTable = new NewTable();
+	    run(newTable, threads);
+	    run(oldTable, threads);
+	    double oldTime = Double.MAX_VALUE;
+	    double newTime = Double.MAX_VALUE;
+	    for (int round = 0; round < ROUNDS; round++) {
+		newTime = Math.min(newTime, run(newTable, threads));
+		oldTime = Math.min(oldTime, run(oldTable, threads));
+	    }
+	    System.out.println(threads + "\t" + (int) (oldTime + 0.5)
+			       + "\t\t" + (int) (newTime + 0.5));
+	}
+    }
+}
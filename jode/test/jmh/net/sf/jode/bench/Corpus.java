@@ -0,0 +1,143 @@
+/* Corpus Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bench;
+import net.sf.jode.bytecode.ClassPath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * The class files the benchmarks work on.  There are two corpora:
+ * <dl>
+ * <dt>test</dt><dd>The classes compiled from the sources in
+ * jode/test.  The build file compiles them and gives the directory
+ * in the system property <code>jode.bench.fixtures</code>.</dd>
+ * <dt>synthetic</dt><dd>A large corpus generated by {@link
+ * SyntheticCorpus}.  It is generated on first use and kept in the
+ * temporary directory, so that forked benchmark runs share it.</dd>
+ * </dl>
+ */
+public class Corpus {
+    public static final String TEST = "test";
+    public static final String SYNTHETIC = "synthetic";
+
+    /**
+     * The number of classes in the synthetic corpus.  This can be
+     * changed with the system property jode.bench.synthetic.classes.
+     */
+    public static final int SYNTHETIC_CLASSES
+	= Integer.getInteger("jode.bench.synthetic.classes", 200).intValue();
+    private static final long SYNTHETIC_SEED = 4711;
+
+    private static Hashtable classNames = new Hashtable();
+
+    /**
+     * Gets the directory containing the class files of a corpus.
+     * @param corpus TEST or SYNTHETIC.
+     */
+    public static synchronized File getDirectory(String corpus)
+	throws IOException {
+	if (corpus.equals(TEST)) {
+	    String dir = System.getProperty("jode.bench.fixtures");
+	    if (dir == null)
+		throw new IOException("System property jode.bench.fixtures"
+				      + " not set");
+	    return new File(dir);
+	} else if (corpus.equals(SYNTHETIC)) {
+	    File dir = new File(System.getProperty("java.io.tmpdir"),
+				"jode-bench-synthetic-" + SYNTHETIC_CLASSES
+				+ "-" + SYNTHETIC_SEED);
+	    if (!new File(dir, "complete").exists())
+		new SyntheticCorpus(SYNTHETIC_CLASSES, SYNTHETIC_SEED)
+		    .generate(dir);
+	    return dir;
+	}
+	throw new IllegalArgumentException("Unknown corpus " + corpus);
+    }
+
+    /**
+     * Creates a new class path for a corpus.  The classes of the
+     * runtime are read by reflection.
+     */
+    public static ClassPath createClassPath(String corpus)
+	throws IOException {
+	return new ClassPath(getDirectory(corpus).getPath()
+			     + ClassPath.altPathSeparatorChar
+			     + "reflection:");
+    }
+
+    private static void listClasses(File dir, String prefix, Vector result) {
+	String[] files = dir.list();
+	if (files == null)
+	    return;
+	for (int i = 0; i < files.length; i++) {
+	    File file = new File(dir, files[i]);
+	    if (file.isDirectory())
+		listClasses(file, prefix + files[i] + ".", result);
+	    else if (files[i].endsWith(".class"))
+		result.addElement(prefix + files[i].substring
+				  (0, files[i].length() - 6));
+	}
+    }
+
+    /**
+     * Gets the names of all classes in a corpus, sorted by name.
+     */
+    public static synchronized String[] getClassNames(String corpus)
+	throws IOException {
+	String[] names = (String[]) classNames.get(corpus);
+	if (names == null) {
+	    Vector result = new Vector();
+	    listClasses(getDirectory(corpus), "", result);
+	    names = new String[result.size()];
+	    result.copyInto(names);
+	    Arrays.sort(names);
+	    classNames.put(corpus, names);
+	}
+	return names;
+    }
+
+    /**
+     * Reads the class file of the given class.
+     */
+    public static byte[] getClassBytes(String corpus, String className)
+	throws IOException {
+	File file = new File(getDirectory(corpus),
+			     className.replace('.', File.separatorChar)
+			     + ".class");
+	InputStream input = new FileInputStream(file);
+	try {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[4096];
+	    int count;
+	    while ((count = input.read(buffer)) != -1)
+		bytes.write(buffer, 0, count);
+	    return bytes.toByteArray();
+	} finally {
+	    input.close();
+	}
+    }
+}
@@ -0,0 +1,43 @@
+/* NullWriter Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bench;
+
+import java.io.Writer;
+
+/**
+ * A writer that discards everything.  The benchmarks write their
+ * output to it, so that only the decompiler is measured.
+ */
+public class NullWriter extends Writer {
+    public void write(int c) {
+    }
+
+    public void write(char[] cbuf, int off, int len) {
+    }
+
+    public void write(String str, int off, int len) {
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,303 @@
+/* SyntheticCorpus Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.Vector;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a corpus of classes with random, but reproducible, method
+ * bodies.  The bodies contain nested loops, conditions with && and
+ * ||, conditional expressions, switches, exception handlers,
+ * synchronized blocks and string concatenation, so that all parts of
+ * the flow analysis are exercised.  The sources are compiled with the
+ * compiler of the running JDK.<br>
+ *
+ * Some constructs that the decompiler doesn't handle yet, like
+ * breaks out of loops, do-while loops, conditionals in switch cases
+ * or returns out of synchronized blocks, are left out.  Otherwise
+ * nearly every class would fail and the benchmarks would mostly
+ * measure the error handling.  About a quarter of the classes still
+ * fail.
+ */
+public class SyntheticCorpus {
+    private static final String PACKAGE = "synthetic";
+    private static final int METHODS = 10;
+    private static final int MAX_DEPTH = 3;
+    private static final int MAX_COND_DEPTH = 3;
+
+    private int classes;
+    private Random random;
+
+    private PrintWriter out;
+    private int indent;
+    private boolean inSwitch;
+    private boolean inMonitor;
+
+    /**
+     * @param classes the number of classes.
+     * @param seed the seed for the random generator; the same seed
+     * always gives the same corpus.
+     */
+    public SyntheticCorpus(int classes, long seed) {
+	this.classes = classes;
+	this.random = new Random(seed);
+    }
+
+    private void line(String str) {
+	for (int i = 0; i < indent; i++)
+	    out.print("    ");
+	out.println(str);
+    }
+
+    private String var() {
+	return "abcd".charAt(random.nextInt(4)) + "";
+    }
+
+    private String intExpr(int depth) {
+	int kind = depth >= MAX_COND_DEPTH ? 0 : random.nextInt(6);
+	/* The decompiler can't handle conditional expressions in a
+	 * switch yet.
+	 */
+	if (kind == 3 && inSwitch)
+	    kind = 1;
+	switch (kind) {
+	case 0:
+	    return random.nextBoolean() ? var()
+		: String.valueOf(random.nextInt(100));
+	case 1:
+	    return "(" + intExpr(depth+1) + " + " + intExpr(depth+1) + ")";
+	case 2:
+	    return intExpr(depth+1) + " * " + intExpr(depth+1);
+	case 3:
+	    return "(" + condExpr(depth+1) + " ? " + intExpr(depth+1)
+		+ " : " + intExpr(depth+1) + ")";
+	case 4:
+	    return "field" + random.nextInt(3) + " % 7";
+	default:
+	    return "arr[" + var() + " & 7]";
+	}
+    }
+
+    private String condExpr(int depth) {
+	switch (depth >= MAX_COND_DEPTH ? 0 : random.nextInt(4)) {
+	case 0:
+	    return var() + (random.nextBoolean() ? " < " : " != ")
+		+ intExpr(depth+1);
+	case 1:
+	    return "(" + condExpr(depth+1) + " && " + condExpr(depth+1) + ")";
+	case 2:
+	    return "(" + condExpr(depth+1) + " || " + condExpr(depth+1) + ")";
+	default:
+	    return "!(s.length() > " + var() + ")";
+	}
+    }
+
+    private void block(int depth, int method) {
+	int count = 1 + random.nextInt(depth == 0 ? 5 : 2);
+	for (int i = 0; i < count; i++)
+	    statement(depth, method);
+    }
+
+    private void statement(int depth, int method) {
+	int kind = depth >= MAX_DEPTH ? random.nextInt(3) : random.nextInt(10);
+	switch (kind) {
+	case 0:
+	    line(var() + " = " + intExpr(0) + ";");
+	    break;
+	case 1:
+	    line("s = s + " + var() + " + \"x\" + " + intExpr(1) + ";");
+	    break;
+	case 2:
+	    if (method > 0)
+		line(var() + " += m" + random.nextInt(method)
+		     + "(" + intExpr(1) + ", s);");
+	    else
+		line("field" + random.nextInt(3) + " = " + intExpr(0) + ";");
+	    break;
+	case 3:
+	    line("if (" + condExpr(0) + ") {");
+	    indent++;
+	    block(depth+1, method);
+	    indent--;
+	    if (random.nextBoolean()) {
+		line("} else {");
+		indent++;
+		block(depth+1, method);
+		indent--;
+	    }
+	    line("}");
+	    break;
+	case 4: {
+	    String i = "i" + depth;
+	    line("for (int " + i + " = 0; " + i + " < arr.length; "
+		 + i + "++) {");
+	    indent++;
+	    line("arr[" + i + "] += " + intExpr(1) + ";");
+	    block(depth+1, method);
+	    indent--;
+	    line("}");
+	    break;
+	}
+	case 5:
+	    line("while (" + condExpr(MAX_COND_DEPTH) + ") {");
+	    indent++;
+	    block(depth+1, method);
+	    line(var() + "++;");
+	    indent--;
+	    line("}");
+	    break;
+	case 6: {
+	    boolean wasInSwitch = inSwitch;
+	    inSwitch = true;
+	    line("switch (" + var() + " & 7) {");
+	    for (int c = 0; c < 8; c++) {
+		if (random.nextInt(2) == 0)
+		    continue;
+		line("case " + c + ":");
+		indent++;
+		/* Only simple statements, the decompiler doesn't
+		 * handle conditionals at the end of a case yet.
+		 */
+		block(MAX_DEPTH, method);
+		line("break;");
+		indent--;
+	    }
+	    line("default:");
+	    indent++;
+	    line(var() + " = " + intExpr(1) + ";");
+	    indent--;
+	    line("}");
+	    inSwitch = wasInSwitch;
+	    break;
+	}
+	case 7:
+	    line("try {");
+	    indent++;
+	    block(depth+1, method);
+	    indent--;
+	    line("} catch (RuntimeException ex" + depth + ") {");
+	    indent++;
+	    line("s = ex" + depth + ".getMessage();");
+	    indent--;
+	    if (random.nextBoolean()) {
+		line("} finally {");
+		indent++;
+		line("field0++;");
+		indent--;
+	    }
+	    line("}");
+	    break;
+	case 8: {
+	    boolean wasInMonitor = inMonitor;
+	    inMonitor = true;
+	    line("synchronized (this) {");
+	    indent++;
+	    block(depth+1, method);
+	    indent--;
+	    line("}");
+	    inMonitor = wasInMonitor;
+	    break;
+	}
+	default:
+	    /* The decompiler can't handle returns out of synchronized
+	     * blocks yet.
+	     */
+	    if (inMonitor)
+		line(var() + "--;");
+	    else {
+		line("if (" + condExpr(0) + ")");
+		line("    return " + intExpr(1) + ";");
+	    }
+	    break;
+	}
+    }
+
+    private void generateClass(String name) {
+	line("package " + PACKAGE + ";");
+	line("");
+	line("public class " + name + " {");
+	indent++;
+	line("int field0, field1, field2;");
+	line("int[] arr = new int[16];");
+	line("");
+	for (int m = 0; m < METHODS; m++) {
+	    line("int m" + m + "(int a, String s) {");
+	    indent++;
+	    line("int b = a * 2, c = s.length(), d = 0;");
+	    block(0, m);
+	    line("return a + b + c + d + s.length();");
+	    indent--;
+	    line("}");
+	    line("");
+	}
+	indent--;
+	line("}");
+    }
+
+    /**
+     * Generates and compiles the corpus.  When this is finished, the
+     * file <code>complete</code> is created in the directory.
+     * @param dir the directory, where the classes are written to.  The
+     * sources are written to the subdirectory src.
+     */
+    public void generate(File dir) throws IOException {
+	File srcDir = new File(dir, "src" + File.separator + PACKAGE);
+	if (!srcDir.exists() && !srcDir.mkdirs())
+	    throw new IOException("Can't create " + srcDir);
+
+	Vector args = new Vector();
+	args.addElement("-g");
+	args.addElement("-nowarn");
+	/* Newer targets compile string concatenation to invokedynamic,
+	 * which the decompiler doesn't understand.
+	 */
+	args.addElement("--release");
+	args.addElement("8");
+	args.addElement("-d");
+	args.addElement(dir.getPath());
+	for (int i = 0; i < classes; i++) {
+	    String name = "Synth" + i;
+	    File file = new File(srcDir, name + ".java");
+	    out = new PrintWriter(new FileWriter(file));
+	    try {
+		generateClass(name);
+	    } finally {
+		out.close();
+	    }
+	    args.addElement(file.getPath());
+	}
+
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	if (compiler == null)
+	    throw new IOException("The synthetic corpus needs a JDK");
+	String[] argArray = new String[args.size()];
+	args.copyInto(argArray);
+	if (compiler.run(null, null, null, argArray) != 0)
+	    throw new IOException("Compiling the synthetic corpus failed");
+	new File(dir, "complete").createNewFile();
+    }
+}
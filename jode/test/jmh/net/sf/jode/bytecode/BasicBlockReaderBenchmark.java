@@ -0,0 +1,127 @@
+/* BasicBlockReaderBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bytecode;
+import net.sf.jode.bench.Corpus;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link BasicBlockReader#readCode} and the conversion into
+ * basic blocks for all methods of a corpus.  The code attributes are
+ * extracted from the class files before, together with the constant
+ * pool of their class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BasicBlockReaderBenchmark {
+    @Param({ Corpus.TEST, Corpus.SYNTHETIC })
+    public String corpus;
+
+    private MethodInfo[] methods;
+    private ConstantPool[] pools;
+    private byte[][] codes;
+
+    private static void skipAttributes(DataInputStream input)
+	throws IOException {
+	int count = input.readUnsignedShort();
+	for (int i = 0; i < count; i++) {
+	    input.readUnsignedShort();
+	    input.skipBytes(input.readInt());
+	}
+    }
+
+    private static void readMethods(byte[] bytes, Vector result)
+	throws IOException {
+	DataInputStream input = new DataInputStream
+	    (new ByteArrayInputStream(bytes));
+	input.readInt();
+	input.readInt();
+	ConstantPool cp = new ConstantPool();
+	cp.read(input);
+	input.skipBytes(6);
+	input.skipBytes(2 * input.readUnsignedShort());
+
+	int fields = input.readUnsignedShort();
+	for (int i = 0; i < fields; i++) {
+	    input.skipBytes(6);
+	    skipAttributes(input);
+	}
+
+	int count = input.readUnsignedShort();
+	for (int i = 0; i < count; i++) {
+	    int modifier = input.readUnsignedShort();
+	    String name = cp.getUTF8(input.readUnsignedShort());
+	    String typeSig = cp.getUTF8(input.readUnsignedShort());
+	    int attrs = input.readUnsignedShort();
+	    for (int j = 0; j < attrs; j++) {
+		String attrName = cp.getUTF8(input.readUnsignedShort());
+		byte[] data = new byte[input.readInt()];
+		input.readFully(data);
+		if (attrName.equals("Code"))
+		    result.addElement(new Object[] {
+			new MethodInfo(name, typeSig, modifier), cp, data
+		    });
+	    }
+	}
+    }
+
+    @Setup
+    public void setup() throws IOException {
+	String[] names = Corpus.getClassNames(corpus);
+	Vector result = new Vector();
+	for (int i = 0; i < names.length; i++)
+	    readMethods(Corpus.getClassBytes(corpus, names[i]), result);
+
+	methods = new MethodInfo[result.size()];
+	pools = new ConstantPool[result.size()];
+	codes = new byte[result.size()][];
+	for (int i = 0; i < methods.length; i++) {
+	    Object[] entry = (Object[]) result.elementAt(i);
+	    methods[i] = (MethodInfo) entry[0];
+	    pools[i] = (ConstantPool) entry[1];
+	    codes[i] = (byte[]) entry[2];
+	}
+    }
+
+    @Benchmark
+    public void readCorpus(Blackhole bh) throws IOException {
+	for (int i = 0; i < codes.length; i++) {
+	    BasicBlocks bb = new BasicBlocks(methods[i]);
+	    bb.read(pools[i], ByteBuffer.wrap(codes[i]), ClassInfo.ALL);
+	    bh.consume(bb);
+	}
+    }
+}
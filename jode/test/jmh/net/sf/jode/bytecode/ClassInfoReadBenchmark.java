@@ -0,0 +1,80 @@
+/* ClassInfoReadBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bytecode;
+import net.sf.jode.bench.Corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link ClassInfo#read} for all classes of a corpus.  The
+ * class files are read into memory before, so only the parsing is
+ * measured.  The level DECLARATIONS is what the decompiler needs for
+ * the classes it doesn't decompile, ALL is what it needs for the
+ * decompiled classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClassInfoReadBenchmark {
+    @Param({ Corpus.TEST, Corpus.SYNTHETIC })
+    public String corpus;
+
+    /**
+     * The level of detail, either DECLARATIONS (30) or ALL (100).
+     */
+    @Param({ "30", "100" })
+    public int howMuch;
+
+    private ClassPath classPath;
+    private byte[][] classBytes;
+
+    @Setup
+    public void setup() throws IOException {
+	classPath = Corpus.createClassPath(corpus);
+	String[] names = Corpus.getClassNames(corpus);
+	classBytes = new byte[names.length][];
+	for (int i = 0; i < names.length; i++)
+	    classBytes[i] = Corpus.getClassBytes(corpus, names[i]);
+    }
+
+    @Benchmark
+    public void readCorpus(Blackhole bh) throws IOException {
+	for (int i = 0; i < classBytes.length; i++) {
+	    /* Don't use the class path, it would return the same
+	     * ClassInfo, which is already loaded.
+	     */
+	    ClassInfo clazz = new ClassInfo(null, classPath);
+	    clazz.read(ByteBuffer.wrap(classBytes[i]), howMuch);
+	    bh.consume(clazz);
+	}
+    }
+}
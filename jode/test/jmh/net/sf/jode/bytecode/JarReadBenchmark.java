@@ -0,0 +1,92 @@
+/* JarReadBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.bytecode;
+import net.sf.jode.bench.Corpus;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading all classes of a corpus from a jar file, as in a
+ * scan of a whole class path.  Unlike {@link ClassInfoReadBenchmark}
+ * this includes opening the jar and inflating the class files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JarReadBenchmark {
+    @Param({ Corpus.TEST, Corpus.SYNTHETIC })
+    public String corpus;
+
+    /**
+     * The level of detail, either HIERARCHY (10), DECLARATIONS (30)
+     * or ALL (100).
+     */
+    @Param({ "10", "30", "100" })
+    public int howMuch;
+
+    private File jar;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+	names = Corpus.getClassNames(corpus);
+	jar = File.createTempFile("jode", ".jar");
+	ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+	for (int i = 0; i < names.length; i++) {
+	    out.putNextEntry(new ZipEntry(names[i].replace('.', '/')
+					  + ".class"));
+	    out.write(Corpus.getClassBytes(corpus, names[i]));
+	    out.closeEntry();
+	}
+	out.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+	jar.delete();
+    }
+
+    @Benchmark
+    public void readJar(Blackhole bh) throws IOException {
+	/* A new class path, so that every class is read again. */
+	ClassPath classPath = new ClassPath(new String[] { jar.getPath() });
+	for (int i = 0; i < names.length; i++) {
+	    ClassInfo clazz = classPath.getClassInfo(names[i]);
+	    clazz.load(howMuch);
+	    bh.consume(clazz);
+	}
+    }
+}
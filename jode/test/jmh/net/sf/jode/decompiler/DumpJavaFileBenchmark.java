@@ -0,0 +1,102 @@
+/* DumpJavaFileBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bench.Corpus;
+import net.sf.jode.bench.NullWriter;
+import net.sf.jode.bytecode.ClassInfo;
+import net.sf.jode.bytecode.ClassPath;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the decompilation of whole classes with {@link
+ * ClassAnalyzer#dumpJavaFile}, the same way the command line
+ * decompiler does it.  The classes are loaded before, the output is
+ * discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DumpJavaFileBenchmark {
+    @Param({ Corpus.TEST, Corpus.SYNTHETIC })
+    public String corpus;
+
+    private ClassPath classPath;
+    private ClassInfo[] classes;
+    private PrintWriter err = new PrintWriter(new NullWriter());
+
+    @Setup
+    public void setup() throws IOException {
+	classPath = Corpus.createClassPath(corpus);
+	String[] names = Corpus.getClassNames(corpus);
+	classes = new ClassInfo[names.length];
+	DecompilerContext context
+	    = new DecompilerContext(Options.options, 0, err);
+	int count = 0;
+	for (int i = 0; i < names.length; i++) {
+	    ClassInfo clazz = classPath.getClassInfo(names[i]);
+	    /* Inner classes are decompiled together with their
+	     * outer class.
+	     */
+	    if (context.skipClass(clazz))
+		continue;
+	    clazz.load(ClassInfo.ALL);
+	    classes[count++] = clazz;
+	}
+	ClassInfo[] topLevel = new ClassInfo[count];
+	System.arraycopy(classes, 0, topLevel, 0, count);
+	classes = topLevel;
+    }
+
+    @Benchmark
+    public void dumpCorpus() throws IOException {
+	ImportHandler imports = new ImportHandler(classPath);
+	TabbedPrintWriter writer = new TabbedPrintWriter
+	    (new NullWriter(), imports, false);
+	for (int i = 0; i < classes.length; i++) {
+	    DecompilerContext context
+		= new DecompilerContext(Options.options, 0, err);
+	    /* A few classes still fail to decompile.  Continue with
+	     * the next class, like the -k option does.
+	     */
+	    try {
+		new ClassAnalyzer(context, classes[i], imports)
+		    .dumpJavaFile(writer);
+	    } catch (RuntimeException ex) {
+		writer = new TabbedPrintWriter
+		    (new NullWriter(), imports, false);
+	    } catch (InternalError ex) {
+		writer = new TabbedPrintWriter
+		    (new NullWriter(), imports, false);
+	    }
+	}
+    }
+}
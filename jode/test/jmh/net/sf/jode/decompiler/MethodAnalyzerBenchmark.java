@@ -0,0 +1,103 @@
+/* MethodAnalyzerBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bench.Corpus;
+import net.sf.jode.bench.NullWriter;
+import net.sf.jode.bytecode.ClassInfo;
+import net.sf.jode.bytecode.ClassPath;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the analysis of the methods of a corpus, i.e. the
+ * conversion of the basic blocks into flow blocks and the T1/T2
+ * transformations in MethodAnalyzer.analyzeCode.  The classes are
+ * loaded completely before, so that no class file is read during
+ * the measurement.  The inner classes and the output are not part of
+ * this benchmark, see {@link DumpJavaFileBenchmark} for that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MethodAnalyzerBenchmark {
+    @Param({ Corpus.TEST, Corpus.SYNTHETIC })
+    public String corpus;
+
+    private ClassPath classPath;
+    private ClassInfo[] classes;
+    private PrintWriter err = new PrintWriter(new NullWriter());
+
+    @Setup
+    public void setup() throws IOException {
+	classPath = Corpus.createClassPath(corpus);
+	String[] names = Corpus.getClassNames(corpus);
+	classes = new ClassInfo[names.length];
+	for (int i = 0; i < names.length; i++) {
+	    classes[i] = classPath.getClassInfo(names[i]);
+	    classes[i].load(ClassInfo.ALL);
+	}
+    }
+
+    @Benchmark
+    public void analyzeCorpus(Blackhole bh) throws IOException {
+	for (int i = 0; i < classes.length; i++) {
+	    DecompilerContext context
+		= new DecompilerContext(Options.options, 0, err);
+	    DecompilerContext previous = context.enter();
+	    try {
+		ImportHandler imports = new ImportHandler(classPath);
+		imports.init(classes[i].getName());
+		ClassAnalyzer clazzAna
+		    = new ClassAnalyzer(context, classes[i], imports);
+		clazzAna.initialize();
+		MethodAnalyzer[] methods = clazzAna.methods;
+		if (methods == null)
+		    continue;
+		/* A few classes still fail to decompile.  Continue
+		 * with the next class, like the -k option does.
+		 */
+		try {
+		    for (int j = 0; j < methods.length; j++) {
+			methods[j].analyze(null, 0.0, 0.0);
+			bh.consume(methods[j]);
+		    }
+		} catch (RuntimeException ex) {
+		    bh.consume(ex);
+		} catch (InternalError ex) {
+		    bh.consume(ex);
+		}
+	    } finally {
+		context.exit(previous);
+	    }
+	}
+    }
+}
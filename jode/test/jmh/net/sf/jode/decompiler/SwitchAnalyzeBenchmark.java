@@ -0,0 +1,141 @@
+/* SwitchAnalyzeBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bench.NullWriter;
+import net.sf.jode.bytecode.ClassInfo;
+import net.sf.jode.bytecode.ClassPath;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the analysis of a method with one large tableswitch, like
+ * the state machine of a generated lexer.  The switch flow block has
+ * a successor for every case, so this shows how the flow analysis
+ * scales with the number of successors.  Some cases fall through to
+ * the next case, the others break or return.  The cases write a
+ * field, so that merging the locals of the cases doesn't dominate
+ * the measurement.  Conditionals in the cases are left out, since
+ * the decompiler doesn't handle them yet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SwitchAnalyzeBenchmark {
+    @Param({ "250", "1000", "2000" })
+    public int cases;
+
+    private ClassPath classPath;
+    private ClassInfo clazz;
+    private PrintWriter err = new PrintWriter(new NullWriter());
+
+    private void writeSource(File file) throws IOException {
+	PrintWriter out = new PrintWriter(new FileWriter(file));
+	out.println("public class Lexer {");
+	out.println("    int token;");
+	out.println("    int next(int state, char c) {");
+	out.println("        switch (state) {");
+	for (int i = 0; i < cases; i++) {
+	    out.println("        case " + i + ":");
+	    switch (i % 4) {
+	    case 0:
+		out.println("            token = " + i + ";");
+		out.println("            break;");
+		break;
+	    case 1:
+		out.println("            token += " + i + ";");
+		/* falls through */
+		break;
+	    case 2:
+		out.println("            token ^= c;");
+		out.println("            break;");
+		break;
+	    default:
+		out.println("            return c * " + i + ";");
+	    }
+	}
+	out.println("        default:");
+	out.println("            token = 0;");
+	out.println("        }");
+	out.println("        return token;");
+	out.println("    }");
+	out.println("}");
+	out.close();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+	File dir = new File(System.getProperty("java.io.tmpdir"),
+			    "jode-bench-switch-" + cases);
+	File source = new File(dir, "Lexer.java");
+	if (!new File(dir, "Lexer.class").exists()) {
+	    if (!dir.exists() && !dir.mkdirs())
+		throw new IOException("Can't create " + dir);
+	    writeSource(source);
+	    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	    if (compiler == null)
+		throw new IOException("The switch benchmark needs a JDK");
+	    if (compiler.run(null, null, null, new String[] {
+		"-g", "-nowarn", "--release", "8",
+		"-d", dir.getPath(), source.getPath() }) != 0)
+		throw new IOException("Compiling " + source + " failed");
+	}
+	classPath = new ClassPath(dir.getPath()
+				  + ClassPath.altPathSeparatorChar
+				  + "reflection:");
+	clazz = classPath.getClassInfo("Lexer");
+	clazz.load(ClassInfo.ALL);
+    }
+
+    @Benchmark
+    public void analyzeSwitch(Blackhole bh) throws IOException {
+	DecompilerContext context
+	    = new DecompilerContext(Options.options, 0, err);
+	DecompilerContext previous = context.enter();
+	try {
+	    ImportHandler imports = new ImportHandler(classPath);
+	    imports.init(clazz.getName());
+	    ClassAnalyzer clazzAna = new ClassAnalyzer(context, clazz, imports);
+	    clazzAna.initialize();
+	    MethodAnalyzer[] methods = clazzAna.methods;
+	    for (int j = 0; j < methods.length; j++) {
+		methods[j].analyze(null, 0.0, 0.0);
+		bh.consume(methods[j]);
+	    }
+	} finally {
+	    context.exit(previous);
+	}
+    }
+}
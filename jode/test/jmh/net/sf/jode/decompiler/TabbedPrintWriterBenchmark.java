@@ -0,0 +1,199 @@
+/* TabbedPrintWriterBenchmark Copyright (C) 2026 agent.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; see the file COPYING.LESSER.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * $Id$
+ */
+
+package net.sf.jode.decompiler;
+import net.sf.jode.bench.NullWriter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the line breaking of {@link TabbedPrintWriter}.  In the
+ * setup a sequence of writer calls is recorded, as the expressions
+ * would make them for long, nested statements: binary operators,
+ * method calls with several arguments and parenthesized
+ * subexpressions.  The benchmark replays this sequence, so that only
+ * the writer is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TabbedPrintWriterBenchmark {
+    private static final int STATEMENTS = 2000;
+    private static final int MAX_DEPTH = 6;
+
+    private static final int START_OP = 0;
+    private static final int BREAK_OP = 1;
+    private static final int END_OP   = 2;
+    private static final int PRINT    = 3;
+    private static final int PRINTLN  = 4;
+    private static final int TAB      = 5;
+    private static final int UNTAB    = 6;
+
+    /**
+     * The line width, the narrower the more breaks are necessary.
+     */
+    @Param({ "79", "40" })
+    public int lineWidth;
+
+    private Random random;
+    private int[] ops;
+    private int[] args;
+    private String[] strings;
+    private int count;
+
+    private void add(int op, int arg, String str) {
+	if (count == ops.length) {
+	    int[] newOps = new int[2 * count];
+	    int[] newArgs = new int[2 * count];
+	    String[] newStrings = new String[2 * count];
+	    System.arraycopy(ops, 0, newOps, 0, count);
+	    System.arraycopy(args, 0, newArgs, 0, count);
+	    System.arraycopy(strings, 0, newStrings, 0, count);
+	    ops = newOps;
+	    args = newArgs;
+	    strings = newStrings;
+	}
+	ops[count] = op;
+	args[count] = arg;
+	strings[count] = str;
+	count++;
+    }
+
+    private void startOp(int options, int penalty) {
+	add(START_OP, options << 16 | penalty, null);
+    }
+
+    private void expression(int depth) {
+	switch (depth >= MAX_DEPTH ? 0 : random.nextInt(4)) {
+	case 0:
+	    add(PRINT, 0, "variable" + random.nextInt(100));
+	    break;
+	case 1:
+	    /* binary operator, like BinaryOperator.dumpExpression */
+	    startOp(TabbedPrintWriter.IMPL_PAREN, 1 + random.nextInt(3));
+	    expression(depth + 1);
+	    add(BREAK_OP, 0, null);
+	    add(PRINT, 0, random.nextBoolean() ? " + " : " * ");
+	    expression(depth + 1);
+	    add(END_OP, 0, null);
+	    break;
+	case 2: {
+	    /* method call, like InvokeOperator.dumpExpression */
+	    startOp(TabbedPrintWriter.NO_PAREN, 0);
+	    add(PRINT, 0, "object" + random.nextInt(10));
+	    add(BREAK_OP, 0, null);
+	    add(PRINT, 0, ".method" + random.nextInt(10) + "(");
+	    startOp(TabbedPrintWriter.EXPL_PAREN, 0);
+	    int params = random.nextInt(4);
+	    for (int i = 0; i < params; i++) {
+		if (i > 0) {
+		    add(PRINT, 0, ",");
+		    add(BREAK_OP, 0, null);
+		    add(PRINT, 0, " ");
+		}
+		expression(depth + 1);
+	    }
+	    add(END_OP, 0, null);
+	    add(PRINT, 0, ")");
+	    add(END_OP, 0, null);
+	    break;
+	}
+	default:
+	    add(PRINT, 0, "(");
+	    startOp(TabbedPrintWriter.EXPL_PAREN, 2);
+	    expression(depth + 1);
+	    add(END_OP, 0, null);
+	    add(PRINT, 0, ")");
+	    break;
+	}
+    }
+
+    @Setup
+    public void setup() {
+	random = new Random(4711);
+	ops = new int[1024];
+	args = new int[1024];
+	strings = new String[1024];
+	count = 0;
+	int indent = 0;
+	for (int i = 0; i < STATEMENTS; i++) {
+	    if (indent < 5 && random.nextInt(4) == 0) {
+		add(TAB, 0, null);
+		indent++;
+	    } else if (indent > 0 && random.nextInt(4) == 0) {
+		add(UNTAB, 0, null);
+		indent--;
+	    }
+	    /* assignment, like InstructionBlock.dumpInstruction */
+	    startOp(TabbedPrintWriter.NO_PAREN, 0);
+	    add(PRINT, 0, "result" + i);
+	    add(BREAK_OP, 0, null);
+	    add(PRINT, 0, " = ");
+	    expression(0);
+	    add(END_OP, 0, null);
+	    add(PRINT, 0, ";");
+	    add(PRINTLN, 0, null);
+	}
+	while (indent-- > 0)
+	    add(UNTAB, 0, null);
+    }
+
+    @Benchmark
+    public void printStatements() {
+	TabbedPrintWriter writer = new TabbedPrintWriter
+	    (new NullWriter(), null, false,
+	     TabbedPrintWriter.BRACE_AT_EOL, 4, 8, lineWidth);
+	for (int i = 0; i < count; i++) {
+	    switch (ops[i]) {
+	    case START_OP:
+		writer.startOp(args[i] >> 16, args[i] & 0xffff);
+		break;
+	    case BREAK_OP:
+		writer.breakOp();
+		break;
+	    case END_OP:
+		writer.endOp();
+		break;
+	    case PRINT:
+		writer.print(strings[i]);
+		break;
+	    case PRINTLN:
+		writer.println();
+		break;
+	    case TAB:
+		writer.tab();
+		break;
+	    case UNTAB:
+		writer.untab();
+		break;
+	    }
+	}
+	writer.flush();
+    }
+}
@@ -0,0 +1,298 @@
+package net.sf.jode.bytecode;
+import junit.framework.*;
+import java.io.*;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassPathTest extends TestCase {
+    public ClassPathTest(String name) {
+	super(name);
+    }
+
+    File tmpDir;
+    String dirA, dirB, zipA, zipB;
+
+    private void writeFile(File file, String contents) throws IOException {
+	file.getParentFile().mkdirs();
+	FileOutputStream out = new FileOutputStream(file);
+	out.write(contents.getBytes());
+	out.close();
+    }
+
+    private String makeZip(String name, String[] files) throws IOException {
+	File file = new File(tmpDir, name);
+	ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+	for (int i = 0; i < files.length; i++) {
+	    zip.putNextEntry(new ZipEntry(files[i]));
+	    zip.write(name.getBytes());
+	    zip.closeEntry();
+	}
+	zip.close();
+	return file.getPath();
+    }
+
+    private String makeDir(String name, String[] files) throws IOException {
+	File dir = new File(tmpDir, name);
+	for (int i = 0; i < files.length; i++)
+	    writeFile(new File(dir, files[i]), name);
+	return dir.getPath();
+    }
+
+    public void setUp() throws IOException {
+	tmpDir = File.createTempFile("jode", ".cp");
+	tmpDir.delete();
+	tmpDir.mkdir();
+	zipA = makeZip("a.zip", new String[] { "p/A.txt", "p/Shared.txt" });
+	dirA = makeDir("dirA", new String[] { "p/Shared.txt", "q/Q.txt" });
+	zipB = makeZip("b.zip", new String[] {
+	    "p/Shared.txt", "q/Q.txt", "r/s/R.txt", "Top.txt"
+	});
+	dirB = makeDir("dirB", new String[] { "r/s/R.txt" });
+    }
+
+    private void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++)
+		delete(files[i]);
+	}
+	file.delete();
+    }
+
+    public void tearDown() {
+	delete(tmpDir);
+    }
+
+    private String read(ClassPath cp, String file) throws IOException {
+	BufferedReader reader = new BufferedReader
+	    (new InputStreamReader(cp.getFile(file)));
+	String line = reader.readLine();
+	reader.close();
+	return line;
+    }
+
+    public void testFirstMatch() throws IOException {
+	ClassPath cp = new ClassPath(new String[] { dirA, zipA, zipB, dirB });
+	assertEquals("dirA", read(cp, "p/Shared.txt"));
+	assertEquals("a.zip", read(cp, "p/A.txt"));
+	assertEquals("dirA", read(cp, "q/Q.txt"));
+	assertEquals("b.zip", read(cp, "r/s/R.txt"));
+	assertEquals("b.zip", read(cp, "Top.txt"));
+
+	cp = new ClassPath(new String[] { zipB, zipA, dirA });
+	assertEquals("b.zip", read(cp, "p/Shared.txt"));
+	assertEquals("a.zip", read(cp, "p/A.txt"));
+	assertEquals("b.zip", read(cp, "q/Q.txt"));
+    }
+
+    public void testLookups() throws IOException {
+	ClassPath cp = new ClassPath(new String[] { zipA, dirA, zipB });
+	assertTrue(cp.existsFile("q/Q.txt"));
+	assertTrue(cp.existsFile("r/s"));
+	assertFalse(cp.existsFile("r/s/Missing.txt"));
+	assertFalse(cp.existsFile("x/Missing.txt"));
+	assertTrue(cp.isDirectory("r/s"));
+	assertTrue(cp.isPackage("q"));
+	assertFalse(cp.isDirectory("q/Q.txt"));
+	try {
+	    cp.getFile("x/Missing.txt");
+	    fail("missing file found");
+	} catch (FileNotFoundException ex) {
+	    /* expected */
+	}
+
+	int count = 0;
+	Enumeration files = cp.listFiles("p");
+	while (files.hasMoreElements()) {
+	    String name = (String) files.nextElement();
+	    assertTrue(name, name.equals("A.txt") || name.equals("Shared.txt"));
+	    count++;
+	}
+	/* Each location lists its own files. */
+	assertEquals(4, count);
+    }
+
+    private byte[] readResource(String name) throws IOException {
+	InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[4096];
+	int count;
+	while ((count = is.read(buffer)) != -1)
+	    out.write(buffer, 0, count);
+	is.close();
+	return out.toByteArray();
+    }
+
+    private String makeClassZip(String name, String entry, byte[] contents,
+				boolean stored) throws IOException {
+	File file = new File(tmpDir, name);
+	ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+	ZipEntry ze = new ZipEntry(entry);
+	if (stored) {
+	    CRC32 crc = new CRC32();
+	    crc.update(contents);
+	    ze.setMethod(ZipEntry.STORED);
+	    ze.setSize(contents.length);
+	    ze.setCrc(crc.getValue());
+	}
+	zip.putNextEntry(ze);
+	zip.write(contents);
+	zip.closeEntry();
+	zip.close();
+	return file.getPath();
+    }
+
+    public void testZipClasses() throws IOException {
+	String entry = "junit/framework/Assert.class";
+	byte[] bytes = readResource(entry);
+	ClassInfo expected = new ClassInfo(null, new ClassPath(new String[0]));
+	expected.read(new DataInputStream(new ByteArrayInputStream(bytes)),
+		      ClassInfo.ALL);
+
+	String[] zips = {
+	    makeClassZip("deflated.jar", entry, bytes, false),
+	    makeClassZip("stored.jar", entry, bytes, true)
+	};
+	for (int i = 0; i < zips.length; i++) {
+	    ClassPath cp = new ClassPath(new String[] { zips[i] });
+	    ClassInfo info = cp.getClassInfo("junit.framework.Assert");
+	    info.load(ClassInfo.ALL);
+	    assertEquals(expected.getMethods().length, 
+			 info.getMethods().length);
+	    for (int j = 0; j < info.getMethods().length; j++)
+		assertEquals(expected.getMethods()[j].getName()
+			     + expected.getMethods()[j].getType(),
+			     info.getMethods()[j].getName()
+			     + info.getMethods()[j].getType());
+	}
+
+	byte[] truncated = new byte[bytes.length / 2];
+	System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+	ClassPath cp = new ClassPath(new String[] {
+	    makeClassZip("truncated.jar", entry, truncated, false)
+	});
+	try {
+	    cp.getClassInfo("junit.framework.Assert").load(ClassInfo.ALL);
+	    fail("truncated class read");
+	} catch (ClassFormatException ex) {
+	    /* expected */
+	}
+    }
+
+    public void testHierarchyOnly() throws IOException {
+	String entry = "junit/framework/TestSuite$1.class";
+	ClassPath cp = new ClassPath(new String[] {
+	    makeClassZip("inner.jar", entry, readResource(entry), false)
+	});
+	ClassInfo info = cp.getClassInfo("junit.framework.TestSuite$1");
+	info.load(ClassInfo.HIERARCHY);
+	assertEquals("junit.framework.TestCase",
+		     info.getSuperclass().getName());
+	assertEquals(0, info.getInterfaces().length);
+	assertTrue(info.isMethodScoped());
+	try {
+	    info.getMethods();
+	    fail("methods read with the hierarchy");
+	} catch (IllegalStateException ex) {
+	    /* expected */
+	}
+
+	info.load(ClassInfo.DECLARATIONS);
+	assertNotNull(info.findMethod("runTest", "()V"));
+	assertTrue(info.isMethodScoped());
+    }
+
+    public void testDropFallback() throws IOException {
+	String entry = "junit/framework/TestSuite$1.class";
+	ClassPath fallback = new ClassPath(new String[] {
+	    makeClassZip("inner.jar", entry, readResource(entry), false)
+	});
+	ClassPath cp = new ClassPath(new String[] { dirA }, fallback);
+	ClassInfo info = fallback.getClassInfo("junit.framework.TestSuite$1");
+	info.load(ClassInfo.ALL);
+	assertNotNull(info.findMethod("runTest", "()V").getBasicBlocks());
+	cp.dropClassInfos(ClassInfo.DECLARATIONS);
+	assertNull(info.findMethod("runTest", "()V").getBasicBlocks());
+    }
+
+    public void testClassCache() throws IOException {
+	String entry = "junit/framework/TestSuite$1.class";
+	File jar = new File(makeClassZip("cached.jar", entry,
+					 readResource(entry), false));
+	File cacheDir = new File(tmpDir, "cache");
+	ClassCache cache = new ClassCache(cacheDir);
+	ClassPath cp = new ClassPath(new String[] { jar.getPath() });
+	cp.setClassCache(cache);
+	cp.getClassInfo("junit.framework.TestSuite$1")
+	    .load(ClassInfo.DECLARATIONS);
+	cache.save();
+
+	/* Overwrite the jar, keeping its size and modification time,
+	 * so that only the cache can answer.
+	 */
+	long lastModified = jar.lastModified();
+	RandomAccessFile raf = new RandomAccessFile(jar, "rw");
+	raf.write(new byte[(int) raf.length()]);
+	raf.close();
+	jar.setLastModified(lastModified);
+
+	cp = new ClassPath(new String[] { jar.getPath() });
+	cp.setClassCache(new ClassCache(cacheDir));
+	assertTrue(cp.existsClass("junit.framework.TestSuite$1"));
+	assertTrue(cp.isPackage("junit.framework"));
+	ClassInfo info = cp.getClassInfo("junit.framework.TestSuite$1");
+	info.load(ClassInfo.DECLARATIONS);
+	assertEquals("junit.framework.TestCase",
+		     info.getSuperclass().getName());
+	assertNotNull(info.findMethod("runTest", "()V"));
+	assertTrue(info.isMethodScoped());
+    }
+
+    public void testDirectoryCache() throws IOException {
+	ClassPath cp = new ClassPath(new String[] { dirA });
+	assertFalse(cp.existsFile("p/New.txt"));
+	assertTrue(cp.existsFile("p/Shared.txt"));
+	writeFile(new File(dirA, "p/New.txt"), "new");
+	new File(dirA, "p/Shared.txt").delete();
+	/* The listing of p is cached. */
+	assertFalse(cp.existsFile("p/New.txt"));
+	assertTrue(cp.existsFile("p/Shared.txt"));
+	cp = new ClassPath(new String[] { dirA });
+	assertTrue(cp.existsFile("p/New.txt"));
+    }
+
+    /**
+     * Waits until the watcher noticed that a file was created or
+     * removed.
+     */
+    private void waitFor(ClassPath cp, String file, boolean exists) 
+	throws InterruptedException {
+	for (int i = 0; i < 300 && cp.existsFile(file) != exists; i++)
+	    Thread.sleep(100);
+	assertEquals(file, exists, cp.existsFile(file));
+    }
+
+    public void testWatchDirectories() 
+	throws IOException, InterruptedException {
+	ClassPath cp = new ClassPath(new String[] { dirA });
+	cp.setWatchDirectories(true);
+	try {
+	    assertFalse(cp.existsFile("p/New.txt"));
+	    assertFalse(cp.existsFile("n/m/N.txt"));
+	    assertTrue(cp.existsFile("q/Q.txt"));
+	    writeFile(new File(dirA, "p/New.txt"), "new");
+	    waitFor(cp, "p/New.txt", true);
+	    writeFile(new File(dirA, "n/m/N.txt"), "new");
+	    waitFor(cp, "n/m/N.txt", true);
+	    assertTrue(cp.isPackage("n.m"));
+	    new File(dirA, "q/Q.txt").delete();
+	    new File(dirA, "q").delete();
+	    waitFor(cp, "q/Q.txt", false);
+	    assertFalse(cp.isDirectory("q"));
+	} finally {
+	    cp.setWatchDirectories(false);
+	}
+    }
+}
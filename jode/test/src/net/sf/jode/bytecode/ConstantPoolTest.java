@@ -0,0 +1,78 @@
+package net.sf.jode.bytecode;
+import junit.framework.*;
+import java.io.*;
+
+public class ConstantPoolTest extends TestCase {
+    public ConstantPoolTest(String name) {
+	super(name);
+    }
+
+    private final static String unicode = "a\u00e9\u07ff\u0800\u4e2d\0z";
+
+    GrowableConstantPool gcp = new GrowableConstantPool();
+
+    private ConstantPool read(byte[] bytes) throws IOException {
+	ConstantPool cp = new ConstantPool();
+	cp.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	return cp;
+    }
+
+    private ConstantPool writeAndRead() throws IOException {
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	DataOutputStream dos = new DataOutputStream(baos);
+	gcp.write(dos);
+	dos.close();
+	return read(baos.toByteArray());
+    }
+
+    public void testConstants() throws IOException {
+	Object[] values = {
+	    new Integer(-1), new Integer(Integer.MIN_VALUE),
+	    new Float(-0.5f), new Float(Float.NaN),
+	    new Long(Long.MIN_VALUE), new Long(0x12345678abcdefL),
+	    new Double(Math.PI), new Double(Double.NEGATIVE_INFINITY),
+	    "java/lang/Object", unicode, ""
+	};
+	int[] indices = new int[values.length];
+	for (int i = 0; i < values.length; i++) {
+	    if (values[i] instanceof Long || values[i] instanceof Double)
+		indices[i] = gcp.putLongConstant(values[i]);
+	    else
+		indices[i] = gcp.putConstant(values[i]);
+	}
+	Reference ref = Reference.getReference
+	    ("Ljava/lang/String;", "length", "()I");
+	int refIndex = gcp.putRef(ConstantPool.METHODREF, ref);
+	int classIndex = gcp.putClassName("java.lang.String");
+
+	ConstantPool cp = writeAndRead();
+	assertEquals(gcp.size(), cp.size());
+	for (int i = 0; i < values.length; i++) {
+	    assertEquals(values[i], cp.getConstant(indices[i]));
+	    assertEquals(gcp.toString(indices[i]), cp.toString(indices[i]));
+	}
+	assertEquals(ref, cp.getRef(refIndex));
+	assertEquals("java.lang.String", cp.getClassName(classIndex));
+	assertEquals("Ljava/lang/String;", cp.getClassType(classIndex));
+
+	/* The strings of two pools are shared. */
+	ConstantPool cp2 = writeAndRead();
+	int last = indices.length - 2;
+	assertSame(cp.getConstant(indices[last]),
+		   cp2.getConstant(indices[last]));
+    }
+
+    public void testMalformedUTF8() throws IOException {
+	/* A pool with one UTF8 entry, that ends in the middle of a
+	 * two byte character.
+	 */
+	byte[] bytes = { 0, 2, ConstantPool.UTF8, 0, 2, 'a', (byte) 0xc3 };
+	ConstantPool cp = read(bytes);
+	try {
+	    cp.getUTF8(1);
+	    fail("malformed string decoded");
+	} catch (ClassFormatException ex) {
+	    /* expected */
+	}
+    }
+}
@@ -0,0 +1,185 @@
+package net.sf.jode.bytecode;
+import junit.framework.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpLocationTest extends TestCase {
+    public HttpLocationTest(String name) {
+	super(name);
+    }
+
+    /**
+     * The served classes.  They must be readable by jode, so we take
+     * them from junit.
+     */
+    private final static String pkg = "junit/framework/";
+    private final static String[] classes = {
+	"Assert", "ComparisonFailure", "TestCase", "TestSuite"
+    };
+
+    HttpServer server;
+    String baseURL;
+    /**
+     * Maps the path of each served file to its contents.
+     */
+    Hashtable files = new Hashtable();
+    /**
+     * Maps "METHOD status" to the number of such responses.
+     */
+    Hashtable requests = new Hashtable();
+
+    private byte[] readResource(String name) throws IOException {
+	InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[4096];
+	int count;
+	while ((count = is.read(buffer)) != -1)
+	    out.write(buffer, 0, count);
+	is.close();
+	return out.toByteArray();
+    }
+
+    private synchronized void count(String request) {
+	Integer old = (Integer) requests.get(request);
+	requests.put(request, new Integer(old == null ? 1
+					  : old.intValue() + 1));
+    }
+
+    private synchronized int requests(String request) {
+	Integer count = (Integer) requests.get(request);
+	return count == null ? 0 : count.intValue();
+    }
+
+    class Handler implements HttpHandler {
+	public void handle(HttpExchange exchange) throws IOException {
+	    String method = exchange.getRequestMethod();
+	    String path = exchange.getRequestURI().getPath().substring(1);
+	    byte[] contents = (byte[]) files.get(path);
+	    int status = 200;
+	    if (path.length() == 0 || path.endsWith("/")) {
+		/* A generated directory listing. */
+		StringBuffer html = new StringBuffer
+		    ("<html><body><a href=\"../\">Parent</a>"
+		     +"<a href=\"?C=N;O=D\">Name</a>\n");
+		Hashtable entries = new Hashtable();
+		Enumeration enumeration = files.keys();
+		while (enumeration.hasMoreElements()) {
+		    String file = (String) enumeration.nextElement();
+		    if (file.startsWith(path)) {
+			/* A file, or a subdirectory with a trailing slash. */
+			int end = file.indexOf('/', path.length()) + 1;
+			if (end == 0)
+			    end = file.length();
+			entries.put(file.substring(path.length(), end), "");
+		    }
+		}
+		enumeration = entries.keys();
+		while (enumeration.hasMoreElements())
+		    html.append("<a href=\"" + enumeration.nextElement()
+				+ "\">x</a>\n");
+		contents = html.append("</body></html>").toString().getBytes();
+		exchange.getResponseHeaders().set("Content-Type", "text/html");
+	    } else if (contents == null)
+		status = 404;
+	    else {
+		String etag = "\"" + contents.length + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (etag.equals(exchange.getRequestHeaders()
+				.getFirst("If-None-Match")))
+		    status = 304;
+	    }
+	    /* The class path asks for the content type of the base. */
+	    if (path.length() > 0)
+		count(method + " " + status);
+	    if (status != 200 || method.equals("HEAD")) {
+		exchange.sendResponseHeaders(status, -1);
+	    } else {
+		exchange.sendResponseHeaders(status, contents.length);
+		exchange.getResponseBody().write(contents);
+	    }
+	    exchange.close();
+	}
+    }
+
+    public void setUp() throws IOException {
+	for (int i = 0; i < classes.length; i++) {
+	    String name = pkg + classes[i] + ".class";
+	    files.put(name, readResource(name));
+	}
+	server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+	server.createContext("/", new Handler());
+	server.start();
+	baseURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	HttpLocation.freshMillis = 60000;
+    }
+
+    public void tearDown() {
+	server.stop(0);
+    }
+
+    public void testExists() throws IOException {
+	ClassPath cp = new ClassPath(new String[] { baseURL });
+	assertTrue(cp.existsClass("junit.framework.TestCase"));
+	assertFalse(cp.existsClass("junit.framework.Missing"));
+	assertTrue(cp.existsClass("junit.framework.TestCase"));
+	assertFalse(cp.existsClass("junit.framework.Missing"));
+	assertEquals(1, requests("HEAD 200"));
+	assertEquals(1, requests("HEAD 404"));
+	assertEquals(0, requests("GET 200"));
+
+	InputStream is = cp.getFile(pkg + "TestCase.class");
+	assertEquals(0xca, is.read());
+	is.close();
+	assertEquals(1, requests("GET 200"));
+    }
+
+    public void testCache() throws IOException {
+	ClassPath cp = new ClassPath(new String[] { baseURL });
+	ClassInfo info = cp.getClassInfo("junit.framework.Assert");
+	info.load(ClassInfo.DECLARATIONS);
+	assertEquals(1, requests("GET 200"));
+	/* This location trusts its own download. */
+	info.drop(ClassInfo.NONE);
+	info.load(ClassInfo.ALL);
+	assertEquals(1, requests("GET 200"));
+	assertEquals(0, requests("GET 304"));
+
+	/* Other locations ask whether the file changed. */
+	HttpLocation.freshMillis = 0;
+	cp = new ClassPath(new String[] { baseURL });
+	info = cp.getClassInfo("junit.framework.Assert");
+	info.load(ClassInfo.DECLARATIONS);
+	assertEquals(1, requests("GET 200"));
+	assertEquals(1, requests("GET 304"));
+	assertEquals(0, requests("HEAD 200"));
+    }
+
+    public void testPrefetch() throws IOException, InterruptedException {
+	ClassPath cp = new ClassPath(new String[] { baseURL });
+	cp.setPrefetch(true);
+	cp.getClassInfo("junit.framework.TestCase")
+	    .load(ClassInfo.DECLARATIONS);
+	/* The listings of junit and the package, and all its classes. */
+	int gets = classes.length + 2;
+	for (int i = 0; i < 100 && requests("GET 200") < gets; i++)
+	    Thread.sleep(50);
+	assertEquals(gets, requests("GET 200"));
+
+	for (int i = 0; i < classes.length; i++) {
+	    String name = "junit.framework." + classes[i];
+	    assertTrue(cp.existsClass(name));
+	    cp.getClassInfo(name).load(ClassInfo.DECLARATIONS);
+	}
+	assertFalse(cp.existsClass("junit.framework.Missing"));
+	/* The listing of the base shows that there is no java package. */
+	assertFalse(cp.existsClass("java.lang.Missing"));
+	assertEquals(gets, requests("GET 200"));
+	assertEquals(0, requests("GET 404"));
+	assertEquals(0, requests("HEAD 200") + requests("HEAD 404"));
+    }
+}
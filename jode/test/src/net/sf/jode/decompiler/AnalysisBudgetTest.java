@@ -0,0 +1,197 @@
+package net.sf.jode.decompiler;
+import junit.framework.*;
+import java.io.*;
+
+public class AnalysisBudgetTest extends TestCase {
+    public AnalysisBudgetTest(String name) {
+	super(name);
+    }
+
+    private static final String CLASS = "net.sf.jode.decompiler.NameSerials";
+
+    public void testParse() {
+	AnalysisBudget budget = AnalysisBudget.parse("100");
+	assertEquals(100, budget.getMaxInstructions());
+	assertEquals(0, budget.getMaxMillis());
+	assertEquals(0, budget.getMaxSteps());
+	budget = AnalysisBudget.parse("0,2000,50");
+	assertEquals(0, budget.getMaxInstructions());
+	assertEquals(2000, budget.getMaxMillis());
+	assertEquals(50, budget.getMaxSteps());
+
+	String[] illegal = { "", "x", "1,2,3,4", "-1", "1,,2" };
+	for (int i = 0; i < illegal.length; i++) {
+	    try {
+		AnalysisBudget.parse(illegal[i]);
+		fail("accepted " + illegal[i]);
+	    } catch (IllegalArgumentException ex) {
+	    }
+	}
+    }
+
+    private String decompile(String budget, StringWriter err)
+	throws IOException {
+	Decompiler decompiler = new Decompiler();
+	/* The forked junit task doesn't set java.class.path. */
+	decompiler.setClassPath(new File(NameSerials.class.getProtectionDomain()
+					 .getCodeSource().getLocation()
+					 .getFile()).getPath());
+	decompiler.setErr(new PrintWriter(err, true));
+	if (budget != null)
+	    decompiler.setOption("budget", budget);
+	StringWriter source = new StringWriter();
+	decompiler.decompile(CLASS, source, null);
+	return source.toString();
+    }
+
+    public void testUnlimited() throws IOException {
+	StringWriter err = new StringWriter();
+	String limited = decompile("100000,100000,100000", err);
+	assertEquals(decompile(null, new StringWriter()), limited);
+	assertEquals(-1, err.toString().indexOf("Giving up"));
+    }
+
+    private void checkAbandoned(String budget, String method,
+				String reason) throws IOException {
+	StringWriter err = new StringWriter();
+	String source = decompile(budget, err);
+	String message = "Giving up analysis of " + CLASS + "." + method + ": ";
+	int index = err.toString().indexOf(message);
+	assertTrue(index >= 0);
+	assertTrue(err.toString().startsWith(reason, index + message.length()));
+	assertTrue(source.indexOf("/* Analysis abandoned: ") >= 0);
+	assertTrue(source.indexOf("// " + method + "(") >= 0);
+	assertTrue(source.indexOf("throw new RuntimeException(\"Analysis of "
+				  + method + " abandoned\");") >= 0);
+    }
+
+    public void testInstructions() throws IOException {
+	/* Every method with code has more than one instruction. */
+	checkAbandoned("1", "next", "");
+	checkAbandoned("1", "reset", "");
+    }
+
+    public void testSteps() throws IOException {
+	/* The loop in reset needs more than one step. */
+	checkAbandoned("0,0,1", "reset", "more than 1 analysis steps");
+    }
+
+    private static final String[] SAMPLE = {
+	"class Base {",
+	"    Base(int i, String s, long l, char c, boolean b, double d) {",
+	"        if (b)",
+	"            throw new IllegalArgumentException(s);",
+	"    }",
+	"}",
+	"public class Sample extends Base {",
+	"    static final int[] TABLE;",
+	"    static {",
+	"        TABLE = new int[10];",
+	"        for (int i = 0; i < TABLE.length; i++)",
+	"            TABLE[i] = i * i;",
+	"    }",
+	"    final Object value;",
+	"    Sample(int i) {",
+	"        super(i, \"sample\", 2L, 'c', false, 1.5);",
+	"        value = new Integer(i);",
+	"    }",
+	"    Sample() {",
+	"        this(TABLE[3]);",
+	"    }",
+	"    int sum() {",
+	"        int sum = 0;",
+	"        for (int i = 0; i < TABLE.length; i++)",
+	"            sum += TABLE[i];",
+	"        return sum;",
+	"    }",
+	"}"
+    };
+
+    private void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++)
+		delete(files[i]);
+	}
+	file.delete();
+    }
+
+    private void write(File file, String contents) throws IOException {
+	Writer out = new FileWriter(file);
+	out.write(contents);
+	out.close();
+    }
+
+    /**
+     * Compiles the given files with the javac of the running JDK.
+     * @return the messages of javac, if it failed, null otherwise.
+     */
+    private String compile(File destDir, File[] files)
+	throws IOException, InterruptedException {
+	File home = new File(System.getProperty("java.home"));
+	File javac = new File(home, "bin/javac");
+	if (!javac.exists())
+	    /* java.home is the jre directory of an old JDK. */
+	    javac = new File(home.getParentFile(), "bin/javac");
+	String[] command = new String[files.length + 4];
+	command[0] = javac.getPath();
+	command[1] = "-nowarn";
+	command[2] = "-d";
+	command[3] = destDir.getPath();
+	for (int i = 0; i < files.length; i++)
+	    command[i + 4] = files[i].getPath();
+	Process process = Runtime.getRuntime().exec(command);
+	process.getOutputStream().close();
+	Reader in = new InputStreamReader(process.getErrorStream());
+	StringWriter messages = new StringWriter();
+	char[] buffer = new char[4096];
+	int count;
+	while ((count = in.read(buffer)) != -1)
+	    messages.write(buffer, 0, count);
+	in.close();
+	return process.waitFor() == 0 ? null : messages.toString();
+    }
+
+    public void testCompilable() throws Exception {
+	File tmpDir = File.createTempFile("jode", ".budget");
+	tmpDir.delete();
+	tmpDir.mkdir();
+	try {
+	    File classes = new File(tmpDir, "classes");
+	    File sources = new File(tmpDir, "sources");
+	    classes.mkdir();
+	    sources.mkdir();
+	    StringBuffer sample = new StringBuffer();
+	    for (int i = 0; i < SAMPLE.length; i++)
+		sample.append(SAMPLE[i]).append('\n');
+	    File sampleFile = new File(tmpDir, "Sample.java");
+	    write(sampleFile, sample.toString());
+	    assertNull(compile(classes, new File[] { sampleFile }));
+
+	    /* Every method has more than one instruction. */
+	    Decompiler decompiler = new Decompiler();
+	    decompiler.setClassPath(classes.getPath());
+	    decompiler.setErr(new PrintWriter(new StringWriter()));
+	    decompiler.setOption("budget", "1");
+	    String[] names = { "Base", "Sample" };
+	    File[] files = new File[names.length];
+	    for (int i = 0; i < names.length; i++) {
+		StringWriter source = new StringWriter();
+		decompiler.decompile(names[i], source, null);
+		files[i] = new File(sources, names[i] + ".java");
+		write(files[i], source.toString());
+		if (names[i].equals("Sample")) {
+		    String code = source.toString();
+		    assertTrue(code, code.indexOf("if (true) throw") >= 0);
+		    assertTrue(code, code.indexOf("this(0);") >= 0);
+		    assertTrue(code, code.indexOf
+			       ("super(0, (String) null, 0L, '\\0', false, 0.0);")
+			       >= 0);
+		}
+	    }
+	    assertNull(compile(sources, files));
+	} finally {
+	    delete(tmpDir);
+	}
+    }
+}
@@ -0,0 +1,91 @@
+package net.sf.jode.decompiler;
+import junit.framework.*;
+import java.io.*;
+
+public class DecompilerMetricsTest extends TestCase {
+    public DecompilerMetricsTest(String name) {
+	super(name);
+    }
+
+    private static final String CLASS = "net.sf.jode.decompiler.NameSerials";
+
+    private DecompilerMetrics decompile() throws IOException {
+	DecompilerMetrics metrics = new DecompilerMetrics();
+	Decompiler decompiler = new Decompiler();
+	/* The forked junit task doesn't set java.class.path. */
+	decompiler.setClassPath(new File(NameSerials.class.getProtectionDomain()
+					 .getCodeSource().getLocation()
+					 .getFile()).getPath());
+	decompiler.setErr(new PrintWriter(new StringWriter()));
+	decompiler.setMetrics(metrics);
+	decompiler.decompile(CLASS, new StringWriter(), null);
+	return metrics;
+    }
+
+    public void testRecords() throws IOException {
+	DecompilerMetrics metrics = decompile();
+	DecompilerMetrics.Record[] classes = metrics.getClassRecords();
+	assertEquals(1, classes.length);
+	assertEquals(CLASS, classes[0].getClassName());
+	assertNull(classes[0].getMethodName());
+	assertTrue(classes[0].getWallTime(DecompilerMetrics.ANALYZE) > 0);
+	assertTrue(classes[0].getWallTime(DecompilerMetrics.DUMP) > 0);
+
+	DecompilerMetrics.Record[] methods = metrics.getMethodRecords();
+	assertTrue(methods.length > 0);
+	long sum = 0;
+	boolean dumped = false;
+	for (int i = 0; i < methods.length; i++) {
+	    assertNotNull(methods[i].getMethodName());
+	    assertTrue(methods[i].getInstructions() > 0);
+	    assertTrue(methods[i].getWallTime(DecompilerMetrics.ANALYZE) > 0);
+	    /* Default constructors and synthetic methods aren't dumped. */
+	    if (methods[i].getWallTime(DecompilerMetrics.DUMP) > 0)
+		dumped = true;
+	    sum += methods[i].getWallTime(-1);
+	}
+	assertTrue(dumped);
+	/* The methods are measured inside the phases of the class. */
+	assertTrue(sum <= classes[0].getWallTime(-1));
+    }
+
+    public void testSlowest() throws IOException {
+	DecompilerMetrics metrics = decompile();
+	DecompilerMetrics.Record[] slowest = metrics.getSlowestMethods(3);
+	assertTrue(slowest.length <= 3);
+	for (int i = 1; i < slowest.length; i++)
+	    assertTrue(slowest[i-1].getWallTime(-1)
+		       >= slowest[i].getWallTime(-1));
+	int all = metrics.getMethodRecords().length;
+	assertEquals(all, metrics.getSlowestMethods(all + 5).length);
+    }
+
+    public void testExport() throws IOException {
+	DecompilerMetrics metrics = decompile();
+	StringWriter json = new StringWriter();
+	metrics.writeJSON(json);
+	assertTrue(json.toString().startsWith("{\"classes\": ["));
+	assertTrue(json.toString().indexOf("\"class\": \"" + CLASS + "\"") > 0);
+	assertTrue(json.toString().indexOf("\"analyze\": {\"wallNanos\": ") > 0);
+
+	StringWriter csv = new StringWriter();
+	metrics.writeCSV(csv);
+	BufferedReader lines
+	    = new BufferedReader(new StringReader(csv.toString()));
+	String header = lines.readLine();
+	int columns = header.split(",").length;
+	int count = 0;
+	String line;
+	while ((line = lines.readLine()) != null) {
+	    /* Method signatures contain no commas, so that no field
+	     * is quoted.
+	     */
+	    assertEquals(line, columns, line.split(",", -1).length);
+	    count++;
+	}
+	/* At least the analyze and dump phases of the class and the
+	 * analyze phase of every method.
+	 */
+	assertTrue(count >= 2 + metrics.getMethodRecords().length);
+    }
+}
@@ -0,0 +1,162 @@
+package net.sf.jode.decompiler;
+import junit.framework.*;
+import java.io.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import net.sf.jode.GlobalOptions;
+import net.sf.jode.bytecode.ClassPath;
+
+public class ParallelDecompilerTest extends TestCase {
+    public ParallelDecompilerTest(String name) {
+	super(name);
+    }
+
+    /* Classes that the decompiler can read, when they are compiled
+     * by a recent javac.
+     */
+    private static final String[] CLASSES = {
+	"net.sf.jode.decompiler.NameSerials",
+	"net.sf.jode.bytecode.ClassFormatException",
+	"net.sf.jode.bytecode.Opcodes",
+	"net.sf.jode.bytecode.SwitchInstruction",
+	"net.sf.jode.jvm.SyntheticAnalyzer",
+	"net.sf.jode.util.SimpleMap"
+    };
+
+    /**
+     * A policy that fails for the first class it is told about.
+     */
+    static class FailingPolicy extends CleanupPolicy {
+	boolean failed;
+
+	FailingPolicy() {
+	    super(0, 0);
+	}
+
+	public CleanupPolicy copy() {
+	    return new FailingPolicy();
+	}
+
+	public boolean classDone(ClassPath classPath) {
+	    if (!failed) {
+		failed = true;
+		throw new IllegalStateException("cleanup failed");
+	    }
+	    return super.classDone(classPath);
+	}
+    }
+
+    private PrintWriter oldErr;
+
+    public void setUp() {
+	oldErr = GlobalOptions.err;
+	GlobalOptions.err = new PrintWriter(new StringWriter());
+    }
+
+    public void tearDown() {
+	GlobalOptions.err = oldErr;
+    }
+
+    private String path() {
+	/* The forked junit task doesn't set java.class.path. */
+	return new File(NameSerials.class.getProtectionDomain()
+			.getCodeSource().getLocation().getFile()).getPath();
+    }
+
+    /**
+     * Decompiles the classes into a zip.
+     * @param result the success of the decompilation is stored in
+     * result[0].
+     * @return the names and sources of the zip entries, in order.
+     */
+    private String decompile(String[] classes, int threads,
+			     boolean keepGoing, CleanupPolicy policy,
+			     boolean[] result) throws IOException {
+	ParallelDecompiler decompiler = new ParallelDecompiler
+	    (path(), "reflection:", classes, threads,
+	     ImportHandler.DEFAULT_PACKAGE_LIMIT,
+	     ImportHandler.DEFAULT_CLASS_LIMIT,
+	     TabbedPrintWriter.BRACE_AT_EOL, 4, 8, 79, policy, null);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	ZipOutputStream zip = new ZipOutputStream(bytes);
+	result[0] = decompiler.decompile(zip, null, keepGoing);
+	zip.close();
+
+	StringBuffer sb = new StringBuffer();
+	ZipInputStream in = new ZipInputStream
+	    (new ByteArrayInputStream(bytes.toByteArray()));
+	ZipEntry ze;
+	while ((ze = in.getNextEntry()) != null) {
+	    sb.append("== ").append(ze.getName()).append('\n');
+	    BufferedReader reader = new BufferedReader
+		(new InputStreamReader(in));
+	    String line;
+	    while ((line = reader.readLine()) != null)
+		sb.append(line).append('\n');
+	}
+	in.close();
+	return sb.toString();
+    }
+
+    private boolean contains(String output, String className) {
+	return output.indexOf("== " + className.replace('.', '/')
+			      + ".java\n") != -1;
+    }
+
+    public void testOutputOrder() throws IOException {
+	boolean[] result = new boolean[1];
+	String sequential = decompile(CLASSES, 1, false,
+				      new CleanupPolicy(0, 0), result);
+	assertTrue(result[0]);
+	for (int i = 0; i < CLASSES.length; i++)
+	    assertTrue(CLASSES[i], contains(sequential, CLASSES[i]));
+	for (int threads = 2; threads <= 4; threads++) {
+	    assertEquals(sequential,
+			 decompile(CLASSES, threads, false,
+				   new CleanupPolicy(2, 0), result));
+	    assertTrue(result[0]);
+	}
+    }
+
+    public void testAbort() throws IOException {
+	String[] classes = new String[CLASSES.length + 1];
+	classes[0] = CLASSES[0];
+	classes[1] = "net.sf.jode.NoSuchClass";
+	System.arraycopy(CLASSES, 1, classes, 2, CLASSES.length - 1);
+
+	boolean[] result = new boolean[1];
+	String output = decompile(classes, 3, false,
+				  new CleanupPolicy(0, 0), result);
+	assertFalse(result[0]);
+	assertTrue(contains(output, classes[0]));
+	for (int i = 2; i < classes.length; i++)
+	    assertFalse(classes[i], contains(output, classes[i]));
+
+	output = decompile(classes, 3, true, new CleanupPolicy(0, 0), result);
+	for (int i = 2; i < classes.length; i++)
+	    assertTrue(classes[i], contains(output, classes[i]));
+    }
+
+    public void testFailingClass() throws Exception {
+	final boolean[] result = new boolean[1];
+	final String[] output = new String[1];
+	Thread thread = new Thread() {
+		public void run() {
+		    try {
+			output[0] = decompile(CLASSES, 1, true,
+					      new FailingPolicy(), result);
+		    } catch (IOException ex) {
+			output[0] = ex.toString();
+		    }
+		}
+	    };
+	thread.setDaemon(true);
+	thread.start();
+	thread.join(120000);
+	assertFalse("writer stalled", thread.isAlive());
+	/* The only worker survived the failure. */
+	for (int i = 1; i < CLASSES.length; i++)
+	    assertTrue(CLASSES[i], contains(output[0], CLASSES[i]));
+    }
+}
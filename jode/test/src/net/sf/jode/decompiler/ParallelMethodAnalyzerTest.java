@@ -0,0 +1,63 @@
+package net.sf.jode.decompiler;
+import junit.framework.*;
+import java.io.*;
+
+public class ParallelMethodAnalyzerTest extends TestCase {
+    public ParallelMethodAnalyzerTest(String name) {
+	super(name);
+    }
+
+    private String decompile(String className, int threads)
+	throws IOException {
+	Decompiler decompiler = new Decompiler();
+	/* The forked junit task doesn't set java.class.path. */
+	decompiler.setClassPath(new File(NameSerials.class.getProtectionDomain()
+					 .getCodeSource().getLocation()
+					 .getFile()).getPath());
+	decompiler.setErr(new PrintWriter(new StringWriter()));
+	decompiler.setOption("method-threads", String.valueOf(threads));
+	StringWriter source = new StringWriter();
+	decompiler.decompile(className, source, null);
+	return source.toString();
+    }
+
+    public void testSameOutput() throws IOException {
+	/* These classes have enough code to be analyzed in parallel. */
+	String[] classes = {
+	    "net.sf.jode.jvm.SyntheticAnalyzer",
+	    "net.sf.jode.bytecode.Opcodes"
+	};
+	for (int i = 0; i < classes.length; i++) {
+	    String sequential = decompile(classes[i], 1);
+	    assertTrue(sequential.length() > 0);
+	    for (int j = 0; j < 3; j++)
+		assertEquals(sequential, decompile(classes[i], 4));
+	}
+    }
+
+    public void testTicketOrder() throws InterruptedException {
+	final NameSerials serials = new NameSerials();
+	final int[] serial = new int[1];
+	serials.startTickets(2);
+	Thread second = new Thread() {
+		public void run() {
+		    serials.takeTicket(1);
+		    serial[0] = serials.next(NameSerials.LOCAL);
+		    serials.finishTicket();
+		}
+	    };
+	second.start();
+	/* The second thread must wait until ticket 0 is finished. */
+	second.join(200);
+	assertTrue(second.isAlive());
+	serials.takeTicket(0);
+	assertEquals(0, serials.next(NameSerials.LOCAL));
+	assertEquals(1, serials.next(NameSerials.LOCAL));
+	serials.finishTicket();
+	second.join();
+	assertEquals(2, serial[0]);
+	serials.stopTickets();
+	/* Without a ticket nobody waits. */
+	assertEquals(3, serials.next(NameSerials.LOCAL));
+    }
+}
@@ -0,0 +1,174 @@
+package net.sf.jode.obfuscator;
+import junit.framework.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import net.sf.jode.obfuscator.modules.ConstantAnalyzer;
+import net.sf.jode.obfuscator.modules.SimpleAnalyzer;
+
+public class ClassBundleTest extends TestCase {
+    public ClassBundleTest(String name) {
+	super(name);
+    }
+
+    ClassBundle bundle;
+    /**
+     * The names of the analyzed identifiers, in the order in which
+     * their analysis started.
+     */
+    List analyzed;
+
+    public void setUp() {
+	bundle = new ClassBundle();
+	analyzed = new ArrayList();
+    }
+
+    /**
+     * An identifier whose first analysis queues other identifiers.
+     */
+    class TestIdentifier extends Identifier {
+	String name;
+	Identifier[] queues = new Identifier[0];
+	boolean again;
+	long sleep;
+	RuntimeException failure;
+
+	TestIdentifier(String name) {
+	    super(name);
+	    this.name = name;
+	}
+
+	public void analyze() {
+	    synchronized (analyzed) {
+		analyzed.add(name);
+	    }
+	    if (failure != null)
+		throw failure;
+	    if (sleep > 0) {
+		try {
+		    Thread.sleep(sleep);
+		} catch (InterruptedException ex) {
+		}
+	    }
+	    if (again) {
+		/* This is analyzed right now, so it is analyzed
+		 * once more afterwards. */
+		again = false;
+		bundle.analyzeIdentifier(this);
+	    }
+	    for (int i = 0; i < queues.length; i++)
+		bundle.analyzeIdentifier(queues[i]);
+	    /* The next analysis doesn't queue them again. */
+	    queues = new Identifier[0];
+	}
+
+	public Iterator getChilds() {
+	    return Collections.EMPTY_LIST.iterator();
+	}
+
+	public Identifier getParent() {
+	    return null;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public String getType() {
+	    return "";
+	}
+
+	public String getFullName() {
+	    return name;
+	}
+
+	public String getFullAlias() {
+	    return name;
+	}
+
+	public boolean conflicting(String newAlias) {
+	    return false;
+	}
+    }
+
+    public void testOrder() {
+	TestIdentifier a = new TestIdentifier("a");
+	TestIdentifier b = new TestIdentifier("b");
+	TestIdentifier c = new TestIdentifier("c");
+	a.again = true;
+	a.queues = new Identifier[] { b, c, b };
+	b.queues = new Identifier[] { c };
+	bundle.analyzeIdentifier(a);
+	bundle.analyze();
+	/* b and c are queued only once; a is analyzed again after
+	 * the identifiers it queued. */
+	assertEquals("[a, b, c, a]", analyzed.toString());
+    }
+
+    public void testThreads() {
+	bundle.numThreads = 4;
+	TestIdentifier root = new TestIdentifier("root");
+	Identifier[] childs = new Identifier[3];
+	for (int i = 0; i < childs.length; i++) {
+	    TestIdentifier child = new TestIdentifier("child" + i);
+	    child.sleep = 20;
+	    child.again = (i == 0);
+	    Identifier[] grandChilds = new Identifier[5];
+	    for (int j = 0; j < grandChilds.length; j++)
+		grandChilds[j] = new TestIdentifier("grandChild" + i + j);
+	    child.queues = grandChilds;
+	    childs[i] = child;
+	}
+	root.queues = childs;
+	bundle.analyzeIdentifier(root);
+	/* The other threads must wait for root, since the queue is
+	 * empty until it is finished. */
+	bundle.analyze();
+
+	assertEquals("root", analyzed.get(0));
+	assertEquals(1 + 3 + 1 + 3 * 5, analyzed.size());
+	int child0 = 0;
+	for (Iterator i = analyzed.iterator(); i.hasNext(); ) {
+	    if (i.next().equals("child0"))
+		child0++;
+	}
+	assertEquals(2, child0);
+	for (int i = 0; i < 3; i++) {
+	    for (int j = 0; j < 5; j++)
+		assertTrue(analyzed.contains("grandChild" + i + j));
+	}
+    }
+
+    public void testFailure() {
+	bundle.numThreads = 3;
+	TestIdentifier root = new TestIdentifier("root");
+	TestIdentifier failing = new TestIdentifier("failing");
+	failing.failure = new IllegalStateException("analysis failed");
+	root.queues = new Identifier[] {
+	    new TestIdentifier("before"), failing
+	};
+	bundle.analyzeIdentifier(root);
+	try {
+	    bundle.analyze();
+	    fail("failure not thrown");
+	} catch (IllegalStateException ex) {
+	    assertSame(failing.failure, ex);
+	}
+
+	/* The failure and the rest of the queue are forgotten. */
+	analyzed.clear();
+	bundle.analyzeIdentifier(new TestIdentifier("next"));
+	bundle.analyze();
+	assertEquals("[next]", analyzed.toString());
+    }
+
+    public void testAnalyzeThreads() {
+	bundle.numThreads = 4;
+	assertEquals(4, bundle.getAnalyzeThreads());
+	bundle.analyzer = new SimpleAnalyzer();
+	assertEquals(4, bundle.getAnalyzeThreads());
+	bundle.analyzer = new ConstantAnalyzer();
+	assertEquals(1, bundle.getAnalyzeThreads());
+    }
+}
@@ -0,0 +1,254 @@
+package net.sf.jode.obfuscator;
+import junit.framework.*;
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sf.jode.GlobalOptions;
+
+public class IncrementalStateTest extends TestCase {
+    public IncrementalStateTest(String name) {
+	super(name);
+    }
+
+    /* Start reaches the other classes; Sub extends Base and User
+     * calls Base.  Other has nothing to do with Base.
+     */
+    private static final String[][] SOURCES = {
+	{ "Base", "package p;\n"
+	  + "public class Base {\n"
+	  + "    public int value() { return 1; }\n"
+	  + "}\n" },
+	{ "Sub", "package p;\n"
+	  + "public class Sub extends Base {\n"
+	  + "    public int twice() { return 2 * value(); }\n"
+	  + "}\n" },
+	{ "User", "package p;\n"
+	  + "public class User {\n"
+	  + "    public int use(Base base) { return base.value(); }\n"
+	  + "}\n" },
+	{ "Other", "package p;\n"
+	  + "public class Other {\n"
+	  + "    public int other() { return 3; }\n"
+	  + "}\n" },
+	{ "Start", "package p;\n"
+	  + "public class Start {\n"
+	  + "    public static void main(String[] params) {\n"
+	  + "        new User().use(new Sub());\n"
+	  + "        new Other().other();\n"
+	  + "    }\n"
+	  + "}\n" }
+    };
+
+    File tmpDir, classes, dest, stateFile, script;
+    StringWriter messages;
+    private PrintWriter oldErr;
+
+    private void write(File file, String contents) throws IOException {
+	Writer out = new FileWriter(file);
+	out.write(contents);
+	out.close();
+    }
+
+    /**
+     * Compiles the given files with the javac of the running JDK.
+     * @return the messages of javac, if it failed, null otherwise.
+     */
+    private String compile(File destDir, File[] files)
+	throws IOException, InterruptedException {
+	File home = new File(System.getProperty("java.home"));
+	File javac = new File(home, "bin/javac");
+	if (!javac.exists())
+	    /* java.home is the jre directory of an old JDK. */
+	    javac = new File(home.getParentFile(), "bin/javac");
+	String[] command = new String[files.length + 4];
+	command[0] = javac.getPath();
+	command[1] = "-nowarn";
+	command[2] = "-d";
+	command[3] = destDir.getPath();
+	for (int i = 0; i < files.length; i++)
+	    command[i + 4] = files[i].getPath();
+	Process process = Runtime.getRuntime().exec(command);
+	process.getOutputStream().close();
+	Reader in = new InputStreamReader(process.getErrorStream());
+	StringWriter messages = new StringWriter();
+	char[] buffer = new char[4096];
+	int count;
+	while ((count = in.read(buffer)) != -1)
+	    messages.write(buffer, 0, count);
+	in.close();
+	return process.waitFor() == 0 ? null : messages.toString();
+    }
+
+    /**
+     * Compiles the sources, where the body of Base.value returns the
+     * given value.
+     */
+    private void compileSources(int baseValue) throws Exception {
+	File sources = new File(tmpDir, "sources");
+	sources.mkdir();
+	File[] files = new File[SOURCES.length];
+	for (int i = 0; i < SOURCES.length; i++) {
+	    files[i] = new File(sources, SOURCES[i][0] + ".java");
+	    String source = SOURCES[i][1];
+	    if (SOURCES[i][0].equals("Base")) {
+		int index = source.indexOf("return 1;");
+		source = source.substring(0, index) + "return " + baseValue
+		    + source.substring(index + 8);
+	    }
+	    write(files[i], source);
+	}
+	assertNull(compile(classes, files));
+    }
+
+    private void writeScript(String extra) throws IOException {
+	write(script, "classpath = \"" + classes.getPath()
+	      + "\", \"reflection:\"\n"
+	      + "dest = \"" + dest.getPath() + "\"\n"
+	      + "state = \"" + stateFile.getPath() + "\"\n"
+	      + "strip = \"unreach\"\n"
+	      + "load = new WildCard { value = \"p\" }\n"
+	      + "preserve = new WildCard { value = \"p.Start.main.*\" }"
+	      + extra + "\n");
+    }
+
+    public void setUp() throws Exception {
+	tmpDir = File.createTempFile("jode", ".incr");
+	tmpDir.delete();
+	tmpDir.mkdir();
+	classes = new File(tmpDir, "classes");
+	classes.mkdir();
+	dest = new File(tmpDir, "dest");
+	dest.mkdir();
+	stateFile = new File(tmpDir, "state");
+	script = new File(tmpDir, "script.jos");
+	oldErr = GlobalOptions.err;
+	messages = new StringWriter();
+	GlobalOptions.err = new PrintWriter(messages, true);
+
+	compileSources(1);
+	writeScript("");
+	obfuscate();
+    }
+
+    private void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++)
+		delete(files[i]);
+	}
+	file.delete();
+    }
+
+    public void tearDown() {
+	GlobalOptions.err = oldErr;
+	delete(tmpDir);
+    }
+
+    private IncrementalState obfuscate() {
+	Main.main(new String[] { script.getPath() });
+	return Main.getClassBundle().incremental;
+    }
+
+    private boolean isUnchanged(IncrementalState state, String className) {
+	return state.isUnchanged(Main.getClassBundle()
+				 .getClassIdentifier(className));
+    }
+
+    private Map readOutput() throws IOException {
+	Map output = new HashMap();
+	File[] files = new File(dest, "p").listFiles();
+	for (int i = 0; i < files.length; i++) {
+	    InputStream in = new FileInputStream(files[i]);
+	    byte[] data = new byte[(int) files[i].length()];
+	    new DataInputStream(in).readFully(data);
+	    in.close();
+	    output.put(files[i].getName(), data);
+	}
+	return output;
+    }
+
+    private void assertSameOutput(Map expected, Map output) {
+	assertEquals(expected.keySet(), output.keySet());
+	for (Iterator i = expected.keySet().iterator(); i.hasNext(); ) {
+	    String name = (String) i.next();
+	    assertTrue(name, java.util.Arrays.equals
+		       ((byte[]) expected.get(name),
+			(byte[]) output.get(name)));
+	}
+    }
+
+    public void testUnchanged() throws IOException {
+	Map expected = readOutput();
+	assertEquals(SOURCES.length, expected.size());
+	IncrementalState state = obfuscate();
+	assertEquals(SOURCES.length, state.getClassCount());
+	assertEquals(0, state.getDirtyCount());
+	assertSameOutput(expected, readOutput());
+    }
+
+    public void testChangedClass() throws Exception {
+	Map before = readOutput();
+	compileSources(2);
+	IncrementalState state = obfuscate();
+	/* The sub class and the classes that use Base or Sub are
+	 * dirty, too.
+	 */
+	assertFalse(isUnchanged(state, "p.Base"));
+	assertFalse(isUnchanged(state, "p.Sub"));
+	assertFalse(isUnchanged(state, "p.User"));
+	assertFalse(isUnchanged(state, "p.Start"));
+	assertTrue(isUnchanged(state, "p.Other"));
+	assertEquals(4, state.getDirtyCount());
+
+	Map after = readOutput();
+	assertFalse(java.util.Arrays.equals((byte[]) before.get("Base.class"),
+					    (byte[]) after.get("Base.class")));
+	assertTrue(java.util.Arrays.equals((byte[]) before.get("Other.class"),
+					   (byte[]) after.get("Other.class")));
+    }
+
+    public void testConfigurationChanged() throws IOException {
+	Map expected = readOutput();
+	writeScript(",\n           new WildCard { value = \"p.Other.*\" }");
+	IncrementalState state = obfuscate();
+	assertTrue(messages.toString().indexOf("The configuration changed")
+		   >= 0);
+	assertEquals(state.getClassCount(), state.getDirtyCount());
+	assertEquals(expected.keySet(), readOutput().keySet());
+    }
+
+    private void corrupt(String line) throws IOException {
+	BufferedReader in = new BufferedReader(new FileReader(stateFile));
+	StringBuffer state = new StringBuffer();
+	String oldLine;
+	while ((oldLine = in.readLine()) != null) {
+	    if (oldLine.startsWith("class p.Base="))
+		oldLine = line;
+	    state.append(oldLine).append('\n');
+	}
+	in.close();
+	write(stateFile, state.toString());
+    }
+
+    public void testCorruptedState() throws IOException {
+	Map expected = readOutput();
+	String[] corruptions = {
+	    /* The output name is missing. */
+	    "class p.Base=0123 4567",
+	    /* There is no '='. */
+	    "class p.Base",
+	};
+	for (int i = 0; i < corruptions.length; i++) {
+	    corrupt(corruptions[i]);
+	    messages.getBuffer().setLength(0);
+	    IncrementalState state = obfuscate();
+	    assertTrue(corruptions[i],
+		       messages.toString().indexOf("is corrupted") >= 0);
+	    assertEquals(state.getClassCount(), state.getDirtyCount());
+	    assertSameOutput(expected, readOutput());
+	}
+	/* The state was written again. */
+	assertEquals(0, obfuscate().getDirtyCount());
+    }
+}
@@ -0,0 +1,86 @@
+package net.sf.jode.obfuscator;
+import junit.framework.*;
+import java.io.*;
+
+public class ObfuscatorMetricsTest extends TestCase {
+    public ObfuscatorMetricsTest(String name) {
+	super(name);
+    }
+
+    private static Object garbage;
+
+    private static void work() {
+	for (int i = 0; i < 1000; i++)
+	    garbage = new byte[1000];
+	long end = System.nanoTime() + 2000000;
+	while (System.nanoTime() < end)
+	    garbage = new StringBuffer().append(end).toString();
+    }
+
+    private ObfuscatorMetrics measure() throws InterruptedException {
+	final ObfuscatorMetrics metrics = new ObfuscatorMetrics(2);
+	metrics.startPhase(ObfuscatorMetrics.LOAD);
+	work();
+	metrics.setCounts(ObfuscatorMetrics.LOAD, 3, 7);
+	metrics.startPhase(ObfuscatorMetrics.TRANSFORM);
+	Thread worker = new Thread() {
+	    public void run() {
+		work();
+		metrics.threadFinished();
+	    }
+	};
+	worker.start();
+	worker.join();
+	metrics.stopPhase();
+	return metrics;
+    }
+
+    public void testPhases() throws InterruptedException {
+	ObfuscatorMetrics metrics = measure();
+	assertTrue(metrics.getWallTime(ObfuscatorMetrics.LOAD) > 0);
+	assertTrue(metrics.getWallTime(ObfuscatorMetrics.TRANSFORM) > 0);
+	assertEquals(0, metrics.getWallTime(ObfuscatorMetrics.WRITE));
+	assertEquals(metrics.getWallTime(ObfuscatorMetrics.LOAD)
+		     + metrics.getWallTime(ObfuscatorMetrics.TRANSFORM),
+		     metrics.getWallTime(-1));
+	assertEquals(3, metrics.getClassCount(ObfuscatorMetrics.LOAD));
+	assertEquals(7, metrics.getMethodCount(ObfuscatorMetrics.LOAD));
+	assertEquals(-1, metrics.getClassCount(ObfuscatorMetrics.WRITE));
+	assertTrue(metrics.getPeakHeap(ObfuscatorMetrics.LOAD) > 0);
+	assertTrue(metrics.getPeakHeap(-1)
+		   >= metrics.getPeakHeap(ObfuscatorMetrics.TRANSFORM));
+
+	/* The work of the worker thread is counted for the phase. */
+	long cpu = metrics.getCpuTime(ObfuscatorMetrics.TRANSFORM);
+	if (cpu >= 0)
+	    assertTrue(cpu > 0);
+	long alloc = metrics.getAllocatedBytes(ObfuscatorMetrics.TRANSFORM);
+	if (alloc >= 0)
+	    assertTrue(alloc >= 1000000);
+    }
+
+    public void testExport() throws IOException, InterruptedException {
+	ObfuscatorMetrics metrics = measure();
+	StringWriter json = new StringWriter();
+	metrics.writeJSON(json);
+	assertTrue(json.toString().startsWith("{\"threads\": 2,"));
+	assertTrue(json.toString().indexOf("{\"phase\": \"load\", "
+					   + "\"wallNanos\": ") > 0);
+	assertTrue(json.toString().indexOf("\"classes\": 3, "
+					   + "\"methods\": 7}") > 0);
+
+	StringWriter csv = new StringWriter();
+	metrics.writeCSV(csv);
+	BufferedReader lines
+	    = new BufferedReader(new StringReader(csv.toString()));
+	int columns = lines.readLine().split(",").length;
+	int count = 0;
+	String line;
+	while ((line = lines.readLine()) != null) {
+	    assertEquals(line, columns, line.split(",", -1).length);
+	    count++;
+	}
+	/* Every phase and the total. */
+	assertEquals(ObfuscatorMetrics.PHASES + 1, count);
+    }
+}
@@ -0,0 +1,116 @@
+package net.sf.jode.obfuscator;
+import junit.framework.*;
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import net.sf.jode.GlobalOptions;
+
+public class SpillStoreTest extends TestCase {
+    public SpillStoreTest(String name) {
+	super(name);
+    }
+
+    File tmpDir;
+    private PrintWriter oldErr;
+
+    public void setUp() throws IOException {
+	tmpDir = File.createTempFile("jode", ".spill");
+	tmpDir.delete();
+	tmpDir.mkdir();
+	oldErr = GlobalOptions.err;
+	GlobalOptions.err = new PrintWriter(new StringWriter());
+    }
+
+    public void tearDown() {
+	GlobalOptions.err = oldErr;
+	File[] files = tmpDir.listFiles();
+	for (int i = 0; i < files.length; i++)
+	    files[i].delete();
+	tmpDir.delete();
+    }
+
+    public void testPutGet() throws IOException {
+	SpillStore store = new SpillStore(tmpDir);
+	byte[] first = "first class".getBytes();
+	byte[] second = new byte[70000];
+	for (int i = 0; i < second.length; i++)
+	    second[i] = (byte) i;
+	long firstOffset = store.put(first);
+	long secondOffset = store.put(second);
+	assertEquals(0, firstOffset);
+	assertEquals(first.length, secondOffset);
+	assertEquals(first.length + second.length, store.getSize());
+	assertTrue(java.util.Arrays.equals
+		   (second, store.get(secondOffset, second.length)));
+	assertTrue(java.util.Arrays.equals
+		   (first, store.get(firstOffset, first.length)));
+	store.close();
+	/* Only the directory is left. */
+	assertEquals(0, tmpDir.listFiles().length);
+    }
+
+    private String junitJar() {
+	/* The forked junit task doesn't set java.class.path. */
+	return new File(TestCase.class.getProtectionDomain()
+			.getCodeSource().getLocation().getFile()).getPath();
+    }
+
+    /**
+     * Obfuscates the junit.framework package.  The classes aren't
+     * renamed, since the renamer shuffles the classes at random.
+     * @param spill the line with the spill option, or the empty string.
+     * @return the contents of the written jar, indexed by entry name.
+     */
+    private Map obfuscate(String name, String spill) throws IOException {
+	File dest = new File(tmpDir, name + ".jar");
+	File script = new File(tmpDir, name + ".jos");
+	Writer writer = new FileWriter(script);
+	writer.write("classpath = \"" + junitJar() + "\", \"reflection:\"\n"
+		     + "dest = \"" + dest.getPath() + "\"\n"
+		     + "strip = \"unreach\", \"lnt\"\n"
+		     + "load = new WildCard { value = \"junit.framework\" }\n"
+		     + "preserve = new WildCard "
+		     + "{ value = \"junit.framework.TestCase.*\" }\n"
+		     + "analyzer = new ConstantAnalyzer\n"
+		     + spill);
+	writer.close();
+	Main.main(new String[] { script.getPath() });
+
+	Map entries = new HashMap();
+	ZipInputStream zip = new ZipInputStream(new FileInputStream(dest));
+	ZipEntry ze;
+	while ((ze = zip.getNextEntry()) != null) {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[4096];
+	    int count;
+	    while ((count = zip.read(buffer)) != -1)
+		bytes.write(buffer, 0, count);
+	    entries.put(ze.getName(), bytes.toByteArray());
+	}
+	zip.close();
+	return entries;
+    }
+
+    public void testSameOutput() throws IOException {
+	Map expected = obfuscate("memory", "");
+	Map spilled = obfuscate("spilled",
+				"spill = \"" + tmpDir.getPath() + "\"\n");
+
+	ClassIdentifier ident = Main.getClassBundle()
+	    .getClassIdentifier("junit.framework.TestCase");
+	assertTrue(ident.spillOffset >= 0);
+	assertNull(ident.info);
+
+	assertTrue(expected.size() > 5);
+	assertEquals(expected.keySet(), spilled.keySet());
+	for (Iterator i = expected.keySet().iterator(); i.hasNext(); ) {
+	    String entry = (String) i.next();
+	    assertTrue(entry, java.util.Arrays.equals
+		       ((byte[]) expected.get(entry),
+			(byte[]) spilled.get(entry)));
+	}
+    }
+}
@@ -0,0 +1,197 @@
+package net.sf.jode.obfuscator;
+import junit.framework.*;
+import java.io.*;
+import java.util.zip.*;
+
+public class ZipWriterTest extends TestCase {
+    public ZipWriterTest(String name) {
+	super(name);
+    }
+
+    private static long crc(byte[] data) {
+	CRC32 crc = new CRC32();
+	crc.update(data);
+	return crc.getValue();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[1024];
+	int length;
+	while ((length = in.read(buffer)) > 0)
+	    out.write(buffer, 0, length);
+	return out.toByteArray();
+    }
+
+    public void testEntries() throws IOException {
+	byte[] stored = "stored entry".getBytes("UTF-8");
+	byte[] raw = new byte[5000];
+	for (int i = 0; i < raw.length; i++)
+	    raw[i] = (byte) (i % 7);
+	Deflater deflater = new Deflater(9, true);
+	deflater.setInput(raw);
+	deflater.finish();
+	byte[] deflated = new byte[raw.length];
+	int length = deflater.deflate(deflated);
+	assertTrue(deflater.finished());
+	deflater.end();
+
+	File file = File.createTempFile("zipwriter", ".jar");
+	try {
+	    ZipWriter zip = new ZipWriter(new FileOutputStream(file));
+	    zip.putEntry("a/Stored.class", ZipWriter.STORED,
+			 stored, stored.length, crc(stored), stored.length);
+	    zip.putEntry("a/b/Deflated\u00e4.class", ZipWriter.DEFLATED,
+			 deflated, length, crc(raw), raw.length);
+	    zip.close();
+
+	    ZipFile zipFile = new ZipFile(file);
+	    try {
+		assertEquals(2, zipFile.size());
+		ZipEntry entry = zipFile.getEntry("a/Stored.class");
+		assertEquals(ZipEntry.STORED, entry.getMethod());
+		assertEquals("stored entry", new String
+			     (readFully(zipFile.getInputStream(entry)),
+			      "UTF-8"));
+		entry = zipFile.getEntry("a/b/Deflated\u00e4.class");
+		assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+		assertEquals(length, entry.getCompressedSize());
+		byte[] read = readFully(zipFile.getInputStream(entry));
+		assertEquals(raw.length, read.length);
+		for (int i = 0; i < raw.length; i++)
+		    assertEquals(raw[i], read[i]);
+	    } finally {
+		zipFile.close();
+	    }
+
+	    /* The local headers must be readable without the central
+	     * directory, too.
+	     */
+	    ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+	    try {
+		assertEquals("a/Stored.class", in.getNextEntry().getName());
+		assertEquals(stored.length, readFully(in).length);
+		assertEquals("a/b/Deflated\u00e4.class",
+			     in.getNextEntry().getName());
+		assertEquals(raw.length, readFully(in).length);
+		assertNull(in.getNextEntry());
+	    } finally {
+		in.close();
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    public void testManyEntries() throws IOException {
+	int count = 70000;
+	File file = File.createTempFile("zipwriter", ".jar");
+	try {
+	    ZipWriter zip = new ZipWriter
+		(new BufferedOutputStream(new FileOutputStream(file)));
+	    for (int i = 0; i < count; i++) {
+		byte[] data = String.valueOf(i).getBytes("UTF-8");
+		zip.putEntry("e/" + i, ZipWriter.STORED,
+			     data, data.length, crc(data), data.length);
+	    }
+	    zip.close();
+
+	    ZipFile zipFile = new ZipFile(file);
+	    try {
+		assertEquals(count, zipFile.size());
+		int[] checked = { 0, 65534, 65535, count - 1 };
+		for (int i = 0; i < checked.length; i++) {
+		    ZipEntry entry = zipFile.getEntry("e/" + checked[i]);
+		    assertEquals(String.valueOf(checked[i]), new String
+				 (readFully(zipFile.getInputStream(entry)),
+				  "UTF-8"));
+		}
+	    } finally {
+		zipFile.close();
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    /**
+     * Counts the written bytes, but only keeps them once capture is
+     * set.
+     */
+    static class TailStream extends OutputStream {
+	long count;
+	boolean capture;
+	ByteArrayOutputStream tail = new ByteArrayOutputStream();
+
+	public void write(int b) {
+	    count++;
+	    if (capture)
+		tail.write(b);
+	}
+
+	public void write(byte[] b, int off, int len) {
+	    count += len;
+	    if (capture)
+		tail.write(b, off, len);
+	}
+    }
+
+    private static long read(byte[] b, int pos, int bytes) {
+	long value = 0;
+	for (int i = bytes - 1; i >= 0; i--)
+	    value = (value << 8) | (b[pos + i] & 0xff);
+	return value;
+    }
+
+    public void testLargeOffsets() throws IOException {
+	/* The data isn't kept, so the entries can be large. */
+	byte[] data = new byte[16 << 20];
+	int count = 260;
+	long[] offsets = new long[count];
+	TailStream out = new TailStream();
+	ZipWriter zip = new ZipWriter(out);
+	for (int i = 0; i < count; i++) {
+	    offsets[i] = out.count;
+	    zip.putEntry("e/" + i, ZipWriter.STORED,
+			 data, data.length, 0, data.length);
+	}
+	long centralOffset = out.count;
+	assertTrue(centralOffset > 0xffffffffL);
+	out.capture = true;
+	zip.close();
+	byte[] tail = out.tail.toByteArray();
+
+	int end = tail.length - 22;
+	assertEquals(0x06054b50, read(tail, end, 4));
+	assertEquals(count, read(tail, end + 10, 2));
+	assertEquals(0xffffffffL, read(tail, end + 16, 4));
+	int locator = end - 20;
+	assertEquals(0x07064b50, read(tail, locator, 4));
+	int zip64End = locator - 56;
+	assertEquals(centralOffset + zip64End, read(tail, locator + 8, 8));
+	assertEquals(0x06064b50, read(tail, zip64End, 4));
+	assertEquals(count, read(tail, zip64End + 32, 8));
+	assertEquals(zip64End, read(tail, zip64End + 40, 8));
+	assertEquals(centralOffset, read(tail, zip64End + 48, 8));
+
+	int pos = 0;
+	for (int i = 0; i < count; i++) {
+	    assertEquals(0x02014b50, read(tail, pos, 4));
+	    int nameLength = (int) read(tail, pos + 28, 2);
+	    int extraLength = (int) read(tail, pos + 30, 2);
+	    long offset = read(tail, pos + 42, 4);
+	    if (offsets[i] < 0xffffffffL) {
+		assertEquals(0, extraLength);
+		assertEquals(offsets[i], offset);
+	    } else {
+		assertEquals(0xffffffffL, offset);
+		int extra = pos + 46 + nameLength;
+		assertEquals(1, read(tail, extra, 2));
+		assertEquals(8, read(tail, extra + 2, 2));
+		assertEquals(offsets[i], read(tail, extra + 4, 8));
+	    }
+	    pos += 46 + nameLength + extraLength;
+	}
+	assertEquals(zip64End, pos);
+    }
+}
@@ -2,8 +2,9 @@ package net.sf.jode.obfuscator.modules;
 import net.sf.jode.bytecode.*;
 import net.sf.jode.GlobalOptions;
 import junit.framework.*;
+import net.sf.jode.obfuscator.Main;
 import java.util.BitSet;
-import java.io.PrintWriter;
+import java.io.*;
 
 public class ConstAnaTest extends TestCase implements Opcodes {
     ConstantAnalyzer ca;
@@ -176,11 +177,68 @@ public class ConstAnaTest extends TestCase implements Opcodes {
 	assertEquals(1, blocks[8].getSuccs().length);
     }
 
+    /**
+     * The field is read as the constant 0, before the same method
+     * writes another value to it.
+     */
+    static class Counter {
+	static int count;
+
+	public static void main(String[] params) {
+	    count = count + 1;
+	}
+    }
+
+    private void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++)
+		delete(files[i]);
+	}
+	file.delete();
+    }
+
+    public void testFieldReadBeforeNotConstant() throws IOException {
+	String className = Counter.class.getName();
+	/* The forked junit task doesn't set java.class.path. */
+	String classes = new File(Counter.class.getProtectionDomain()
+				  .getCodeSource().getLocation()
+				  .getFile()).getPath();
+	File tmpDir = File.createTempFile("jode", ".const");
+	tmpDir.delete();
+	tmpDir.mkdir();
+	PrintWriter oldErr = GlobalOptions.err;
+	GlobalOptions.err = new PrintWriter(new StringWriter());
+	try {
+	    File script = new File(tmpDir, "script.jos");
+	    Writer writer = new FileWriter(script);
+	    writer.write("classpath = \"" + classes + "\", \"reflection:\"\n"
+			 + "dest = \"" + tmpDir.getPath() + "\"\n"
+			 + "load = new WildCard { value = \"" + className
+			 + "\" }\n"
+			 + "preserve = new WildCard { value = \"" + className
+			 + ".main.*\" }\n"
+			 + "analyzer = new ConstantAnalyzer\n");
+	    writer.close();
+	    Main.main(new String[] { script.getPath() });
+
+	    ClassPath output = new ClassPath(new String[] { tmpDir.getPath() });
+	    ClassInfo info = output.getClassInfo(className);
+	    info.load(ClassInfo.DECLARATIONS);
+	    /* main still reads the field, so it must not be removed. */
+	    assertNotNull(info.findField("count", "I"));
+	} finally {
+	    GlobalOptions.err = oldErr;
+	    delete(tmpDir);
+	}
+    }
+
     public static Test suite() {
 	TestSuite suite = new TestSuite(); 
 	suite.addTest(new ConstAnaTest("testSimple")); 
 	suite.addTest(new ConstAnaTest("testJsr")); 
 	suite.addTest(new ConstAnaTest("testNestedJsr")); 
+	suite.addTest(new ConstAnaTest("testFieldReadBeforeNotConstant")); 
 	return suite;
     }
 }
@@ -0,0 +1,57 @@
+package net.sf.jode.obfuscator.modules;
+import net.sf.jode.obfuscator.*;
+import junit.framework.*;
+import java.util.Collections;
+import java.util.Iterator;
+
+public class StrongRenamerTest extends TestCase {
+    PackageIdentifier base, pack1, pack2;
+
+    public StrongRenamerTest(String name) {
+	super(name);
+    }
+
+    public void setUp() {
+	ClassBundle bundle = new ClassBundle();
+	base = new PackageIdentifier(bundle, null, "", "");
+	pack1 = new PackageIdentifier(bundle, base, "p1", "p1");
+	pack2 = new PackageIdentifier(bundle, pack1, "p1.p2", "p2");
+    }
+
+    private StrongRenamer createRenamer(String stateful) {
+	StrongRenamer renamer = new StrongRenamer();
+	renamer.setOption("charset", Collections.singleton("ab"));
+	if (stateful != null)
+	    renamer.setOption("stateful", Collections.singleton(stateful));
+	return renamer;
+    }
+
+    public void testRestart() {
+	StrongRenamer renamer = createRenamer(null);
+	Iterator names = renamer.generateNames(pack1);
+	assertEquals("a", names.next());
+	assertEquals("b", names.next());
+	assertEquals("aa", names.next());
+	assertEquals("a", renamer.generateNames(pack1).next());
+    }
+
+    public void testStateful() {
+	StrongRenamer renamer = createRenamer("true");
+	Iterator names = renamer.generateNames(pack1);
+	assertEquals("a", names.next());
+	assertEquals("b", names.next());
+	/* The next package in the same scope continues. */
+	assertEquals("aa", renamer.generateNames(pack1).next());
+	assertEquals("ba", renamer.generateNames(pack1).next());
+	/* Other scopes have their own names. */
+	assertEquals("a", renamer.generateNames(pack2).next());
+    }
+
+    public void testIllegalOption() {
+	try {
+	    createRenamer("yes");
+	    fail("accepted yes");
+	} catch (IllegalArgumentException ex) {
+	}
+    }
+}
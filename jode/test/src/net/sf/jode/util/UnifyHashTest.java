@@ -0,0 +1,110 @@
+package net.sf.jode.util;
+import junit.framework.*;
+import java.util.*;
+
+public class UnifyHashTest extends TestCase {
+    public UnifyHashTest(String name) {
+	super(name);
+    }
+
+    static final Comparator equalsComparator = new Comparator() {
+	public int compare(Object o1, Object o2) {
+	    return o1.equals(o2) ? 0 : 1;
+	}
+    };
+
+    /* Keep the objects alive, so that the garbage collector doesn't
+     * remove them from the hash.
+     */
+    List keep = new ArrayList();
+
+    private String str(int i) {
+	String s = new String("obj" + i);
+	keep.add(s);
+	return s;
+    }
+
+    public void testUnify() {
+	UnifyHash hash = new UnifyHash();
+	for (int i = 0; i < 1000; i++) {
+	    String s = str(i);
+	    assertSame(s, hash.unify(s, s.hashCode(), equalsComparator));
+	}
+	assertEquals(1000, hash.size());
+	for (int i = 0; i < 1000; i++) {
+	    String s = new String("obj" + i);
+	    Object o = hash.unify(s, s.hashCode(), equalsComparator);
+	    assertNotSame(s, o);
+	    assertEquals(s, o);
+	}
+	assertEquals(1000, hash.size());
+    }
+
+    public void testIterate() {
+	UnifyHash hash = new UnifyHash();
+	Set all = new HashSet();
+	for (int i = 0; i < 500; i++) {
+	    String s = str(i);
+	    /* Use few hash codes, so that they collide. */
+	    hash.put(i % 7, s);
+	    all.add(s);
+	}
+	Set found = new HashSet();
+	for (Iterator i = hash.iterator(); i.hasNext(); )
+	    assertTrue(found.add(i.next()));
+	assertEquals(all, found);
+
+	int count = 0;
+	for (Iterator i = hash.iterateHashCode(3); i.hasNext(); ) {
+	    String s = (String) i.next();
+	    assertEquals(3, Integer.parseInt(s.substring(3)) % 7);
+	    count++;
+	}
+	assertEquals(71, count);
+    }
+
+    public void testRemove() {
+	UnifyHash hash = new UnifyHash();
+	for (int i = 0; i < 100; i++)
+	    hash.put(i % 3, str(i));
+	for (Iterator i = hash.iterateHashCode(1); i.hasNext(); ) {
+	    i.next();
+	    i.remove();
+	}
+	assertFalse(hash.iterateHashCode(1).hasNext());
+	assertEquals(67, hash.size());
+	Object o = hash.iterateHashCode(2).next();
+	assertTrue(hash.remove(2, o));
+	assertFalse(hash.remove(2, o));
+	assertEquals(66, hash.size());
+    }
+
+    public void testConcurrentUnify() throws InterruptedException {
+	final UnifyHash hash = new UnifyHash();
+	final int threads = 8;
+	final int count = 2000;
+	final Object[][] results = new Object[threads][count];
+	Thread[] workers = new Thread[threads];
+	for (int t = 0; t < threads; t++) {
+	    final int nr = t;
+	    workers[t] = new Thread() {
+		public void run() {
+		    for (int i = 0; i < count; i++) {
+			String s = new String("obj" + i);
+			results[nr][i]
+			    = hash.unify(s, s.hashCode(), equalsComparator);
+		    }
+		}
+	    };
+	}
+	for (int t = 0; t < threads; t++)
+	    workers[t].start();
+	for (int t = 0; t < threads; t++)
+	    workers[t].join();
+	for (int i = 0; i < count; i++) {
+	    for (int t = 1; t < threads; t++)
+		assertSame(results[0][i], results[t][i]);
+	}
+	assertEquals(count, hash.size());
+    }
+}